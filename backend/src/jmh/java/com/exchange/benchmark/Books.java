@@ -0,0 +1,42 @@
+package com.exchange.benchmark;
+
+import com.exchange.model.Order;
+import com.exchange.model.OrderBook;
+import com.exchange.model.Prices;
+import com.exchange.model.TickLadderOrderBook;
+import com.exchange.model.TreeMapOrderBook;
+
+// Shared fixtures: book construction and scaled prices on the default 0.01 tick grid
+final class Books {
+    static final long MID = 100 * Prices.SCALE;
+    static final long TICK = Prices.SCALE / 100;
+
+    private Books() {
+    }
+
+    static OrderBook create(String type, String name) {
+        if ("TICK_LADDER".equals(type)) {
+            return new TickLadderOrderBook(name, TICK, 4096);
+        }
+        return new TreeMapOrderBook(name);
+    }
+
+    // Price `ticks` away from the touch on the given side (0 is the best level)
+    static long price(Order.OrderType side, int ticks) {
+        long mid = MID / TICK;
+        long tick = side == Order.OrderType.BUY ? mid - 1 - ticks : mid + 1 + ticks;
+        return tick * TICK;
+    }
+
+    // Fill both sides with `depth` levels of `ordersPerLevel` orders each
+    static void populate(OrderBook book, int depth, int ordersPerLevel) {
+        long id = 0;
+        for (Order.OrderType side : Order.OrderType.values()) {
+            for (int level = 0; level < depth; level++) {
+                for (int i = 0; i < ordersPerLevel; i++) {
+                    book.addOrder(new Order("rest-" + id++, book.getName(), side, price(side, level), 10, "mm" + i, id));
+                }
+            }
+        }
+    }
+}
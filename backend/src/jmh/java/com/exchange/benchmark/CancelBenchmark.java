@@ -0,0 +1,68 @@
+package com.exchange.benchmark;
+
+import com.exchange.model.Order;
+import com.exchange.model.OrderBook;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancel (and immediately re-add) an order at the front, middle or back of a single price
+ * level holding {@code levelSize} orders.
+ *
+ * The level is split into a fixed prefix that is never touched and a rotating tail: each
+ * invocation cancels the first order of the tail and re-adds it at the back. The cancelled
+ * order therefore always sits at the same queue position (0, levelSize / 2 or
+ * levelSize - 1) while the level keeps its size.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class CancelBenchmark {
+    public enum Position {
+        FRONT, MIDDLE, BACK
+    }
+
+    @Param({"TREE_MAP", "TICK_LADDER"})
+    public String bookType;
+
+    @Param({"FRONT", "MIDDLE", "BACK"})
+    public Position position;
+
+    @Param({"100", "1000"})
+    public int levelSize;
+
+    private OrderBook book;
+    private Order[] tail;
+    private int head;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        book = Books.create(bookType, "BENCH");
+        // Other levels on both sides so the book is not trivially small
+        Books.populate(book, 50, 4);
+
+        int prefix = position == Position.FRONT ? 0 : position == Position.MIDDLE ? levelSize / 2 : levelSize - 1;
+        long price = Books.price(Order.OrderType.BUY, 0);
+        for (int i = 0; i < prefix; i++) {
+            book.addOrder(new Order("fixed-" + i, "BENCH", Order.OrderType.BUY, price, 10, "fixed", i));
+        }
+        tail = new Order[levelSize - prefix];
+        for (int i = 0; i < tail.length; i++) {
+            tail[i] = new Order("tail-" + i, "BENCH", Order.OrderType.BUY, price, 10, "tail", prefix + i);
+            book.addOrder(tail[i]);
+        }
+    }
+
+    @Benchmark
+    public boolean cancelAndReplace() {
+        Order order = tail[head];
+        head = head + 1 == tail.length ? 0 : head + 1;
+        boolean removed = book.removeOrder(order.getId());
+        book.addOrder(order);
+        return removed;
+    }
+}
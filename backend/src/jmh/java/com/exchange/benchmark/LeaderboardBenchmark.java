@@ -0,0 +1,64 @@
+package com.exchange.benchmark;
+
+import com.exchange.config.ExchangeProperties;
+import com.exchange.service.ExchangeService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * getLeaderboard over {@code users} traders, each of whom has closed one round trip at a
+ * different profit so the ranking is not trivially ordered. The full board is measured next
+ * to paged top-K and single-rank reads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class LeaderboardBenchmark {
+    @Param({"10000", "50000"})
+    public int users;
+
+    private ExchangeService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ExchangeProperties properties = new ExchangeProperties();
+        properties.getMatching().setMode(ExchangeProperties.MatchingMode.DIRECT);
+        service = new ExchangeService(properties);
+        service.init();
+
+        for (int i = 0; i < users; i++) {
+            String user = "trader" + i;
+            double exit = Math.round((100.0 + (i * 7919 % 1000 - 500) * 0.01) * 100) / 100.0;
+            service.placeOrder("MSFT", "sell", 100.0, 1, "market-maker");
+            service.placeOrder("MSFT", "buy", 100.0, 1, user);
+            service.placeOrder("MSFT", "buy", exit, 1, "market-maker");
+            service.placeOrder("MSFT", "sell", exit, 1, user);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> leaderboard() {
+        return service.getLeaderboard();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> topTwenty() {
+        return service.getLeaderboard(0, 20);
+    }
+
+    @Benchmark
+    public Map<String, Object> rank() {
+        return service.getLeaderboardRank("trader" + (users / 2));
+    }
+}
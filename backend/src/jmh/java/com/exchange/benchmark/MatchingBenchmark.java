@@ -0,0 +1,62 @@
+package com.exchange.benchmark;
+
+import com.exchange.config.ExchangeProperties;
+import com.exchange.model.Order;
+import com.exchange.model.Prices;
+import com.exchange.service.ExchangeService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggressive orders through ExchangeService.placeOrder. Each operation rests one single-lot
+ * ask on each of {@code levels} price levels and then sends one buy that sweeps all of them,
+ * so a result covers levels + 1 order entries and levels trades.
+ *
+ * DIRECT matching keeps the thread hand-off out of the number; a fresh service per iteration
+ * keeps the ever-growing order and trade history from skewing later iterations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class MatchingBenchmark {
+    @Param({"1", "5", "20"})
+    public int levels;
+
+    @Param({"TREE_MAP", "TICK_LADDER"})
+    public String bookType;
+
+    private ExchangeService service;
+    private double[] askPrices;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        ExchangeProperties properties = new ExchangeProperties();
+        properties.getMatching().setMode(ExchangeProperties.MatchingMode.DIRECT);
+        properties.getBook().setType(ExchangeProperties.BookType.valueOf(bookType));
+        service = new ExchangeService(properties);
+        service.init();
+
+        askPrices = new double[levels];
+        for (int i = 0; i < levels; i++) {
+            askPrices[i] = Prices.toDouble(Books.price(Order.OrderType.SELL, i));
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    public Map<String, Object> sweep() {
+        for (double price : askPrices) {
+            service.placeOrder("AAPL", "sell", price, 1, "maker");
+        }
+        return service.placeOrder("AAPL", "buy", askPrices[levels - 1], levels, "taker");
+    }
+}
@@ -0,0 +1,73 @@
+package com.exchange.benchmark;
+
+import com.exchange.model.Order;
+import com.exchange.model.OrderBook;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Order book operations on a book holding {@code depth} levels per side, for both book
+ * implementations. passiveInsert adds a non-crossing order at a random level inside the book
+ * and removes it again, so the book keeps its shape across invocations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class OrderBookBenchmark {
+    private static final int ORDERS_PER_LEVEL = 4;
+    private static final int INSERTS = 1024;
+
+    @Param({"TREE_MAP", "TICK_LADDER"})
+    public String bookType;
+
+    @Param({"10", "100", "1000"})
+    public int depth;
+
+    private OrderBook book;
+    private Order[] inserts;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        book = Books.create(bookType, "BENCH");
+        Books.populate(book, depth, ORDERS_PER_LEVEL);
+
+        // Fixed seed so every run inserts at the same sequence of levels
+        Random random = new Random(42);
+        inserts = new Order[INSERTS];
+        for (int i = 0; i < INSERTS; i++) {
+            Order.OrderType side = random.nextBoolean() ? Order.OrderType.BUY : Order.OrderType.SELL;
+            inserts[i] = new Order("insert-" + i, "BENCH", side, Books.price(side, random.nextInt(depth)), 5, "bench", i);
+        }
+    }
+
+    @Benchmark
+    public boolean passiveInsert() {
+        Order order = inserts[next];
+        next = (next + 1) & (INSERTS - 1);
+        book.addOrder(order);
+        return book.removeOrder(order.getId());
+    }
+
+    @Benchmark
+    public Map<String, List<List<Double>>> aggregatedViewFull() {
+        return book.getAggregatedView();
+    }
+
+    @Benchmark
+    public Map<String, List<List<Double>>> aggregatedViewTop10() {
+        return book.getAggregatedView(10);
+    }
+
+    @Benchmark
+    public Order bestBid() {
+        return book.getBestOrder(Order.OrderType.BUY);
+    }
+}
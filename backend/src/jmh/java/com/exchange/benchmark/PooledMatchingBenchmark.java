@@ -0,0 +1,57 @@
+package com.exchange.benchmark;
+
+import com.exchange.engine.Fill;
+import com.exchange.engine.FillListener;
+import com.exchange.engine.PooledMatchingEngine;
+import com.exchange.model.Instrument;
+import com.exchange.model.Order;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same sweep as {@link MatchingBenchmark} against PooledMatchingEngine: rest one single-lot
+ * ask on each of {@code levels} price levels, then send one buy that takes all of them.
+ *
+ * Orders go back to the pool as they fill, so the engine reaches a steady state after the first
+ * operation; gc.alloc.rate.norm from the gc profiler (which the jmh profile enables) should
+ * read 0 bytes per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PooledMatchingBenchmark {
+    @Param({"1", "5", "20"})
+    public int levels;
+
+    private PooledMatchingEngine engine;
+    private long[] askPrices;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) {
+        FillListener listener = new FillListener() {
+            @Override
+            public void onFill(Fill fill) {
+                blackhole.consume(fill.getQuantity());
+            }
+        };
+        engine = new PooledMatchingEngine(new Instrument(Books.TICK, 1), Books.MID / 2, 16_384, 1024, listener);
+
+        askPrices = new long[levels];
+        for (int i = 0; i < levels; i++) {
+            askPrices[i] = Books.price(Order.OrderType.SELL, i);
+        }
+    }
+
+    @Benchmark
+    public long sweep() {
+        for (long price : askPrices) {
+            engine.place(Order.OrderType.SELL, price, 1, 1);
+        }
+        return engine.place(Order.OrderType.BUY, askPrices[levels - 1], levels, 2);
+    }
+}
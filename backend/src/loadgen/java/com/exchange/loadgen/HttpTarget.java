@@ -0,0 +1,69 @@
+package com.exchange.loadgen;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Sends orders to a running exchange through the REST endpoints
+final class HttpTarget implements OrderTarget {
+    private static final Pattern ORDER_ID = Pattern.compile("\"orderId\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern STATUS = Pattern.compile("\"status\"\\s*:\\s*\"([^\"]+)\"");
+
+    private final String baseUrl;
+    private final HttpClient client;
+
+    HttpTarget(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    }
+
+    @Override
+    public String place(String book, String side, double price, int quantity, String username) throws Exception {
+        String body = send("POST", "/api/exchange/order?book=" + book + "&type=" + side + "&price=" + price
+            + "&quantity=" + quantity + "&username=" + encode(username));
+        Matcher status = STATUS.matcher(body);
+        if (status.find() && "FILLED".equals(status.group(1))) {
+            return null;
+        }
+        Matcher orderId = ORDER_ID.matcher(body);
+        return orderId.find() ? orderId.group(1) : null;
+    }
+
+    @Override
+    public void cancel(String book, String orderId, String username) throws Exception {
+        send("DELETE", "/api/exchange/order?book=" + book + "&orderId=" + encode(orderId) + "&username=" + encode(username));
+    }
+
+    private String send(String method, String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+            .method(method, HttpRequest.BodyPublishers.noBody())
+            .timeout(Duration.ofSeconds(30))
+            .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() == 400) {
+            throw new RejectedException(response.body());
+        }
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("HTTP " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        // HttpClient has no close on Java 11; its threads are daemons
+    }
+}
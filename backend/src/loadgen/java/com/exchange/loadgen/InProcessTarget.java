@@ -0,0 +1,40 @@
+package com.exchange.loadgen;
+
+import com.exchange.config.ExchangeProperties;
+import com.exchange.service.ExchangeService;
+
+import java.util.Map;
+
+// Drives an ExchangeService in this JVM, measuring the engine without HTTP in the way
+final class InProcessTarget implements OrderTarget {
+    private final ExchangeService service;
+
+    InProcessTarget(ExchangeProperties properties) {
+        this.service = new ExchangeService(properties);
+        this.service.init();
+    }
+
+    @Override
+    public String place(String book, String side, double price, int quantity, String username) throws RejectedException {
+        try {
+            Map<String, Object> result = service.placeOrder(book, side, price, quantity, username);
+            return "FILLED".equals(result.get("status")) ? null : (String) result.get("orderId");
+        } catch (IllegalArgumentException e) {
+            throw new RejectedException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void cancel(String book, String orderId, String username) throws RejectedException {
+        try {
+            service.cancelOrder(book, orderId, username);
+        } catch (IllegalArgumentException e) {
+            throw new RejectedException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        service.shutdown();
+    }
+}
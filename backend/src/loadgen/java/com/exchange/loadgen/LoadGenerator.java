@@ -0,0 +1,229 @@
+package com.exchange.loadgen;
+
+import com.exchange.config.ExchangeProperties;
+import org.HdrHistogram.Histogram;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator for the exchange.
+ *
+ * Requests are scheduled at a constant rate: request i is due at start + i / rate whether or
+ * not earlier requests have finished. Latency is measured from that intended start, so time a
+ * request spends waiting behind a stalled system is counted instead of silently skipped
+ * (coordinated omission). Service time, measured from when a worker actually sent the
+ * request, is reported next to it; a widening gap between the two means the target is
+ * falling behind.
+ *
+ * Usage: --target=inprocess|http://host:port --profile=mixed|market-makers|takers|cancel-heavy
+ *        --rate=N (requests/s) --duration=S --warmup=S --threads=N
+ *        --sweep=FROM:TO:STEP (requests/s; finds the saturation point) --sla-ms=MS --hgrm=FILE
+ */
+public final class LoadGenerator {
+    private static final long SPIN_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final OrderTarget target;
+    private final OrderFlow.Profile profile;
+    private final int threads;
+    private long runCount;
+
+    LoadGenerator(OrderTarget target, OrderFlow.Profile profile, int threads) {
+        this.target = target;
+        this.profile = profile;
+        this.threads = threads;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        String targetName = options.getOrDefault("target", "inprocess");
+        OrderFlow.Profile profile = OrderFlow.Profile.parse(options.getOrDefault("profile", "mixed"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "8"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        double slaMs = Double.parseDouble(options.getOrDefault("sla-ms", "10"));
+
+        try (OrderTarget target = "inprocess".equals(targetName)
+                ? new InProcessTarget(new ExchangeProperties())
+                : new HttpTarget(targetName)) {
+            LoadGenerator generator = new LoadGenerator(target, profile, threads);
+            System.out.printf("Target %s, profile %s, %d threads%n", targetName, profile, threads);
+
+            if (options.containsKey("sweep")) {
+                String[] range = options.get("sweep").split(":");
+                generator.sweep(Integer.parseInt(range[0]), Integer.parseInt(range[1]), Integer.parseInt(range[2]),
+                    duration, warmup, slaMs);
+                return;
+            }
+
+            int rate = Integer.parseInt(options.getOrDefault("rate", "1000"));
+            if (warmup > 0) {
+                generator.run(rate, warmup);
+            }
+            Result result = generator.run(rate, duration);
+            result.print(System.out);
+            if (options.containsKey("hgrm")) {
+                try (PrintStream out = new PrintStream(new FileOutputStream(options.get("hgrm")))) {
+                    result.latency.outputPercentileDistribution(out, 1_000_000.0);
+                }
+                System.out.println("Latency distribution (ms) written to " + options.get("hgrm"));
+            }
+        }
+    }
+
+    /**
+     * Step the rate up until the target cannot keep up: achieved throughput below 95% of the
+     * offered rate, or p99 latency (from intended start) above the SLA.
+     */
+    void sweep(int from, int to, int step, int duration, int warmup, double slaMs) {
+        System.out.printf("%10s %10s %10s %10s %10s %10s%n", "offered/s", "achieved/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        Integer saturation = null;
+        for (int rate = from; rate <= to; rate += step) {
+            if (warmup > 0) {
+                run(rate, warmup);
+            }
+            Result result = run(rate, duration);
+            double p99 = result.latency.getValueAtPercentile(99) / 1e6;
+            System.out.printf("%10d %10.0f %10.3f %10.3f %10.3f %10.3f%n", rate, result.throughput(),
+                result.latency.getValueAtPercentile(50) / 1e6, p99,
+                result.latency.getValueAtPercentile(99.9) / 1e6, result.latency.getMaxValue() / 1e6);
+            if (result.throughput() < rate * 0.95 || p99 > slaMs) {
+                saturation = rate;
+                break;
+            }
+        }
+        System.out.println(saturation == null
+            ? "No saturation up to " + to + " requests/s"
+            : "Saturated at " + saturation + " requests/s (p99 SLA " + slaMs + " ms)");
+    }
+
+    Result run(int rate, int seconds) {
+        long total = (long) rate * seconds;
+        double intervalNanos = 1e9 / rate;
+        AtomicLong next = new AtomicLong();
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+        long run = runCount++;
+
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Worker worker = new Worker(new OrderFlow(profile, run * 1000 + i, "load-" + i), next, total, start, intervalNanos);
+            worker.thread = new Thread(worker, "load-" + i);
+            workers.add(worker);
+            worker.thread.start();
+        }
+
+        Result result = new Result(rate);
+        for (Worker worker : workers) {
+            try {
+                worker.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for load workers", e);
+            }
+            result.add(worker);
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private final class Worker implements Runnable {
+        private final OrderFlow flow;
+        private final AtomicLong next;
+        private final long total;
+        private final long start;
+        private final double intervalNanos;
+        private final Histogram latency = new Histogram(3);
+        private final Histogram service = new Histogram(3);
+        private long rejected;
+        private long failed;
+        private Thread thread;
+
+        private Worker(OrderFlow flow, AtomicLong next, long total, long start, double intervalNanos) {
+            this.flow = flow;
+            this.next = next;
+            this.total = total;
+            this.start = start;
+            this.intervalNanos = intervalNanos;
+        }
+
+        @Override
+        public void run() {
+            long index;
+            while ((index = next.getAndIncrement()) < total) {
+                long intended = start + (long) (index * intervalNanos);
+                long now;
+                while ((now = System.nanoTime()) < intended) {
+                    long wait = intended - now;
+                    if (wait > SPIN_THRESHOLD_NANOS) {
+                        LockSupport.parkNanos(wait - SPIN_THRESHOLD_NANOS);
+                    } else {
+                        Thread.onSpinWait();
+                    }
+                }
+                try {
+                    if (flow.next(target) == OrderFlow.Outcome.REJECTED) {
+                        rejected++;
+                    }
+                } catch (Exception e) {
+                    failed++;
+                }
+                long end = System.nanoTime();
+                latency.recordValue(end - intended);
+                service.recordValue(end - now);
+            }
+        }
+    }
+
+    static final class Result {
+        private final int offeredRate;
+        private final Histogram latency = new Histogram(3);
+        private final Histogram service = new Histogram(3);
+        private long rejected;
+        private long failed;
+        private long elapsedNanos;
+
+        private Result(int offeredRate) {
+            this.offeredRate = offeredRate;
+        }
+
+        private void add(Worker worker) {
+            latency.add(worker.latency);
+            service.add(worker.service);
+            rejected += worker.rejected;
+            failed += worker.failed;
+        }
+
+        double throughput() {
+            return latency.getTotalCount() / (elapsedNanos / 1e9);
+        }
+
+        void print(PrintStream out) {
+            out.printf("Offered %d/s, achieved %.0f/s over %d requests (%d rejected, %d failed)%n",
+                offeredRate, throughput(), latency.getTotalCount(), rejected, failed);
+            out.printf("%10s %14s %14s%n", "percentile", "latency ms", "service ms");
+            for (double percentile : new double[] {50, 90, 99, 99.9, 99.99, 100}) {
+                out.printf("%10s %14.3f %14.3f%n", percentile, latency.getValueAtPercentile(percentile) / 1e6,
+                    service.getValueAtPercentile(percentile) / 1e6);
+            }
+        }
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return options;
+    }
+}
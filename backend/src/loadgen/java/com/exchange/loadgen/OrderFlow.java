@@ -0,0 +1,87 @@
+package com.exchange.loadgen;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Order flow mix for one worker thread. Each request is a passive quote, an aggressive order
+ * that crosses the spread, or a cancel of the worker's oldest resting quote, drawn with the
+ * weights of the selected profile. Prices stay on the 0.01 tick grid around a fixed mid.
+ */
+final class OrderFlow {
+    enum Profile {
+        // passive, aggressive, cancel weights in percent
+        MIXED(50, 20, 30),
+        MARKET_MAKERS(70, 0, 30),
+        TAKERS(50, 50, 0),
+        CANCEL_HEAVY(45, 0, 55);
+
+        private final int passive;
+        private final int aggressive;
+
+        Profile(int passive, int aggressive, int cancel) {
+            if (passive + aggressive + cancel != 100) {
+                throw new IllegalArgumentException("Weights must add up to 100");
+            }
+            this.passive = passive;
+            this.aggressive = aggressive;
+        }
+
+        static Profile parse(String name) {
+            return valueOf(name.toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    enum Outcome {
+        OK, REJECTED
+    }
+
+    private static final String[] BOOKS = {"AAPL", "AMZN", "NVDA", "MSFT"};
+    private static final long MID_TICKS = 10_000; // 100.00
+    private static final int SPREAD_TICKS = 20;
+    // Resting quotes a worker keeps before it starts cancelling regardless of the mix
+    private static final int MAX_LIVE_ORDERS = 500;
+
+    private final Profile profile;
+    private final Random random;
+    private final String username;
+    private final ArrayDeque<String[]> live = new ArrayDeque<>();
+
+    OrderFlow(Profile profile, long seed, String username) {
+        this.profile = profile;
+        this.random = new Random(seed);
+        this.username = username;
+    }
+
+    Outcome next(OrderTarget target) throws Exception {
+        int roll = random.nextInt(100);
+        try {
+            if ((roll >= profile.passive + profile.aggressive || live.size() >= MAX_LIVE_ORDERS) && !live.isEmpty()) {
+                String[] oldest = live.pollFirst();
+                target.cancel(oldest[0], oldest[1], username);
+            } else if (roll >= profile.passive && roll < profile.passive + profile.aggressive) {
+                boolean buy = random.nextBoolean();
+                // Cross by up to the full quoting range so aggressive orders sweep several levels
+                long ticks = buy ? MID_TICKS + SPREAD_TICKS : MID_TICKS - SPREAD_TICKS;
+                String book = BOOKS[random.nextInt(BOOKS.length)];
+                remember(book, target.place(book, buy ? "buy" : "sell", ticks / 100.0, 1 + random.nextInt(20), username));
+            } else {
+                boolean buy = random.nextBoolean();
+                long offset = 1 + random.nextInt(SPREAD_TICKS);
+                long ticks = buy ? MID_TICKS - offset : MID_TICKS + offset;
+                String book = BOOKS[random.nextInt(BOOKS.length)];
+                remember(book, target.place(book, buy ? "buy" : "sell", ticks / 100.0, 1 + random.nextInt(10), username));
+            }
+            return Outcome.OK;
+        } catch (OrderTarget.RejectedException e) {
+            return Outcome.REJECTED;
+        }
+    }
+
+    private void remember(String book, String orderId) {
+        if (orderId != null) {
+            live.addLast(new String[] {book, orderId});
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.exchange.loadgen;
+
+/**
+ * Where generated orders go. Implementations must be safe to call from several worker threads.
+ * A request the exchange refuses (bad price, order already filled) throws
+ * {@link RejectedException}; anything else that goes wrong is a real failure.
+ */
+interface OrderTarget extends AutoCloseable {
+    // Returns the new order id if the order is still resting, or null if it filled immediately
+    String place(String book, String side, double price, int quantity, String username) throws Exception;
+
+    void cancel(String book, String orderId, String username) throws Exception;
+
+    @Override
+    void close();
+
+    final class RejectedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        RejectedException(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
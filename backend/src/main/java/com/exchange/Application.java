@@ -1,9 +1,12 @@
 package com.exchange;
 
+import com.exchange.config.ExchangeProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 
 @SpringBootApplication
+@EnableConfigurationProperties(ExchangeProperties.class)
 public class Application {
     public static void main(String[] args) {
         SpringApplication.run(Application.class, args);
@@ -0,0 +1,529 @@
+package com.exchange.cluster;
+
+import com.exchange.model.OrderInstruction;
+import com.exchange.service.ExchangeService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The exchange API assembled from the shards, for views that span books on different engines.
+ *
+ * Each engine knows only the users that traded or ordered on its own books. A user's profit,
+ * positions and counts are therefore the sums over every engine that knows them. An engine
+ * that has never seen the user answers "User not found"; that counts as empty when another
+ * engine does know them. Pages keep their single-engine ordering, so the engines can be asked
+ * for the same page and their answers merged.
+ */
+@Service
+@ConditionalOnProperty(name = "exchange.cluster.role", havingValue = "ROUTER")
+public class ClusterExchange {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    // Per-engine cursor in a composite trade cursor when that engine has nothing further
+    private static final String EXHAUSTED = "-";
+
+    private static final Comparator<Map<String, Object>> NEWEST_TRADE_FIRST = Comparator
+        .comparing((Map<String, Object> trade) -> (String) trade.get("timestamp")).reversed()
+        .thenComparing(trade -> (String) trade.get("tradeId"));
+    private static final Comparator<Map<String, Object>> NEWEST_ORDER_FIRST = Comparator
+        .comparingLong((Map<String, Object> order) -> ((Number) order.get("timestamp")).longValue()).reversed()
+        .thenComparing(order -> (String) order.get("orderId"));
+    private static final Comparator<Map<String, Object>> BY_SYMBOL =
+        Comparator.comparing(position -> (String) position.get("symbol"));
+
+    private final ShardRouter router;
+
+    @Autowired
+    public ClusterExchange(ShardRouter router) {
+        this.router = router;
+    }
+
+    /**
+     * One page of books from all engines in name order, with a version that changes whenever
+     * any engine's page does. Named symbols are asked of the engine that owns them; otherwise
+     * every engine returns its own page after the same name, and the first names of the merged
+     * pages are the cluster's page.
+     */
+    public Gathered getAllOrderBooks(int depth, List<String> symbols, String prefix, String after, Integer limit) {
+        int size = limit != null ? limit : DEFAULT_PAGE_SIZE;
+        String query = "/books?depth=" + depth
+            + (prefix != null ? "&prefix=" + ShardRouter.encode(prefix) : "")
+            + (after != null ? "&after=" + ShardRouter.encode(after) : "")
+            + (limit != null ? "&limit=" + limit : "");
+
+        List<ShardRouter.ShardResponse> responses;
+        if (symbols != null && !symbols.isEmpty()) {
+            Map<String, List<String>> symbolsByShard = new LinkedHashMap<>();
+            for (String symbol : symbols) {
+                symbolsByShard.computeIfAbsent(router.shardFor(symbol), shard -> new ArrayList<>()).add(symbol);
+            }
+            Map<String, CompletableFuture<ShardRouter.ShardResponse>> pending = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> entry : symbolsByShard.entrySet()) {
+                String names = ShardRouter.encode(String.join(",", entry.getValue()));
+                pending.put(entry.getKey(), router.send(entry.getKey(), "GET", query + "&symbols=" + names, null));
+            }
+            responses = new ArrayList<>();
+            for (Map.Entry<String, CompletableFuture<ShardRouter.ShardResponse>> entry : pending.entrySet()) {
+                responses.add(router.join(entry.getKey(), entry.getValue()));
+            }
+            requireAll(responses);
+        } else {
+            responses = requireAll(router.scatter("GET", query));
+        }
+        return new Gathered(responses, () -> {
+            TreeMap<String, Object> books = new TreeMap<>();
+            for (ShardRouter.ShardResponse response : responses) {
+                books.putAll(response.asMap());
+            }
+            while (books.size() > size) {
+                books.pollLastEntry();
+            }
+            return books;
+        });
+    }
+
+    /**
+     * Every engine's full leaderboard, merged per user. Ranking needs each user's profit
+     * summed across engines, so no engine can rank a page on its own.
+     */
+    public Gathered getLeaderboard(int offset, int limit) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset must not be negative");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        List<ShardRouter.ShardResponse> responses = requireAll(router.scatter("GET", "/leaderboard"));
+        return new Gathered(responses, () -> {
+            List<Map<String, Object>> ranking = rank(responses);
+            return ranking.subList(Math.min(offset, ranking.size()), (int) Math.min((long) offset + limit, ranking.size()));
+        });
+    }
+
+    public Map<String, Object> getLeaderboardRank(String username) {
+        List<Map<String, Object>> ranking = rank(requireAll(router.scatter("GET", "/leaderboard")));
+        for (Map<String, Object> entry : ranking) {
+            if (entry.get("username").equals(username)) {
+                entry.put("userCount", ranking.size());
+                return entry;
+            }
+        }
+        throw new IllegalArgumentException("User not found: " + username);
+    }
+
+    public Map<String, Object> getUser(String username) {
+        String path = "/user/" + ShardRouter.encode(username);
+        List<Map<String, Object>> found = known(router.scatter("GET", path));
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("username", username);
+        result.put("realizedProfit", sum(found, "realizedProfit"));
+        result.put("unrealizedProfit", sum(found, "unrealizedProfit"));
+        result.put("totalProfit", sum(found, "totalProfit"));
+        result.put("positions", concat(found, "positions", BY_SYMBOL));
+        result.put("activeOrders", concat(found, "activeOrders", NEWEST_ORDER_FIRST));
+        result.put("tradeCount", (long) sum(found, "tradeCount"));
+        // The newest trades across engines, with a cursor that continues on getUserTrades
+        Map<String, Object> trades = getUserTrades(username, null, DEFAULT_PAGE_SIZE, null, null);
+        result.put("executedTrades", trades.get("trades"));
+        result.put("nextTradeCursor", trades.get("nextCursor"));
+        return result;
+    }
+
+    /**
+     * A page of the user's trades across engines, newest first. Trade cursors are positions
+     * in one engine's history, so the router's cursor is the list of per-engine cursors in
+     * shard order: empty for an engine not read yet, "-" for one with nothing older.
+     */
+    public Map<String, Object> getUserTrades(String username, String cursor, Integer limit, Long from, Long to) {
+        List<String> shards = router.getShards();
+        String[] cursors = cursor == null ? new String[shards.size()] : cursor.split(",", -1);
+        if (cursor == null) {
+            Arrays.fill(cursors, "");
+        } else if (cursors.length != shards.size()) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        int size = limit != null ? limit : DEFAULT_PAGE_SIZE;
+        String filters = (from != null ? "&from=" + from : "") + (to != null ? "&to=" + to : "");
+        String path = "/user/" + ShardRouter.encode(username) + "/trades?limit=";
+
+        Map<Integer, CompletableFuture<ShardRouter.ShardResponse>> pending = new LinkedHashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            if (!EXHAUSTED.equals(cursors[i])) {
+                pending.put(i, router.send(shards.get(i), "GET", path + size + cursorParam(cursors[i]) + filters, null));
+            }
+        }
+        Map<Integer, ShardRouter.ShardResponse> pages = awaitKnown(pending, cursor == null);
+
+        // Merge the pages, remembering which engine each trade came from
+        List<Map<String, Object>> merged = new ArrayList<>();
+        Map<Map<String, Object>, Integer> sources = new IdentityHashMap<>();
+        for (Map.Entry<Integer, ShardRouter.ShardResponse> page : pages.entrySet()) {
+            for (Map<String, Object> trade : items(page.getValue(), "trades")) {
+                merged.add(trade);
+                sources.put(trade, page.getKey());
+            }
+        }
+        merged.sort(NEWEST_TRADE_FIRST);
+        List<Map<String, Object>> taken = new ArrayList<>(merged.subList(0, Math.min(size, merged.size())));
+        int[] takenPerShard = new int[shards.size()];
+        for (Map<String, Object> trade : taken) {
+            takenPerShard[sources.get(trade)]++;
+        }
+
+        // An engine whose page was only partly used continues after the trades actually returned
+        String[] next = cursors.clone();
+        Map<Integer, CompletableFuture<ShardRouter.ShardResponse>> partial = new LinkedHashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            ShardRouter.ShardResponse page = pages.get(i);
+            if (EXHAUSTED.equals(cursors[i])) {
+                continue;
+            }
+            if (page == null) {
+                next[i] = EXHAUSTED;
+            } else if (takenPerShard[i] == items(page, "trades").size()) {
+                Object shardNext = page.asMap().get("nextCursor");
+                next[i] = shardNext != null ? shardNext.toString() : EXHAUSTED;
+            } else if (takenPerShard[i] == 0) {
+                // Nothing used yet; pin the start so trades newer than this page are not served on the next
+                next[i] = (String) page.asMap().get("cursor");
+            } else {
+                // Re-read from where this page started, which stays put even if newer trades arrived
+                partial.put(i, router.send(shards.get(i), "GET",
+                    path + takenPerShard[i] + cursorParam((String) page.asMap().get("cursor")) + filters, null));
+            }
+        }
+        for (Map.Entry<Integer, ShardRouter.ShardResponse> page : awaitKnown(partial, false).entrySet()) {
+            Object shardNext = page.getValue().asMap().get("nextCursor");
+            next[page.getKey()] = shardNext != null ? shardNext.toString() : EXHAUSTED;
+        }
+
+        boolean done = true;
+        for (String shardCursor : next) {
+            done &= EXHAUSTED.equals(shardCursor);
+        }
+        return page(username, "trades", taken, done ? null : String.join(",", next));
+    }
+
+    // Every engine pages working orders by the same (timestamp, id) key, so they can all be asked for the same page
+    public Map<String, Object> getUserOrders(String username, String cursor, Integer limit, Long from, Long to) {
+        int size = limit != null ? limit : DEFAULT_PAGE_SIZE;
+        String query = "?limit=" + size + (cursor != null ? "&cursor=" + ShardRouter.encode(cursor) : "")
+            + (from != null ? "&from=" + from : "") + (to != null ? "&to=" + to : "");
+        List<Map<String, Object>> pages = known(router.scatter("GET", "/user/" + ShardRouter.encode(username) + "/orders" + query));
+        return mergePages(username, "orders", pages, size, NEWEST_ORDER_FIRST,
+            order -> order.get("timestamp") + ":" + order.get("orderId"));
+    }
+
+    public Map<String, Object> getUserPositions(String username, String cursor, Integer limit) {
+        int size = limit != null ? limit : DEFAULT_PAGE_SIZE;
+        String query = "?limit=" + size + (cursor != null ? "&cursor=" + ShardRouter.encode(cursor) : "");
+        List<Map<String, Object>> pages = known(router.scatter("GET", "/user/" + ShardRouter.encode(username) + "/positions" + query));
+        return mergePages(username, "positions", pages, size, BY_SYMBOL, position -> (String) position.get("symbol"));
+    }
+
+    // Order ids do not name their book, so ask every engine
+    public Map<String, Object> getOrder(String orderId) {
+        for (ShardRouter.ShardResponse response : router.scatter("GET", "/order/" + ShardRouter.encode(orderId))) {
+            if (response.isOk()) {
+                return response.asMap();
+            }
+        }
+        throw new IllegalArgumentException("Order not found: " + orderId);
+    }
+
+    // Split the batch by engine, run the parts in parallel and put the results back in request order
+    public List<Map<String, Object>> executeBatch(String username, List<OrderInstruction> instructions) {
+        if (instructions == null || instructions.isEmpty()) {
+            throw new IllegalArgumentException("Batch must contain at least one instruction");
+        }
+        if (instructions.size() > ExchangeService.MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch cannot contain more than " + ExchangeService.MAX_BATCH_SIZE + " instructions");
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>(instructions.size());
+        Map<String, List<Integer>> indicesByShard = new LinkedHashMap<>();
+        for (int i = 0; i < instructions.size(); i++) {
+            results.add(null);
+            try {
+                String shard = router.shardFor(instructions.get(i).getBook());
+                indicesByShard.computeIfAbsent(shard, key -> new ArrayList<>()).add(i);
+            } catch (IllegalArgumentException e) {
+                results.set(i, rejected(e.getMessage()));
+            }
+        }
+
+        Map<String, CompletableFuture<ShardRouter.ShardResponse>> pending = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Integer>> entry : indicesByShard.entrySet()) {
+            List<OrderInstruction> part = new ArrayList<>();
+            for (int index : entry.getValue()) {
+                part.add(instructions.get(index));
+            }
+            pending.put(entry.getKey(), router.send(entry.getKey(), "POST",
+                "/orders?username=" + ShardRouter.encode(username), part));
+        }
+        for (Map.Entry<String, CompletableFuture<ShardRouter.ShardResponse>> entry : pending.entrySet()) {
+            ShardRouter.ShardResponse response = router.join(entry.getKey(), entry.getValue());
+            List<Integer> indices = indicesByShard.get(entry.getKey());
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> partResults = response.isOk()
+                ? (List<Map<String, Object>>) response.asMap().get("results") : null;
+            for (int i = 0; i < indices.size(); i++) {
+                results.set(indices.get(i), partResults != null ? partResults.get(i) : rejected(response.getError()));
+            }
+        }
+        return results;
+    }
+
+    public Map<String, Object> cancelAllOrders(String username) {
+        List<Map<String, Object>> found = known(router.scatter("DELETE", "/orders?username=" + ShardRouter.encode(username)));
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "CANCELLED");
+        response.put("count", (long) sum(found, "count"));
+        response.put("books", mergeMaps(found, "books"));
+        return response;
+    }
+
+    // The kill switch and sessions are per engine, so they are applied on every engine
+    public Map<String, Object> disableTrading(String username) {
+        List<Map<String, Object>> all = bodies(requireAll(router.scatter("POST", "/kill?username=" + ShardRouter.encode(username))));
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "DISABLED");
+        response.put("count", (long) sum(all, "count"));
+        response.put("books", mergeMaps(all, "books"));
+        return response;
+    }
+
+    public Map<String, Object> enableTrading(String username) {
+        List<Map<String, Object>> all = bodies(requireAll(router.scatter("DELETE", "/kill?username=" + ShardRouter.encode(username))));
+        boolean wasDisabled = false;
+        for (Map<String, Object> body : all) {
+            wasDisabled |= Boolean.TRUE.equals(body.get("wasDisabled"));
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "ENABLED");
+        response.put("wasDisabled", wasDisabled);
+        return response;
+    }
+
+    public Map<String, Object> heartbeat(String username, Long timeoutMs) {
+        String query = "?username=" + ShardRouter.encode(username) + (timeoutMs != null ? "&timeoutMs=" + timeoutMs : "");
+        return requireAll(router.scatter("POST", "/session/heartbeat" + query)).get(0).asMap();
+    }
+
+    public Map<String, Object> disconnect(String username) {
+        List<Map<String, Object>> all = bodies(requireAll(router.scatter("DELETE", "/session?username=" + ShardRouter.encode(username))));
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "DISCONNECTED");
+        response.put("count", (long) sum(all, "count"));
+        return response;
+    }
+
+    // Operational reads and actions that make sense only per engine, keyed by shard URL
+    public Map<String, Object> perShard(String method, String path) {
+        Map<String, Object> shards = new LinkedHashMap<>();
+        for (ShardRouter.ShardResponse response : router.scatter(method, path)) {
+            shards.put(response.getShard(), response.isOk() ? response.asMap() : Map.of("error", response.getError()));
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("shards", shards);
+        return result;
+    }
+
+    private static List<Map<String, Object>> rank(List<ShardRouter.ShardResponse> responses) {
+        Map<String, Map<String, Object>> byUser = new HashMap<>();
+        for (ShardRouter.ShardResponse response : responses) {
+            for (Map<String, Object> entry : response.asList()) {
+                Map<String, Object> merged = byUser.computeIfAbsent((String) entry.get("username"), username -> {
+                    Map<String, Object> summary = new HashMap<>();
+                    summary.put("username", username);
+                    return summary;
+                });
+                for (String key : List.of("realizedProfit", "unrealizedProfit", "totalProfit")) {
+                    merged.merge(key, ((Number) entry.get(key)).doubleValue(), (a, b) -> (double) a + (double) b);
+                }
+                for (String key : List.of("positionCount", "activeOrderCount", "tradeCount")) {
+                    merged.merge(key, ((Number) entry.get(key)).longValue(), (a, b) -> (long) a + (long) b);
+                }
+            }
+        }
+        List<Map<String, Object>> ranking = new ArrayList<>(byUser.values());
+        ranking.sort(Comparator.comparingDouble((Map<String, Object> entry) -> (double) entry.get("realizedProfit")).reversed()
+            .thenComparing(entry -> (String) entry.get("username")));
+        for (int i = 0; i < ranking.size(); i++) {
+            ranking.get(i).put("rank", i + 1);
+        }
+        return ranking;
+    }
+
+    private static Map<String, Object> mergePages(String username, String key, List<Map<String, Object>> pages, int size,
+                                                  Comparator<Map<String, Object>> order,
+                                                  Function<Map<String, Object>, String> cursorOf) {
+        List<Map<String, Object>> merged = new ArrayList<>();
+        boolean more = false;
+        for (Map<String, Object> page : pages) {
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> items = (List<Map<String, Object>>) page.get(key);
+            merged.addAll(items);
+            more |= page.get("nextCursor") != null;
+        }
+        merged.sort(order);
+        more |= merged.size() > size;
+        List<Map<String, Object>> taken = new ArrayList<>(merged.subList(0, Math.min(size, merged.size())));
+        String next = more && !taken.isEmpty() ? cursorOf.apply(taken.get(taken.size() - 1)) : null;
+        return page(username, key, taken, next);
+    }
+
+    private static Map<String, Object> page(String username, String key, List<Map<String, Object>> items, String nextCursor) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("username", username);
+        result.put(key, items);
+        result.put("nextCursor", nextCursor);
+        return result;
+    }
+
+    private static String cursorParam(String cursor) {
+        return cursor == null || cursor.isEmpty() ? "" : "&cursor=" + ShardRouter.encode(cursor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> items(ShardRouter.ShardResponse page, String key) {
+        Object items = page.asMap().get(key);
+        return items instanceof List ? (List<Map<String, Object>>) items : List.of();
+    }
+
+    private static List<Map<String, Object>> concat(List<Map<String, Object>> bodies, String key,
+                                                    Comparator<Map<String, Object>> order) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Map<String, Object> body : bodies) {
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> items = (List<Map<String, Object>>) body.get(key);
+            result.addAll(items);
+        }
+        result.sort(order);
+        return result;
+    }
+
+    private static double sum(List<Map<String, Object>> bodies, String key) {
+        double total = 0;
+        for (Map<String, Object> body : bodies) {
+            Object value = body.get(key);
+            if (value instanceof Number) {
+                total += ((Number) value).doubleValue();
+            }
+        }
+        return total;
+    }
+
+    private static Map<String, Object> mergeMaps(List<Map<String, Object>> bodies, String key) {
+        Map<String, Object> result = new HashMap<>();
+        for (Map<String, Object> body : bodies) {
+            Object value = body.get(key);
+            if (value instanceof Map) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> map = (Map<String, Object>) value;
+                result.putAll(map);
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, Object> rejected(String error) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("status", "REJECTED");
+        result.put("error", error);
+        return result;
+    }
+
+    private static List<Map<String, Object>> bodies(List<ShardRouter.ShardResponse> responses) {
+        List<Map<String, Object>> result = new ArrayList<>(responses.size());
+        for (ShardRouter.ShardResponse response : responses) {
+            result.add(response.asMap());
+        }
+        return result;
+    }
+
+    // Bodies from the engines that know the user; a rejection everywhere is the caller's error
+    private static List<Map<String, Object>> known(List<ShardRouter.ShardResponse> responses) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (ShardRouter.ShardResponse response : responses) {
+            if (response.isOk()) {
+                result.add(response.asMap());
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException(responses.get(0).getError());
+        }
+        return result;
+    }
+
+    private Map<Integer, ShardRouter.ShardResponse> awaitKnown(Map<Integer, CompletableFuture<ShardRouter.ShardResponse>> pending,
+                                                               boolean requireOne) {
+        Map<Integer, ShardRouter.ShardResponse> result = new LinkedHashMap<>();
+        ShardRouter.ShardResponse rejection = null;
+        for (Map.Entry<Integer, CompletableFuture<ShardRouter.ShardResponse>> entry : pending.entrySet()) {
+            ShardRouter.ShardResponse response = router.join(router.getShards().get(entry.getKey()), entry.getValue());
+            if (response.isOk()) {
+                result.put(entry.getKey(), response);
+            } else if (rejection == null) {
+                rejection = response;
+            }
+        }
+        // Unknown users are only an error when no engine knows them; anything else is a bad request everywhere
+        if (rejection != null && (result.isEmpty() && requireOne || !rejection.getError().startsWith("User not found"))) {
+            throw new IllegalArgumentException(rejection.getError());
+        }
+        return result;
+    }
+
+    // Every engine must answer for views that are meant to be complete
+    private static List<ShardRouter.ShardResponse> requireAll(List<ShardRouter.ShardResponse> responses) {
+        for (ShardRouter.ShardResponse response : responses) {
+            if (!response.isOk()) {
+                throw new IllegalArgumentException(response.getError());
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * Responses gathered from every engine, with a version derived from their ETags, and the
+     * merge that turns them into the router's response; the merge only runs when the
+     * response cache has nothing for this version.
+     */
+    public static final class Gathered {
+        private final long version;
+        private final Supplier<Object> merge;
+
+        private Gathered(List<ShardRouter.ShardResponse> responses, Supplier<Object> merge) {
+            long hash = 1125899906842597L;
+            for (ShardRouter.ShardResponse response : responses) {
+                hash = 31 * hash + String.valueOf(response.getEtag()).hashCode();
+                hash = 31 * hash + response.getShard().hashCode();
+            }
+            this.version = hash;
+            this.merge = merge;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public Supplier<Object> getMerge() {
+            return merge;
+        }
+    }
+}
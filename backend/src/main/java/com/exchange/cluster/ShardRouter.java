@@ -0,0 +1,237 @@
+package com.exchange.cluster;
+
+import com.exchange.config.ExchangeProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The router's view of the shards: which engine owns each book, and HTTP calls to them.
+ *
+ * Book-scoped requests are forwarded to the owning engine as they are. Cross-shard reads are
+ * sent to every engine in parallel; repeated GETs carry the ETag of the last response from
+ * that engine, so an unchanged shard answers 304 and its previous body is reused.
+ */
+@Component
+@ConditionalOnProperty(name = "exchange.cluster.role", havingValue = "ROUTER")
+public class ShardRouter {
+    private static final int MAX_CACHED_RESPONSES = 1024;
+
+    private final List<String> shards = new ArrayList<>();
+    private final Map<String, String> owners = new LinkedHashMap<>();
+    private final Duration timeout;
+    private final HttpClient client;
+    private final ObjectMapper objectMapper;
+    private final Map<String, ShardResponse> lastResponses = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ShardRouter(ExchangeProperties properties, ObjectMapper objectMapper) {
+        ExchangeProperties.Cluster cluster = properties.getCluster();
+        if (cluster.getShards().isEmpty()) {
+            throw new IllegalStateException("A router needs at least one shard in exchange.cluster.shards");
+        }
+        for (ExchangeProperties.Shard shard : cluster.getShards()) {
+            String url = shard.getUrl().endsWith("/") ? shard.getUrl().substring(0, shard.getUrl().length() - 1) : shard.getUrl();
+            shards.add(url);
+            for (String book : shard.getBooks()) {
+                String previous = owners.put(book, url);
+                if (previous != null) {
+                    throw new IllegalStateException("Book " + book + " is assigned to both " + previous + " and " + url);
+                }
+            }
+        }
+        this.timeout = Duration.ofMillis(cluster.getRequestTimeoutMs());
+        this.client = HttpClient.newBuilder().connectTimeout(timeout).build();
+        this.objectMapper = objectMapper;
+    }
+
+    public List<String> getShards() {
+        return Collections.unmodifiableList(shards);
+    }
+
+    public List<String> getBooks() {
+        return new ArrayList<>(owners.keySet());
+    }
+
+    public String shardFor(String book) {
+        String shard = owners.get(book);
+        if (shard == null) {
+            throw new IllegalArgumentException("Invalid orderbook: " + book);
+        }
+        return shard;
+    }
+
+    // Pass a request through to one engine and hand back its status, body and caching headers unchanged
+    public ResponseEntity<byte[]> forward(String shard, String method, String path, String query, byte[] body,
+                                          String ifNoneMatch) {
+        HttpRequest.Builder request = request(shard, path + (query != null ? "?" + query : ""), method, body);
+        if (ifNoneMatch != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        HttpResponse<byte[]> response = join(shard, client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray()));
+
+        ResponseEntity.BodyBuilder result = ResponseEntity.status(response.statusCode());
+        for (String header : List.of(HttpHeaders.CONTENT_TYPE, HttpHeaders.ETAG, HttpHeaders.CACHE_CONTROL)) {
+            response.headers().firstValue(header).ifPresent(value -> result.header(header, value));
+        }
+        return response.statusCode() == HttpStatus.NOT_MODIFIED.value() ? result.build() : result.body(response.body());
+    }
+
+    // One JSON call to one engine
+    public ShardResponse call(String shard, String method, String pathAndQuery, Object body) {
+        return join(shard, send(shard, method, pathAndQuery, body));
+    }
+
+    // The same call to every engine in parallel, in shard order; GETs are conditional on the last response seen
+    public List<ShardResponse> scatter(String method, String pathAndQuery) {
+        Map<String, CompletableFuture<ShardResponse>> pending = new LinkedHashMap<>();
+        for (String shard : shards) {
+            pending.put(shard, send(shard, method, pathAndQuery, null));
+        }
+        List<ShardResponse> result = new ArrayList<>(shards.size());
+        for (Map.Entry<String, CompletableFuture<ShardResponse>> entry : pending.entrySet()) {
+            result.add(join(entry.getKey(), entry.getValue()));
+        }
+        return result;
+    }
+
+    public CompletableFuture<ShardResponse> send(String shard, String method, String pathAndQuery, Object body) {
+        byte[] bytes = body == null ? null : serialize(body);
+        HttpRequest.Builder request = request(shard, pathAndQuery, method, bytes);
+        String cacheKey = shard + pathAndQuery;
+        ShardResponse previous = "GET".equals(method) ? lastResponses.get(cacheKey) : null;
+        if (previous != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, previous.etag);
+        }
+        return client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray()).thenApply(response -> {
+            if (response.statusCode() == HttpStatus.NOT_MODIFIED.value() && previous != null) {
+                return previous;
+            }
+            ShardResponse parsed = new ShardResponse(shard, response.statusCode(), parse(response.body()),
+                response.headers().firstValue(HttpHeaders.ETAG).orElse(null));
+            if ("GET".equals(method) && parsed.etag != null && parsed.isOk()) {
+                if (lastResponses.size() >= MAX_CACHED_RESPONSES) {
+                    lastResponses.clear();
+                }
+                lastResponses.put(cacheKey, parsed);
+            }
+            return parsed;
+        });
+    }
+
+    public static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    private HttpRequest.Builder request(String shard, String pathAndQuery, String method, byte[] body) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(shard + pathAndQuery)).timeout(timeout);
+        if (body != null) {
+            request.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+            return request.method(method, HttpRequest.BodyPublishers.ofByteArray(body));
+        }
+        return request.method(method, HttpRequest.BodyPublishers.noBody());
+    }
+
+    // Wait for a call started with send, within the request timeout
+    public <T> T join(String shard, CompletableFuture<T> future) {
+        try {
+            return future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ShardUnavailableException(shard, e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new ShardUnavailableException(shard, e);
+        }
+    }
+
+    private byte[] serialize(Object body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize request", e);
+        }
+    }
+
+    private Object parse(byte[] body) {
+        if (body == null || body.length == 0) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(body, Object.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Invalid response from shard", e);
+        }
+    }
+
+    public static final class ShardResponse {
+        private final String shard;
+        private final int status;
+        private final Object body;
+        private final String etag;
+
+        private ShardResponse(String shard, int status, Object body, String etag) {
+            this.shard = shard;
+            this.status = status;
+            this.body = body;
+            this.etag = etag;
+        }
+
+        public String getShard() {
+            return shard;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public boolean isOk() {
+            return status == HttpStatus.OK.value();
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Map<String, Object> asMap() {
+            return body instanceof Map ? (Map<String, Object>) body : Map.of();
+        }
+
+        @SuppressWarnings("unchecked")
+        public List<Map<String, Object>> asList() {
+            return body instanceof List ? (List<Map<String, Object>>) body : List.of();
+        }
+
+        // The engine's error message for a rejected request
+        public String getError() {
+            Object error = asMap().get("error");
+            return error != null ? error.toString() : "Shard " + shard + " returned " + status;
+        }
+    }
+}
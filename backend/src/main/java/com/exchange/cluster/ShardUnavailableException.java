@@ -0,0 +1,10 @@
+package com.exchange.cluster;
+
+// An engine could not be reached or did not answer within the request timeout
+public class ShardUnavailableException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ShardUnavailableException(String shard, Throwable cause) {
+        super("Shard unavailable: " + shard, cause);
+    }
+}
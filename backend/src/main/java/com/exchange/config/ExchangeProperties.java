@@ -0,0 +1,623 @@
+package com.exchange.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "exchange")
+public class ExchangeProperties {
+    private final Matching matching = new Matching();
+    private final Book book = new Book();
+    private final Session session = new Session();
+    private final Journal journal = new Journal();
+    private final Snapshot snapshot = new Snapshot();
+    private final MarketData marketData = new MarketData();
+    private final Gateway gateway = new Gateway();
+    private final Metrics metrics = new Metrics();
+    private final Retention retention = new Retention();
+    private final Candles candles = new Candles();
+    private final Cluster cluster = new Cluster();
+    private final Replication replication = new Replication();
+
+    public Matching getMatching() {
+        return matching;
+    }
+
+    public Book getBook() {
+        return book;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public MarketData getMarketData() {
+        return marketData;
+    }
+
+    public Gateway getGateway() {
+        return gateway;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public Retention getRetention() {
+        return retention;
+    }
+
+    public Candles getCandles() {
+        return candles;
+    }
+
+    public Cluster getCluster() {
+        return cluster;
+    }
+
+    public Replication getReplication() {
+        return replication;
+    }
+
+    public static class Matching {
+        // SEQUENCED gives every book one owning thread from a fixed pool; DIRECT matches on the caller thread under a per-book lock
+        private MatchingMode mode = MatchingMode.SEQUENCED;
+        private int ringSize = 1024;
+        // Size of the matching pool; 0 means one thread per available processor
+        private int threads = 0;
+
+        public MatchingMode getMode() {
+            return mode;
+        }
+
+        public void setMode(MatchingMode mode) {
+            this.mode = mode;
+        }
+
+        public int getRingSize() {
+            return ringSize;
+        }
+
+        public void setRingSize(int ringSize) {
+            this.ringSize = ringSize;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+    }
+
+    public static class Book {
+        // TICK_LADDER stores levels in an array indexed by tick; TREE_MAP keeps them in a sorted map
+        private BookType type = BookType.TREE_MAP;
+        // Order prices must be multiples of the tick size and quantities of the lot size
+        private BigDecimal tickSize = new BigDecimal("0.01");
+        private int lotSize = 1;
+        // Per-book overrides of the two, e.g. exchange.book.tick-sizes.NVDA=0.05
+        private Map<String, BigDecimal> tickSizes = new HashMap<>();
+        private Map<String, Integer> lotSizes = new HashMap<>();
+        private int ladderSize = 4096;
+        // A side's ladder grows to at most this many ticks; prices further out rest in a sparse overflow
+        private int ladderMaxSize = 16384;
+        // Upper bound on listed books, so a runaway client cannot list symbols without limit
+        private int maxBooks = 10000;
+        // Books whose orders have not changed for this long release their spare memory; 0 never compacts
+        private long idleCompactSeconds = 60;
+
+        public BookType getType() {
+            return type;
+        }
+
+        public void setType(BookType type) {
+            this.type = type;
+        }
+
+        public BigDecimal getTickSize() {
+            return tickSize;
+        }
+
+        public void setTickSize(BigDecimal tickSize) {
+            this.tickSize = tickSize;
+        }
+
+        public int getLotSize() {
+            return lotSize;
+        }
+
+        public void setLotSize(int lotSize) {
+            this.lotSize = lotSize;
+        }
+
+        public Map<String, BigDecimal> getTickSizes() {
+            return tickSizes;
+        }
+
+        public void setTickSizes(Map<String, BigDecimal> tickSizes) {
+            this.tickSizes = tickSizes;
+        }
+
+        public Map<String, Integer> getLotSizes() {
+            return lotSizes;
+        }
+
+        public void setLotSizes(Map<String, Integer> lotSizes) {
+            this.lotSizes = lotSizes;
+        }
+
+        public int getLadderSize() {
+            return ladderSize;
+        }
+
+        public void setLadderSize(int ladderSize) {
+            this.ladderSize = ladderSize;
+        }
+
+        public int getLadderMaxSize() {
+            return ladderMaxSize;
+        }
+
+        public void setLadderMaxSize(int ladderMaxSize) {
+            this.ladderMaxSize = ladderMaxSize;
+        }
+
+        public int getMaxBooks() {
+            return maxBooks;
+        }
+
+        public void setMaxBooks(int maxBooks) {
+            this.maxBooks = maxBooks;
+        }
+
+        public long getIdleCompactSeconds() {
+            return idleCompactSeconds;
+        }
+
+        public void setIdleCompactSeconds(long idleCompactSeconds) {
+            this.idleCompactSeconds = idleCompactSeconds;
+        }
+    }
+
+    public static class Session {
+        // Orders are cancelled when a session goes this long without a heartbeat
+        private long defaultTimeoutMs = 5000;
+        private long checkIntervalMs = 250;
+
+        public long getDefaultTimeoutMs() {
+            return defaultTimeoutMs;
+        }
+
+        public void setDefaultTimeoutMs(long defaultTimeoutMs) {
+            this.defaultTimeoutMs = defaultTimeoutMs;
+        }
+
+        public long getCheckIntervalMs() {
+            return checkIntervalMs;
+        }
+
+        public void setCheckIntervalMs(long checkIntervalMs) {
+            this.checkIntervalMs = checkIntervalMs;
+        }
+    }
+
+    public static class Journal {
+        private boolean enabled = false;
+        private String directory = "data/journal";
+        private int segmentSize = 64 * 1024 * 1024;
+        // fsync on every group commit; when false, records only reach the OS page cache before the reply
+        private boolean fsync = true;
+        // How long the flusher waits for more appends before forcing a batch to disk
+        private long groupCommitWindowMicros = 100;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public int getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public boolean isFsync() {
+            return fsync;
+        }
+
+        public void setFsync(boolean fsync) {
+            this.fsync = fsync;
+        }
+
+        public long getGroupCommitWindowMicros() {
+            return groupCommitWindowMicros;
+        }
+
+        public void setGroupCommitWindowMicros(long groupCommitWindowMicros) {
+            this.groupCommitWindowMicros = groupCommitWindowMicros;
+        }
+    }
+
+    public static class Snapshot {
+        private boolean enabled = false;
+        private String directory = "data/snapshots";
+        // 0 disables periodic snapshots; one is still written on shutdown
+        private long intervalSeconds = 60;
+        private int retain = 2;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public long getIntervalSeconds() {
+            return intervalSeconds;
+        }
+
+        public void setIntervalSeconds(long intervalSeconds) {
+            this.intervalSeconds = intervalSeconds;
+        }
+
+        public int getRetain() {
+            return retain;
+        }
+
+        public void setRetain(int retain) {
+            this.retain = retain;
+        }
+    }
+
+    public static class MarketData {
+        // Threads writing conflated updates out to streaming clients
+        private int deliveryThreads = 2;
+        // Trade prints kept per book for a client that falls behind; older ones are dropped
+        private int maxPendingTrades = 1000;
+
+        public int getDeliveryThreads() {
+            return deliveryThreads;
+        }
+
+        public void setDeliveryThreads(int deliveryThreads) {
+            this.deliveryThreads = deliveryThreads;
+        }
+
+        public int getMaxPendingTrades() {
+            return maxPendingTrades;
+        }
+
+        public void setMaxPendingTrades(int maxPendingTrades) {
+            this.maxPendingTrades = maxPendingTrades;
+        }
+    }
+
+    public static class Gateway {
+        private boolean enabled = false;
+        private String host = "0.0.0.0";
+        // 0 picks a free port
+        private int port = 9100;
+        // Per-connection read and write buffer; a client that lets its reports pile up past this is dropped
+        private int bufferSize = 64 * 1024;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public void setHost(String host) {
+            this.host = host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public void setPort(int port) {
+            this.port = port;
+        }
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public void setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+    }
+
+    public static class Metrics {
+        // Log one trade in this many (1 logs every trade); logging happens off the matching threads
+        private int tradeLogSampleEvery = 10;
+        // Trades waiting for the log writer before further ones are dropped
+        private int tradeLogQueueSize = 8192;
+
+        public int getTradeLogSampleEvery() {
+            return tradeLogSampleEvery;
+        }
+
+        public void setTradeLogSampleEvery(int tradeLogSampleEvery) {
+            this.tradeLogSampleEvery = tradeLogSampleEvery;
+        }
+
+        public int getTradeLogQueueSize() {
+            return tradeLogQueueSize;
+        }
+
+        public void setTradeLogQueueSize(int tradeLogQueueSize) {
+            this.tradeLogQueueSize = tradeLogQueueSize;
+        }
+    }
+
+    public static class Retention {
+        // Filled and cancelled orders stay in the live map this long before they are evicted
+        private long orderRetentionSeconds = 60;
+        // 0 disables the background sweep
+        private long sweepIntervalMs = 1000;
+        // Most recent trades kept in memory across all books
+        private int recentTrades = 10000;
+        // Most recent trades kept in memory per user; older ones move to the archive
+        private int userTrades = 1000;
+        // Without the archive nothing can be spilled, so closed orders and user trade histories stay in memory
+        private boolean archiveEnabled = false;
+        private String archiveDirectory = "data/archive";
+        private int archiveSegmentSize = 64 * 1024 * 1024;
+        // Segments kept per kind (orders, trades, user trades); the oldest is deleted past this. 0 keeps all
+        private int archiveMaxSegments = 16;
+
+        public long getOrderRetentionSeconds() {
+            return orderRetentionSeconds;
+        }
+
+        public void setOrderRetentionSeconds(long orderRetentionSeconds) {
+            this.orderRetentionSeconds = orderRetentionSeconds;
+        }
+
+        public long getSweepIntervalMs() {
+            return sweepIntervalMs;
+        }
+
+        public void setSweepIntervalMs(long sweepIntervalMs) {
+            this.sweepIntervalMs = sweepIntervalMs;
+        }
+
+        public int getRecentTrades() {
+            return recentTrades;
+        }
+
+        public void setRecentTrades(int recentTrades) {
+            this.recentTrades = recentTrades;
+        }
+
+        public int getUserTrades() {
+            return userTrades;
+        }
+
+        public void setUserTrades(int userTrades) {
+            this.userTrades = userTrades;
+        }
+
+        public boolean isArchiveEnabled() {
+            return archiveEnabled;
+        }
+
+        public void setArchiveEnabled(boolean archiveEnabled) {
+            this.archiveEnabled = archiveEnabled;
+        }
+
+        public String getArchiveDirectory() {
+            return archiveDirectory;
+        }
+
+        public void setArchiveDirectory(String archiveDirectory) {
+            this.archiveDirectory = archiveDirectory;
+        }
+
+        public int getArchiveSegmentSize() {
+            return archiveSegmentSize;
+        }
+
+        public void setArchiveSegmentSize(int archiveSegmentSize) {
+            this.archiveSegmentSize = archiveSegmentSize;
+        }
+
+        public int getArchiveMaxSegments() {
+            return archiveMaxSegments;
+        }
+
+        public void setArchiveMaxSegments(int archiveMaxSegments) {
+            this.archiveMaxSegments = archiveMaxSegments;
+        }
+    }
+
+    public static class Candles {
+        // Bars kept per book and resolution; the oldest bar is dropped when a new interval trades
+        private int barsPerResolution = 1440;
+
+        public int getBarsPerResolution() {
+            return barsPerResolution;
+        }
+
+        public void setBarsPerResolution(int barsPerResolution) {
+            this.barsPerResolution = barsPerResolution;
+        }
+    }
+
+    public static class Cluster {
+        // ENGINE lists the books below at startup (more can be listed at runtime); ROUTER hosts none and forwards to the shards
+        private ClusterRole role = ClusterRole.ENGINE;
+        private List<String> books = new ArrayList<>(List.of("AAPL", "AMZN", "NVDA", "MSFT"));
+        // Router only: the engine nodes and the books each one hosts
+        private List<Shard> shards = new ArrayList<>();
+        private long requestTimeoutMs = 5000;
+
+        public ClusterRole getRole() {
+            return role;
+        }
+
+        public void setRole(ClusterRole role) {
+            this.role = role;
+        }
+
+        public List<String> getBooks() {
+            return books;
+        }
+
+        public void setBooks(List<String> books) {
+            this.books = books;
+        }
+
+        public List<Shard> getShards() {
+            return shards;
+        }
+
+        public void setShards(List<Shard> shards) {
+            this.shards = shards;
+        }
+
+        public long getRequestTimeoutMs() {
+            return requestTimeoutMs;
+        }
+
+        public void setRequestTimeoutMs(long requestTimeoutMs) {
+            this.requestTimeoutMs = requestTimeoutMs;
+        }
+    }
+
+    public static class Shard {
+        // Base URL of the engine's API, e.g. http://localhost:8081/api/exchange
+        private String url;
+        private List<String> books = new ArrayList<>();
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public List<String> getBooks() {
+            return books;
+        }
+
+        public void setBooks(List<String> books) {
+            this.books = books;
+        }
+    }
+
+    public static class Replication {
+        // Accept followers on host:port (on a follower, once it is promoted); 0 picks a free port
+        private boolean enabled = false;
+        private String host = "0.0.0.0";
+        private int port = 9200;
+        // host:port of the primary to follow; when set this node starts as a read-only follower
+        private String primary = "";
+        // Records kept in memory for followers that fall behind; older gaps are filled from the journal or a snapshot
+        private int backlog = 65536;
+        private long heartbeatIntervalMs = 1000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public void setHost(String host) {
+            this.host = host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public void setPort(int port) {
+            this.port = port;
+        }
+
+        public String getPrimary() {
+            return primary;
+        }
+
+        public void setPrimary(String primary) {
+            this.primary = primary;
+        }
+
+        public int getBacklog() {
+            return backlog;
+        }
+
+        public void setBacklog(int backlog) {
+            this.backlog = backlog;
+        }
+
+        public long getHeartbeatIntervalMs() {
+            return heartbeatIntervalMs;
+        }
+
+        public void setHeartbeatIntervalMs(long heartbeatIntervalMs) {
+            this.heartbeatIntervalMs = heartbeatIntervalMs;
+        }
+    }
+
+    public enum ClusterRole {
+        ENGINE, ROUTER
+    }
+
+    public enum MatchingMode {
+        SEQUENCED, DIRECT
+    }
+
+    public enum BookType {
+        TREE_MAP, TICK_LADDER
+    }
+}
@@ -1,81 +1,246 @@
 package com.exchange.controller;
 
+import com.exchange.model.OrderInstruction;
 import com.exchange.service.ExchangeService;
+import com.exchange.service.SessionMonitor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/api/exchange")
 @CrossOrigin(origins = "*") // Allow calls from React frontend
+@ConditionalOnProperty(name = "exchange.cluster.role", havingValue = "ENGINE", matchIfMissing = true)
 public class ExchangeController {
     
     private final ExchangeService exchangeService;
+    private final SessionMonitor sessionMonitor;
+    private final VersionedResponseCache responses;
     
     @Autowired
-    public ExchangeController(ExchangeService exchangeService) {
+    public ExchangeController(ExchangeService exchangeService, SessionMonitor sessionMonitor, 
+                              VersionedResponseCache responses) {
         this.exchangeService = exchangeService;
+        this.sessionMonitor = sessionMonitor;
+        this.responses = responses;
     }
     
+    // Order entry hands the command to the book's writer and returns; the response goes out when the engine completes it
     @PostMapping("/order")
-    public ResponseEntity<Map<String, Object>> placeOrder(
+    public CompletableFuture<ResponseEntity<?>> placeOrder(
             @RequestParam String book,
             @RequestParam String type, // buy or sell
-            @RequestParam double price,
+            @RequestParam BigDecimal price, // parsed exactly, so a price off the tick grid is refused rather than rounded
             @RequestParam double quantity,
             @RequestParam String username) {
         
-        try {
-            Map<String, Object> result = exchangeService.placeOrder(book, type, price, quantity, username);
-            return ResponseEntity.ok(result);
-        } catch (IllegalArgumentException e) {
-            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
-        }
+        return respond(exchangeService.placeOrderAsync(book, type, price, quantity, username));
+    }
+    
+    // Bulk order entry: a JSON array of place/cancel/amend/replace instructions, results in the same order
+    @PostMapping("/orders")
+    public CompletableFuture<ResponseEntity<?>> executeBatch(
+            @RequestParam String username,
+            @RequestBody List<OrderInstruction> instructions) {
+        
+        return respond(exchangeService.executeBatchAsync(username, instructions).thenApply(results -> Map.of("results", results)));
     }
     
     @DeleteMapping("/order")
-    public ResponseEntity<Map<String, String>> cancelOrder(
+    public CompletableFuture<ResponseEntity<?>> cancelOrder(
+            @RequestParam String book,
+            @RequestParam String orderId,
+            @RequestParam String username) {
+        
+        return respond(exchangeService.cancelOrderAsync(book, orderId, username));
+    }
+    
+    @PutMapping("/order")
+    public CompletableFuture<ResponseEntity<?>> amendOrder(
             @RequestParam String book,
             @RequestParam String orderId,
+            @RequestParam double quantity,
             @RequestParam String username) {
         
+        return respond(exchangeService.amendOrderAsync(book, orderId, quantity, username));
+    }
+    
+    @DeleteMapping("/orders")
+    public CompletableFuture<ResponseEntity<?>> cancelAllOrders(
+            @RequestParam(required = false) String book, // omit to cancel across every book
+            @RequestParam String username) {
+        
+        return respond(book != null ? 
+            exchangeService.cancelAllOrdersAsync(book, username) : 
+            exchangeService.cancelAllOrdersAsync(username));
+    }
+    
+    @PostMapping("/kill")
+    public CompletableFuture<ResponseEntity<?>> disableTrading(@RequestParam String username) {
+        return respond(exchangeService.disableTradingAsync(username));
+    }
+    
+    @DeleteMapping("/kill")
+    public ResponseEntity<Map<String, Object>> enableTrading(@RequestParam String username) {
         try {
-            Map<String, String> result = exchangeService.cancelOrder(book, orderId, username);
-            return ResponseEntity.ok(result);
+            return ResponseEntity.ok(exchangeService.enableTrading(username));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
     
-    @DeleteMapping("/orders")
-    public ResponseEntity<Map<String, Object>> cancelAllOrders(
-            @RequestParam String book,
-            @RequestParam String username) {
+    @PostMapping("/session/heartbeat")
+    public ResponseEntity<Map<String, Object>> heartbeat(
+            @RequestParam String username,
+            @RequestParam(required = false) Long timeoutMs) {
         
         try {
-            Map<String, Object> result = exchangeService.cancelAllOrders(book, username);
-            return ResponseEntity.ok(result);
+            return ResponseEntity.ok(sessionMonitor.heartbeat(username, timeoutMs));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
     
+    @DeleteMapping("/session")
+    public ResponseEntity<Map<String, Object>> disconnect(@RequestParam String username) {
+        return ResponseEntity.ok(sessionMonitor.disconnect(username));
+    }
+    
+    // Book and leaderboard reads carry an ETag; a poll with a current If-None-Match gets 304 without touching the book
+    // A miss waits for the book's writer without holding a request thread; concurrent misses share one build
     @GetMapping("/book/{name}")
-    public ResponseEntity<Map<String, List<List<Double>>>> getOrderBook(@PathVariable String name) {
+    public CompletableFuture<ResponseEntity<byte[]>> getOrderBook(
+            @PathVariable String name,
+            @RequestParam(required = false) Integer depth, // omit for the full book
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        
         try {
-            Map<String, List<List<Double>>> result = exchangeService.getOrderBook(name);
-            return ResponseEntity.ok(result);
+            int levels = depth != null ? depth : Integer.MAX_VALUE;
+            return withoutBody(responses.respondAsync("book:" + name + ":" + levels, exchangeService.getBookVersion(name),
+                ifNoneMatch, () -> exchangeService.getOrderBookAsync(name, levels)));
         } catch (IllegalArgumentException e) {
-            return ResponseEntity.badRequest().body(null);
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(null));
         }
     }
     
+    // One page of books in name order; pass the last name of a page as `after` for the next one
     @GetMapping("/books")
-    public ResponseEntity<Map<String, Map<String, List<List<Double>>>>> getAllOrderBooks() {
-        return ResponseEntity.ok(exchangeService.getAllOrderBooks());
+    public CompletableFuture<ResponseEntity<byte[]>> getAllOrderBooks(
+            @RequestParam(required = false) Integer depth,
+            @RequestParam(required = false) List<String> symbols, // e.g. AAPL,MSFT; omit for every book
+            @RequestParam(required = false) String prefix,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit, // 100 by default, at most 1000
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        
+        try {
+            int levels = depth != null ? depth : Integer.MAX_VALUE;
+            // Read first: listing or delisting a book also moves it, so the page is never older than its tag
+            long version = exchangeService.getBooksVersion();
+            List<String> books = exchangeService.selectBooks(symbols, prefix, after, limit);
+            String key = "books:" + levels + ":" + symbols + ":" + prefix + ":" + after + ":" + limit;
+            return withoutBody(responses.respondAsync(key, version, ifNoneMatch,
+                () -> exchangeService.getOrderBooksAsync(books, levels)));
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(null));
+        }
+    }
+    
+    @GetMapping("/admin/books")
+    public ResponseEntity<Map<String, Object>> getListings(
+            @RequestParam(required = false) String prefix,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            return ResponseEntity.ok(Map.of("books", exchangeService.getListings(prefix, after, limit)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+    
+    @PostMapping("/admin/books/{name}")
+    public ResponseEntity<Map<String, Object>> listOrderBook(
+            @PathVariable String name,
+            @RequestParam(required = false) BigDecimal tickSize, // e.g. 0.05; the configured tick size when omitted
+            @RequestParam(required = false) Integer lotSize) {
+        try {
+            return ResponseEntity.ok(exchangeService.listOrderBook(name, tickSize, lotSize));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+    
+    @PostMapping("/admin/books/{name}/halt")
+    public ResponseEntity<Map<String, Object>> haltOrderBook(@PathVariable String name) {
+        try {
+            return ResponseEntity.ok(exchangeService.haltOrderBook(name));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+    
+    @PostMapping("/admin/books/{name}/resume")
+    public ResponseEntity<Map<String, Object>> resumeOrderBook(@PathVariable String name) {
+        try {
+            return ResponseEntity.ok(exchangeService.resumeOrderBook(name));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+    
+    // Cancels everything resting in the book
+    @DeleteMapping("/admin/books/{name}")
+    public ResponseEntity<Map<String, Object>> delistOrderBook(@PathVariable String name) {
+        try {
+            return ResponseEntity.ok(exchangeService.delistOrderBook(name));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+    
+    @GetMapping("/order/{orderId}")
+    public ResponseEntity<Map<String, Object>> getOrder(@PathVariable String orderId) {
+        try {
+            return ResponseEntity.ok(exchangeService.getOrder(orderId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+    
+    @GetMapping("/trades/{symbol}")
+    public ResponseEntity<List<Map<String, Object>>> getTrades(
+            @PathVariable String symbol,
+            @RequestParam(required = false) Long from, // epoch millis, inclusive
+            @RequestParam(required = false) Long to,
+            @RequestParam(required = false) Integer limit) {
+        
+        try {
+            return ResponseEntity.ok(exchangeService.getTrades(symbol, from, to, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
+    }
+    
+    @GetMapping("/candles/{symbol}")
+    public ResponseEntity<Map<String, Object>> getCandles(
+            @PathVariable String symbol,
+            @RequestParam(required = false) String res, // 1s, 1m (default), 5m or 1h
+            @RequestParam(required = false) Long from, // epoch millis, inclusive
+            @RequestParam(required = false) Long to,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            return ResponseEntity.ok(exchangeService.getCandles(symbol, res, from, to, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
     
     @GetMapping("/user/{username}")
@@ -88,9 +253,129 @@ public class ExchangeController {
         }
     }
     
+    @GetMapping("/user/{username}/trades")
+    public ResponseEntity<Map<String, Object>> getUserTrades(
+            @PathVariable String username,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) Long from, // epoch millis, inclusive
+            @RequestParam(required = false) Long to) {
+        try {
+            return ResponseEntity.ok(exchangeService.getUserTrades(username, cursor, limit, from, to));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+    
+    @GetMapping("/user/{username}/orders")
+    public ResponseEntity<Map<String, Object>> getUserOrders(
+            @PathVariable String username,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) Long from,
+            @RequestParam(required = false) Long to) {
+        try {
+            return ResponseEntity.ok(exchangeService.getUserOrders(username, cursor, limit, from, to));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+    
+    @GetMapping("/user/{username}/positions")
+    public ResponseEntity<Map<String, Object>> getUserPositions(
+            @PathVariable String username,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            return ResponseEntity.ok(exchangeService.getUserPositions(username, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+    
+    @PostMapping("/snapshot")
+    public ResponseEntity<Map<String, Object>> takeSnapshot() {
+        try {
+            return ResponseEntity.ok(exchangeService.takeSnapshot());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+    
+    @GetMapping("/metrics")
+    public ResponseEntity<Map<String, Object>> getMetrics() {
+        return ResponseEntity.ok(exchangeService.getMetrics());
+    }
+    
+    @GetMapping("/recovery")
+    public ResponseEntity<Map<String, Object>> getRecoveryStats() {
+        return ResponseEntity.ok(exchangeService.getRecoveryStats());
+    }
+    
+    @GetMapping("/replication")
+    public ResponseEntity<Map<String, Object>> getReplicationStatus() {
+        return ResponseEntity.ok(exchangeService.getReplicationStatus());
+    }
+    
+    // Make a follower writable, e.g. after its primary has failed
+    @PostMapping("/replication/promote")
+    public ResponseEntity<Map<String, Object>> promote() {
+        try {
+            return ResponseEntity.ok(exchangeService.promote());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+    
     @GetMapping("/leaderboard")
-    public ResponseEntity<List<Map<String, Object>>> getLeaderboard() {
-        List<Map<String, Object>> leaderboard = exchangeService.getLeaderboard();
-        return ResponseEntity.ok(leaderboard);
+    public ResponseEntity<byte[]> getLeaderboard(
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(required = false) Integer limit, // omit for every user
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        
+        try {
+            int size = limit != null ? limit : Integer.MAX_VALUE;
+            return responses.respond("leaderboard:" + offset + ":" + size, exchangeService.getLeaderboardVersion(),
+                ifNoneMatch, () -> exchangeService.getLeaderboard(offset, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
+    }
+    
+    @GetMapping("/leaderboard/{username}")
+    public ResponseEntity<Map<String, Object>> getLeaderboardRank(@PathVariable String username) {
+        try {
+            return ResponseEntity.ok(exchangeService.getLeaderboardRank(username));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+    
+    // A rejection from validation or from the book's writer becomes a 400 with the reason
+    private static CompletableFuture<ResponseEntity<?>> respond(CompletableFuture<?> result) {
+        return result.<ResponseEntity<?>>handle((body, failure) -> {
+            if (failure == null) {
+                return ResponseEntity.ok(body);
+            }
+            Throwable cause = unwrap(failure);
+            if (cause instanceof IllegalArgumentException) {
+                return ResponseEntity.badRequest().body(Map.of("error", cause.getMessage()));
+            }
+            throw new CompletionException(cause);
+        });
+    }
+    
+    // Book reads answer a rejection with an empty 400
+    private static CompletableFuture<ResponseEntity<byte[]>> withoutBody(CompletableFuture<ResponseEntity<byte[]>> result) {
+        return result.exceptionally(failure -> {
+            if (unwrap(failure) instanceof IllegalArgumentException) {
+                return ResponseEntity.badRequest().body(null);
+            }
+            throw new CompletionException(unwrap(failure));
+        });
+    }
+    
+    private static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
     }
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package com.exchange.controller;
+
+import com.exchange.marketdata.MarketDataSubscription;
+import com.exchange.service.ExchangeService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/exchange")
+@CrossOrigin(origins = "*")
+public class MarketDataController {
+    
+    private final ExchangeService exchangeService;
+    
+    @Autowired
+    public MarketDataController(ExchangeService exchangeService) {
+        this.exchangeService = exchangeService;
+    }
+    
+    // Server-sent events: a "snapshot" per book, then "depth" deltas and "trade" prints as they happen
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> stream(@RequestParam(required = false) List<String> books) {
+        SseEmitter emitter = new SseEmitter(0L); // never time out; the client closes the stream
+        try {
+            MarketDataSubscription subscription = exchangeService.subscribeMarketData(books,
+                (event, payload) -> emitter.send(SseEmitter.event().name(event).data(payload, MediaType.APPLICATION_JSON)),
+                emitter::complete);
+            emitter.onCompletion(subscription::close);
+            emitter.onTimeout(subscription::close);
+            emitter.onError(error -> subscription.close());
+            return ResponseEntity.ok(emitter);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON).body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.exchange.controller;
+
+import com.exchange.cluster.ClusterExchange;
+import com.exchange.cluster.ShardRouter;
+import com.exchange.cluster.ShardUnavailableException;
+import com.exchange.model.OrderInstruction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The exchange API of a router node. Requests that name a book are passed to the engine that
+ * owns it untouched; everything else is answered from all engines through ClusterExchange.
+ */
+@RestController
+@RequestMapping("/api/exchange")
+@CrossOrigin(origins = "*") // Allow calls from React frontend
+@ConditionalOnProperty(name = "exchange.cluster.role", havingValue = "ROUTER")
+public class ShardRouterController {
+
+    private final ShardRouter router;
+    private final ClusterExchange cluster;
+    private final VersionedResponseCache responses;
+
+    @Autowired
+    public ShardRouterController(ShardRouter router, ClusterExchange cluster, VersionedResponseCache responses) {
+        this.router = router;
+        this.cluster = cluster;
+        this.responses = responses;
+    }
+
+    @ExceptionHandler(ShardUnavailableException.class)
+    public ResponseEntity<Map<String, Object>> shardUnavailable(ShardUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(Map.of("error", e.getMessage()));
+    }
+
+    @PostMapping("/order")
+    public ResponseEntity<?> placeOrder(@RequestParam String book, HttpServletRequest request) {
+        return forward(book, request, null);
+    }
+
+    @PostMapping("/orders")
+    public ResponseEntity<Map<String, Object>> executeBatch(
+            @RequestParam String username,
+            @RequestBody List<OrderInstruction> instructions) {
+
+        try {
+            return ResponseEntity.ok(Map.of("results", cluster.executeBatch(username, instructions)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/order")
+    public ResponseEntity<?> cancelOrder(@RequestParam String book, HttpServletRequest request) {
+        return forward(book, request, null);
+    }
+
+    @PutMapping("/order")
+    public ResponseEntity<?> amendOrder(@RequestParam String book, HttpServletRequest request) {
+        return forward(book, request, null);
+    }
+
+    @DeleteMapping("/orders")
+    public ResponseEntity<?> cancelAllOrders(
+            @RequestParam(required = false) String book,
+            @RequestParam String username,
+            HttpServletRequest request) {
+
+        if (book != null) {
+            return forward(book, request, null);
+        }
+        try {
+            return ResponseEntity.ok(cluster.cancelAllOrders(username));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/kill")
+    public ResponseEntity<Map<String, Object>> disableTrading(@RequestParam String username) {
+        return ResponseEntity.ok(cluster.disableTrading(username));
+    }
+
+    @DeleteMapping("/kill")
+    public ResponseEntity<Map<String, Object>> enableTrading(@RequestParam String username) {
+        return ResponseEntity.ok(cluster.enableTrading(username));
+    }
+
+    @PostMapping("/session/heartbeat")
+    public ResponseEntity<Map<String, Object>> heartbeat(
+            @RequestParam String username,
+            @RequestParam(required = false) Long timeoutMs) {
+
+        try {
+            return ResponseEntity.ok(cluster.heartbeat(username, timeoutMs));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/session")
+    public ResponseEntity<Map<String, Object>> disconnect(@RequestParam String username) {
+        return ResponseEntity.ok(cluster.disconnect(username));
+    }
+
+    // The owning engine's ETag passes through, so conditional polls work as they do against a single node
+    @GetMapping("/book/{name}")
+    public ResponseEntity<byte[]> getOrderBook(
+            @PathVariable String name,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            HttpServletRequest request) {
+
+        try {
+            return router.forward(router.shardFor(name), request.getMethod(), "/book/" + ShardRouter.encode(name),
+                request.getQueryString(), null, ifNoneMatch);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
+    }
+
+    @GetMapping("/books")
+    public ResponseEntity<byte[]> getAllOrderBooks(
+            @RequestParam(required = false) Integer depth,
+            @RequestParam(required = false) List<String> symbols,
+            @RequestParam(required = false) String prefix,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        try {
+            int levels = depth != null ? depth : Integer.MAX_VALUE;
+            ClusterExchange.Gathered books = cluster.getAllOrderBooks(levels, symbols, prefix, after, limit);
+            String key = "books:" + levels + ":" + symbols + ":" + prefix + ":" + after + ":" + limit;
+            return responses.respond(key, books.getVersion(), ifNoneMatch, books.getMerge());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
+    }
+
+    @GetMapping("/order/{orderId}")
+    public ResponseEntity<Map<String, Object>> getOrder(@PathVariable String orderId) {
+        try {
+            return ResponseEntity.ok(cluster.getOrder(orderId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/trades/{symbol}")
+    public ResponseEntity<?> getTrades(@PathVariable String symbol, HttpServletRequest request) {
+        return forward(symbol, request, "/trades/" + ShardRouter.encode(symbol));
+    }
+
+    @GetMapping("/candles/{symbol}")
+    public ResponseEntity<?> getCandles(@PathVariable String symbol, HttpServletRequest request) {
+        return forward(symbol, request, "/candles/" + ShardRouter.encode(symbol));
+    }
+
+    @GetMapping("/user/{username}")
+    public ResponseEntity<Map<String, Object>> getUser(@PathVariable String username) {
+        try {
+            return ResponseEntity.ok(cluster.getUser(username));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/user/{username}/trades")
+    public ResponseEntity<Map<String, Object>> getUserTrades(
+            @PathVariable String username,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) Long from, // epoch millis, inclusive
+            @RequestParam(required = false) Long to) {
+        try {
+            return ResponseEntity.ok(cluster.getUserTrades(username, cursor, limit, from, to));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/user/{username}/orders")
+    public ResponseEntity<Map<String, Object>> getUserOrders(
+            @PathVariable String username,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) Long from,
+            @RequestParam(required = false) Long to) {
+        try {
+            return ResponseEntity.ok(cluster.getUserOrders(username, cursor, limit, from, to));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/user/{username}/positions")
+    public ResponseEntity<Map<String, Object>> getUserPositions(
+            @PathVariable String username,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            return ResponseEntity.ok(cluster.getUserPositions(username, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Snapshots, metrics and recovery are per engine and are reported keyed by shard URL
+    @PostMapping("/snapshot")
+    public ResponseEntity<Map<String, Object>> takeSnapshot() {
+        return ResponseEntity.ok(cluster.perShard("POST", "/snapshot"));
+    }
+
+    @GetMapping("/metrics")
+    public ResponseEntity<Map<String, Object>> getMetrics() {
+        return ResponseEntity.ok(cluster.perShard("GET", "/metrics"));
+    }
+
+    @GetMapping("/recovery")
+    public ResponseEntity<Map<String, Object>> getRecoveryStats() {
+        return ResponseEntity.ok(cluster.perShard("GET", "/recovery"));
+    }
+
+    @GetMapping("/leaderboard")
+    public ResponseEntity<byte[]> getLeaderboard(
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        try {
+            int size = limit != null ? limit : Integer.MAX_VALUE;
+            ClusterExchange.Gathered leaderboard = cluster.getLeaderboard(offset, size);
+            return responses.respond("leaderboard:" + offset + ":" + size, leaderboard.getVersion(), ifNoneMatch,
+                leaderboard.getMerge());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
+        }
+    }
+
+    @GetMapping("/leaderboard/{username}")
+    public ResponseEntity<Map<String, Object>> getLeaderboardRank(@PathVariable String username) {
+        try {
+            return ResponseEntity.ok(cluster.getLeaderboardRank(username));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Send the request as received to the engine that owns the book
+    private ResponseEntity<?> forward(String book, HttpServletRequest request, String path) {
+        try {
+            String target = path != null ? path : request.getRequestURI().substring(request.getContextPath().length()
+                + "/api/exchange".length());
+            return router.forward(router.shardFor(book), request.getMethod(), target, request.getQueryString(), null, null);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
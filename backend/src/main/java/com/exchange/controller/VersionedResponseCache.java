@@ -0,0 +1,144 @@
+package com.exchange.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Serialized JSON responses for polled endpoints, cached per version of the data behind them.
+ *
+ * The caller passes the current version of what it is about to serve. A client whose
+ * If-None-Match already names that version gets a 304 without the payload being built; any
+ * other client gets the cached bytes for that version, and only the first request after a
+ * change builds and serializes the payload. Requests that arrive while that build is still
+ * running wait on it rather than starting their own, and with {@link #respondAsync} they do so
+ * without holding a request thread.
+ *
+ * Keys may hold raw request parameters, so tags carry a URL-safe digest of the key rather than
+ * the key itself; a tag then never contains the commas, spaces or quotes If-None-Match cannot carry.
+ */
+@Component
+public class VersionedResponseCache {
+    // Keys include client-chosen parameters such as depth, so keep the map from growing without bound
+    private static final int MAX_ENTRIES = 1024;
+
+    private final ObjectMapper objectMapper;
+    // Payloads built on a book's writer are serialized here instead of on that thread
+    private final Executor serializer;
+    // Versions restart with the process, so tags carry the start time to stay unique across restarts
+    private final String epoch = Long.toHexString(System.currentTimeMillis());
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @Autowired
+    public VersionedResponseCache(ObjectMapper objectMapper, @Qualifier("applicationTaskExecutor") Executor serializer) {
+        this.objectMapper = objectMapper;
+        this.serializer = serializer;
+    }
+
+    public ResponseEntity<byte[]> respond(String key, long version, String ifNoneMatch, Supplier<Object> payload) {
+        try {
+            return respondAsync(key, version, ifNoneMatch, () -> CompletableFuture.completedFuture(payload.get())).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    public CompletableFuture<ResponseEntity<byte[]>> respondAsync(String key, long version, String ifNoneMatch,
+                                                                  Supplier<? extends CompletableFuture<?>> payload) {
+        String etag = "\"" + digest(key) + "@" + epoch + "." + version + "\"";
+        if (matches(ifNoneMatch, etag)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .build());
+        }
+
+        Entry entry = entries.get(key);
+        if (entry == null || entry.version != version) {
+            // The data may move on while the payload is built; it is then newer than its tag, never older
+            CompletableFuture<?> built = payload.get();
+            entry = new Entry(version, built.isDone()
+                ? built.thenApply(this::serialize)
+                : built.thenApplyAsync(this::serialize, serializer));
+            if (entries.size() >= MAX_ENTRIES) {
+                entries.clear();
+            }
+            entries.put(key, entry);
+            // A failed build is not cached, so the next request tries again
+            Entry added = entry;
+            entry.body.whenComplete((body, failure) -> {
+                if (failure != null) {
+                    entries.remove(key, added);
+                }
+            });
+        }
+        return entry.body.thenApply(body -> ResponseEntity.ok()
+            .eTag(etag)
+            .cacheControl(CacheControl.noCache())
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(body));
+    }
+
+    // If-None-Match may list several tags, weak or strong, or "*"
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag) || tag.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // First 128 bits of the key's SHA-256, base64url without padding
+    private static String digest(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 16));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private byte[] serialize(Object payload) {
+        try {
+            return objectMapper.writeValueAsBytes(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize response", e);
+        }
+    }
+
+    private static final class Entry {
+        private final long version;
+        private final CompletableFuture<byte[]> body;
+
+        private Entry(long version, CompletableFuture<byte[]> body) {
+            this.version = version;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.exchange.engine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-writer command sequencer for a group of order books.
+ *
+ * Every command for a book is pushed onto the bounded ring buffer of the sequencer that owns
+ * the book and executed, in arrival order, by that sequencer's one thread. Because only that
+ * thread ever touches its books, the book structures need no locking, and books owned by
+ * different sequencers match in parallel on separate cores. A fixed pool of sequencers can
+ * therefore serve any number of books.
+ */
+public final class BookSequencer {
+    private static final Logger logger = LoggerFactory.getLogger(BookSequencer.class);
+
+    private static final int SPIN_TRIES = 200;
+    private static final int YIELD_TRIES = 100;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final String name;
+    private final RingBuffer<Command<?>> ring;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean parked;
+    private volatile long processedCount;
+
+    public BookSequencer(String name, int ringSize) {
+        this.name = name;
+        this.ring = new RingBuffer<>(ringSize);
+        this.thread = new Thread(this::run, "match-" + name);
+        this.thread.setDaemon(true);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void start() {
+        thread.start();
+        logger.info("Sequencer {} started (ring size {})", name, ring.capacity());
+    }
+
+    public long getProcessedCount() {
+        return processedCount;
+    }
+
+    public int getQueueDepth() {
+        return ring.size();
+    }
+
+    public boolean isSequencerThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    // Enqueue a command; the returned future completes on the sequencer thread
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        Command<T> command = new Command<>(task);
+
+        // Commands issued from the sequencer itself run inline to avoid waiting on our own queue
+        if (isSequencerThread()) {
+            command.run();
+            return command.future;
+        }
+
+        int attempts = 0;
+        while (!ring.offer(command)) {
+            if (!running) {
+                throw new IllegalStateException("Sequencer " + name + " is stopped");
+            }
+            // Ring is full: back off until the matching thread catches up
+            if (++attempts < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(1_000);
+            }
+        }
+        if (parked) {
+            LockSupport.unpark(thread);
+        }
+        return command.future;
+    }
+
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Fail anything that was still queued so callers do not wait forever
+        Command<?> leftover;
+        while ((leftover = ring.poll()) != null) {
+            leftover.future.completeExceptionally(
+                new IllegalStateException("Sequencer " + name + " is stopped"));
+        }
+    }
+
+    private void run() {
+        int idle = 0;
+        while (running) {
+            Command<?> command = ring.poll();
+            if (command != null) {
+                command.run();
+                processedCount++;
+                idle = 0;
+                continue;
+            }
+
+            idle++;
+            if (idle < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else if (idle < SPIN_TRIES + YIELD_TRIES) {
+                Thread.yield();
+            } else {
+                parked = true;
+                // Re-check after publishing the flag so a concurrent producer either sees it or we see its command
+                if (ring.isEmpty() && running) {
+                    LockSupport.parkNanos(MAX_PARK_NANOS);
+                }
+                parked = false;
+            }
+        }
+        logger.info("Sequencer {} stopped after {} commands", name, processedCount);
+    }
+
+    private static final class Command<T> {
+        private final Callable<T> task;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Command(Callable<T> task) {
+            this.task = task;
+        }
+
+        private void run() {
+            try {
+                future.complete(task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+}
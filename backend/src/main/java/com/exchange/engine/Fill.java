@@ -0,0 +1,87 @@
+package com.exchange.engine;
+
+import com.exchange.model.Order;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight over one fill encoded in a buffer of {@link #LENGTH}-byte records.
+ *
+ * The engine reuses both the buffer and the view for every fill, so a listener reads what it
+ * needs (or copies the raw bytes) during its callback and keeps no reference to either.
+ */
+public final class Fill {
+    public static final int LENGTH = 56;
+
+    private static final int TAKER_ORDER_ID = 0;
+    private static final int MAKER_ORDER_ID = 8;
+    private static final int TAKER_ACCOUNT = 16;
+    private static final int MAKER_ACCOUNT = 24;
+    private static final int PRICE = 32;
+    private static final int TIMESTAMP = 40;
+    private static final int QUANTITY = 48;
+    private static final int TAKER_SIDE = 52;
+
+    private ByteBuffer buffer;
+    private int offset;
+
+    public Fill wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    // Fills are stamped with the taker's acceptance time and priced at the maker's price
+    static void encode(ByteBuffer buffer, int offset, PooledOrder taker, PooledOrder maker, int quantity) {
+        buffer.putLong(offset + TAKER_ORDER_ID, taker.id);
+        buffer.putLong(offset + MAKER_ORDER_ID, maker.id);
+        buffer.putLong(offset + TAKER_ACCOUNT, taker.account);
+        buffer.putLong(offset + MAKER_ACCOUNT, maker.account);
+        buffer.putLong(offset + PRICE, maker.price);
+        buffer.putLong(offset + TIMESTAMP, taker.timestamp);
+        buffer.putInt(offset + QUANTITY, quantity);
+        buffer.put(offset + TAKER_SIDE, (byte) (taker.side == Order.OrderType.BUY ? 0 : 1));
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    public long getTakerOrderId() {
+        return buffer.getLong(offset + TAKER_ORDER_ID);
+    }
+
+    public long getMakerOrderId() {
+        return buffer.getLong(offset + MAKER_ORDER_ID);
+    }
+
+    public long getTakerAccount() {
+        return buffer.getLong(offset + TAKER_ACCOUNT);
+    }
+
+    public long getMakerAccount() {
+        return buffer.getLong(offset + MAKER_ACCOUNT);
+    }
+
+    // Scaled, see Prices
+    public long getPrice() {
+        return buffer.getLong(offset + PRICE);
+    }
+
+    // System.nanoTime() when the taker was accepted
+    public long getTimestamp() {
+        return buffer.getLong(offset + TIMESTAMP);
+    }
+
+    public int getQuantity() {
+        return buffer.getInt(offset + QUANTITY);
+    }
+
+    public Order.OrderType getTakerSide() {
+        return buffer.get(offset + TAKER_SIDE) == 0 ? Order.OrderType.BUY : Order.OrderType.SELL;
+    }
+}
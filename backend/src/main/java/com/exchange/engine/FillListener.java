@@ -0,0 +1,8 @@
+package com.exchange.engine;
+
+// Told about every fill of a PooledMatchingEngine, on the engine's thread
+public interface FillListener {
+
+    // The fill is only valid until the callback returns; it must not call back into the engine
+    void onFill(Fill fill);
+}
@@ -0,0 +1,72 @@
+package com.exchange.engine;
+
+/**
+ * Fixed set of preallocated orders handed out and taken back by a single writer.
+ *
+ * Ids are sequence numbers with the slot in the low bits, so looking an order up by id is an
+ * array access, and an id that has been filled or cancelled never matches the slot's next
+ * occupant.
+ */
+final class OrderPool {
+    private final PooledOrder[] orders;
+    private final int[] free;
+    private final int shift;
+    private final int mask;
+    private int freeCount;
+    private long sequence;
+
+    OrderPool(int requestedCapacity) {
+        if (requestedCapacity <= 0) {
+            throw new IllegalArgumentException("Order pool capacity must be positive");
+        }
+        int size = 1;
+        while (size < requestedCapacity) {
+            size <<= 1;
+        }
+        this.orders = new PooledOrder[size];
+        this.free = new int[size];
+        this.shift = Integer.numberOfTrailingZeros(size);
+        this.mask = size - 1;
+        // Hand out the lowest slots first
+        for (int i = 0; i < size; i++) {
+            orders[i] = new PooledOrder(i);
+            free[i] = size - 1 - i;
+        }
+        this.freeCount = size;
+    }
+
+    int capacity() {
+        return orders.length;
+    }
+
+    int available() {
+        return freeCount;
+    }
+
+    // Null when every order is in use
+    PooledOrder acquire() {
+        if (freeCount == 0) {
+            return null;
+        }
+        PooledOrder order = orders[free[--freeCount]];
+        order.id = (++sequence << shift) | order.slot;
+        return order;
+    }
+
+    void release(PooledOrder order) {
+        order.id = 0;
+        order.prev = null;
+        order.next = null;
+        order.level = null;
+        free[freeCount++] = order.slot;
+    }
+
+    // Live order with this id, or null once it has been filled or cancelled
+    PooledOrder find(long id) {
+        if (id <= 0) {
+            return null;
+        }
+        PooledOrder order = orders[(int) (id & mask)];
+        return order.id == id ? order : null;
+    }
+}
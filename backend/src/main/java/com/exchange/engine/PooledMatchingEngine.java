@@ -0,0 +1,264 @@
+package com.exchange.engine;
+
+import com.exchange.model.Instrument;
+import com.exchange.model.OccupancyBitmap;
+import com.exchange.model.Order;
+import com.exchange.model.Prices;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Matching engine for one book that allocates nothing once it is constructed.
+ *
+ * Orders come from a preallocated {@link OrderPool} and go back to it when they are filled or
+ * cancelled; ids are sequence-generated longs and timestamps are System.nanoTime() values.
+ * Price levels live in a fixed ladder of ticks starting at {@code lowestPrice}, one level
+ * object per tick allocated up front, with an occupancy bitmap per side to find the next
+ * best level. Fills are encoded into a reusable buffer and handed to the {@link FillListener}
+ * through a single {@link Fill} flyweight once the command has finished matching (or the
+ * buffer is full).
+ *
+ * Like the order books it is single-writer: the caller guarantees one thread at a time.
+ *
+ * It is deliberately standalone and is not one of the {@code exchange.matching} modes:
+ * ExchangeService keeps orders alive after they leave the book (user histories, the archive,
+ * the journal, lookups by id), which pooled, recycled orders cannot support. It exists for
+ * embedding and as a benchmark baseline for the book implementations.
+ */
+public final class PooledMatchingEngine {
+    // Fills buffered per publish; a sweep longer than this publishes in several batches
+    private static final int FILL_BATCH = 256;
+
+    private final Instrument instrument;
+    private final long lowestPrice;
+    private final OrderPool pool;
+    private final Ladder bids;
+    private final Ladder asks;
+    private final FillListener listener;
+    private final ByteBuffer fills = ByteBuffer.allocateDirect(FILL_BATCH * Fill.LENGTH);
+    private final Fill fill = new Fill();
+    private int fillCount;
+    private int restingOrders;
+
+    public PooledMatchingEngine(Instrument instrument, long lowestPrice, int ladderSize, int orderCapacity,
+                                FillListener listener) {
+        if (!instrument.isOnGrid(lowestPrice)) {
+            throw new IllegalArgumentException("Lowest price must be on the tick grid");
+        }
+        if (ladderSize <= 0) {
+            throw new IllegalArgumentException("Ladder size must be positive");
+        }
+        this.instrument = instrument;
+        this.lowestPrice = lowestPrice;
+        this.pool = new OrderPool(orderCapacity);
+        this.bids = new Ladder(Order.OrderType.BUY, ladderSize);
+        this.asks = new Ladder(Order.OrderType.SELL, ladderSize);
+        this.listener = listener;
+    }
+
+    /**
+     * Match an order and rest whatever is left. Returns the order's id, which stops resolving
+     * once the order is filled (immediately, if it filled on entry).
+     */
+    public long place(Order.OrderType side, long price, int quantity, long account) {
+        int index = indexOf(price);
+        if (quantity <= 0 || quantity % instrument.getLotSize() != 0) {
+            throw new IllegalArgumentException("Quantity " + quantity + " is not a positive multiple of the lot size "
+                + instrument.getLotSize());
+        }
+        PooledOrder order = pool.acquire();
+        if (order == null) {
+            throw new IllegalStateException("Order pool is exhausted");
+        }
+        order.side = side;
+        order.price = price;
+        order.quantity = quantity;
+        order.account = account;
+        order.timestamp = System.nanoTime();
+        order.lastExecutionPrice = 0;
+        long id = order.id;
+
+        if (side == Order.OrderType.BUY) {
+            match(order, asks, index);
+        } else {
+            match(order, bids, index);
+        }
+        if (order.quantity > 0) {
+            ladder(side).add(order, index);
+            restingOrders++;
+        } else {
+            pool.release(order);
+        }
+        publishFills();
+        return id;
+    }
+
+    public boolean cancel(long orderId) {
+        PooledOrder order = pool.find(orderId);
+        if (order == null) {
+            return false;
+        }
+        ladder(order.side).remove(order);
+        restingOrders--;
+        pool.release(order);
+        return true;
+    }
+
+    // Remaining quantity of a resting order, or 0 once it is filled or cancelled
+    public int getQuantity(long orderId) {
+        PooledOrder order = pool.find(orderId);
+        return order == null ? 0 : order.quantity;
+    }
+
+    // Scaled price of the best level on one side, or 0 when that side is empty
+    public long getBestPrice(Order.OrderType side) {
+        Ladder ladder = ladder(side);
+        return ladder.best < 0 ? 0 : priceOf(ladder.best);
+    }
+
+    // Resting quantity at one price on one side
+    public long getLevelQuantity(Order.OrderType side, long price) {
+        return ladder(side).levels[indexOf(price)].totalQuantity;
+    }
+
+    public int getRestingOrderCount() {
+        return restingOrders;
+    }
+
+    // Orders that can still be placed before the pool runs out
+    public int getAvailableOrders() {
+        return pool.available();
+    }
+
+    private Ladder ladder(Order.OrderType side) {
+        return side == Order.OrderType.BUY ? bids : asks;
+    }
+
+    private int indexOf(long price) {
+        if (!instrument.isOnGrid(price)) {
+            throw new IllegalArgumentException("Price " + Prices.toDouble(price) + " is not a multiple of the tick size "
+                + Prices.toDouble(instrument.getTickSize()));
+        }
+        long index = (price - lowestPrice) / instrument.getTickSize();
+        if (index < 0 || index >= bids.levels.length) {
+            throw new IllegalArgumentException("Price " + Prices.toDouble(price) + " is outside the engine's ladder");
+        }
+        return (int) index;
+    }
+
+    private long priceOf(int index) {
+        return lowestPrice + index * instrument.getTickSize();
+    }
+
+    // Fill against the opposite side while it crosses the taker's limit, best level first
+    private void match(PooledOrder taker, Ladder book, int limit) {
+        while (taker.quantity > 0 && book.best >= 0 && book.crosses(limit)) {
+            Level level = book.levels[book.best];
+            PooledOrder maker = level.head;
+            int quantity = Math.min(taker.quantity, maker.quantity);
+            taker.quantity -= quantity;
+            maker.quantity -= quantity;
+            level.totalQuantity -= quantity;
+            taker.lastExecutionPrice = maker.price;
+            maker.lastExecutionPrice = maker.price;
+            recordFill(taker, maker, quantity);
+            if (maker.quantity == 0) {
+                book.remove(maker);
+                restingOrders--;
+                pool.release(maker);
+            }
+        }
+    }
+
+    private void recordFill(PooledOrder taker, PooledOrder maker, int quantity) {
+        if (fillCount == FILL_BATCH) {
+            publishFills();
+        }
+        Fill.encode(fills, fillCount * Fill.LENGTH, taker, maker, quantity);
+        fillCount++;
+    }
+
+    private void publishFills() {
+        for (int i = 0; i < fillCount; i++) {
+            listener.onFill(fill.wrap(fills, i * Fill.LENGTH));
+        }
+        fillCount = 0;
+    }
+
+    // FIFO queue of resting orders at one tick, linked through the orders themselves
+    static final class Level {
+        private final int index;
+        private PooledOrder head;
+        private PooledOrder tail;
+        private long totalQuantity;
+
+        private Level(int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * One side of the book. Index i holds the level for lowestPrice + i ticks; bids treat the
+     * highest occupied index as best, asks the lowest.
+     */
+    private static final class Ladder {
+        private final boolean descending;
+        private final Level[] levels;
+        private final OccupancyBitmap occupied;
+        private int best = -1;
+
+        private Ladder(Order.OrderType side, int size) {
+            this.descending = side == Order.OrderType.BUY;
+            this.levels = new Level[size];
+            this.occupied = new OccupancyBitmap(size);
+            for (int i = 0; i < size; i++) {
+                levels[i] = new Level(i);
+            }
+        }
+
+        // Does the best level trade with an order limited at this index?
+        private boolean crosses(int limit) {
+            return descending ? best >= limit : best <= limit;
+        }
+
+        private void add(PooledOrder order, int index) {
+            Level level = levels[index];
+            if (level.head == null) {
+                level.head = order;
+                occupied.set(index);
+                if (best < 0 || (descending ? index > best : index < best)) {
+                    best = index;
+                }
+            } else {
+                level.tail.next = order;
+            }
+            order.prev = level.tail;
+            order.next = null;
+            order.level = level;
+            level.tail = order;
+            level.totalQuantity += order.quantity;
+        }
+
+        private void remove(PooledOrder order) {
+            Level level = order.level;
+            if (order.prev == null) {
+                level.head = order.next;
+            } else {
+                order.prev.next = order.next;
+            }
+            if (order.next == null) {
+                level.tail = order.prev;
+            } else {
+                order.next.prev = order.prev;
+            }
+            level.totalQuantity -= order.quantity;
+            if (level.head == null) {
+                int index = level.index;
+                occupied.clear(index);
+                if (index == best) {
+                    best = descending ? occupied.previous(index - 1) : occupied.next(index + 1);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.exchange.engine;
+
+import com.exchange.model.Order;
+
+// One slot of an OrderPool; every field is overwritten when the slot is handed out again
+final class PooledOrder {
+    final int slot;
+    long id; // 0 while the slot is free
+    Order.OrderType side;
+    long price; // Scaled, see Prices
+    int quantity;
+    long account;
+    long timestamp; // System.nanoTime() at acceptance
+    long lastExecutionPrice;
+
+    // Intrusive links into the level the order rests at
+    PooledOrder prev;
+    PooledOrder next;
+    PooledMatchingEngine.Level level;
+
+    PooledOrder(int slot) {
+        this.slot = slot;
+    }
+}
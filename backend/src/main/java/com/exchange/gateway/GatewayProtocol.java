@@ -0,0 +1,121 @@
+package com.exchange.gateway;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-layout binary messages spoken by the order gateway.
+ *
+ * Every frame is [int16 length][int8 type][body], big-endian, where length counts the type
+ * byte and the body. Text fields are ASCII, right-padded with zero bytes to their fixed width.
+ * Prices are whole millionths of the quote currency (see {@link com.exchange.model.Prices}).
+ *
+ * <pre>
+ * client to gateway
+ *   LOGON      username[16]
+ *   NEW_ORDER  clientOrderId:int64 book[8] side:int8 (0 buy, 1 sell) price:int64 quantity:int32
+ *   CANCEL     clientOrderId:int64 book[8] orderId[36]
+ * gateway to client
+ *   LOGON_ACK  (empty)
+ *   ACK        clientOrderId:int64 orderId[36]
+ *   FILL       clientOrderId:int64 orderId[36] price:int64 quantity:int32 leavesQuantity:int32
+ *   CANCELLED  clientOrderId:int64 orderId[36]
+ *   REJECT     clientOrderId:int64 reason[64]
+ * </pre>
+ */
+public final class GatewayProtocol {
+    public static final byte LOGON = 1;
+    public static final byte NEW_ORDER = 2;
+    public static final byte CANCEL = 3;
+
+    public static final byte LOGON_ACK = 11;
+    public static final byte ACK = 12;
+    public static final byte FILL = 13;
+    public static final byte CANCELLED = 14;
+    public static final byte REJECT = 15;
+
+    public static final byte SIDE_BUY = 0;
+    public static final byte SIDE_SELL = 1;
+
+    public static final int USERNAME_LENGTH = 16;
+    public static final int BOOK_LENGTH = 8;
+    public static final int ORDER_ID_LENGTH = 36;
+    public static final int REASON_LENGTH = 64;
+
+    public static final int HEADER_LENGTH = 3;
+    public static final int LOGON_LENGTH = USERNAME_LENGTH;
+    public static final int NEW_ORDER_LENGTH = 8 + BOOK_LENGTH + 1 + 8 + 4;
+    public static final int CANCEL_LENGTH = 8 + BOOK_LENGTH + ORDER_ID_LENGTH;
+    public static final int ACK_LENGTH = 8 + ORDER_ID_LENGTH;
+    public static final int FILL_LENGTH = 8 + ORDER_ID_LENGTH + 8 + 4 + 4;
+    public static final int CANCELLED_LENGTH = 8 + ORDER_ID_LENGTH;
+    public static final int REJECT_LENGTH = 8 + REASON_LENGTH;
+
+    private GatewayProtocol() {
+    }
+
+    // Body length for a message type, or -1 if the type is unknown
+    public static int bodyLength(byte type) {
+        switch (type) {
+            case LOGON: return LOGON_LENGTH;
+            case NEW_ORDER: return NEW_ORDER_LENGTH;
+            case CANCEL: return CANCEL_LENGTH;
+            case LOGON_ACK: return 0;
+            case ACK: return ACK_LENGTH;
+            case FILL: return FILL_LENGTH;
+            case CANCELLED: return CANCELLED_LENGTH;
+            case REJECT: return REJECT_LENGTH;
+            default: return -1;
+        }
+    }
+
+    public static void putHeader(ByteBuffer buffer, byte type) {
+        buffer.putShort((short) (1 + bodyLength(type)));
+        buffer.put(type);
+    }
+
+    public static void putLogon(ByteBuffer buffer, String username) {
+        putHeader(buffer, LOGON);
+        putText(buffer, username, USERNAME_LENGTH);
+    }
+
+    public static void putNewOrder(ByteBuffer buffer, long clientOrderId, String book, byte side, long price, int quantity) {
+        putHeader(buffer, NEW_ORDER);
+        buffer.putLong(clientOrderId);
+        putText(buffer, book, BOOK_LENGTH);
+        buffer.put(side);
+        buffer.putLong(price);
+        buffer.putInt(quantity);
+    }
+
+    public static void putCancel(ByteBuffer buffer, long clientOrderId, String book, CharSequence orderId) {
+        putHeader(buffer, CANCEL);
+        buffer.putLong(clientOrderId);
+        putText(buffer, book, BOOK_LENGTH);
+        putText(buffer, orderId, ORDER_ID_LENGTH);
+    }
+
+    // Write text without allocating, truncated or zero-padded to exactly width bytes
+    public static void putText(ByteBuffer buffer, CharSequence text, int width) {
+        int length = text == null ? 0 : Math.min(text.length(), width);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            buffer.put(c < 128 ? (byte) c : (byte) '?');
+        }
+        for (int i = length; i < width; i++) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    // Read a fixed-width text field, dropping the zero padding
+    public static String getText(ByteBuffer buffer, int width) {
+        char[] chars = new char[width];
+        int length = 0;
+        for (int i = 0; i < width; i++) {
+            byte b = buffer.get();
+            if (b != 0) {
+                chars[length++] = (char) b;
+            }
+        }
+        return new String(chars, 0, length);
+    }
+}
@@ -0,0 +1,415 @@
+package com.exchange.gateway;
+
+import com.exchange.config.ExchangeProperties;
+import com.exchange.model.Order;
+import com.exchange.model.Prices;
+import com.exchange.model.Trade;
+import com.exchange.service.ExchangeService;
+import com.exchange.service.ExecutionListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.exchange.gateway.GatewayProtocol.*;
+
+/**
+ * Binary TCP order entry running next to the REST API.
+ *
+ * One selector thread accepts connections, decodes frames straight out of each session's
+ * direct read buffer and calls the same ExchangeService entry points as the controllers.
+ * The selector never waits for matching: commands are handed to the book's writer and their
+ * outcome is reported when it completes. Execution reports are encoded field by field into the
+ * session's direct write buffer: acks and validation rejects on the selector thread, fills,
+ * cancels and engine rejects on the book's writer (fills through an {@link ExecutionListener}).
+ * An order is acked as soon as it is accepted, before it reaches the book, so a client always
+ * sees the ack ahead of that order's fills. A client that stops
+ * reading until its write buffer fills up is disconnected rather than buffered without bound.
+ */
+@Component
+@ConditionalOnProperty(prefix = "exchange.gateway", name = "enabled", havingValue = "true")
+public class OrderGateway implements ExecutionListener {
+    private static final Logger logger = LoggerFactory.getLogger(OrderGateway.class);
+
+    private static final int MAX_CACHED_BOOKS = 1024;
+
+    private final ExchangeService exchangeService;
+    private final ExchangeProperties.Gateway config;
+    private final Map<String, Set<Session>> sessionsByUser = new ConcurrentHashMap<>();
+    private final Map<Long, String> bookNames = new ConcurrentHashMap<>();
+    private final Queue<Session> pendingWrites = new ConcurrentLinkedQueue<>();
+
+    private Selector selector;
+    private ServerSocketChannel server;
+    private Thread thread;
+    private volatile boolean running;
+
+    @Autowired
+    public OrderGateway(ExchangeService exchangeService, ExchangeProperties properties) {
+        this.exchangeService = exchangeService;
+        this.config = properties.getGateway();
+    }
+
+    @PostConstruct
+    public void start() {
+        try {
+            selector = Selector.open();
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(config.getHost(), config.getPort()));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open order gateway on port " + config.getPort(), e);
+        }
+        exchangeService.addExecutionListener(this);
+        running = true;
+        thread = new Thread(this::run, "order-gateway");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Order gateway listening on {}", server.socket().getLocalSocketAddress());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        exchangeService.removeExecutionListener(this);
+        selector.wakeup();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+                Session session;
+                while ((session = pendingWrites.poll()) != null) {
+                    flush(session);
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Session ready = (Session) key.attachment();
+                    if (key.isReadable()) {
+                        read(ready);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flush(ready);
+                    }
+                }
+                selector.selectedKeys().clear();
+            } catch (IOException e) {
+                logger.error("Order gateway selector failed", e);
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Session) {
+                close((Session) key.attachment());
+            }
+        }
+        try {
+            server.close();
+            selector.close();
+        } catch (IOException e) {
+            logger.warn("Error closing order gateway", e);
+        }
+        logger.info("Order gateway stopped");
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Session session = new Session(channel, config.getBufferSize());
+        session.key = channel.register(selector, SelectionKey.OP_READ, session);
+    }
+
+    private void read(Session session) {
+        ByteBuffer in = session.in;
+        try {
+            if (session.channel.read(in) < 0) {
+                close(session);
+                return;
+            }
+        } catch (IOException e) {
+            close(session);
+            return;
+        }
+
+        in.flip();
+        while (in.remaining() >= 2) {
+            int length = in.getShort(in.position()) & 0xffff;
+            if (in.remaining() < 2 + length) {
+                break;
+            }
+            int end = in.position() + 2 + length;
+            in.position(in.position() + 2);
+            byte type = in.get();
+            if (bodyLength(type) != length - 1) {
+                logger.warn("Closing gateway session {}: bad frame type {} length {}", session.username, type, length);
+                close(session);
+                return;
+            }
+            handle(session, type, in);
+            in.position(end);
+        }
+        in.compact();
+        if (!in.hasRemaining()) {
+            // Frames are far smaller than the buffer, so a full buffer means a broken client
+            close(session);
+        }
+    }
+
+    private void handle(Session session, byte type, ByteBuffer in) {
+        if (type == LOGON) {
+            String username = getText(in, USERNAME_LENGTH);
+            if (session.username == null && !username.isEmpty()) {
+                session.username = username;
+                sessionsByUser.computeIfAbsent(username, user -> ConcurrentHashMap.newKeySet()).add(session);
+                synchronized (session) {
+                    putHeader(session.out, LOGON_ACK);
+                }
+                scheduleFlush(session);
+            } else {
+                reject(session, 0, "Already logged on or empty username");
+            }
+            return;
+        }
+
+        long clientOrderId = in.getLong();
+        if (session.username == null) {
+            reject(session, clientOrderId, "Not logged on");
+            return;
+        }
+        String book = readBook(in);
+        if (type == NEW_ORDER) {
+            String side = in.get() == SIDE_BUY ? "buy" : "sell";
+            long price = in.getLong();
+            int quantity = in.getInt();
+            try {
+                exchangeService.placeOrderAsync(book, side, Prices.toDecimal(price), quantity, session.username,
+                    order -> acknowledge(session, clientOrderId, order))
+                    .whenComplete((result, failure) -> {
+                        if (failure != null) {
+                            reject(session, clientOrderId, reason(failure));
+                        }
+                    });
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                reject(session, clientOrderId, e.getMessage());
+            }
+        } else if (type == CANCEL) {
+            String orderId = getText(in, ORDER_ID_LENGTH);
+            try {
+                exchangeService.cancelOrderAsync(book, orderId, session.username).whenComplete((result, failure) -> {
+                    if (failure != null) {
+                        reject(session, clientOrderId, reason(failure));
+                    } else if ("CANCELLED".equals(result.get("status"))) {
+                        Long original = session.clientOrderIds.remove(orderId);
+                        synchronized (session) {
+                            putHeader(session.out, CANCELLED);
+                            session.out.putLong(original != null ? original : clientOrderId);
+                            putText(session.out, orderId, ORDER_ID_LENGTH);
+                        }
+                        scheduleFlush(session);
+                    } else {
+                        reject(session, clientOrderId, "Order could not be cancelled");
+                    }
+                });
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                reject(session, clientOrderId, e.getMessage());
+            }
+        } else {
+            reject(session, clientOrderId, "Unsupported message type " + type);
+        }
+    }
+
+    // Book symbols are exactly one long wide, so known ones are looked up without decoding text
+    private String readBook(ByteBuffer in) {
+        long raw = in.getLong(in.position());
+        String book = bookNames.get(raw);
+        if (book == null) {
+            book = getText(in, BOOK_LENGTH);
+            if (bookNames.size() < MAX_CACHED_BOOKS) {
+                bookNames.put(raw, book);
+            }
+        } else {
+            in.position(in.position() + BOOK_LENGTH);
+        }
+        return book;
+    }
+
+    private void acknowledge(Session session, long clientOrderId, Order order) {
+        session.clientOrderIds.put(order.getId(), clientOrderId);
+        synchronized (session) {
+            if (session.out.remaining() < HEADER_LENGTH + ACK_LENGTH) {
+                session.overflowed = true;
+            } else {
+                putHeader(session.out, ACK);
+                session.out.putLong(clientOrderId);
+                putText(session.out, order.getId(), ORDER_ID_LENGTH);
+            }
+        }
+        scheduleFlush(session);
+    }
+
+    private static String reason(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        return cause.getMessage();
+    }
+
+    private void reject(Session session, long clientOrderId, String reason) {
+        synchronized (session) {
+            if (session.out.remaining() < HEADER_LENGTH + REJECT_LENGTH) {
+                session.overflowed = true;
+            } else {
+                putHeader(session.out, REJECT);
+                session.out.putLong(clientOrderId);
+                putText(session.out, reason, REASON_LENGTH);
+            }
+        }
+        scheduleFlush(session);
+    }
+
+    // Runs on the book's writer
+    @Override
+    public void onTrade(Trade trade, Order buyOrder, Order sellOrder) {
+        reportFill(buyOrder, trade);
+        reportFill(sellOrder, trade);
+    }
+
+    private void reportFill(Order order, Trade trade) {
+        Set<Session> sessions = sessionsByUser.get(order.getUsername());
+        if (sessions == null) {
+            return;
+        }
+        for (Session session : sessions) {
+            Long clientOrderId = session.clientOrderIds.get(order.getId());
+            if (clientOrderId == null) {
+                continue;
+            }
+            if (order.getQuantity() == 0) {
+                session.clientOrderIds.remove(order.getId());
+            }
+            synchronized (session) {
+                if (session.out.remaining() < HEADER_LENGTH + FILL_LENGTH) {
+                    session.overflowed = true;
+                } else {
+                    putHeader(session.out, FILL);
+                    session.out.putLong(clientOrderId);
+                    putText(session.out, order.getId(), ORDER_ID_LENGTH);
+                    session.out.putLong(trade.getPrice());
+                    session.out.putInt(trade.getQuantity());
+                    session.out.putInt(order.getQuantity());
+                }
+            }
+            scheduleFlush(session);
+        }
+    }
+
+    private void scheduleFlush(Session session) {
+        if (Thread.currentThread() == thread) {
+            flush(session);
+        } else {
+            pendingWrites.add(session);
+            selector.wakeup();
+        }
+    }
+
+    // Selector thread only
+    private void flush(Session session) {
+        if (!session.channel.isOpen()) {
+            return;
+        }
+        synchronized (session) {
+            if (session.overflowed) {
+                logger.warn("Closing gateway session {}: client is not reading its execution reports", session.username);
+                close(session);
+                return;
+            }
+            ByteBuffer out = session.out;
+            out.flip();
+            try {
+                session.channel.write(out);
+            } catch (IOException e) {
+                out.clear();
+                close(session);
+                return;
+            } finally {
+                out.compact();
+            }
+            int interest = out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            if (session.key.isValid()) {
+                session.key.interestOps(interest);
+            }
+        }
+    }
+
+    private void close(Session session) {
+        if (session.username != null) {
+            Set<Session> sessions = sessionsByUser.get(session.username);
+            if (sessions != null) {
+                sessions.remove(session);
+            }
+        }
+        session.key.cancel();
+        try {
+            session.channel.close();
+        } catch (IOException e) {
+            logger.debug("Error closing gateway session", e);
+        }
+    }
+
+    private static final class Session {
+        private final SocketChannel channel;
+        private final ByteBuffer in;
+        // Guarded by the session itself; written by the selector thread and the book writers
+        private final ByteBuffer out;
+        private final Map<String, Long> clientOrderIds = new ConcurrentHashMap<>();
+        private SelectionKey key;
+        private volatile String username;
+        private boolean overflowed;
+
+        private Session(SocketChannel channel, int bufferSize) {
+            this.channel = channel;
+            this.in = ByteBuffer.allocateDirect(bufferSize);
+            this.out = ByteBuffer.allocateDirect(bufferSize);
+        }
+    }
+}
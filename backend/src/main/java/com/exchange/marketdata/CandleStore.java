@@ -0,0 +1,268 @@
+package com.exchange.marketdata;
+
+import com.exchange.model.Prices;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OHLCV bars with VWAP per book at a fixed set of resolutions, built from the trade stream.
+ *
+ * Every resolution of every book keeps its most recent bars in a fixed ring of primitive
+ * arrays, one bar per interval that actually traded, in time order. A trade touches one bar
+ * per resolution on the book's writer and allocates nothing. Readers never lock: they find
+ * the end of the requested range by binary search and copy bars backwards from there, each
+ * under its own seqlock stamp, so a query costs O(log capacity + bars returned) and a bar the
+ * writer is amending is simply read again. Prices and notionals are kept scaled (see
+ * {@link Prices}), so VWAP is computed from exact sums.
+ */
+public class CandleStore {
+    private final Map<String, Series[]> books = new ConcurrentHashMap<>();
+    private final int capacity;
+    private final LongAdder lateTrades = new LongAdder();
+
+    public CandleStore(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Candle capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    public void registerBook(String book) {
+        Resolution[] resolutions = Resolution.values();
+        Series[] series = new Series[resolutions.length];
+        for (int i = 0; i < resolutions.length; i++) {
+            series[i] = new Series(resolutions[i].millis, capacity);
+        }
+        books.putIfAbsent(book, series);
+    }
+
+    // Writer thread only
+    public void onTrade(String book, long price, int quantity, long timestampMillis) {
+        for (Series series : books.get(book)) {
+            if (!series.add(price, quantity, timestampMillis)) {
+                lateTrades.increment();
+            }
+        }
+    }
+
+    /**
+     * Bars for the book whose intervals start in [fromMillis, toMillis], oldest first. When more
+     * than {@code limit} bars match, the newest {@code limit} are returned.
+     */
+    public List<Map<String, Object>> bars(String book, Resolution resolution, long fromMillis, long toMillis, int limit) {
+        Series[] series = books.get(book);
+        if (series == null) {
+            return Collections.emptyList();
+        }
+        return series[resolution.ordinal()].read(fromMillis, toMillis, limit);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("barsPerResolution", capacity);
+        result.put("lateTrades", lateTrades.sum());
+        return result;
+    }
+
+    public enum Resolution {
+        ONE_SECOND("1s", 1_000L),
+        ONE_MINUTE("1m", 60_000L),
+        FIVE_MINUTES("5m", 300_000L),
+        ONE_HOUR("1h", 3_600_000L);
+
+        private final String label;
+        private final long millis;
+
+        Resolution(String label, long millis) {
+            this.label = label;
+            this.millis = millis;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public static Resolution fromLabel(String label) {
+            for (Resolution resolution : values()) {
+                if (resolution.label.equals(label)) {
+                    return resolution;
+                }
+            }
+            throw new IllegalArgumentException("Invalid resolution: " + label + " (expected 1s, 1m, 5m or 1h)");
+        }
+    }
+
+    private static final class Series {
+        private final long millis;
+        private final int capacity;
+        // Bar n of the series lives in slot n % capacity; only the last `capacity` bars survive
+        private final long[] start;
+        private final long[] open;
+        private final long[] high;
+        private final long[] low;
+        private final long[] close;
+        private final long[] volume;
+        private final long[] notional;
+        private final int[] trades;
+        // Per-slot seqlock: odd while the writer is changing the slot
+        private final AtomicLongArray stamps;
+        private volatile long count;
+
+        private Series(long millis, int capacity) {
+            this.millis = millis;
+            this.capacity = capacity;
+            this.start = new long[capacity];
+            this.open = new long[capacity];
+            this.high = new long[capacity];
+            this.low = new long[capacity];
+            this.close = new long[capacity];
+            this.volume = new long[capacity];
+            this.notional = new long[capacity];
+            this.trades = new int[capacity];
+            this.stamps = new AtomicLongArray(capacity);
+        }
+
+        // False if the trade is older than every bar kept and falls in an interval that has none
+        private boolean add(long price, int quantity, long timestampMillis) {
+            long bucket = timestampMillis - Math.floorMod(timestampMillis, millis);
+            long n = count;
+            if (n == 0 || bucket > start[slot(n - 1)]) {
+                int slot = slot(n);
+                begin(slot);
+                start[slot] = bucket;
+                open[slot] = price;
+                high[slot] = price;
+                low[slot] = price;
+                close[slot] = price;
+                volume[slot] = quantity;
+                notional[slot] = price * quantity;
+                trades[slot] = 1;
+                end(slot);
+                count = n + 1;
+                return true;
+            }
+            // Usually the current bar; a print stamped slightly in the past amends the bar it belongs to
+            long index = lastAtOrBefore(bucket, n);
+            if (index < 0 || start[slot(index)] != bucket) {
+                return false;
+            }
+            int slot = slot(index);
+            begin(slot);
+            high[slot] = Math.max(high[slot], price);
+            low[slot] = Math.min(low[slot], price);
+            if (index == n - 1) {
+                close[slot] = price;
+            }
+            volume[slot] += quantity;
+            notional[slot] += price * quantity;
+            trades[slot]++;
+            end(slot);
+            return true;
+        }
+
+        private List<Map<String, Object>> read(long fromMillis, long toMillis, int limit) {
+            long n = count;
+            long last = lastAtOrBefore(toMillis, n);
+            List<Map<String, Object>> result = new ArrayList<>();
+            long previousStart = Long.MAX_VALUE;
+            for (long index = last; index >= oldest(n) && result.size() < limit; index--) {
+                Map<String, Object> bar = readBar(slot(index));
+                long barStart = (Long) bar.get("time");
+                if (barStart > toMillis) {
+                    continue;
+                }
+                // A slot recycled for a newer bar while we walk back shows up out of order; it and everything older are gone
+                if (barStart >= previousStart || barStart < fromMillis) {
+                    break;
+                }
+                previousStart = barStart;
+                result.add(bar);
+            }
+            Collections.reverse(result);
+            return result;
+        }
+
+        private Map<String, Object> readBar(int slot) {
+            while (true) {
+                long stamp = stamps.get(slot);
+                if ((stamp & 1) != 0) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                long barStart = start[slot];
+                long barOpen = open[slot];
+                long barHigh = high[slot];
+                long barLow = low[slot];
+                long barClose = close[slot];
+                long barVolume = volume[slot];
+                long barNotional = notional[slot];
+                int barTrades = trades[slot];
+                VarHandle.loadLoadFence();
+                if (stamps.get(slot) != stamp) {
+                    continue;
+                }
+                Map<String, Object> bar = new LinkedHashMap<>();
+                bar.put("time", barStart);
+                bar.put("open", Prices.toDouble(barOpen));
+                bar.put("high", Prices.toDouble(barHigh));
+                bar.put("low", Prices.toDouble(barLow));
+                bar.put("close", Prices.toDouble(barClose));
+                bar.put("volume", barVolume);
+                bar.put("vwap", Prices.toDouble(barNotional) / barVolume);
+                bar.put("trades", barTrades);
+                return bar;
+            }
+        }
+
+        // Index of the newest kept bar starting at or before the time, or -1
+        private long lastAtOrBefore(long millis, long n) {
+            long lo = oldest(n);
+            long hi = n - 1;
+            long found = -1;
+            while (lo <= hi) {
+                long mid = (lo + hi) >>> 1;
+                if (start[slot(mid)] <= millis) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found;
+        }
+
+        private long oldest(long n) {
+            return Math.max(0, n - capacity);
+        }
+
+        private int slot(long index) {
+            return (int) (index % capacity);
+        }
+
+        private void begin(int slot) {
+            stamps.lazySet(slot, stamps.get(slot) + 1);
+            // Keep the field writes below from moving ahead of the odd stamp
+            VarHandle.storeStoreFence();
+        }
+
+        private void end(int slot) {
+            stamps.set(slot, stamps.get(slot) + 1);
+        }
+    }
+}
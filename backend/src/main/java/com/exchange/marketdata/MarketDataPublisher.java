@@ -0,0 +1,157 @@
+package com.exchange.marketdata;
+
+import com.exchange.model.DepthListener;
+import com.exchange.model.Order;
+import com.exchange.model.Trade;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Turns order book changes into streamed depth deltas and trade prints.
+ *
+ * Level changes and trades are collected on the book's writer while a command runs and
+ * published as one numbered update per book when the command finishes. Nothing is collected
+ * for a book nobody is watching. Each update is handed to the subscriptions, which conflate
+ * it into their pending state and are drained to the network by a small delivery pool, so a
+ * slow client never holds up matching.
+ */
+public class MarketDataPublisher implements DepthListener {
+    private final Map<String, BookChannel> channels = new ConcurrentHashMap<>();
+    private final ExecutorService deliveryPool;
+    private final int maxPendingTrades;
+
+    public MarketDataPublisher(int deliveryThreads, int maxPendingTrades) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.deliveryPool = Executors.newFixedThreadPool(deliveryThreads, runnable -> {
+            Thread thread = new Thread(runnable, "market-data-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxPendingTrades = maxPendingTrades;
+    }
+
+    public void registerBook(String book) {
+        channels.putIfAbsent(book, new BookChannel());
+    }
+
+    public MarketDataSubscription newSubscription(MarketDataSink sink, Runnable onClose) {
+        return new MarketDataSubscription(this, sink, onClose, deliveryPool, maxPendingTrades);
+    }
+
+    public int getSubscriberCount(String book) {
+        BookChannel channel = channels.get(book);
+        return channel == null ? 0 : channel.subscribers.size();
+    }
+
+    // Writer thread only: start delivering updates for the book and return the sequence the caller's snapshot reflects
+    public long attach(String book, MarketDataSubscription subscription) {
+        BookChannel channel = channels.get(book);
+        channel.subscribers.add(subscription);
+        return channel.sequence;
+    }
+
+    void detach(MarketDataSubscription subscription) {
+        for (BookChannel channel : channels.values()) {
+            channel.subscribers.remove(subscription);
+        }
+    }
+
+    @Override
+    public void onLevelChanged(String book, Order.OrderType side, long price, long quantity, int orderCount) {
+        BookChannel channel = channels.get(book);
+        if (channel == null || channel.subscribers.isEmpty()) {
+            return;
+        }
+        // Only the latest state of a level matters, so repeated changes within a command collapse
+        Map<Long, LevelUpdate> levels = side == Order.OrderType.BUY ? channel.pendingBids : channel.pendingAsks;
+        levels.put(price, new LevelUpdate(price, quantity, orderCount));
+    }
+
+    // Writer thread only
+    public void onTrade(Trade trade) {
+        BookChannel channel = channels.get(trade.getSymbol());
+        if (channel == null || channel.subscribers.isEmpty()) {
+            return;
+        }
+        channel.pendingTrades.add(trade);
+    }
+
+    // Writer thread only: publish whatever the last command changed as one numbered update
+    public void flush(String book) {
+        BookChannel channel = channels.get(book);
+        if (channel == null || channel.isClean()) {
+            return;
+        }
+        if (channel.subscribers.isEmpty()) {
+            channel.clear();
+            return;
+        }
+        long sequence = ++channel.sequence;
+        List<LevelUpdate> bids = new ArrayList<>(channel.pendingBids.values());
+        List<LevelUpdate> asks = new ArrayList<>(channel.pendingAsks.values());
+        List<Trade> trades = new ArrayList<>(channel.pendingTrades);
+        channel.clear();
+        for (MarketDataSubscription subscription : channel.subscribers) {
+            subscription.offer(book, sequence, bids, asks, trades);
+        }
+    }
+
+    public void shutdown() {
+        deliveryPool.shutdownNow();
+        try {
+            deliveryPool.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // New absolute state of one price level at a scaled price; quantity 0 means the level was removed
+    public static final class LevelUpdate {
+        private final long price;
+        private final long quantity;
+        private final int orderCount;
+
+        LevelUpdate(long price, long quantity, int orderCount) {
+            this.price = price;
+            this.quantity = quantity;
+            this.orderCount = orderCount;
+        }
+
+        public long getPrice() {
+            return price;
+        }
+
+        public long getQuantity() {
+            return quantity;
+        }
+
+        public int getOrderCount() {
+            return orderCount;
+        }
+    }
+
+    // Pending changes are only touched by the book's writer; subscribers are added and removed from anywhere
+    private static final class BookChannel {
+        private final List<MarketDataSubscription> subscribers = new CopyOnWriteArrayList<>();
+        private final Map<Long, LevelUpdate> pendingBids = new LinkedHashMap<>();
+        private final Map<Long, LevelUpdate> pendingAsks = new LinkedHashMap<>();
+        private final List<Trade> pendingTrades = new ArrayList<>();
+        private long sequence;
+
+        private boolean isClean() {
+            return pendingBids.isEmpty() && pendingAsks.isEmpty() && pendingTrades.isEmpty();
+        }
+
+        private void clear() {
+            pendingBids.clear();
+            pendingAsks.clear();
+            pendingTrades.clear();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.exchange.marketdata;
+
+import java.io.IOException;
+
+// Transport a subscription writes its events to (an SSE stream, a socket, a test collector)
+@FunctionalInterface
+public interface MarketDataSink {
+    void send(String event, Object payload) throws IOException;
+}
@@ -0,0 +1,191 @@
+package com.exchange.marketdata;
+
+import com.exchange.model.Prices;
+import com.exchange.model.Trade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One client's view of the market data stream.
+ *
+ * Updates are merged into per-book pending state instead of queued: a level that changes
+ * several times before the client is written to is sent once with its latest state, and
+ * trade prints beyond the configured bound are dropped oldest-first and reported as a count.
+ * Memory per client is therefore bounded by the number of distinct levels, however far it
+ * falls behind. At most one delivery task per subscription runs at a time.
+ */
+public class MarketDataSubscription {
+    private static final Logger logger = LoggerFactory.getLogger(MarketDataSubscription.class);
+
+    private final MarketDataPublisher publisher;
+    private final MarketDataSink sink;
+    private final Runnable onClose;
+    private final Executor deliveryPool;
+    private final int maxPendingTrades;
+
+    // Guarded by this
+    private final Map<String, PendingBook> pending = new LinkedHashMap<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    MarketDataSubscription(MarketDataPublisher publisher, MarketDataSink sink, Runnable onClose,
+                           Executor deliveryPool, int maxPendingTrades) {
+        this.publisher = publisher;
+        this.sink = sink;
+        this.onClose = onClose;
+        this.deliveryPool = deliveryPool;
+        this.maxPendingTrades = maxPendingTrades;
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    // Queue the full depth of a book; everything offered for it afterwards is a delta on top
+    public void offerSnapshot(String book, long sequence, Map<String, List<List<Double>>> depth) {
+        synchronized (this) {
+            PendingBook state = new PendingBook();
+            state.snapshot = depth;
+            state.snapshotSequence = sequence;
+            pending.put(book, state);
+        }
+        scheduleDrain();
+    }
+
+    void offer(String book, long sequence, List<MarketDataPublisher.LevelUpdate> bids,
+               List<MarketDataPublisher.LevelUpdate> asks, List<Trade> trades) {
+        if (closed.get()) {
+            return;
+        }
+        synchronized (this) {
+            PendingBook state = pending.computeIfAbsent(book, name -> new PendingBook());
+            if (state.fromSequence == 0) {
+                state.fromSequence = sequence;
+            }
+            state.toSequence = sequence;
+            for (MarketDataPublisher.LevelUpdate level : bids) {
+                state.bids.put(level.getPrice(), level);
+            }
+            for (MarketDataPublisher.LevelUpdate level : asks) {
+                state.asks.put(level.getPrice(), level);
+            }
+            for (Trade trade : trades) {
+                if (state.trades.size() == maxPendingTrades) {
+                    state.trades.pollFirst();
+                    state.droppedTrades++;
+                }
+                state.trades.addLast(trade);
+            }
+        }
+        scheduleDrain();
+    }
+
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            publisher.detach(this);
+            synchronized (this) {
+                pending.clear();
+            }
+            if (onClose != null) {
+                onClose.run();
+            }
+        }
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                deliveryPool.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                close();
+            }
+        }
+    }
+
+    private void drain() {
+        while (!closed.get()) {
+            Map<String, PendingBook> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    draining.set(false);
+                    return;
+                }
+                batch = new LinkedHashMap<>(pending);
+                pending.clear();
+            }
+            try {
+                for (Map.Entry<String, PendingBook> entry : batch.entrySet()) {
+                    send(entry.getKey(), entry.getValue());
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.debug("Closing market data subscription: {}", e.getMessage());
+                close();
+            }
+        }
+        draining.set(false);
+    }
+
+    private void send(String book, PendingBook state) throws IOException {
+        if (state.snapshot != null) {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("book", book);
+            snapshot.put("sequence", state.snapshotSequence);
+            snapshot.put("buy", state.snapshot.get("buy"));
+            snapshot.put("sell", state.snapshot.get("sell"));
+            sink.send("snapshot", snapshot);
+        }
+        if (!state.bids.isEmpty() || !state.asks.isEmpty()) {
+            Map<String, Object> depth = new LinkedHashMap<>();
+            depth.put("book", book);
+            depth.put("fromSequence", state.fromSequence);
+            depth.put("sequence", state.toSequence);
+            depth.put("buy", toLevels(state.bids.values()));
+            depth.put("sell", toLevels(state.asks.values()));
+            sink.send("depth", depth);
+        }
+        if (!state.trades.isEmpty()) {
+            List<Map<String, Object>> prints = new ArrayList<>(state.trades.size());
+            for (Trade trade : state.trades) {
+                Map<String, Object> print = new LinkedHashMap<>();
+                print.put("id", trade.getId());
+                print.put("price", Prices.toDouble(trade.getPrice()));
+                print.put("quantity", trade.getQuantity());
+                print.put("timestamp", trade.getTimestamp());
+                prints.add(print);
+            }
+            Map<String, Object> message = new LinkedHashMap<>();
+            message.put("book", book);
+            message.put("sequence", state.toSequence);
+            message.put("trades", prints);
+            message.put("dropped", state.droppedTrades);
+            sink.send("trade", message);
+        }
+    }
+
+    // [price, quantity, orderCount] per changed level; a quantity of 0 removes the level
+    private static List<List<Double>> toLevels(Collection<MarketDataPublisher.LevelUpdate> levels) {
+        List<List<Double>> result = new ArrayList<>(levels.size());
+        for (MarketDataPublisher.LevelUpdate level : levels) {
+            result.add(Arrays.asList(Prices.toDouble(level.getPrice()), (double) level.getQuantity(), (double) level.getOrderCount()));
+        }
+        return result;
+    }
+
+    private static final class PendingBook {
+        private Map<String, List<List<Double>>> snapshot;
+        private long snapshotSequence;
+        private long fromSequence;
+        private long toSequence;
+        private final Map<Long, MarketDataPublisher.LevelUpdate> bids = new LinkedHashMap<>();
+        private final Map<Long, MarketDataPublisher.LevelUpdate> asks = new LinkedHashMap<>();
+        private final ArrayDeque<Trade> trades = new ArrayDeque<>();
+        private int droppedTrades;
+    }
+}
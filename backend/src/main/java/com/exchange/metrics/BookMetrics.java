@@ -0,0 +1,98 @@
+package com.exchange.metrics;
+
+import com.exchange.model.Order;
+import com.exchange.model.OrderBook;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters, depth gauges and latency histograms for one order book. Counters are striped
+ * {@link LongAdder}s so threads outside the book's writer (validation rejects, for example)
+ * never contend with it; the gauges are written by the writer after every command.
+ */
+public final class BookMetrics {
+    private final String book;
+    private final LongAdder orders = new LongAdder();
+    private final LongAdder fills = new LongAdder();
+    private final LongAdder filledQuantity = new LongAdder();
+    private final LongAdder cancels = new LongAdder();
+    private final LongAdder amends = new LongAdder();
+    private final LongAdder rejects = new LongAdder();
+    private final LatencyRecorder queueTime = new LatencyRecorder();
+    private final LatencyRecorder matchTime = new LatencyRecorder();
+
+    private volatile int restingOrders;
+    private volatile int bidLevels;
+    private volatile int askLevels;
+
+    // Writer thread only; picks which trades go to the trade log
+    long tradeCount;
+
+    BookMetrics(String book) {
+        this.book = book;
+    }
+
+    public String getBook() {
+        return book;
+    }
+
+    public void orderAccepted() {
+        orders.increment();
+    }
+
+    public void fill(int quantity) {
+        fills.increment();
+        filledQuantity.add(quantity);
+    }
+
+    public void cancelled(int count) {
+        cancels.add(count);
+    }
+
+    public void amended() {
+        amends.increment();
+    }
+
+    public void rejected() {
+        rejects.increment();
+    }
+
+    // Time a command waited for the book's writer
+    public void recordQueueTime(long nanos) {
+        queueTime.record(nanos);
+    }
+
+    // Time the writer spent running a command
+    public void recordMatchTime(long nanos) {
+        matchTime.record(nanos);
+    }
+
+    public int getRestingOrders() {
+        return restingOrders;
+    }
+
+    // Writer thread only
+    public void updateDepth(OrderBook orderBook) {
+        restingOrders = orderBook.getRestingOrderCount();
+        bidLevels = orderBook.getLevelCount(Order.OrderType.BUY);
+        askLevels = orderBook.getLevelCount(Order.OrderType.SELL);
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("orders", orders.sum());
+        result.put("fills", fills.sum());
+        result.put("filledQuantity", filledQuantity.sum());
+        result.put("cancels", cancels.sum());
+        result.put("amends", amends.sum());
+        result.put("rejects", rejects.sum());
+        result.put("restingOrders", restingOrders);
+        result.put("bidLevels", bidLevels);
+        result.put("askLevels", askLevels);
+        result.put("queueTime", queueTime.summary());
+        result.put("matchTime", matchTime.summary());
+        return result;
+    }
+}
@@ -0,0 +1,67 @@
+package com.exchange.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Engine-wide instrumentation: one {@link BookMetrics} per book plus end-to-end latency per
+ * request type, measured from entering the service to returning (including any journal wait).
+ */
+public final class ExchangeMetrics {
+    private final Map<String, BookMetrics> books = new ConcurrentHashMap<>();
+    private final Map<String, LatencyRecorder> requests = new ConcurrentHashMap<>();
+    // Rejects that cannot be attributed to a known book
+    private final LongAdder unknownBookRejects = new LongAdder();
+
+    public BookMetrics register(String book) {
+        return books.computeIfAbsent(book, BookMetrics::new);
+    }
+
+    // A delisted book's counters and histograms go with it
+    public void unregister(String book) {
+        books.remove(book);
+    }
+
+    // Null for books that do not exist
+    public BookMetrics book(String book) {
+        return book == null ? null : books.get(book);
+    }
+
+    public void rejected(String book) {
+        BookMetrics metrics = book(book);
+        if (metrics != null) {
+            metrics.rejected();
+        } else {
+            unknownBookRejects.increment();
+        }
+    }
+
+    public void recordRequest(String type, long startNanos) {
+        requests.computeIfAbsent(type, name -> new LatencyRecorder()).record(System.nanoTime() - startNanos);
+    }
+
+    public Map<String, Object> snapshot(TradeLog tradeLog) {
+        Map<String, Object> bookSection = new TreeMap<>();
+        for (BookMetrics metrics : books.values()) {
+            bookSection.put(metrics.getBook(), metrics.toMap());
+        }
+        Map<String, Object> requestSection = new TreeMap<>();
+        for (Map.Entry<String, LatencyRecorder> entry : requests.entrySet()) {
+            requestSection.put(entry.getKey(), entry.getValue().summary());
+        }
+        Map<String, Object> tradeLogSection = new LinkedHashMap<>();
+        tradeLogSection.put("sampleEvery", tradeLog.getSampleEvery());
+        tradeLogSection.put("logged", tradeLog.getLogged());
+        tradeLogSection.put("dropped", tradeLog.getDropped());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("books", bookSection);
+        result.put("requests", requestSection);
+        result.put("unknownBookRejects", unknownBookRejects.sum());
+        result.put("tradeLog", tradeLogSection);
+        return result;
+    }
+}
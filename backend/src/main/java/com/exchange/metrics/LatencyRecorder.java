@@ -0,0 +1,44 @@
+package com.exchange.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histogram that is cheap to record into from any thread.
+ *
+ * Recording goes into an HdrHistogram {@link Recorder}, which is wait-free and does not
+ * allocate since its range is fixed. Readers swap out the interval histogram and fold it into
+ * a running total, so a read never blocks a writer.
+ */
+public final class LatencyRecorder {
+    private static final long MAX_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Recorder recorder = new Recorder(MAX_NANOS, 3);
+    // Reader side only, guarded by this
+    private final Histogram total = new Histogram(MAX_NANOS, 3);
+    private Histogram interval;
+
+    public void record(long nanos) {
+        recorder.recordValue(Math.max(0, Math.min(nanos, MAX_NANOS)));
+    }
+
+    // Count and percentiles in microseconds since startup
+    public synchronized Map<String, Object> summary() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", total.getTotalCount());
+        summary.put("meanUs", total.getMean() / 1000.0);
+        summary.put("p50Us", total.getValueAtPercentile(50) / 1000.0);
+        summary.put("p90Us", total.getValueAtPercentile(90) / 1000.0);
+        summary.put("p99Us", total.getValueAtPercentile(99) / 1000.0);
+        summary.put("p999Us", total.getValueAtPercentile(99.9) / 1000.0);
+        summary.put("maxUs", total.getMaxValue() / 1000.0);
+        return summary;
+    }
+}
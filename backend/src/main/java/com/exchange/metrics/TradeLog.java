@@ -0,0 +1,81 @@
+package com.exchange.metrics;
+
+import com.exchange.engine.RingBuffer;
+import com.exchange.model.Prices;
+import com.exchange.model.Trade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous, sampled trade logging. Book writers hand every Nth trade to a bounded queue
+ * and return immediately; a background thread does the formatting and I/O. If the logger
+ * falls behind, trades are dropped and counted rather than slowing matching down.
+ */
+public final class TradeLog {
+    private static final Logger logger = LoggerFactory.getLogger("com.exchange.trades");
+
+    private final RingBuffer<Trade> queue;
+    private final int sampleEvery;
+    private final LongAdder logged = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public TradeLog(int capacity, int sampleEvery) {
+        this.queue = new RingBuffer<>(capacity);
+        this.sampleEvery = Math.max(1, sampleEvery);
+        this.thread = new Thread(this::run, "trade-log");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // Book writer only; the metrics' trade counter decides whether this trade is sampled
+    public void offer(BookMetrics book, Trade trade) {
+        if (book.tradeCount++ % sampleEvery != 0 || !logger.isInfoEnabled()) {
+            return;
+        }
+        if (!queue.offer(trade)) {
+            dropped.increment();
+        }
+    }
+
+    public long getLogged() {
+        return logged.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public int getSampleEvery() {
+        return sampleEvery;
+    }
+
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            Trade trade = queue.poll();
+            if (trade == null) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                continue;
+            }
+            logger.info("Match executed: {} {} @ ${} - Buyer: {}, Seller: {}",
+                trade.getQuantity(), trade.getSymbol(), Prices.toDouble(trade.getPrice()),
+                trade.getBuyerUsername(), trade.getSellerUsername());
+            logged.increment();
+        }
+    }
+}
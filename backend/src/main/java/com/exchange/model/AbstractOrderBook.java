@@ -0,0 +1,227 @@
+package com.exchange.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Order bookkeeping shared by the book implementations.
+ *
+ * Every resting order is indexed by id, and the order itself is the handle into its price
+ * level's intrusive queue. Cancel and amend therefore look the order up and unlink it in
+ * constant time; subclasses only decide how price levels are stored and ranked.
+ *
+ * Resting orders are also threaded onto a per-user intrusive list, so mass cancel for one
+ * user walks only that user's orders.
+ */
+public abstract class AbstractOrderBook implements OrderBook {
+    private final String name;
+    private Map<String, Order> restingOrders = new HashMap<>();
+    private Map<String, UserOrders> ordersByUser = new HashMap<>();
+    private DepthListener depthListener;
+    // Only the book's writer increments it; volatile so pollers can compare it without going through the writer
+    private volatile long version;
+
+    protected AbstractOrderBook(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void setDepthListener(DepthListener listener) {
+        this.depthListener = listener;
+    }
+
+    // Every mutation of the book ends up here
+    private void levelChanged(PriceLevel level) {
+        version++;
+        if (depthListener != null) {
+            depthListener.onLevelChanged(name, level.getSide(), level.getPrice(),
+                level.getTotalQuantity(), level.getOrderCount());
+        }
+    }
+
+    // Level for the order's side and price, created if the book does not have one yet
+    protected abstract PriceLevel levelFor(Order order);
+
+    // Called once a level has no orders left so the implementation can drop or recycle it
+    protected abstract void releaseLevel(PriceLevel level);
+
+    // Best non-empty level on the given side, or null
+    protected abstract PriceLevel bestLevel(Order.OrderType side);
+
+    // Visit the non-empty levels of one side from best to worst
+    protected abstract void forEachLevel(Order.OrderType side, Consumer<PriceLevel> action);
+
+    @Override
+    public void addOrder(Order order) {
+        PriceLevel level = levelFor(order);
+        level.add(order);
+        levelChanged(level);
+        restingOrders.put(order.getId(), order);
+        ordersByUser.computeIfAbsent(order.getUsername(), k -> new UserOrders()).add(order);
+    }
+
+    @Override
+    public Order getOrder(String orderId) {
+        return restingOrders.get(orderId);
+    }
+
+    @Override
+    public List<Order> getOrders(Order.OrderType side) {
+        List<Order> orders = new ArrayList<>();
+        forEachLevel(side, level -> {
+            for (Order order : level) {
+                orders.add(order);
+            }
+        });
+        return orders;
+    }
+
+    @Override
+    public int getRestingOrderCount() {
+        return restingOrders.size();
+    }
+
+    public int getRestingOrderCount(String username) {
+        UserOrders orders = ordersByUser.get(username);
+        return orders == null ? 0 : orders.count;
+    }
+
+    @Override
+    public Order getBestOrder(Order.OrderType side) {
+        PriceLevel level = bestLevel(side);
+        return level == null ? null : level.peek();
+    }
+
+    @Override
+    public void onFill(Order restingOrder, int filledQuantity) {
+        PriceLevel level = restingOrder.level;
+        level.adjustQuantity(-filledQuantity);
+        if (restingOrder.getQuantity() == 0) {
+            unlink(restingOrder);
+        } else {
+            levelChanged(level);
+        }
+    }
+
+    @Override
+    public boolean removeOrder(String orderId) {
+        Order order = restingOrders.get(orderId);
+        if (order == null) {
+            return false;
+        }
+        unlink(order);
+        return true;
+    }
+
+    @Override
+    public boolean amendOrder(String orderId, int newQuantity) {
+        Order order = restingOrders.get(orderId);
+        if (order == null) {
+            return false;
+        }
+        if (newQuantity > order.getQuantity()) {
+            // Increasing size loses time priority: move the order to the back of its level
+            unlink(order);
+            order.setQuantity(newQuantity);
+            addOrder(order);
+        } else {
+            order.level.adjustQuantity(newQuantity - order.getQuantity());
+            order.setQuantity(newQuantity);
+            levelChanged(order.level);
+        }
+        return true;
+    }
+
+    @Override
+    public void compact() {
+        // Hash tables never shrink, so copy the live entries into tables sized for them
+        restingOrders = new HashMap<>(restingOrders);
+        ordersByUser = new HashMap<>(ordersByUser);
+        compactLevels();
+    }
+
+    // Drop price level storage that holds no orders; the default keeps nothing to drop
+    protected void compactLevels() {
+    }
+
+    // Level price and aggregate quantity as the [price, quantity] pair used by the book views
+    protected static List<Double> toDepthEntry(PriceLevel level) {
+        return Arrays.asList(Prices.toDouble(level.getPrice()), (double) level.getTotalQuantity());
+    }
+
+    @Override
+    public List<Order> removeAllOrdersForUser(String username) {
+        UserOrders orders = ordersByUser.get(username);
+        if (orders == null) {
+            return Collections.emptyList();
+        }
+        List<Order> removed = new ArrayList<>(orders.count);
+        while (orders.head != null) {
+            Order order = orders.head;
+            removed.add(order);
+            unlink(order);
+        }
+        return removed;
+    }
+
+    private void unlink(Order order) {
+        PriceLevel level = order.level;
+        level.remove(order);
+        restingOrders.remove(order.getId());
+        levelChanged(level);
+        if (level.isEmpty()) {
+            releaseLevel(level);
+        }
+
+        UserOrders orders = ordersByUser.get(order.getUsername());
+        orders.remove(order);
+        if (orders.head == null) {
+            ordersByUser.remove(order.getUsername());
+        }
+    }
+
+    // Head of one user's intrusive list of resting orders in this book
+    private static final class UserOrders {
+        private Order head;
+        private int count;
+
+        private void add(Order order) {
+            order.userPrev = null;
+            order.userNext = head;
+            if (head != null) {
+                head.userPrev = order;
+            }
+            head = order;
+            count++;
+        }
+
+        private void remove(Order order) {
+            if (order.userPrev == null) {
+                head = order.userNext;
+            } else {
+                order.userPrev.userNext = order.userNext;
+            }
+            if (order.userNext != null) {
+                order.userNext.userPrev = order.userPrev;
+            }
+            order.userPrev = null;
+            order.userNext = null;
+            count--;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package com.exchange.model;
+
+// Receives the new state of a price level (at a scaled price) whenever it changes; a zero quantity means the level is gone
+public interface DepthListener {
+    void onLevelChanged(String book, Order.OrderType side, long price, long quantity, int orderCount);
+}
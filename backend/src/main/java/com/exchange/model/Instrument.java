@@ -0,0 +1,70 @@
+package com.exchange.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Price and quantity grid of one book. Prices are positive whole multiples of the tick size
+ * (a scaled price, see {@link Prices}) and quantities positive whole multiples of the lot size.
+ */
+public final class Instrument {
+    private final long tickSize;
+    private final int lotSize;
+
+    public Instrument(long tickSize, int lotSize) {
+        if (tickSize <= 0) {
+            throw new IllegalArgumentException("Tick size must be positive");
+        }
+        if (lotSize <= 0) {
+            throw new IllegalArgumentException("Lot size must be positive");
+        }
+        this.tickSize = tickSize;
+        this.lotSize = lotSize;
+    }
+
+    public static Instrument of(BigDecimal tickSize, int lotSize) {
+        return new Instrument(Prices.toScaled(tickSize), lotSize);
+    }
+
+    public long getTickSize() {
+        return tickSize;
+    }
+
+    public int getLotSize() {
+        return lotSize;
+    }
+
+    public boolean isOnGrid(long price) {
+        return price > 0 && price % tickSize == 0;
+    }
+
+    // The scaled price of an order, rejected unless it lies on the tick grid
+    public long toPrice(String book, BigDecimal price) {
+        if (price == null || price.signum() <= 0) {
+            throw new IllegalArgumentException("Price must be positive");
+        }
+        long scaled;
+        try {
+            scaled = Prices.toScaled(price);
+        } catch (IllegalArgumentException e) {
+            scaled = -1;
+        }
+        if (!isOnGrid(scaled)) {
+            throw new IllegalArgumentException("Price " + price.toPlainString() + " is not a multiple of the tick size "
+                + Prices.toDecimal(tickSize).stripTrailingZeros().toPlainString() + " for " + book);
+        }
+        return scaled;
+    }
+
+    // The quantity of an order, rejected unless it is a whole number of lots
+    public int toQuantity(String book, double quantity) {
+        if (!(quantity > 0) || quantity > Integer.MAX_VALUE || quantity != Math.rint(quantity)) {
+            throw new IllegalArgumentException("Quantity must be a positive integer");
+        }
+        int whole = (int) quantity;
+        if (whole % lotSize != 0) {
+            throw new IllegalArgumentException("Quantity " + whole + " is not a multiple of the lot size "
+                + lotSize + " for " + book);
+        }
+        return whole;
+    }
+}
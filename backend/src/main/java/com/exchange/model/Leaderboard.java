@@ -0,0 +1,270 @@
+package com.exchange.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Users ranked by realized profit (highest first, ties broken by username). Profits are
+ * scaled like prices (see {@link Prices}), so equal profits compare equal.
+ *
+ * The ranking is a persistent treap whose nodes carry subtree sizes, so a profit change
+ * rewrites only the O(log n) nodes on its path and publishes the new root with one volatile
+ * write. Readers take whatever root is current and walk it without locking: a page of K
+ * entries at any offset costs O(log n + K) and a rank lookup O(log n), and neither ever
+ * waits on the matching threads that update profits.
+ *
+ * Matching threads never touch the tree either: a profit change only records the user's
+ * latest profit in a pending map, coalesced per user, and {@link #publish()} folds the
+ * pending changes into the tree under the write lock. The mark-to-market thread publishes
+ * after each pass, and reads publish first so they always see every realized fill.
+ */
+public final class Leaderboard {
+    private final Object writeLock = new Object();
+    private final Map<String, Long> profits = new ConcurrentHashMap<>();
+    // Latest profit per user not yet folded into the tree
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+    private volatile Node root;
+    private volatile long version;
+
+    public int size() {
+        publish();
+        return size(root);
+    }
+
+    // Bumped whenever a user joins or moves
+    public long getVersion() {
+        publish();
+        return version;
+    }
+
+    // Register a user at the given profit if it is not ranked yet
+    public void add(String username, long profit) {
+        synchronized (writeLock) {
+            if (profits.putIfAbsent(username, profit) == null) {
+                root = insert(root, new Node(username, profit, priority(username), null, null));
+                version++;
+            }
+        }
+    }
+
+    // Record a user's new profit; called by the user while its own profit update is held, so the latest call wins
+    public void update(String username, long profit) {
+        pending.put(username, profit);
+    }
+
+    // Move every user with a pending profit to their latest one
+    public void publish() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        synchronized (writeLock) {
+            for (String username : pending.keySet()) {
+                Long profit = pending.remove(username);
+                if (profit == null) {
+                    continue;
+                }
+                Long previous = profits.put(username, profit);
+                if (previous != null && previous.longValue() == profit) {
+                    continue;
+                }
+                Node updated = previous == null ? root : delete(root, username, previous);
+                root = insert(updated, new Node(username, profit, priority(username), null, null));
+                version++;
+            }
+        }
+    }
+
+    /**
+     * Up to {@code limit} entries starting at zero-based {@code offset}, best first. Each entry
+     * is the ranked username with the profit it was ranked at.
+     */
+    public List<Entry> page(int offset, int limit) {
+        publish();
+        Node node = root;
+        List<Entry> result = new ArrayList<>(Math.max(0, Math.min(limit, size(node) - offset)));
+        // Descend to the offset-th node, keeping the ancestors still to be visited in order
+        Deque<Node> path = new ArrayDeque<>();
+        int skip = offset;
+        while (node != null) {
+            int leftSize = size(node.left);
+            if (skip < leftSize) {
+                path.push(node);
+                node = node.left;
+            } else if (skip == leftSize) {
+                path.push(node);
+                break;
+            } else {
+                skip -= leftSize + 1;
+                node = node.right;
+            }
+        }
+        int rank = offset + 1;
+        while (!path.isEmpty() && result.size() < limit) {
+            Node next = path.pop();
+            result.add(new Entry(rank++, next.username, next.profit));
+            for (Node child = next.right; child != null; child = child.left) {
+                path.push(child);
+            }
+        }
+        return result;
+    }
+
+    // One-based rank of the user, or null if they are not on the board
+    public Entry rankOf(String username) {
+        publish();
+        Node snapshot = root;
+        Long profit = profits.get(username);
+        if (profit == null) {
+            return null;
+        }
+        int rank = rank(snapshot, username, profit);
+        if (rank < 0) {
+            // The profit moved between reading the root and the map; settle it under the lock
+            synchronized (writeLock) {
+                snapshot = root;
+                profit = profits.get(username);
+                rank = rank(snapshot, username, profit);
+            }
+        }
+        return new Entry(rank, username, profit);
+    }
+
+    private static int rank(Node node, String username, long profit) {
+        int before = 0;
+        while (node != null) {
+            int cmp = compare(username, profit, node);
+            if (cmp == 0) {
+                return before + size(node.left) + 1;
+            }
+            if (cmp < 0) {
+                node = node.left;
+            } else {
+                before += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return -1;
+    }
+
+    // Higher profit sorts first, then username ascending
+    private static int compare(String username, long profit, Node node) {
+        int cmp = Long.compare(node.profit, profit);
+        return cmp != 0 ? cmp : username.compareTo(node.username);
+    }
+
+    private static Node insert(Node node, Node added) {
+        if (node == null) {
+            return added;
+        }
+        if (added.priority > node.priority) {
+            Node[] split = split(node, added.username, added.profit);
+            return new Node(added.username, added.profit, added.priority, split[0], split[1]);
+        }
+        if (compare(added.username, added.profit, node) < 0) {
+            return node.withChildren(insert(node.left, added), node.right);
+        }
+        return node.withChildren(node.left, insert(node.right, added));
+    }
+
+    // Nodes ordered before the key and nodes ordered after it; the key itself is never present
+    private static Node[] split(Node node, String username, long profit) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (compare(username, profit, node) < 0) {
+            Node[] split = split(node.left, username, profit);
+            split[1] = node.withChildren(split[1], node.right);
+            return split;
+        }
+        Node[] split = split(node.right, username, profit);
+        split[0] = node.withChildren(node.left, split[0]);
+        return split;
+    }
+
+    private static Node delete(Node node, String username, long profit) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = compare(username, profit, node);
+        if (cmp < 0) {
+            return node.withChildren(delete(node.left, username, profit), node.right);
+        }
+        if (cmp > 0) {
+            return node.withChildren(node.left, delete(node.right, username, profit));
+        }
+        return merge(node.left, node.right);
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            return left.withChildren(left.left, merge(left.right, right));
+        }
+        return right.withChildren(merge(left, right.left), right.right);
+    }
+
+    // Derived from the name so the tree shape does not depend on update order
+    private static int priority(String username) {
+        int h = username.hashCode() * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    public static final class Entry {
+        private final int rank;
+        private final String username;
+        private final long realizedProfit;
+
+        private Entry(int rank, String username, long realizedProfit) {
+            this.rank = rank;
+            this.username = username;
+            this.realizedProfit = realizedProfit;
+        }
+
+        public int getRank() {
+            return rank;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public long getRealizedProfit() {
+            return realizedProfit;
+        }
+    }
+
+    private static final class Node {
+        private final String username;
+        private final long profit;
+        private final int priority;
+        private final Node left;
+        private final Node right;
+        private final int size;
+
+        private Node(String username, long profit, int priority, Node left, Node right) {
+            this.username = username;
+            this.profit = profit;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + Leaderboard.size(left) + Leaderboard.size(right);
+        }
+
+        private Node withChildren(Node left, Node right) {
+            return new Node(username, profit, priority, left, right);
+        }
+    }
+}
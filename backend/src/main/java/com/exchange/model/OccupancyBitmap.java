@@ -0,0 +1,59 @@
+package com.exchange.model;
+
+/**
+ * One bit per slot of a price ladder, set while the slot holds a non-empty level, so the next
+ * occupied slot in either direction is found a 64-slot word at a time.
+ */
+public final class OccupancyBitmap {
+    private final long[] words;
+    private final int size;
+
+    public OccupancyBitmap(int size) {
+        this.words = new long[(size + 63) >>> 6];
+        this.size = size;
+    }
+
+    public void set(int index) {
+        words[index >>> 6] |= 1L << index;
+    }
+
+    public void clear(int index) {
+        words[index >>> 6] &= ~(1L << index);
+    }
+
+    // Lowest occupied index >= from, or -1
+    public int next(int from) {
+        if (from >= size) {
+            return -1;
+        }
+        int word = from >>> 6;
+        long bits = words[word] & (-1L << from);
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == words.length) {
+                return -1;
+            }
+            bits = words[word];
+        }
+    }
+
+    // Highest occupied index <= from, or -1
+    public int previous(int from) {
+        if (from < 0) {
+            return -1;
+        }
+        int word = from >>> 6;
+        long bits = words[word] & (-1L >>> (63 - (from & 63)));
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+            }
+            if (--word < 0) {
+                return -1;
+            }
+            bits = words[word];
+        }
+    }
+}
@@ -6,40 +6,61 @@ public class Order {
     private final String id;
     private final String book;
     private final OrderType type;
-    private final double price;
+    private final long price; // Scaled, see Prices
     private int quantity;
     private final String username;
     private OrderStatus status;
     private final long timestamp;
-    private Double lastExecutionPrice; // Price at which the order was last executed
+    private long lastExecutionPrice; // Scaled price at which the order was last executed, 0 before its first fill
+    private volatile long closedAt; // When the order was filled or cancelled, 0 while it can still trade
     
-    public Order(String book, OrderType type, double price, int quantity, String username) {
-        this.id = UUID.randomUUID().toString();
+    // Intrusive links into the price level queue of the book the order rests in
+    Order prev;
+    Order next;
+    PriceLevel level;
+    
+    // Intrusive links into the book's per-user list of resting orders
+    Order userPrev;
+    Order userNext;
+    
+    public Order(String book, OrderType type, long price, int quantity, String username) {
+        this(UUID.randomUUID().toString(), book, type, price, quantity, username, System.currentTimeMillis());
+    }
+    
+    // Rebuild an order with a known id and acceptance time (journal replay, snapshots)
+    public Order(String id, String book, OrderType type, long price, int quantity, String username, long timestamp) {
+        this.id = id;
         this.book = book;
         this.type = type;
         this.price = price;
         this.quantity = quantity;
         this.username = username;
         this.status = OrderStatus.ACTIVE;
-        this.timestamp = System.currentTimeMillis();
-        this.lastExecutionPrice = null;
+        this.timestamp = timestamp;
     }
 
     // Getters
     public String getId() { return id; }
     public String getBook() { return book; }
     public OrderType getType() { return type; }
-    public double getPrice() { return price; }
+    public long getPrice() { return price; }
     public int getQuantity() { return quantity; }
     public String getUsername() { return username; }
     public OrderStatus getStatus() { return status; }
     public long getTimestamp() { return timestamp; }
-    public Double getLastExecutionPrice() { return lastExecutionPrice; }
+    public long getLastExecutionPrice() { return lastExecutionPrice; }
+    public long getClosedAt() { return closedAt; }
 
     // Setters
     public void setQuantity(int quantity) { this.quantity = quantity; }
-    public void setStatus(OrderStatus status) { this.status = status; }
-    public void setLastExecutionPrice(Double lastExecutionPrice) { this.lastExecutionPrice = lastExecutionPrice; }
+    public void setStatus(OrderStatus status) {
+        this.status = status;
+        // Written after the status so a thread that sees closedAt also sees the final status
+        if ((status == OrderStatus.FILLED || status == OrderStatus.CANCELLED) && closedAt == 0) {
+            closedAt = System.currentTimeMillis();
+        }
+    }
+    public void setLastExecutionPrice(long lastExecutionPrice) { this.lastExecutionPrice = lastExecutionPrice; }
 
     // Enum for order types
     public enum OrderType {
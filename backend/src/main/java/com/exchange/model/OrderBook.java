@@ -1,127 +1,60 @@
 package com.exchange.model;
 
-import java.util.*;
-
-public class OrderBook {
-    private final String name;
-    private final Map<Double, LinkedList<Order>> buyOrders;
-    private final Map<Double, LinkedList<Order>> sellOrders;
-
-    public OrderBook(String name) {
-        this.name = name;
-        // TreeMap to keep buy orders sorted by price (descending)
-        this.buyOrders = new TreeMap<>(Collections.reverseOrder());
-        // TreeMap to keep sell orders sorted by price (ascending)
-        this.sellOrders = new TreeMap<>();
-    }
+import java.util.List;
+import java.util.Map;
 
-    public String getName() {
-        return name;
-    }
+/**
+ * Resting orders for one symbol, kept in price-time priority. Prices are scaled longs on the
+ * book's tick grid (see {@link Instrument}); order entry rejects anything else before it gets here.
+ *
+ * Implementations are single-writer: the matching engine guarantees that only one thread
+ * mutates a book at a time, so they do not synchronize internally.
+ */
+public interface OrderBook {
 
-    public Map<Double, LinkedList<Order>> getBuyOrders() {
-        return buyOrders;
-    }
+    String getName();
 
-    public Map<Double, LinkedList<Order>> getSellOrders() {
-        return sellOrders;
-    }
+    // Bumped on every change to the resting orders; safe to read from any thread
+    long getVersion();
 
-    public void addOrder(Order order) {
-        if (order.getType() == Order.OrderType.BUY) {
-            buyOrders.computeIfAbsent(order.getPrice(), k -> new LinkedList<>()).add(order);
-        } else {
-            sellOrders.computeIfAbsent(order.getPrice(), k -> new LinkedList<>()).add(order);
-        }
-    }
+    // Observer told about every price level change (used for streaming depth); may be null
+    void setDepthListener(DepthListener listener);
 
-    public boolean removeOrder(String orderId) {
-        // Check buy orders
-        for (LinkedList<Order> orders : buyOrders.values()) {
-            for (Iterator<Order> it = orders.iterator(); it.hasNext();) {
-                Order order = it.next();
-                if (order.getId().equals(orderId)) {
-                    it.remove();
-                    return true;
-                }
-            }
-        }
-
-        // Check sell orders
-        for (LinkedList<Order> orders : sellOrders.values()) {
-            for (Iterator<Order> it = orders.iterator(); it.hasNext();) {
-                Order order = it.next();
-                if (order.getId().equals(orderId)) {
-                    it.remove();
-                    return true;
-                }
-            }
-        }
-        
-        return false;
-    }
+    void addOrder(Order order);
 
-    public int removeAllOrdersForUser(String username) {
-        int count = 0;
-        
-        // Remove from buy orders
-        for (LinkedList<Order> orders : buyOrders.values()) {
-            for (Iterator<Order> it = orders.iterator(); it.hasNext();) {
-                Order order = it.next();
-                if (order.getUsername().equals(username)) {
-                    it.remove();
-                    count++;
-                }
-            }
-        }
-        
-        // Remove from sell orders
-        for (LinkedList<Order> orders : sellOrders.values()) {
-            for (Iterator<Order> it = orders.iterator(); it.hasNext();) {
-                Order order = it.next();
-                if (order.getUsername().equals(username)) {
-                    it.remove();
-                    count++;
-                }
-            }
-        }
-        
-        // Clean up empty price levels
-        buyOrders.entrySet().removeIf(entry -> entry.getValue().isEmpty());
-        sellOrders.entrySet().removeIf(entry -> entry.getValue().isEmpty());
-        
-        return count;
-    }
+    // Resting order with this id, or null if it is not in the book
+    Order getOrder(String orderId);
+
+    boolean removeOrder(String orderId);
+
+    // Change the remaining quantity of a resting order; increasing it sends the order to the back of its level
+    boolean amendOrder(String orderId, int newQuantity);
+
+    // Remove every resting order owned by the user and return them; costs O(that user's orders)
+    List<Order> removeAllOrdersForUser(String username);
+
+    // Order at the front of the best price level on the given side, or null when that side is empty
+    Order getBestOrder(Order.OrderType side);
+
+    // Called after a fill reduced the quantity of the best order on its side; drops it once fully filled
+    void onFill(Order restingOrder, int filledQuantity);
+
+    // Number of resting orders across both sides
+    int getRestingOrderCount();
+
+    // Number of non-empty price levels on one side
+    int getLevelCount(Order.OrderType side);
+
+    // Resting orders on one side in priority order: best price first, then time
+    List<Order> getOrders(Order.OrderType side);
+
+    // Aggregated quantity per price level for the best `depth` levels per side, best prices first
+    Map<String, List<List<Double>>> getAggregatedView(int depth);
+
+    // Release memory kept for reuse (emptied levels, oversized tables) once the book has gone quiet
+    void compact();
 
-    // Get aggregated book view
-    public Map<String, List<List<Double>>> getAggregatedView() {
-        Map<String, List<List<Double>>> result = new HashMap<>();
-        
-        List<List<Double>> buyList = new ArrayList<>();
-        for (Map.Entry<Double, LinkedList<Order>> entry : buyOrders.entrySet()) {
-            int totalQuantity = 0;
-            for (Order order : entry.getValue()) {
-                totalQuantity += order.getQuantity();
-            }
-            if (totalQuantity > 0) {
-                buyList.add(Arrays.asList(entry.getKey(), (double) totalQuantity));
-            }
-        }
-        
-        List<List<Double>> sellList = new ArrayList<>();
-        for (Map.Entry<Double, LinkedList<Order>> entry : sellOrders.entrySet()) {
-            int totalQuantity = 0;
-            for (Order order : entry.getValue()) {
-                totalQuantity += order.getQuantity();
-            }
-            if (totalQuantity > 0) {
-                sellList.add(Arrays.asList(entry.getKey(), (double) totalQuantity));
-            }
-        }
-        
-        result.put("buy", buyList);
-        result.put("sell", sellList);
-        
-        return result;
+    default Map<String, List<List<Double>>> getAggregatedView() {
+        return getAggregatedView(Integer.MAX_VALUE);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,99 @@
+package com.exchange.model;
+
+import java.math.BigDecimal;
+
+/**
+ * One entry of a batch order request: {"action": "place", "book": "AAPL", "type": "buy",
+ * "price": 100.5, "quantity": 10}. Cancel and amend name an orderId; replace cancels
+ * orderId and places a new order at price/quantity on the same side unless a type is given.
+ * The price is read as an exact decimal, so it is refused rather than rounded when it is off
+ * the book's tick grid.
+ */
+public class OrderInstruction {
+    public enum Action {
+        PLACE, CANCEL, AMEND, REPLACE
+    }
+
+    private Action action;
+    private String book;
+    private String type;
+    private BigDecimal price;
+    private double quantity;
+    private String orderId;
+
+    public OrderInstruction() {
+    }
+
+    public OrderInstruction(Action action, String book, String type, BigDecimal price, double quantity, String orderId) {
+        this.action = action;
+        this.book = book;
+        this.type = type;
+        this.price = price;
+        this.quantity = quantity;
+        this.orderId = orderId;
+    }
+
+    public static OrderInstruction place(String book, String type, BigDecimal price, double quantity) {
+        return new OrderInstruction(Action.PLACE, book, type, price, quantity, null);
+    }
+
+    public static OrderInstruction cancel(String book, String orderId) {
+        return new OrderInstruction(Action.CANCEL, book, null, null, 0, orderId);
+    }
+
+    public static OrderInstruction amend(String book, String orderId, double quantity) {
+        return new OrderInstruction(Action.AMEND, book, null, null, quantity, orderId);
+    }
+
+    public static OrderInstruction replace(String book, String orderId, BigDecimal price, double quantity) {
+        return new OrderInstruction(Action.REPLACE, book, null, price, quantity, orderId);
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public void setAction(Action action) {
+        this.action = action;
+    }
+
+    public String getBook() {
+        return book;
+    }
+
+    public void setBook(String book) {
+        this.book = book;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public void setPrice(BigDecimal price) {
+        this.price = price;
+    }
+
+    public double getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(double quantity) {
+        this.quantity = quantity;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(String orderId) {
+        this.orderId = orderId;
+    }
+}
@@ -3,62 +3,76 @@ package com.exchange.model;
 public class Position {
     private final String symbol;
     private int quantity;
-    private double averageCost;
-    
+    // What the open quantity cost (for a short, what selling it raised), scaled like prices
+    private long costBasis;
+
     public Position(String symbol, int quantity) {
-        this.symbol = symbol;
-        this.quantity = quantity;
-        this.averageCost = 0.0;
+        this(symbol, quantity, 0);
     }
-    
-    public Position(String symbol, int quantity, double averageCost) {
+
+    public Position(String symbol, int quantity, long costBasis) {
         this.symbol = symbol;
         this.quantity = quantity;
-        this.averageCost = averageCost;
+        this.costBasis = costBasis;
     }
-    
+
     public String getSymbol() {
         return symbol;
     }
-    
+
     public int getQuantity() {
         return quantity;
     }
-    
+
     public void setQuantity(int quantity) {
         this.quantity = quantity;
     }
-    
+
+    public long getCostBasis() {
+        return costBasis;
+    }
+
+    public void setCostBasis(long costBasis) {
+        this.costBasis = costBasis;
+    }
+
+    // Average price per share of the open quantity, for display
     public double getAverageCost() {
-        return averageCost;
+        return quantity == 0 ? 0.0 : Prices.toDouble(costBasis) / Math.abs(quantity);
     }
-    
-    public void setAverageCost(double averageCost) {
-        this.averageCost = averageCost;
+
+    // Take the cost of `closing` open shares out of the basis at the average cost and return it.
+    // Closing every share takes whatever is left, so rounding never leaves anything behind.
+    public long removeCost(int closing) {
+        int open = Math.abs(quantity);
+        long removed = closing >= open ? costBasis
+            : costBasis / open * closing + costBasis % open * closing / open;
+        costBasis -= removed;
+        return removed;
     }
-    
+
     // Is this a long position?
     public boolean isLong() {
         return quantity > 0;
     }
-    
+
     // Is this a short position?
     public boolean isShort() {
         return quantity < 0;
     }
-    
-    // Get the current market value based on a given current price
-    public double getMarketValue(double currentPrice) {
+
+    // Current market value at a scaled price
+    public long getMarketValue(long currentPrice) {
         return quantity * currentPrice;
     }
-    
-    // Calculate unrealized profit/loss based on current price
-    public double getUnrealizedPnL(double currentPrice) {
+
+    // Unrealized profit/loss at a scaled price, scaled the same way
+    public long getUnrealizedPnL(long currentPrice) {
         if (isLong()) {
-            return quantity * (currentPrice - averageCost);
+            return quantity * currentPrice - costBasis;
         } else if (isShort()) {
-            return Math.abs(quantity) * (averageCost - currentPrice);
+            return costBasis - Math.abs(quantity) * currentPrice;
         }
-        return 0.0;
+        return 0;
     }
 }
\ No newline at end of file
@@ -0,0 +1,115 @@
+package com.exchange.model;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * FIFO queue of resting orders at one price.
+ *
+ * The queue is intrusive: orders carry their own prev/next links, so appending, popping the
+ * head and unlinking an order from the middle are all constant time and allocate nothing.
+ * Levels are owned by a book and may be reused once they empty out.
+ *
+ * The level also keeps a running total of resting quantity and order count, updated on every
+ * add, fill, amend and cancel, so depth queries never have to visit individual orders.
+ */
+public class PriceLevel implements Iterable<Order> {
+    private final Order.OrderType side;
+    private long price;
+    private Order head;
+    private Order tail;
+    private int orderCount;
+    private long totalQuantity;
+
+    PriceLevel(Order.OrderType side, long price) {
+        this.side = side;
+        this.price = price;
+    }
+
+    public Order.OrderType getSide() {
+        return side;
+    }
+
+    public long getPrice() {
+        return price;
+    }
+
+    void setPrice(long price) {
+        this.price = price;
+    }
+
+    public boolean isEmpty() {
+        return head == null;
+    }
+
+    public int getOrderCount() {
+        return orderCount;
+    }
+
+    public long getTotalQuantity() {
+        return totalQuantity;
+    }
+
+    public Order peek() {
+        return head;
+    }
+
+    void add(Order order) {
+        order.level = this;
+        order.prev = tail;
+        order.next = null;
+        if (tail == null) {
+            head = order;
+        } else {
+            tail.next = order;
+        }
+        tail = order;
+        orderCount++;
+        totalQuantity += order.getQuantity();
+    }
+
+    void remove(Order order) {
+        if (order.prev == null) {
+            head = order.next;
+        } else {
+            order.prev.next = order.next;
+        }
+        if (order.next == null) {
+            tail = order.prev;
+        } else {
+            order.next.prev = order.prev;
+        }
+        order.prev = null;
+        order.next = null;
+        order.level = null;
+        orderCount--;
+        totalQuantity -= order.getQuantity();
+    }
+
+    // Resting quantity at this level changed without the order moving (fill or amend down)
+    void adjustQuantity(long delta) {
+        totalQuantity += delta;
+    }
+
+    @Override
+    public Iterator<Order> iterator() {
+        return new Iterator<>() {
+            private Order current = head;
+
+            @Override
+            public boolean hasNext() {
+                return current != null;
+            }
+
+            @Override
+            public Order next() {
+                if (current == null) {
+                    throw new NoSuchElementException();
+                }
+                Order order = current;
+                current = current.next;
+                return order;
+            }
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package com.exchange.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Fixed-point prices and amounts of money.
+ *
+ * Prices, trade values, cost bases and profits are longs counting millionths of the quote
+ * currency, so matching, position keeping and PnL are exact integer arithmetic. Prices enter
+ * as decimals and are rejected unless they are a whole number of millionths; the journal,
+ * archive and gateway formats carry the scaled longs. Doubles are only used where values
+ * leave the engine in JSON responses.
+ */
+public final class Prices {
+    public static final int DECIMALS = 6;
+    public static final long SCALE = 1_000_000L;
+    // Largest price times quantity of a single order, so the sums kept per position stay far from overflowing
+    public static final long MAX_ORDER_VALUE = 1_000_000_000L * SCALE;
+
+    private Prices() {
+    }
+
+    // The scaled value of a decimal, or an exception if it has more decimals than the scale holds
+    public static long toScaled(BigDecimal value) {
+        try {
+            return value.movePointRight(DECIMALS).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Price must be a whole number of millionths: " + value.toPlainString());
+        }
+    }
+
+    // A double stands for its shortest decimal form, so 0.1 is exactly 100000 millionths and 0.1000000001 is refused
+    public static long toScaled(double value) {
+        return toScaled(decimalOf(value));
+    }
+
+    public static BigDecimal decimalOf(double value) {
+        if (!Double.isFinite(value)) {
+            throw new IllegalArgumentException("Price must be a finite number: " + value);
+        }
+        return BigDecimal.valueOf(value);
+    }
+
+    public static BigDecimal toDecimal(long scaled) {
+        return BigDecimal.valueOf(scaled, DECIMALS);
+    }
+
+    public static double toDouble(long scaled) {
+        return scaled / (double) SCALE;
+    }
+
+    // Null stays null, for prices that do not exist yet
+    public static Double toDouble(Long scaled) {
+        return scaled == null ? null : toDouble(scaled.longValue());
+    }
+}
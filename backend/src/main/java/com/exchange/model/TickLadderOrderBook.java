@@ -0,0 +1,298 @@
+package com.exchange.model;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Order book that stores price levels in a dense array indexed by integer tick.
+ *
+ * Each side keeps a window of the ladder centred around its touch, the index of its best
+ * level, and an occupancy bitmap so the next non-empty level is found with a few word
+ * scans instead of a tree walk. Inserting near the spread or sweeping several levels is
+ * an array access per level, and emptied levels are kept for reuse.
+ *
+ * A window grows to cover far prices only up to a maximum size; levels beyond it rest in a
+ * sparse overflow map instead, so a few orders placed far apart cannot make a side allocate
+ * an array for every tick between them.
+ */
+public class TickLadderOrderBook extends AbstractOrderBook {
+    private final long tickSize;
+    private final Ladder bids;
+    private final Ladder asks;
+
+    public TickLadderOrderBook(String name, long tickSize, int ladderSize) {
+        this(name, tickSize, ladderSize, ladderSize * 4);
+    }
+
+    // Tick size as a scaled price; orders must already be on its grid. A side's window starts at
+    // ladderSize ticks and never grows past maxLadderSize.
+    public TickLadderOrderBook(String name, long tickSize, int ladderSize, int maxLadderSize) {
+        super(name);
+        if (tickSize <= 0) {
+            throw new IllegalArgumentException("Tick size must be positive");
+        }
+        if (ladderSize <= 0 || maxLadderSize < ladderSize) {
+            throw new IllegalArgumentException("Ladder size must be positive and no larger than the maximum");
+        }
+        this.tickSize = tickSize;
+        this.bids = new Ladder(Order.OrderType.BUY, ladderSize, maxLadderSize);
+        this.asks = new Ladder(Order.OrderType.SELL, ladderSize, maxLadderSize);
+    }
+
+    public long getTickSize() {
+        return tickSize;
+    }
+
+    private long toTick(long price) {
+        return price / tickSize;
+    }
+
+    private Ladder ladder(Order.OrderType side) {
+        return side == Order.OrderType.BUY ? bids : asks;
+    }
+
+    @Override
+    protected PriceLevel levelFor(Order order) {
+        return ladder(order.getType()).levelFor(order.getPrice(), toTick(order.getPrice()));
+    }
+
+    @Override
+    protected void releaseLevel(PriceLevel level) {
+        ladder(level.getSide()).release(toTick(level.getPrice()));
+    }
+
+    @Override
+    protected PriceLevel bestLevel(Order.OrderType side) {
+        return ladder(side).bestLevel();
+    }
+
+    @Override
+    protected void forEachLevel(Order.OrderType side, Consumer<PriceLevel> action) {
+        ladder(side).forEachLevel(action);
+    }
+
+    @Override
+    protected void compactLevels() {
+        bids.compact();
+        asks.compact();
+    }
+
+    @Override
+    public int getLevelCount(Order.OrderType side) {
+        return ladder(side).levelCount;
+    }
+
+    @Override
+    public Map<String, List<List<Double>>> getAggregatedView(int depth) {
+        Map<String, List<List<Double>>> result = new HashMap<>();
+        result.put("buy", bids.aggregate(depth));
+        result.put("sell", asks.aggregate(depth));
+        return result;
+    }
+
+    /**
+     * One side of the book. Index i holds the level for tick (baseTick + i); bids treat the
+     * highest occupied index as best, asks the lowest. Non-empty levels outside the window are
+     * kept in the overflow, keyed by tick. The window is only empty when the whole side is.
+     */
+    private static final class Ladder {
+        private final Order.OrderType side;
+        private final boolean descending;
+        private final int initialSize;
+        private final int maxSize;
+        private final NavigableMap<Long, PriceLevel> overflow = new TreeMap<>();
+        private PriceLevel[] levels;
+        private OccupancyBitmap occupied;
+        private long baseTick;
+        private int best = -1;
+        private int levelCount;
+
+        private Ladder(Order.OrderType side, int size, int maxSize) {
+            this.side = side;
+            this.descending = side == Order.OrderType.BUY;
+            this.initialSize = roundUpToWords(size);
+            this.maxSize = Math.max(initialSize, roundUpToWords(maxSize));
+            allocate(initialSize);
+        }
+
+        private void allocate(int size) {
+            this.levels = new PriceLevel[size];
+            this.occupied = new OccupancyBitmap(size);
+        }
+
+        private static int roundUpToWords(int size) {
+            int rounded = 64;
+            while (rounded < size) {
+                rounded <<= 1;
+            }
+            return rounded;
+        }
+
+        private boolean inWindow(long tick) {
+            return tick >= baseTick && tick < baseTick + levels.length;
+        }
+
+        private PriceLevel bestLevel() {
+            if (best < 0 || overflow.isEmpty()) {
+                return best < 0 ? null : levels[best];
+            }
+            long tick = bestTick();
+            return inWindow(tick) ? levels[(int) (tick - baseTick)] : overflow.get(tick);
+        }
+
+        // Tick of the best level, in the window or the overflow; the side must not be empty
+        private long bestTick() {
+            long tick = baseTick + best;
+            if (!overflow.isEmpty()) {
+                long outside = descending ? overflow.lastKey() : overflow.firstKey();
+                if (descending ? outside > tick : outside < tick) {
+                    tick = outside;
+                }
+            }
+            return tick;
+        }
+
+        private PriceLevel levelFor(long price, long tick) {
+            if (best < 0) {
+                // Side is empty, so the window can simply be re-centred on the new price
+                baseTick = tick - levels.length / 2;
+            } else if (!inWindow(tick) && !extendTo(tick)) {
+                PriceLevel level = overflow.get(tick);
+                if (level == null) {
+                    level = new PriceLevel(side, price);
+                    overflow.put(tick, level);
+                    levelCount++;
+                }
+                return level;
+            }
+            int index = (int) (tick - baseTick);
+            PriceLevel level = levels[index];
+            if (level == null) {
+                level = new PriceLevel(side, price);
+                levels[index] = level;
+            }
+            if (level.isEmpty()) {
+                level.setPrice(price);
+                occupied.set(index);
+                levelCount++;
+                if (best < 0 || (descending ? index > best : index < best)) {
+                    best = index;
+                }
+            }
+            return level;
+        }
+
+        private void release(long tick) {
+            levelCount--;
+            if (!inWindow(tick)) {
+                overflow.remove(tick);
+                return;
+            }
+            int index = (int) (tick - baseTick);
+            occupied.clear(index);
+            if (index == best) {
+                best = descending ? occupied.previous(index - 1) : occupied.next(index + 1);
+                if (best < 0 && !overflow.isEmpty()) {
+                    // The window ran dry, so move it onto the best level left in the overflow
+                    long next = descending ? overflow.lastKey() : overflow.firstKey();
+                    rebuild(levels.length, next - levels.length / 2);
+                }
+            }
+        }
+
+        // An empty side, or one whose window has grown, goes back to the configured window size;
+        // otherwise only levels kept for reuse are dropped
+        private void compact() {
+            if (best < 0) {
+                allocate(initialSize);
+            } else if (levels.length > initialSize) {
+                rebuild(initialSize, bestTick() - initialSize / 2);
+            } else {
+                for (int i = 0; i < levels.length; i++) {
+                    if (levels[i] != null && levels[i].isEmpty()) {
+                        levels[i] = null;
+                    }
+                }
+            }
+        }
+
+        private void forEachLevel(Consumer<PriceLevel> action) {
+            visit(Integer.MAX_VALUE, action);
+        }
+
+        private List<List<Double>> aggregate(int depth) {
+            List<List<Double>> result = new ArrayList<>();
+            visit(depth, level -> result.add(toDepthEntry(level)));
+            return result;
+        }
+
+        // Up to limit levels, best first: overflow levels on the better side of the window, the window, then the rest
+        private void visit(int limit, Consumer<PriceLevel> action) {
+            long end = baseTick + levels.length;
+            Collection<PriceLevel> better = descending
+                ? overflow.tailMap(end, true).descendingMap().values() : overflow.headMap(baseTick, false).values();
+            Collection<PriceLevel> worse = descending
+                ? overflow.headMap(baseTick, false).descendingMap().values() : overflow.tailMap(end, true).values();
+            int visited = 0;
+            for (Iterator<PriceLevel> it = better.iterator(); it.hasNext() && visited < limit; visited++) {
+                action.accept(it.next());
+            }
+            for (int i = best; i >= 0 && visited < limit; 
+                    i = descending ? occupied.previous(i - 1) : occupied.next(i + 1), visited++) {
+                action.accept(levels[i]);
+            }
+            for (Iterator<PriceLevel> it = worse.iterator(); it.hasNext() && visited < limit; visited++) {
+                action.accept(it.next());
+            }
+        }
+
+        // Move, and if needed grow, the window so it covers every level it holds plus the new tick;
+        // false if that would take it past the maximum size
+        private boolean extendTo(long tick) {
+            long lowTick = Math.min(tick, baseTick + occupied.next(0));
+            long highTick = Math.max(tick, baseTick + occupied.previous(levels.length - 1));
+            long span = highTick - lowTick + 1;
+            if (span * 2 > maxSize) {
+                return false;
+            }
+
+            int size = levels.length;
+            while (size < span * 2) {
+                size <<= 1;
+            }
+            rebuild(size, lowTick - (size - span) / 2);
+            return true;
+        }
+
+        // Re-create the window at this size and base tick. Resting levels that fall outside it move to
+        // the overflow, and overflow levels that fall inside it move in.
+        private void rebuild(int size, long newBaseTick) {
+            PriceLevel[] oldLevels = levels;
+            OccupancyBitmap oldOccupied = occupied;
+            long oldBase = baseTick;
+
+            allocate(size);
+            baseTick = newBaseTick;
+            for (int i = oldOccupied.next(0); i >= 0; i = oldOccupied.next(i + 1)) {
+                long tick = oldBase + i;
+                if (inWindow(tick)) {
+                    put(tick, oldLevels[i]);
+                } else {
+                    overflow.put(tick, oldLevels[i]);
+                }
+            }
+            Map<Long, PriceLevel> inside = overflow.subMap(baseTick, true, baseTick + size, false);
+            for (Map.Entry<Long, PriceLevel> entry : inside.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+            inside.clear();
+            best = descending ? occupied.previous(size - 1) : occupied.next(0);
+        }
+
+        private void put(long tick, PriceLevel level) {
+            int index = (int) (tick - baseTick);
+            levels[index] = level;
+            occupied.set(index);
+        }
+    }
+}
@@ -9,15 +9,23 @@ public class Trade {
     private final String sellOrderId;
     private final String symbol;
     private final int quantity;
-    private final double price;
+    private final long price; // Scaled, see Prices
     private final LocalDateTime timestamp;
     private final String buyerUsername;
     private final String sellerUsername;
     
     public Trade(String buyOrderId, String sellOrderId, String symbol, 
-                 int quantity, double price, LocalDateTime timestamp,
+                 int quantity, long price, LocalDateTime timestamp,
                  String buyerUsername, String sellerUsername) {
-        this.id = UUID.randomUUID().toString();
+        this(UUID.randomUUID().toString(), buyOrderId, sellOrderId, symbol, quantity, price, timestamp,
+             buyerUsername, sellerUsername);
+    }
+    
+    // Rebuild a trade with a known id (archived trades)
+    public Trade(String id, String buyOrderId, String sellOrderId, String symbol, 
+                 int quantity, long price, LocalDateTime timestamp,
+                 String buyerUsername, String sellerUsername) {
+        this.id = id;
         this.buyOrderId = buyOrderId;
         this.sellOrderId = sellOrderId;
         this.symbol = symbol;
@@ -48,7 +56,7 @@ public class Trade {
         return quantity;
     }
     
-    public double getPrice() {
+    public long getPrice() {
         return price;
     }
     
@@ -64,8 +72,8 @@ public class Trade {
         return sellerUsername;
     }
     
-    // Calculate the total value of this trade
-    public double getTotalValue() {
+    // Total value of this trade, scaled like the price
+    public long getTotalValue() {
         return quantity * price;
     }
 }
\ No newline at end of file
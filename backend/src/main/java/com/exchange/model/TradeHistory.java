@@ -0,0 +1,145 @@
+package com.exchange.model;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only trade history for one user, stored in fixed-size chunks.
+ *
+ * An append writes into the current chunk and only allocates when that chunk is full, so a
+ * busy account's history is never copied as it grows; the chunk directory doubles, which
+ * copies one reference per chunk. Appends from different books are serialised on the
+ * history, while readers take the published size and read everything below it without
+ * locking. Trades are addressed by their zero-based position, which is also the cursor used
+ * to page through them.
+ *
+ * Only a recent window has to stay in memory: whole chunks at the old end can be moved to an
+ * archive and discarded, after which positions below {@link #getRetainedFrom()} are served
+ * from there. Positions never shift, so cursors stay valid across a discard.
+ */
+public final class TradeHistory {
+    private static final int CHUNK_SHIFT = 8;
+    public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private volatile Directory directory = new Directory(new Chunk[4], 0);
+    // Published after the trade and its chunk, so readers never see a slot before it is filled
+    private volatile int size;
+
+    public synchronized void add(Trade trade) {
+        int index = size;
+        Directory current = directory;
+        int slot = (index >>> CHUNK_SHIFT) - current.first;
+        Chunk[] chunks = current.chunks;
+        if (slot == chunks.length) {
+            chunks = Arrays.copyOf(chunks, Math.max(4, chunks.length * 2));
+            current = new Directory(chunks, current.first);
+        }
+        Chunk chunk = chunks[slot];
+        if (chunk == null) {
+            chunk = new Chunk();
+            chunks[slot] = chunk;
+        }
+        chunk.add(index & CHUNK_MASK, trade,
+            trade.getTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        directory = current;
+        size = index + 1;
+    }
+
+    // Every trade ever added, including the ones no longer held in memory
+    public int size() {
+        return size;
+    }
+
+    // Position of the oldest trade still held in memory
+    public int getRetainedFrom() {
+        return directory.first << CHUNK_SHIFT;
+    }
+
+    // Position below which whole chunks lie outside a window of the newest `window` trades
+    public int trimPoint(int window) {
+        return Math.max(getRetainedFrom(), ((size - window) >> CHUNK_SHIFT) << CHUNK_SHIFT);
+    }
+
+    // Trades at positions [from, to), which must still be held in memory
+    public List<Trade> range(int from, int to) {
+        Directory current = directory;
+        List<Trade> trades = new ArrayList<>(to - from);
+        for (int index = from; index < to; index++) {
+            trades.add(current.chunks[(index >>> CHUNK_SHIFT) - current.first].trades[index & CHUNK_MASK]);
+        }
+        return trades;
+    }
+
+    // Drop the chunks below a chunk-aligned position; callers archive them first
+    public synchronized void discardBefore(int position) {
+        Directory current = directory;
+        int drop = (position >>> CHUNK_SHIFT) - current.first;
+        if (drop <= 0) {
+            return;
+        }
+        directory = new Directory(Arrays.copyOfRange(current.chunks, drop, current.chunks.length), current.first + drop);
+    }
+
+    /**
+     * Add up to {@code limit} trades at positions below {@code before} to {@code out}, newest
+     * first, keeping only those with a timestamp in [fromMillis, toMillis]. Returns the
+     * position of the last trade added when the page filled up, to be passed as
+     * {@code before} for the next page, or -1 when no trades are left. If the page runs into
+     * trades that are no longer in memory it returns {@link #getRetainedFrom()}, from where the
+     * archive carries on.
+     */
+    public int collect(int before, long fromMillis, long toMillis, int limit, List<Trade> out) {
+        int published = size;
+        Directory current = directory;
+        int retainedFrom = current.first << CHUNK_SHIFT;
+        int added = 0;
+        int index = Math.min(before, published) - 1;
+        while (index >= retainedFrom) {
+            Chunk chunk = current.chunks[(index >>> CHUNK_SHIFT) - current.first];
+            if (chunk.maxMillis < fromMillis || chunk.minMillis > toMillis) {
+                // Nothing in this chunk can match, so skip straight to the end of the previous one
+                index = (index & ~CHUNK_MASK) - 1;
+                continue;
+            }
+            int slot = index & CHUNK_MASK;
+            long millis = chunk.millis[slot];
+            if (millis >= fromMillis && millis <= toMillis) {
+                out.add(chunk.trades[slot]);
+                if (++added == limit) {
+                    return index > 0 ? index : -1;
+                }
+            }
+            index--;
+        }
+        return index >= 0 ? index + 1 : -1;
+    }
+
+    // Chunks from position (first << CHUNK_SHIFT) on, replaced as a whole so readers see a consistent pair
+    private static final class Directory {
+        private final Chunk[] chunks;
+        private final int first;
+
+        private Directory(Chunk[] chunks, int first) {
+            this.chunks = chunks;
+            this.first = first;
+        }
+    }
+
+    private static final class Chunk {
+        private final Trade[] trades = new Trade[CHUNK_SIZE];
+        private final long[] millis = new long[CHUNK_SIZE];
+        // Trades from different books can arrive slightly out of time order, so track both ends
+        private long minMillis = Long.MAX_VALUE;
+        private long maxMillis = Long.MIN_VALUE;
+
+        private void add(int slot, Trade trade, long timestamp) {
+            trades[slot] = trade;
+            millis[slot] = timestamp;
+            minMillis = Math.min(minMillis, timestamp);
+            maxMillis = Math.max(maxMillis, timestamp);
+        }
+    }
+}
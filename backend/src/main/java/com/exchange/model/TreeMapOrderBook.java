@@ -0,0 +1,68 @@
+package com.exchange.model;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+public class TreeMapOrderBook extends AbstractOrderBook {
+    private final TreeMap<Long, PriceLevel> buyLevels;
+    private final TreeMap<Long, PriceLevel> sellLevels;
+
+    public TreeMapOrderBook(String name) {
+        super(name);
+        // TreeMap to keep buy levels sorted by price (descending)
+        this.buyLevels = new TreeMap<>(Collections.reverseOrder());
+        // TreeMap to keep sell levels sorted by price (ascending)
+        this.sellLevels = new TreeMap<>();
+    }
+
+    private TreeMap<Long, PriceLevel> levels(Order.OrderType side) {
+        return side == Order.OrderType.BUY ? buyLevels : sellLevels;
+    }
+
+    @Override
+    protected PriceLevel levelFor(Order order) {
+        return levels(order.getType()).computeIfAbsent(order.getPrice(), 
+            price -> new PriceLevel(order.getType(), price));
+    }
+
+    @Override
+    protected void releaseLevel(PriceLevel level) {
+        levels(level.getSide()).remove(level.getPrice());
+    }
+
+    @Override
+    protected PriceLevel bestLevel(Order.OrderType side) {
+        Map.Entry<Long, PriceLevel> best = levels(side).firstEntry();
+        return best == null ? null : best.getValue();
+    }
+
+    @Override
+    protected void forEachLevel(Order.OrderType side, Consumer<PriceLevel> action) {
+        levels(side).values().forEach(action);
+    }
+
+    @Override
+    public int getLevelCount(Order.OrderType side) {
+        return levels(side).size();
+    }
+
+    // Get aggregated book view
+    @Override
+    public Map<String, List<List<Double>>> getAggregatedView(int depth) {
+        Map<String, List<List<Double>>> result = new HashMap<>();
+        result.put("buy", aggregate(buyLevels, depth));
+        result.put("sell", aggregate(sellLevels, depth));
+        return result;
+    }
+
+    private List<List<Double>> aggregate(TreeMap<Long, PriceLevel> levels, int depth) {
+        List<List<Double>> result = new ArrayList<>(Math.min(depth, levels.size()));
+        for (PriceLevel level : levels.values()) {
+            if (result.size() == depth) {
+                break;
+            }
+            result.add(toDepthEntry(level));
+        }
+        return result;
+    }
+}
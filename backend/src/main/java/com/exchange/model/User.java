@@ -5,33 +5,82 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 public class User {
     private final String username;
-    private double realizedProfit;
+    // Profits are scaled like prices, see Prices
+    private volatile long realizedProfit;
     private final Map<String, Order> activeOrders;
     private final Map<String, Position> positions;
-    private final List<Trade> executedTrades;
+    private final TradeHistory executedTrades;
+    private final Leaderboard leaderboard;
+    // Unrealized PnL per held symbol at its latest mark; only the mark-to-market thread writes these
+    private final Map<String, Long> unrealizedBySymbol = new ConcurrentHashMap<>();
+    private volatile long unrealizedProfit;
 
     public User(String username) {
+        this(username, null);
+    }
+
+    // Users created with a leaderboard keep their rank on it current as profit is realized
+    public User(String username, Leaderboard leaderboard) {
         this.username = username;
-        this.realizedProfit = 0.0;
+        this.leaderboard = leaderboard;
+        this.realizedProfit = 0;
         this.activeOrders = new ConcurrentHashMap<>();
         this.positions = new ConcurrentHashMap<>();
-        this.executedTrades = new CopyOnWriteArrayList<>();
+        this.executedTrades = new TradeHistory();
+        if (leaderboard != null) {
+            leaderboard.add(username, realizedProfit);
+        }
     }
 
     public String getUsername() {
         return username;
     }
 
-    public double getRealizedProfit() {
+    public long getRealizedProfit() {
         return realizedProfit;
     }
 
-    public void addRealizedProfit(double amount) {
+    // Fills on different books are matched on different threads, so profit updates must not interleave
+    public synchronized void addRealizedProfit(long amount) {
         this.realizedProfit += amount;
+        if (leaderboard != null) {
+            leaderboard.update(username, realizedProfit);
+        }
+    }
+
+    public long getUnrealizedProfit() {
+        return unrealizedProfit;
+    }
+
+    // Realized plus unrealized PnL at the latest marks
+    public long getTotalProfit() {
+        return realizedProfit + unrealizedProfit;
+    }
+
+    /**
+     * Value the user's position in the symbol at the mark and refresh the unrealized total.
+     * Returns false once the user no longer holds the symbol. Mark-to-market thread only.
+     *
+     * The position may be changing on its book's writer while this reads it; that writer
+     * schedules another revaluation after every fill, which sees the settled position.
+     */
+    public boolean revalue(String symbol, long mark) {
+        Position position = positions.get(symbol);
+        if (position == null) {
+            unrealizedBySymbol.remove(symbol);
+        } else {
+            unrealizedBySymbol.put(symbol, position.getUnrealizedPnL(mark));
+        }
+        // Summed afresh (a handful of symbols) rather than adjusted, so a stale entry never lingers
+        long total = 0;
+        for (long value : unrealizedBySymbol.values()) {
+            total += value;
+        }
+        unrealizedProfit = total;
+        return position != null;
     }
 
     public Map<String, Order> getActiveOrders() {
@@ -42,7 +91,7 @@ public class User {
         return positions;
     }
 
-    public List<Trade> getExecutedTrades() {
+    public TradeHistory getExecutedTrades() {
         return executedTrades;
     }
 
@@ -58,89 +107,32 @@ public class User {
         executedTrades.add(trade);
     }
 
-    public void updatePosition(String symbol, int quantity, double price, boolean isBuy) {
-        // Get or create position
+    /**
+     * Apply a fill at a scaled price. Closing all or part of a position realizes the difference
+     * between what the closed shares fetched and their share of the cost basis; a fill that
+     * crosses zero opens the remainder at the fill price.
+     */
+    public void updatePosition(String symbol, int quantity, long price, boolean isBuy) {
         Position position = positions.computeIfAbsent(symbol, k -> new Position(symbol, 0, 0));
         int oldQty = position.getQuantity();
-        double oldAvgCost = position.getAverageCost();
+        int newQty = isBuy ? oldQty + quantity : oldQty - quantity;
         
-        if (isBuy) {
-            // Buying increases position
-            int newQty = oldQty + quantity;
+        if (oldQty == 0 || (oldQty > 0) == isBuy) {
+            // Opening or adding to a position: the basis grows by what the shares cost (or, short, raised)
+            position.setQuantity(newQty);
+            position.setCostBasis(position.getCostBasis() + (long) quantity * price);
+        } else {
+            // Closing all or part of a position
+            int closingQty = Math.min(quantity, Math.abs(oldQty));
+            long closedCost = position.removeCost(closingQty);
+            long closedValue = (long) closingQty * price;
+            // A long sells for more than it cost; a short buys back for less than it raised
+            addRealizedProfit(oldQty > 0 ? closedValue - closedCost : closedCost - closedValue);
+            position.setQuantity(newQty);
             
-            // If closing a short position (from negative to zero/positive)
-            if (oldQty < 0 && newQty >= 0) {
-                // Calculate closing quantity (the amount that closes the existing short)
-                int closingQty = Math.min(quantity, -oldQty);
-                
-                // Calculate profit on the closed portion (for shorts: buy price - sell price)
-                double profit = (oldAvgCost - price) * closingQty;
-                addRealizedProfit(profit);
-                
-                // If we completely closed the position
-                if (newQty == 0) {
-                    positions.remove(symbol);
-                } 
-                // If we've flipped to a long position
-                else if (newQty > 0) {
-                    position.setQuantity(newQty);
-                    position.setAverageCost(price);  // New cost basis for the long position
-                }
-            } 
-            else {
-                // Adding to existing long or reducing short
-                if (newQty > 0) {
-                    // Calculate new average cost for a long position
-                    double totalCost = (oldQty * oldAvgCost) + (quantity * price);
-                    position.setQuantity(newQty);
-                    position.setAverageCost(totalCost / newQty);
-                } else {
-                    // Still short, just update the position size
-                    position.setQuantity(newQty);
-                }
-            }
-        } 
-        else {  // Selling
-            // Selling decreases position
-            int newQty = oldQty - quantity;
-            
-            // If closing a long position (from positive to zero/negative)
-            if (oldQty > 0 && newQty <= 0) {
-                // Calculate closing quantity (the amount that closes the existing long)
-                int closingQty = Math.min(quantity, oldQty);
-                
-                // Calculate profit on the closed portion (for longs: sell price - buy price)
-                double profit = (price - oldAvgCost) * closingQty;
-                addRealizedProfit(profit);
-                
-                // If we completely closed the position
-                if (newQty == 0) {
-                    positions.remove(symbol);
-                } 
-                // If we've flipped to a short position
-                else if (newQty < 0) {
-                    position.setQuantity(newQty);
-                    position.setAverageCost(price);  // New cost basis for the short position
-                }
-            } 
-            else {
-                // Adding to existing short or reducing long
-                if (newQty < 0) {
-                    // Calculate new average cost for a short position
-                    if (oldQty < 0) {
-                        // Adding to existing short position
-                        double totalCost = (Math.abs(oldQty) * oldAvgCost) + (quantity * price);
-                        position.setQuantity(newQty);
-                        position.setAverageCost(totalCost / Math.abs(newQty));
-                    } else {
-                        // We're creating a new short position
-                        position.setQuantity(newQty);
-                        position.setAverageCost(price);
-                    }
-                } else {
-                    // Still long, just update the position size
-                    position.setQuantity(newQty);
-                }
+            // If we've flipped sides, the rest is a new position at this price
+            if (newQty != 0 && (newQty > 0) != (oldQty > 0)) {
+                position.setCostBasis((long) Math.abs(newQty) * price);
             }
         }
         
@@ -154,63 +146,70 @@ public class User {
         List<Map<String, Object>> result = new ArrayList<>();
         
         for (Position position : positions.values()) {
-            Map<String, Object> positionMap = new HashMap<>();
-            positionMap.put("symbol", position.getSymbol());
-            positionMap.put("quantity", position.getQuantity());
-            positionMap.put("averageCost", position.getAverageCost());
-            positionMap.put("positionType", position.getQuantity() > 0 ? "LONG" : "SHORT");
-            result.add(positionMap);
+            result.add(getPositionDetails(position));
         }
         
         return result;
     }
 
+    public Map<String, Object> getPositionDetails(Position position) {
+        Map<String, Object> positionMap = new HashMap<>();
+        positionMap.put("symbol", position.getSymbol());
+        positionMap.put("quantity", position.getQuantity());
+        positionMap.put("averageCost", position.getAverageCost());
+        positionMap.put("positionType", position.getQuantity() > 0 ? "LONG" : "SHORT");
+        positionMap.put("unrealizedPnL", Prices.toDouble(unrealizedBySymbol.getOrDefault(position.getSymbol(), 0L)));
+        return positionMap;
+    }
+
     public List<Map<String, Object>> getActiveOrdersDetails() {
         List<Map<String, Object>> result = new ArrayList<>();
         
         for (Order order : activeOrders.values()) {
             if (order.getStatus() == Order.OrderStatus.ACTIVE || 
                 order.getStatus() == Order.OrderStatus.PARTIALLY_FILLED) {
-                Map<String, Object> orderMap = new HashMap<>();
-                orderMap.put("orderId", order.getId());
-                orderMap.put("book", order.getBook());
-                orderMap.put("type", order.getType().toString());
-                orderMap.put("price", order.getPrice());
-                orderMap.put("quantity", order.getQuantity());
-                orderMap.put("status", order.getStatus().toString());
-                result.add(orderMap);
+                result.add(getOrderDetails(order));
             }
         }
         
         return result;
     }
 
-    public List<Map<String, Object>> getExecutedTradesDetails() {
-        List<Map<String, Object>> result = new ArrayList<>();
-        
-        for (Trade trade : executedTrades) {
-            Map<String, Object> tradeMap = new HashMap<>();
-            tradeMap.put("tradeId", trade.getId());
-            tradeMap.put("orderId", username.equals(trade.getBuyerUsername()) ? 
-                         trade.getBuyOrderId() : trade.getSellOrderId());
-            tradeMap.put("symbol", trade.getSymbol());
-            tradeMap.put("price", trade.getPrice());
-            tradeMap.put("quantity", trade.getQuantity());
-            tradeMap.put("side", username.equals(trade.getBuyerUsername()) ? "BUY" : "SELL");
-            tradeMap.put("timestamp", trade.getTimestamp().toString());
-            tradeMap.put("counterparty", username.equals(trade.getBuyerUsername()) ? 
-                         trade.getSellerUsername() : trade.getBuyerUsername());
-            result.add(tradeMap);
-        }
-        
-        return result;
+    public static Map<String, Object> getOrderDetails(Order order) {
+        Map<String, Object> orderMap = new HashMap<>();
+        orderMap.put("orderId", order.getId());
+        orderMap.put("book", order.getBook());
+        orderMap.put("type", order.getType().toString());
+        orderMap.put("price", Prices.toDouble(order.getPrice()));
+        orderMap.put("quantity", order.getQuantity());
+        orderMap.put("status", order.getStatus().toString());
+        orderMap.put("timestamp", order.getTimestamp());
+        return orderMap;
+    }
+
+    // A trade as seen from this user's side
+    public Map<String, Object> getTradeDetails(Trade trade) {
+        Map<String, Object> tradeMap = new HashMap<>();
+        tradeMap.put("tradeId", trade.getId());
+        tradeMap.put("orderId", username.equals(trade.getBuyerUsername()) ? 
+                     trade.getBuyOrderId() : trade.getSellOrderId());
+        tradeMap.put("symbol", trade.getSymbol());
+        tradeMap.put("price", Prices.toDouble(trade.getPrice()));
+        tradeMap.put("quantity", trade.getQuantity());
+        tradeMap.put("side", username.equals(trade.getBuyerUsername()) ? "BUY" : "SELL");
+        tradeMap.put("timestamp", trade.getTimestamp().toString());
+        tradeMap.put("counterparty", username.equals(trade.getBuyerUsername()) ? 
+                     trade.getSellerUsername() : trade.getBuyerUsername());
+        return tradeMap;
     }
     
     // Simple summary for leaderboard
     public Map<String, Object> getLeaderboardSummary() {
         Map<String, Object> summary = new HashMap<>();
         summary.put("username", username);
-        summary.put("realizedProfit", realizedProfit);
+        summary.put("realizedProfit", Prices.toDouble(realizedProfit));
+        summary.put("unrealizedProfit", Prices.toDouble(unrealizedProfit));
+        summary.put("totalProfit", Prices.toDouble(getTotalProfit()));
         summary.put("positionCount", positions.size());
         summary.put("activeOrderCount", activeOrders.size());
         summary.put("tradeCount", executedTrades.size());
@@ -0,0 +1,240 @@
+package com.exchange.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Append-only store of compressed blocks in memory-mapped segment files, used for the cold
+ * tier of orders and trades.
+ *
+ * A block is framed as [length][crc32][header length][header][raw length][deflated body].
+ * The header stays uncompressed so the caller can search headers in place without inflating
+ * anything; only the body of a block that is actually read gets inflated.
+ * A zero length marks the end of written data in a segment. Blocks are addressed by a
+ * location packing the segment number and the offset into one long.
+ *
+ * The archive is the cold tier of this process's memory, so it starts empty: segments left by
+ * an earlier process are deleted when it opens, and recovery archives again whatever it
+ * rebuilds. Past maxSegments, the oldest segment is deleted whenever a new one is started.
+ */
+final class ArchiveSegments implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveSegments.class);
+
+    private static final String SUFFIX = ".seg";
+    private static final int FRAME_SIZE = 8;
+
+    private final Path directory;
+    private final String prefix;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final CRC32 checksum = new CRC32();
+    // Indexed by segment number; deleted segments are null. Readers only index into segments a published
+    // location points at
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private MappedByteBuffer current;
+    private volatile int firstSegment;
+
+    // maxSegments of 0 keeps every segment
+    ArchiveSegments(Path directory, String prefix, int segmentSize, int maxSegments) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        try {
+            Files.createDirectories(directory);
+            List<Path> stale = listSegments();
+            for (Path segment : stale) {
+                Files.delete(segment);
+            }
+            if (!stale.isEmpty()) {
+                logger.info("Deleted {} archive segments left by an earlier process in {}", stale.size(), directory);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot prepare archive directory " + directory, e);
+        }
+    }
+
+    // Number of the oldest segment still kept; blocks in lower segments have been deleted
+    int getFirstSegment() {
+        return firstSegment;
+    }
+
+    boolean contains(long location) {
+        return (int) (location >>> 32) >= firstSegment;
+    }
+
+    // Compress and append one block, returning its location
+    synchronized long append(ByteBuffer header, byte[] body, int bodyLength) {
+        byte[] compressed = deflate(body, bodyLength);
+        int length = 4 + header.remaining() + 4 + compressed.length;
+        if (FRAME_SIZE + length + 4 > segmentSize) {
+            throw new IllegalArgumentException("Archive block is larger than a segment");
+        }
+        if (current == null || current.remaining() < FRAME_SIZE + length + 4) {
+            current = createSegment(segments.size());
+            segments.add(current);
+            if (maxSegments > 0 && segments.size() - firstSegment > maxSegments) {
+                deleteSegment(firstSegment);
+                firstSegment++;
+            }
+        }
+
+        int start = current.position();
+        current.position(start + FRAME_SIZE);
+        current.putInt(header.remaining());
+        current.put(header);
+        current.putInt(bodyLength);
+        current.put(compressed);
+
+        ByteBuffer payload = current.duplicate();
+        payload.position(start + FRAME_SIZE).limit(start + FRAME_SIZE + length);
+        checksum.reset();
+        checksum.update(payload);
+        current.putInt(start + 4, (int) checksum.getValue());
+        // Length goes in last so a half-written block reads as the end of the segment
+        current.putInt(start, length);
+        return location(segments.size() - 1, start);
+    }
+
+    // Read-only view of a block's header, positioned at its start, or null if its segment was deleted
+    ByteBuffer header(long location) {
+        ByteBuffer payload = payload(location);
+        return payload == null ? null : header(payload);
+    }
+
+    // The block's body, inflated, or null if its segment was deleted
+    ByteBuffer body(long location) {
+        ByteBuffer payload = payload(location);
+        if (payload == null) {
+            return null;
+        }
+        payload.position(payload.position() + 4 + payload.getInt(payload.position()));
+        int rawLength = payload.getInt();
+        byte[] compressed = new byte[payload.remaining()];
+        payload.get(compressed);
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int read = 0;
+            while (read < rawLength && !inflater.finished()) {
+                read += inflater.inflate(raw, read, rawLength - read);
+            }
+            return ByteBuffer.wrap(raw, 0, read);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt archive block at " + Long.toHexString(location), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (current != null) {
+            current.force();
+        }
+        deflater.end();
+    }
+
+    private ByteBuffer payload(long location) {
+        MappedByteBuffer segment;
+        synchronized (this) {
+            segment = segments.get((int) (location >>> 32));
+        }
+        if (segment == null) {
+            return null;
+        }
+        int start = (int) location;
+        ByteBuffer payload = segment.duplicate();
+        payload.position(start + FRAME_SIZE).limit(start + FRAME_SIZE + segment.getInt(start));
+        return payload;
+    }
+
+    private static ByteBuffer header(ByteBuffer payload) {
+        ByteBuffer header = payload.duplicate();
+        int headerLength = header.getInt();
+        header.limit(header.position() + headerLength);
+        return header.slice().asReadOnlyBuffer();
+    }
+
+    // Must hold the lock
+    private byte[] deflate(byte[] body, int length) {
+        deflater.reset();
+        deflater.setInput(body, 0, length);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, length / 2));
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            int written = deflater.deflate(chunk);
+            out.write(chunk, 0, written);
+        }
+        return out.toByteArray();
+    }
+
+    private static long location(int segment, int offset) {
+        return ((long) segment << 32) | (offset & 0xffffffffL);
+    }
+
+    private MappedByteBuffer createSegment(int number) {
+        if (current != null) {
+            current.force();
+        }
+        Path path = pathOf(number);
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping outlives the channel
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map archive segment " + path, e);
+        }
+    }
+
+    // A reader still holding the segment's mapping can finish with it; later lookups find null
+    private void deleteSegment(int number) {
+        segments.set(number, null);
+        try {
+            Files.deleteIfExists(pathOf(number));
+        } catch (IOException e) {
+            logger.warn("Cannot delete archive segment {}", pathOf(number), e);
+        }
+    }
+
+    private Path pathOf(int number) {
+        return directory.resolve(String.format("%s%010d%s", prefix, number, SUFFIX));
+    }
+
+    private List<Path> listSegments() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .filter(path -> {
+                    String name = path.getFileName().toString();
+                    return name.startsWith(prefix) && name.endsWith(SUFFIX);
+                })
+                .sorted()
+                .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list archive directory " + directory, e);
+        }
+    }
+}
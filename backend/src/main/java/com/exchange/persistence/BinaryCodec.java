@@ -0,0 +1,34 @@
+package com.exchange.persistence;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// String framing shared by the journal and snapshot formats: [short length][UTF-8 bytes], -1 for null
+final class BinaryCodec {
+    private BinaryCodec() {
+    }
+
+    static int maxStringSize(String value) {
+        return 2 + (value == null ? 0 : value.length() * 3);
+    }
+
+    static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,363 @@
+package com.exchange.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of accepted commands, written to memory-mapped segment files.
+ *
+ * Appends copy the record into the mapped segment under a short lock and return its
+ * sequence number. A separate flusher thread forces dirty segments to disk and advances the
+ * durable sequence, so one fsync covers every record appended since the previous one (group
+ * commit). Callers that must not acknowledge before the record is on disk wait on
+ * {@link #awaitDurable(long)}, or chain onto {@link #whenDurable(long)} without blocking.
+ *
+ * Each record is framed as [length][crc32][payload]; a zero length marks the end of written
+ * data and -1 marks a segment that was rolled over. Segment files are named after the first
+ * sequence they contain.
+ */
+public final class CommandJournal implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(CommandJournal.class);
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+    private static final int HEADER_SIZE = 8;
+    private static final int ROLLED = -1;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean fsync;
+    private final long groupCommitWindowNanos;
+
+    private final Object appendLock = new Object();
+    private final CRC32 checksum = new CRC32();
+    private final List<MappedByteBuffer> unforced = new ArrayList<>();
+    private MappedByteBuffer current;
+    private long nextSequence;
+
+    private final Object durableLock = new Object();
+    private volatile long lastAppended;
+    private volatile long durable;
+    private final ConcurrentSkipListMap<Long, CompletableFuture<Void>> durableWaiters = new ConcurrentSkipListMap<>();
+    private volatile boolean running;
+    private Thread flusher;
+
+    public CommandJournal(Path directory, int segmentSize, boolean fsync, long groupCommitWindowMicros) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+        this.groupCommitWindowNanos = TimeUnit.MICROSECONDS.toNanos(groupCommitWindowMicros);
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create journal directory " + directory, e);
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getLastAppendedSequence() {
+        return lastAppended;
+    }
+
+    public long getDurableSequence() {
+        return durable;
+    }
+
+    /**
+     * Feed every intact record with a sequence above {@code afterSequence} to the handler, in
+     * order. Returns the highest sequence found in the journal (or {@code afterSequence}).
+     */
+    public long replay(long afterSequence, Consumer<JournalRecord> handler) {
+        long lastSequence = afterSequence;
+        for (Path segment : listSegments()) {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                CRC32 crc = new CRC32();
+                while (buffer.remaining() >= HEADER_SIZE) {
+                    int length = buffer.getInt();
+                    if (length == 0 || length == ROLLED) {
+                        break;
+                    }
+                    int expectedChecksum = buffer.getInt();
+                    if (length < 0 || length > buffer.remaining()) {
+                        logger.warn("Truncated journal record in {} at offset {}", segment, buffer.position() - HEADER_SIZE);
+                        break;
+                    }
+                    ByteBuffer payload = buffer.slice();
+                    payload.limit(length);
+                    crc.reset();
+                    crc.update(payload.duplicate());
+                    if ((int) crc.getValue() != expectedChecksum) {
+                        logger.warn("Corrupt journal record in {} at offset {}", segment, buffer.position() - HEADER_SIZE);
+                        break;
+                    }
+                    buffer.position(buffer.position() + length);
+
+                    JournalRecord record = JournalRecord.decode(payload);
+                    lastSequence = Math.max(lastSequence, record.getSequence());
+                    if (record.getSequence() > afterSequence) {
+                        handler.accept(record);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read journal segment " + segment, e);
+            }
+        }
+        return lastSequence;
+    }
+
+    // Begin appending after the given sequence; always starts a fresh segment
+    public void start(long lastSequence) {
+        synchronized (appendLock) {
+            nextSequence = lastSequence + 1;
+            lastAppended = lastSequence;
+            durable = lastSequence;
+            current = createSegment(nextSequence);
+            unforced.add(current);
+        }
+        running = true;
+        flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        logger.info("Journal open in {} at sequence {}", directory, lastSequence);
+    }
+
+    // Append a record and return its sequence number; the record is durable once awaitDurable returns
+    public long append(JournalRecord record) {
+        long sequence;
+        synchronized (appendLock) {
+            if (current == null) {
+                throw new IllegalStateException("Journal is not started");
+            }
+            sequence = nextSequence++;
+            write(record.withSequence(sequence));
+        }
+        LockSupport.unpark(flusher);
+        return sequence;
+    }
+
+    // Append a record under the sequence it already carries, e.g. one replicated from another node
+    public void appendSequenced(JournalRecord record) {
+        synchronized (appendLock) {
+            if (current == null) {
+                throw new IllegalStateException("Journal is not started");
+            }
+            if (record.getSequence() <= lastAppended) {
+                throw new IllegalArgumentException("Journal sequence " + record.getSequence()
+                    + " is not after " + lastAppended);
+            }
+            nextSequence = record.getSequence() + 1;
+            write(record);
+        }
+        LockSupport.unpark(flusher);
+    }
+
+    // Must hold appendLock
+    private void write(JournalRecord sequenced) {
+        long sequence = sequenced.getSequence();
+        int needed = HEADER_SIZE + sequenced.maxEncodedSize();
+        if (needed + 4 > segmentSize) {
+            throw new IllegalArgumentException("Journal record is larger than a segment");
+        }
+        if (current.remaining() < needed + 4) {
+            roll(sequence);
+        }
+
+        int start = current.position();
+        current.position(start + HEADER_SIZE);
+        sequenced.encode(current);
+        int length = current.position() - start - HEADER_SIZE;
+
+        ByteBuffer payload = current.duplicate();
+        payload.position(start + HEADER_SIZE).limit(start + HEADER_SIZE + length);
+        checksum.reset();
+        checksum.update(payload);
+        current.putInt(start + 4, (int) checksum.getValue());
+        // Length goes in last so a half-written record reads as the end of the segment
+        current.putInt(start, length);
+        lastAppended = sequence;
+    }
+
+    public void awaitDurable(long sequence) {
+        if (durable >= sequence) {
+            return;
+        }
+        synchronized (durableLock) {
+            while (durable < sequence) {
+                if (!running) {
+                    throw new IllegalStateException("Journal is closed");
+                }
+                try {
+                    durableLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for journal commit", e);
+                }
+            }
+        }
+    }
+
+    // Completes on the flusher thread once the sequence is on disk, so dependent work must be quick
+    public CompletableFuture<Void> whenDurable(long sequence) {
+        if (durable >= sequence) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> waiter = durableWaiters.computeIfAbsent(sequence, key -> new CompletableFuture<>());
+        // The flusher may have moved past this sequence before the waiter was registered
+        if (durable >= sequence || !running) {
+            completeDurableWaiters();
+        }
+        return waiter;
+    }
+
+    // Delete whole segments whose records all precede the given sequence (e.g. covered by a snapshot)
+    public int deleteSegmentsBefore(long sequence) {
+        List<Path> segments = listSegments();
+        int deleted = 0;
+        // A segment can only go if the next one starts at or below the cut-off
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (firstSequence(segments.get(i + 1)) > sequence + 1) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(segments.get(i));
+                deleted++;
+            } catch (IOException e) {
+                logger.warn("Cannot delete journal segment {}", segments.get(i), e);
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (durableLock) {
+            durableLock.notifyAll();
+        }
+        completeDurableWaiters();
+    }
+
+    private void completeDurableWaiters() {
+        Map.Entry<Long, CompletableFuture<Void>> waiter;
+        while ((waiter = durableWaiters.firstEntry()) != null) {
+            boolean written = waiter.getKey() <= durable;
+            if (!written && running) {
+                break;
+            }
+            // The flusher and a late registration may race to complete the same waiter
+            if (durableWaiters.remove(waiter.getKey(), waiter.getValue())) {
+                if (written) {
+                    waiter.getValue().complete(null);
+                } else {
+                    waiter.getValue().completeExceptionally(new IllegalStateException("Journal is closed"));
+                }
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (running || durable < lastAppended) {
+            if (durable == lastAppended) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                continue;
+            }
+            if (groupCommitWindowNanos > 0) {
+                // Give concurrent appenders a moment to join this commit
+                LockSupport.parkNanos(groupCommitWindowNanos);
+            }
+
+            long target;
+            List<MappedByteBuffer> toForce;
+            synchronized (appendLock) {
+                target = lastAppended;
+                toForce = new ArrayList<>(unforced);
+                unforced.clear();
+                unforced.add(current);
+            }
+            if (fsync) {
+                for (MappedByteBuffer segment : toForce) {
+                    segment.force();
+                }
+            }
+
+            synchronized (durableLock) {
+                durable = target;
+                durableLock.notifyAll();
+            }
+            completeDurableWaiters();
+        }
+    }
+
+    // Must hold appendLock
+    private void roll(long firstSequence) {
+        if (current.remaining() >= 4) {
+            current.putInt(current.position(), ROLLED);
+        }
+        current = createSegment(firstSequence);
+        unforced.add(current);
+    }
+
+    private MappedByteBuffer createSegment(long firstSequence) {
+        Path path = directory.resolve(String.format("%s%020d%s", PREFIX, firstSequence, SUFFIX));
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create journal segment " + path, e);
+        }
+    }
+
+    private List<Path> listSegments() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .filter(path -> {
+                    String name = path.getFileName().toString();
+                    return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                })
+                .sorted()
+                .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list journal directory " + directory, e);
+        }
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
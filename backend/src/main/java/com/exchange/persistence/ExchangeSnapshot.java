@@ -0,0 +1,135 @@
+package com.exchange.persistence;
+
+import com.exchange.model.Order;
+
+import java.util.List;
+
+/**
+ * Point-in-time copy of the exchange state taken at a quiescent point of every book.
+ *
+ * Resting orders are listed per book in priority order (best price first, then arrival),
+ * so loading them back with plain adds recreates the exact queues. The journal sequence is
+ * the last command reflected in the snapshot; replay resumes after it. Prices, costs and
+ * profits are scaled longs (see {@link com.exchange.model.Prices}). Users whose kill switch
+ * is engaged are listed by name, whether or not they have positions.
+ */
+public final class ExchangeSnapshot {
+    private final long sequence;
+    private final long createdAt;
+    private final List<BookState> books;
+    private final List<UserState> users;
+    private final List<String> disabledUsers;
+
+    public ExchangeSnapshot(long sequence, long createdAt, List<BookState> books, List<UserState> users,
+                            List<String> disabledUsers) {
+        this.sequence = sequence;
+        this.createdAt = createdAt;
+        this.books = books;
+        this.users = users;
+        this.disabledUsers = disabledUsers;
+    }
+
+    public long getSequence() { return sequence; }
+    public long getCreatedAt() { return createdAt; }
+    public List<BookState> getBooks() { return books; }
+    public List<UserState> getUsers() { return users; }
+    public List<String> getDisabledUsers() { return disabledUsers; }
+
+    public int getOrderCount() {
+        int count = 0;
+        for (BookState book : books) {
+            count += book.getOrders().size();
+        }
+        return count;
+    }
+
+    // Every listed book has a state, including books that have never had an order
+    public static final class BookState {
+        private final String name;
+        private final boolean halted;
+        // Zero in snapshots taken before books had their own grid, which then comes from the configuration
+        private final long tickSize;
+        private final int lotSize;
+        private final List<OrderState> orders;
+
+        public BookState(String name, boolean halted, long tickSize, int lotSize, List<OrderState> orders) {
+            this.name = name;
+            this.halted = halted;
+            this.tickSize = tickSize;
+            this.lotSize = lotSize;
+            this.orders = orders;
+        }
+
+        public String getName() { return name; }
+        public boolean isHalted() { return halted; }
+        public long getTickSize() { return tickSize; }
+        public int getLotSize() { return lotSize; }
+        public List<OrderState> getOrders() { return orders; }
+    }
+
+    public static final class OrderState {
+        private final String id;
+        private final Order.OrderType side;
+        private final long price;
+        private final int quantity;
+        private final String username;
+        private final long timestamp;
+        private final Order.OrderStatus status;
+
+        public OrderState(String id, Order.OrderType side, long price, int quantity, String username,
+                          long timestamp, Order.OrderStatus status) {
+            this.id = id;
+            this.side = side;
+            this.price = price;
+            this.quantity = quantity;
+            this.username = username;
+            this.timestamp = timestamp;
+            this.status = status;
+        }
+
+        public static OrderState of(Order order) {
+            return new OrderState(order.getId(), order.getType(), order.getPrice(), order.getQuantity(),
+                order.getUsername(), order.getTimestamp(), order.getStatus());
+        }
+
+        public String getId() { return id; }
+        public Order.OrderType getSide() { return side; }
+        public long getPrice() { return price; }
+        public int getQuantity() { return quantity; }
+        public String getUsername() { return username; }
+        public long getTimestamp() { return timestamp; }
+        public Order.OrderStatus getStatus() { return status; }
+    }
+
+    public static final class UserState {
+        private final String username;
+        private final long realizedProfit;
+        private final List<PositionState> positions;
+
+        public UserState(String username, long realizedProfit, List<PositionState> positions) {
+            this.username = username;
+            this.realizedProfit = realizedProfit;
+            this.positions = positions;
+        }
+
+        public String getUsername() { return username; }
+        public long getRealizedProfit() { return realizedProfit; }
+        public List<PositionState> getPositions() { return positions; }
+    }
+
+    public static final class PositionState {
+        private final String symbol;
+        private final int quantity;
+        private final long costBasis;
+
+        public PositionState(String symbol, int quantity, long costBasis) {
+            this.symbol = symbol;
+            this.quantity = quantity;
+            this.costBasis = costBasis;
+        }
+
+        public String getSymbol() { return symbol; }
+        public int getQuantity() { return quantity; }
+        public long getCostBasis() { return costBasis; }
+    }
+}
@@ -0,0 +1,162 @@
+package com.exchange.persistence;
+
+import com.exchange.model.Instrument;
+import com.exchange.model.Order;
+import com.exchange.model.Prices;
+
+import java.nio.ByteBuffer;
+
+import static com.exchange.persistence.BinaryCodec.getString;
+import static com.exchange.persistence.BinaryCodec.maxStringSize;
+import static com.exchange.persistence.BinaryCodec.putString;
+
+/**
+ * One accepted command as written to the journal.
+ *
+ * Records carry everything needed to re-apply the command deterministically, including the
+ * order id and acceptance time that were handed back to the client. Listing, halting,
+ * resuming and delisting a book are journaled the same way, in order with its orders. The
+ * user kill switch is journaled too, as records with no book.
+ *
+ * Prices are written as the scaled longs they are in memory. Records written before that
+ * carried them as doubles; those lack the SCALED flag in their type byte and still replay,
+ * rounded to the nearest millionth.
+ */
+public final class JournalRecord {
+    public enum Type {
+        // Encoded by ordinal, so new types only ever go at the end
+        PLACE, CANCEL, AMEND, CANCEL_ALL, LIST, HALT, RESUME, DELIST, DISABLE_USER, ENABLE_USER
+    }
+
+    // Set in the type byte of records whose price is a scaled long rather than a double
+    private static final int SCALED = 0x80;
+
+    private static final Type[] TYPES = Type.values();
+    private static final Order.OrderType[] SIDES = Order.OrderType.values();
+
+    private final long sequence;
+    private final long timestamp;
+    private final Type type;
+    private final String book;
+    private final String username;
+    private final String orderId;
+    private final Order.OrderType side;
+    private final long price;
+    private final int quantity;
+
+    private JournalRecord(long sequence, long timestamp, Type type, String book, String username,
+                          String orderId, Order.OrderType side, long price, int quantity) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.book = book;
+        this.username = username;
+        this.orderId = orderId;
+        this.side = side;
+        this.price = price;
+        this.quantity = quantity;
+    }
+
+    public static JournalRecord place(Order order) {
+        return new JournalRecord(0, order.getTimestamp(), Type.PLACE, order.getBook(), order.getUsername(),
+            order.getId(), order.getType(), order.getPrice(), order.getQuantity());
+    }
+
+    public static JournalRecord cancel(String book, String username, String orderId) {
+        return new JournalRecord(0, System.currentTimeMillis(), Type.CANCEL, book, username, orderId, null, 0, 0);
+    }
+
+    public static JournalRecord amend(String book, String username, String orderId, int quantity) {
+        return new JournalRecord(0, System.currentTimeMillis(), Type.AMEND, book, username, orderId, null, 0, quantity);
+    }
+
+    public static JournalRecord cancelAll(String book, String username) {
+        return new JournalRecord(0, System.currentTimeMillis(), Type.CANCEL_ALL, book, username, null, null, 0, 0);
+    }
+
+    // A LIST writes the book's tick size, a raw scaled long, in the price slot and its lot size in the quantity slot
+    public static JournalRecord list(String book, Instrument instrument) {
+        return new JournalRecord(0, System.currentTimeMillis(), Type.LIST, book, null, null, null,
+            instrument.getTickSize(), instrument.getLotSize());
+    }
+
+    // HALT, RESUME or DELIST of a whole book
+    public static JournalRecord listing(Type type, String book) {
+        if (type != Type.HALT && type != Type.RESUME && type != Type.DELIST) {
+            throw new IllegalArgumentException("Not a listing command: " + type);
+        }
+        return new JournalRecord(0, System.currentTimeMillis(), type, book, null, null, null, 0, 0);
+    }
+
+    // DISABLE_USER or ENABLE_USER: the kill switch for one user across every book
+    public static JournalRecord killSwitch(Type type, String username) {
+        if (type != Type.DISABLE_USER && type != Type.ENABLE_USER) {
+            throw new IllegalArgumentException("Not a kill switch command: " + type);
+        }
+        return new JournalRecord(0, System.currentTimeMillis(), type, null, username, null, null, 0, 0);
+    }
+
+    public JournalRecord withSequence(long sequence) {
+        return new JournalRecord(sequence, timestamp, type, book, username, orderId, side, price, quantity);
+    }
+
+    public long getSequence() { return sequence; }
+    public long getTimestamp() { return timestamp; }
+    public Type getType() { return type; }
+    public String getBook() { return book; }
+    public String getUsername() { return username; }
+    public String getOrderId() { return orderId; }
+    public Order.OrderType getSide() { return side; }
+    public long getPrice() { return price; }
+    public int getQuantity() { return quantity; }
+
+    // The grid of the book a LIST record lists
+    public long getTickSize() {
+        requireList();
+        return price;
+    }
+
+    public int getLotSize() {
+        requireList();
+        return quantity;
+    }
+
+    private void requireList() {
+        if (type != Type.LIST) {
+            throw new IllegalStateException("Not a LIST record: " + type);
+        }
+    }
+
+    // Upper bound of the encoded size, used to check whether the record fits in the current segment
+    public int maxEncodedSize() {
+        return 8 + 8 + 1 + 1 + 8 + 4
+            + maxStringSize(book) + maxStringSize(username) + maxStringSize(orderId);
+    }
+
+    public void encode(ByteBuffer buffer) {
+        buffer.putLong(sequence);
+        buffer.putLong(timestamp);
+        buffer.put((byte) (type.ordinal() | SCALED));
+        buffer.put((byte) (side == null ? -1 : side.ordinal()));
+        buffer.putLong(price);
+        buffer.putInt(quantity);
+        putString(buffer, book);
+        putString(buffer, username);
+        putString(buffer, orderId);
+    }
+
+    public static JournalRecord decode(ByteBuffer buffer) {
+        long sequence = buffer.getLong();
+        long timestamp = buffer.getLong();
+        int typeByte = buffer.get() & 0xff;
+        Type type = TYPES[typeByte & ~SCALED];
+        byte side = buffer.get();
+        long price = (typeByte & SCALED) != 0 ? buffer.getLong() : Math.round(buffer.getDouble() * Prices.SCALE);
+        int quantity = buffer.getInt();
+        String book = getString(buffer);
+        String username = getString(buffer);
+        String orderId = getString(buffer);
+        return new JournalRecord(sequence, timestamp, type, book, username, orderId,
+            side < 0 ? null : SIDES[side], price, quantity);
+    }
+}
@@ -0,0 +1,172 @@
+package com.exchange.persistence;
+
+import com.exchange.model.Order;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.exchange.persistence.BinaryCodec.getString;
+import static com.exchange.persistence.BinaryCodec.maxStringSize;
+import static com.exchange.persistence.BinaryCodec.putString;
+
+/**
+ * Cold tier for filled and cancelled orders, looked up by order id.
+ *
+ * Each block header holds the sorted 64-bit hashes of the ids in the block, so a lookup
+ * binary-searches headers in the mapped segments and inflates only a block that may hold the
+ * order. The heap keeps one location per block rather than an entry per order. Orders in a
+ * segment deleted by the retention limit are no longer found.
+ */
+public final class OrderArchive implements Closeable {
+    private static final Order.OrderType[] SIDES = Order.OrderType.values();
+    private static final Order.OrderStatus[] STATUSES = Order.OrderStatus.values();
+
+    private final ArchiveSegments segments;
+    private long[] blocks = new long[64];
+    private int blockCount;
+    private long archivedCount;
+
+    public OrderArchive(Path directory, int segmentSize, int maxSegments) {
+        this.segments = new ArchiveSegments(directory, "orders-", segmentSize, maxSegments);
+    }
+
+    public synchronized long getArchivedCount() {
+        return archivedCount;
+    }
+
+    public void append(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+        long[] hashes = new long[orders.size()];
+        int size = 0;
+        for (int i = 0; i < orders.size(); i++) {
+            Order order = orders.get(i);
+            hashes[i] = hash(order.getId());
+            size += maxStringSize(order.getId()) + maxStringSize(order.getBook()) + 1 + 8 + 4
+                + maxStringSize(order.getUsername()) + 1 + 8;
+        }
+        Arrays.sort(hashes);
+
+        ByteBuffer body = ByteBuffer.allocate(size);
+        for (Order order : orders) {
+            putString(body, order.getId());
+            putString(body, order.getBook());
+            body.put((byte) order.getType().ordinal());
+            body.putLong(order.getPrice());
+            body.putInt(order.getQuantity());
+            putString(body, order.getUsername());
+            body.put((byte) order.getStatus().ordinal());
+            body.putLong(order.getTimestamp());
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(4 + hashes.length * 8);
+        header.putInt(orders.size());
+        for (long hash : hashes) {
+            header.putLong(hash);
+        }
+        header.flip();
+
+        long location = segments.append(header, body.array(), body.position());
+        addBlock(location, orders.size());
+    }
+
+    // The archived order with this id, or null
+    public Order find(String orderId) {
+        long hash = hash(orderId);
+        long[] locations;
+        int count;
+        synchronized (this) {
+            locations = blocks;
+            count = blockCount;
+        }
+        // Newest blocks first; orders are mostly looked up shortly after they close
+        for (int b = count - 1; b >= 0; b--) {
+            ByteBuffer header = segments.header(locations[b]);
+            if (header == null) {
+                // This block's segment was deleted, and every older one with it
+                return null;
+            }
+            if (!mayContain(header, hash)) {
+                continue;
+            }
+            ByteBuffer body = segments.body(locations[b]);
+            if (body == null) {
+                return null;
+            }
+            int orders = header.getInt(0);
+            for (int i = 0; i < orders; i++) {
+                Order order = decode(body);
+                if (order.getId().equals(orderId)) {
+                    return order;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        segments.close();
+    }
+
+    private synchronized void addBlock(long location, int orders) {
+        // Forget blocks whose segment was deleted; a copy, since find may still be scanning the old array
+        int deleted = 0;
+        while (deleted < blockCount && !segments.contains(blocks[deleted])) {
+            deleted++;
+        }
+        if (deleted > 0) {
+            blocks = Arrays.copyOfRange(blocks, deleted, blocks.length);
+            blockCount -= deleted;
+        }
+        if (blockCount == blocks.length) {
+            blocks = Arrays.copyOf(blocks, blockCount * 2);
+        }
+        blocks[blockCount++] = location;
+        archivedCount += orders;
+    }
+
+    private static boolean mayContain(ByteBuffer header, long hash) {
+        int low = 0;
+        int high = header.getInt(0) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = header.getLong(4 + mid * 8);
+            if (value < hash) {
+                low = mid + 1;
+            } else if (value > hash) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Order decode(ByteBuffer body) {
+        String id = getString(body);
+        String book = getString(body);
+        Order.OrderType side = SIDES[body.get()];
+        long price = body.getLong();
+        int quantity = body.getInt();
+        String username = getString(body);
+        Order.OrderStatus status = STATUSES[body.get()];
+        Order order = new Order(id, book, side, price, quantity, username, body.getLong());
+        order.setStatus(status);
+        return order;
+    }
+
+    // 64-bit FNV-1a; collisions only cost an extra block read, since ids are compared after decoding
+    private static long hash(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,306 @@
+package com.exchange.persistence;
+
+import com.exchange.model.Order;
+import com.exchange.model.Prices;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static com.exchange.persistence.BinaryCodec.getString;
+import static com.exchange.persistence.BinaryCodec.maxStringSize;
+import static com.exchange.persistence.BinaryCodec.putString;
+
+/**
+ * Reads and writes binary snapshot files.
+ *
+ * A snapshot is encoded into one buffer, written to a temporary file, forced and then
+ * atomically renamed to {@code snapshot-<sequence>.bin}, so a crash mid-write never leaves a
+ * half snapshot behind. Loading reads the whole file with a single bulk channel read and
+ * verifies the trailing CRC32 before decoding.
+ */
+public final class SnapshotStore {
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotStore.class);
+
+    private static final int MAGIC = 0x4d4c534e; // "MLSN"
+    // Version 2 added the halted flag per book and version 3 each book's grid, with prices and money as
+    // scaled longs instead of doubles. Older files still load, with every book trading on the configured grid.
+    // Version 4 added the users whose kill switch is engaged.
+    private static final int VERSION = 4;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+
+    private static final Order.OrderType[] SIDES = Order.OrderType.values();
+    private static final Order.OrderStatus[] STATUSES = Order.OrderStatus.values();
+
+    private final Path directory;
+
+    public SnapshotStore(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create snapshot directory " + directory, e);
+        }
+    }
+
+    public Path write(ExchangeSnapshot snapshot) {
+        ByteBuffer buffer = toBytes(snapshot);
+
+        Path target = directory.resolve(String.format("%s%020d%s", PREFIX, snapshot.getSequence(), SUFFIX));
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write snapshot " + temp, e);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot publish snapshot " + target, e);
+        }
+        return target;
+    }
+
+    // Newest snapshot that decodes cleanly; older ones are tried if the newest is damaged
+    public Optional<ExchangeSnapshot> loadLatest() {
+        List<Path> snapshots = listSnapshots();
+        Collections.reverse(snapshots);
+        for (Path path : snapshots) {
+            try {
+                return Optional.of(read(path));
+            } catch (RuntimeException e) {
+                logger.warn("Ignoring unreadable snapshot {}: {}", path, e.getMessage());
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Keep only the newest {@code keep} snapshots and return the sequence of the oldest one
+     * kept (journal records up to it are no longer needed), or -1 if nothing is kept.
+     */
+    public long prune(int keep) {
+        List<Path> snapshots = listSnapshots();
+        int toDelete = Math.max(0, snapshots.size() - keep);
+        for (int i = 0; i < toDelete; i++) {
+            try {
+                Files.deleteIfExists(snapshots.get(i));
+            } catch (IOException e) {
+                logger.warn("Cannot delete snapshot {}", snapshots.get(i), e);
+            }
+        }
+        return toDelete < snapshots.size() ? sequenceOf(snapshots.get(toDelete)) : -1;
+    }
+
+    private ExchangeSnapshot read(Path path) {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocateDirect((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // bulk read until the buffer is full
+            }
+            buffer.flip();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read snapshot " + path, e);
+        }
+
+        return fromBytes(buffer);
+    }
+
+    // The snapshot in its file format, e.g. to send to another node
+    public static ByteBuffer toBytes(ExchangeSnapshot snapshot) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize(snapshot));
+        encode(snapshot, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    public static ExchangeSnapshot fromBytes(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            throw new IllegalStateException("snapshot is truncated");
+        }
+        ByteBuffer body = buffer.duplicate();
+        body.limit(buffer.limit() - 4);
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        if ((int) crc.getValue() != buffer.getInt(buffer.limit() - 4)) {
+            throw new IllegalStateException("checksum mismatch");
+        }
+        try {
+            return decode(body);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalStateException("snapshot is truncated", e);
+        }
+    }
+
+    private static int encodedSize(ExchangeSnapshot snapshot) {
+        int size = 4 + 4 + 8 + 8 + 4 + 4 + 4 + 4;
+        for (ExchangeSnapshot.BookState book : snapshot.getBooks()) {
+            size += maxStringSize(book.getName()) + 1 + 8 + 4 + 4;
+            for (ExchangeSnapshot.OrderState order : book.getOrders()) {
+                size += maxStringSize(order.getId()) + maxStringSize(order.getUsername()) + 1 + 8 + 4 + 8 + 1;
+            }
+        }
+        for (ExchangeSnapshot.UserState user : snapshot.getUsers()) {
+            size += maxStringSize(user.getUsername()) + 8 + 4;
+            for (ExchangeSnapshot.PositionState position : user.getPositions()) {
+                size += maxStringSize(position.getSymbol()) + 4 + 8;
+            }
+        }
+        for (String username : snapshot.getDisabledUsers()) {
+            size += maxStringSize(username);
+        }
+        return size;
+    }
+
+    private static void encode(ExchangeSnapshot snapshot, ByteBuffer buffer) {
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(snapshot.getSequence());
+        buffer.putLong(snapshot.getCreatedAt());
+
+        buffer.putInt(snapshot.getBooks().size());
+        for (ExchangeSnapshot.BookState book : snapshot.getBooks()) {
+            putString(buffer, book.getName());
+            buffer.put((byte) (book.isHalted() ? 1 : 0));
+            buffer.putLong(book.getTickSize());
+            buffer.putInt(book.getLotSize());
+            buffer.putInt(book.getOrders().size());
+            for (ExchangeSnapshot.OrderState order : book.getOrders()) {
+                putString(buffer, order.getId());
+                putString(buffer, order.getUsername());
+                buffer.put((byte) order.getSide().ordinal());
+                buffer.putLong(order.getPrice());
+                buffer.putInt(order.getQuantity());
+                buffer.putLong(order.getTimestamp());
+                buffer.put((byte) order.getStatus().ordinal());
+            }
+        }
+
+        buffer.putInt(snapshot.getUsers().size());
+        for (ExchangeSnapshot.UserState user : snapshot.getUsers()) {
+            putString(buffer, user.getUsername());
+            buffer.putLong(user.getRealizedProfit());
+            buffer.putInt(user.getPositions().size());
+            for (ExchangeSnapshot.PositionState position : user.getPositions()) {
+                putString(buffer, position.getSymbol());
+                buffer.putInt(position.getQuantity());
+                buffer.putLong(position.getCostBasis());
+            }
+        }
+
+        buffer.putInt(snapshot.getDisabledUsers().size());
+        for (String username : snapshot.getDisabledUsers()) {
+            putString(buffer, username);
+        }
+
+        ByteBuffer body = buffer.duplicate();
+        body.flip();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    private static ExchangeSnapshot decode(ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalStateException("not a snapshot file");
+        }
+        int version = buffer.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IllegalStateException("unsupported snapshot version " + version);
+        }
+        long sequence = buffer.getLong();
+        long createdAt = buffer.getLong();
+
+        int bookCount = buffer.getInt();
+        List<ExchangeSnapshot.BookState> books = new ArrayList<>(bookCount);
+        for (int b = 0; b < bookCount; b++) {
+            String name = getString(buffer);
+            boolean halted = version >= 2 && buffer.get() != 0;
+            long tickSize = version >= 3 ? buffer.getLong() : 0;
+            int lotSize = version >= 3 ? buffer.getInt() : 0;
+            int orderCount = buffer.getInt();
+            List<ExchangeSnapshot.OrderState> orders = new ArrayList<>(orderCount);
+            for (int o = 0; o < orderCount; o++) {
+                String id = getString(buffer);
+                String username = getString(buffer);
+                Order.OrderType side = SIDES[buffer.get()];
+                long price = version >= 3 ? buffer.getLong() : scaled(buffer.getDouble());
+                int quantity = buffer.getInt();
+                long timestamp = buffer.getLong();
+                Order.OrderStatus status = STATUSES[buffer.get()];
+                orders.add(new ExchangeSnapshot.OrderState(id, side, price, quantity, username, timestamp, status));
+            }
+            books.add(new ExchangeSnapshot.BookState(name, halted, tickSize, lotSize, orders));
+        }
+
+        int userCount = buffer.getInt();
+        List<ExchangeSnapshot.UserState> users = new ArrayList<>(userCount);
+        for (int u = 0; u < userCount; u++) {
+            String username = getString(buffer);
+            long realizedProfit = version >= 3 ? buffer.getLong() : scaled(buffer.getDouble());
+            int positionCount = buffer.getInt();
+            List<ExchangeSnapshot.PositionState> positions = new ArrayList<>(positionCount);
+            for (int p = 0; p < positionCount; p++) {
+                String symbol = getString(buffer);
+                int quantity = buffer.getInt();
+                // Older files kept the average cost per share rather than the cost of the whole position
+                long costBasis = version >= 3 ? buffer.getLong() : scaled(buffer.getDouble() * Math.abs(quantity));
+                positions.add(new ExchangeSnapshot.PositionState(symbol, quantity, costBasis));
+            }
+            users.add(new ExchangeSnapshot.UserState(username, realizedProfit, positions));
+        }
+
+        int disabledCount = version >= 4 ? buffer.getInt() : 0;
+        List<String> disabledUsers = new ArrayList<>(disabledCount);
+        for (int d = 0; d < disabledCount; d++) {
+            disabledUsers.add(getString(buffer));
+        }
+
+        return new ExchangeSnapshot(sequence, createdAt, books, users, disabledUsers);
+    }
+
+    // Doubles from older files, rounded to the nearest scaled value
+    private static long scaled(double value) {
+        return Math.round(value * Prices.SCALE);
+    }
+
+    private List<Path> listSnapshots() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .filter(path -> {
+                    String name = path.getFileName().toString();
+                    return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                })
+                .sorted()
+                .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list snapshot directory " + directory, e);
+        }
+    }
+
+    private static long sequenceOf(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,188 @@
+package com.exchange.persistence;
+
+import com.exchange.model.Trade;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.exchange.persistence.BinaryCodec.getString;
+import static com.exchange.persistence.BinaryCodec.maxStringSize;
+import static com.exchange.persistence.BinaryCodec.putString;
+
+/**
+ * Cold tier for trades: compressed blocks of one symbol's trades in archive segments.
+ *
+ * Each block header carries the symbol, the trade count and the block's time range, and the
+ * in-memory index keeps just that per block, grouped by symbol. A query for a symbol and time
+ * range only inflates blocks whose range overlaps it, newest first. Blocks in a segment deleted
+ * by the retention limit drop out of the index.
+ */
+public final class TradeArchive implements Closeable {
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final ArchiveSegments segments;
+    private final Map<String, List<Block>> index = new ConcurrentHashMap<>();
+    private long archivedCount;
+    private int firstSegment;
+
+    public TradeArchive(Path directory, int segmentSize, int maxSegments) {
+        this.segments = new ArchiveSegments(directory, "trades-", segmentSize, maxSegments);
+    }
+
+    public synchronized long getArchivedCount() {
+        return archivedCount;
+    }
+
+    // Append trades in the order they happened; they are split into one block per symbol
+    public synchronized void append(List<Trade> trades) {
+        Map<String, List<Trade>> bySymbol = new LinkedHashMap<>();
+        for (Trade trade : trades) {
+            bySymbol.computeIfAbsent(trade.getSymbol(), symbol -> new ArrayList<>()).add(trade);
+        }
+
+        for (Map.Entry<String, List<Trade>> entry : bySymbol.entrySet()) {
+            List<Trade> symbolTrades = entry.getValue();
+            int size = 0;
+            long minMillis = Long.MAX_VALUE;
+            long maxMillis = Long.MIN_VALUE;
+            for (Trade trade : symbolTrades) {
+                size += maxStringSize(trade.getId()) + maxStringSize(trade.getBuyOrderId())
+                    + maxStringSize(trade.getSellOrderId()) + 4 + 8 + 8
+                    + maxStringSize(trade.getBuyerUsername()) + maxStringSize(trade.getSellerUsername());
+                long millis = toMillis(trade.getTimestamp());
+                minMillis = Math.min(minMillis, millis);
+                maxMillis = Math.max(maxMillis, millis);
+            }
+
+            ByteBuffer body = ByteBuffer.allocate(size);
+            for (Trade trade : symbolTrades) {
+                putString(body, trade.getId());
+                putString(body, trade.getBuyOrderId());
+                putString(body, trade.getSellOrderId());
+                body.putInt(trade.getQuantity());
+                body.putLong(trade.getPrice());
+                body.putLong(toMillis(trade.getTimestamp()));
+                putString(body, trade.getBuyerUsername());
+                putString(body, trade.getSellerUsername());
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(maxStringSize(entry.getKey()) + 4 + 8 + 8);
+            putString(header, entry.getKey());
+            header.putInt(symbolTrades.size());
+            header.putLong(minMillis);
+            header.putLong(maxMillis);
+            header.flip();
+
+            long location = segments.append(header, body.array(), body.position());
+            List<Block> blocks = blocks(entry.getKey());
+            synchronized (blocks) {
+                blocks.add(new Block(location, entry.getKey(), symbolTrades.size(), minMillis, maxMillis));
+            }
+            archivedCount += symbolTrades.size();
+        }
+        if (segments.getFirstSegment() != firstSegment) {
+            firstSegment = segments.getFirstSegment();
+            for (List<Block> blocks : index.values()) {
+                synchronized (blocks) {
+                    blocks.removeIf(block -> !segments.contains(block.location));
+                }
+            }
+        }
+    }
+
+    /**
+     * Add up to {@code limit} archived trades for the symbol with a timestamp in
+     * [fromMillis, toMillis] to {@code out}, newest first, leaving out any id in {@code skip}.
+     */
+    public void query(String symbol, long fromMillis, long toMillis, int limit, Set<String> skip, List<Trade> out) {
+        List<Block> blocks = index.get(symbol);
+        if (blocks == null) {
+            return;
+        }
+        List<Block> candidates = new ArrayList<>();
+        synchronized (blocks) {
+            for (int i = blocks.size() - 1; i >= 0; i--) {
+                Block block = blocks.get(i);
+                if (block.maxMillis >= fromMillis && block.minMillis <= toMillis) {
+                    candidates.add(block);
+                }
+            }
+        }
+
+        int added = 0;
+        for (Block block : candidates) {
+            ByteBuffer body = segments.body(block.location);
+            if (body == null) {
+                // Deleted by the retention limit since the candidates were picked, as were all older blocks
+                return;
+            }
+            List<Trade> decoded = decode(symbol, body, block.count);
+            for (int i = decoded.size() - 1; i >= 0; i--) {
+                Trade trade = decoded.get(i);
+                long millis = toMillis(trade.getTimestamp());
+                if (millis < fromMillis || millis > toMillis || skip.contains(trade.getId())) {
+                    continue;
+                }
+                out.add(trade);
+                if (++added == limit) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        segments.close();
+    }
+
+    private List<Block> blocks(String symbol) {
+        return index.computeIfAbsent(symbol, key -> new ArrayList<>());
+    }
+
+    private static List<Trade> decode(String symbol, ByteBuffer body, int count) {
+        List<Trade> trades = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = getString(body);
+            String buyOrderId = getString(body);
+            String sellOrderId = getString(body);
+            int quantity = body.getInt();
+            long price = body.getLong();
+            LocalDateTime timestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(body.getLong()), ZONE);
+            String buyer = getString(body);
+            String seller = getString(body);
+            trades.add(new Trade(id, buyOrderId, sellOrderId, symbol, quantity, price, timestamp, buyer, seller));
+        }
+        return trades;
+    }
+
+    private static long toMillis(LocalDateTime timestamp) {
+        return timestamp.atZone(ZONE).toInstant().toEpochMilli();
+    }
+
+    private static final class Block {
+        private final long location;
+        private final String symbol;
+        private final int count;
+        private final long minMillis;
+        private final long maxMillis;
+
+        private Block(long location, String symbol, int count, long minMillis, long maxMillis) {
+            this.location = location;
+            this.symbol = symbol;
+            this.count = count;
+            this.minMillis = minMillis;
+            this.maxMillis = maxMillis;
+        }
+    }
+}
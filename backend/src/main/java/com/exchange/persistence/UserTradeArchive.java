@@ -0,0 +1,186 @@
+package com.exchange.persistence;
+
+import com.exchange.model.Trade;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.exchange.persistence.BinaryCodec.getString;
+import static com.exchange.persistence.BinaryCodec.maxStringSize;
+import static com.exchange.persistence.BinaryCodec.putString;
+
+/**
+ * Cold tier for per-user trade histories: the oldest part of one user's history, moved out
+ * of memory a chunk at a time and addressed by the same positions the history uses.
+ *
+ * Each block header carries the username, the position of the block's first trade, the trade
+ * count and the time range, and the in-memory index keeps just that per block. Blocks in a
+ * segment deleted by the retention limit drop out of the index, so paging stops short of them.
+ */
+public final class UserTradeArchive implements Closeable {
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final ArchiveSegments segments;
+    private final Map<String, List<Block>> index = new ConcurrentHashMap<>();
+    private long archivedCount;
+    private int firstSegment;
+
+    public UserTradeArchive(Path directory, int segmentSize, int maxSegments) {
+        this.segments = new ArchiveSegments(directory, "user-trades-", segmentSize, maxSegments);
+    }
+
+    public synchronized long getArchivedCount() {
+        return archivedCount;
+    }
+
+    // Append consecutive trades of one user's history, the first of them at firstPosition
+    public synchronized void append(String username, int firstPosition, List<Trade> trades) {
+        int size = 0;
+        long minMillis = Long.MAX_VALUE;
+        long maxMillis = Long.MIN_VALUE;
+        for (Trade trade : trades) {
+            size += maxStringSize(trade.getId()) + maxStringSize(trade.getBuyOrderId())
+                + maxStringSize(trade.getSellOrderId()) + maxStringSize(trade.getSymbol()) + 4 + 8 + 8
+                + maxStringSize(trade.getBuyerUsername()) + maxStringSize(trade.getSellerUsername());
+            long millis = toMillis(trade.getTimestamp());
+            minMillis = Math.min(minMillis, millis);
+            maxMillis = Math.max(maxMillis, millis);
+        }
+
+        ByteBuffer body = ByteBuffer.allocate(size);
+        for (Trade trade : trades) {
+            putString(body, trade.getId());
+            putString(body, trade.getBuyOrderId());
+            putString(body, trade.getSellOrderId());
+            putString(body, trade.getSymbol());
+            body.putInt(trade.getQuantity());
+            body.putLong(trade.getPrice());
+            body.putLong(toMillis(trade.getTimestamp()));
+            putString(body, trade.getBuyerUsername());
+            putString(body, trade.getSellerUsername());
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(maxStringSize(username) + 4 + 4 + 8 + 8);
+        putString(header, username);
+        header.putInt(firstPosition);
+        header.putInt(trades.size());
+        header.putLong(minMillis);
+        header.putLong(maxMillis);
+        header.flip();
+
+        long location = segments.append(header, body.array(), body.position());
+        List<Block> blocks = index.computeIfAbsent(username, key -> new ArrayList<>());
+        synchronized (blocks) {
+            blocks.add(new Block(location, username, firstPosition, trades.size(), minMillis, maxMillis));
+        }
+        archivedCount += trades.size();
+        if (segments.getFirstSegment() != firstSegment) {
+            firstSegment = segments.getFirstSegment();
+            for (List<Block> userBlocks : index.values()) {
+                synchronized (userBlocks) {
+                    userBlocks.removeIf(block -> !segments.contains(block.location));
+                }
+            }
+        }
+    }
+
+    /**
+     * Add up to {@code limit} of the user's archived trades at positions below {@code before}
+     * to {@code out}, newest first, keeping only those with a timestamp in [fromMillis, toMillis].
+     * Returns the position to pass as {@code before} for the next page, or -1 when none are left;
+     * the same contract as TradeHistory.collect.
+     */
+    public int collect(String username, int before, long fromMillis, long toMillis, int limit, List<Trade> out) {
+        List<Block> blocks = index.get(username);
+        if (blocks == null) {
+            return -1;
+        }
+        List<Block> candidates = new ArrayList<>();
+        synchronized (blocks) {
+            for (int i = blocks.size() - 1; i >= 0; i--) {
+                Block block = blocks.get(i);
+                if (block.firstPosition < before) {
+                    candidates.add(block);
+                }
+            }
+        }
+
+        int added = 0;
+        for (Block block : candidates) {
+            if (block.maxMillis < fromMillis || block.minMillis > toMillis) {
+                continue;
+            }
+            ByteBuffer body = segments.body(block.location);
+            if (body == null) {
+                // Deleted by the retention limit since the candidates were picked, as were all older blocks
+                return -1;
+            }
+            List<Trade> decoded = decode(body, block.count);
+            for (int i = Math.min(before - block.firstPosition, block.count) - 1; i >= 0; i--) {
+                Trade trade = decoded.get(i);
+                long millis = toMillis(trade.getTimestamp());
+                if (millis < fromMillis || millis > toMillis) {
+                    continue;
+                }
+                out.add(trade);
+                int position = block.firstPosition + i;
+                if (++added == limit) {
+                    return position > 0 ? position : -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() {
+        segments.close();
+    }
+
+    private static List<Trade> decode(ByteBuffer body, int count) {
+        List<Trade> trades = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = getString(body);
+            String buyOrderId = getString(body);
+            String sellOrderId = getString(body);
+            String symbol = getString(body);
+            int quantity = body.getInt();
+            long price = body.getLong();
+            LocalDateTime timestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(body.getLong()), ZONE);
+            String buyer = getString(body);
+            String seller = getString(body);
+            trades.add(new Trade(id, buyOrderId, sellOrderId, symbol, quantity, price, timestamp, buyer, seller));
+        }
+        return trades;
+    }
+
+    private static long toMillis(LocalDateTime timestamp) {
+        return timestamp.atZone(ZONE).toInstant().toEpochMilli();
+    }
+
+    private static final class Block {
+        private final long location;
+        private final String username;
+        private final int firstPosition;
+        private final int count;
+        private final long minMillis;
+        private final long maxMillis;
+
+        private Block(long location, String username, int firstPosition, int count, long minMillis, long maxMillis) {
+            this.location = location;
+            this.username = username;
+            this.firstPosition = firstPosition;
+            this.count = count;
+            this.minMillis = minMillis;
+            this.maxMillis = maxMillis;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.exchange.replication;
+
+import com.exchange.persistence.ExchangeSnapshot;
+import com.exchange.persistence.JournalRecord;
+import com.exchange.persistence.SnapshotStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.exchange.replication.ReplicationProtocol.*;
+
+/**
+ * A follower's connection to its primary.
+ *
+ * One thread connects, says which sequence it has applied, and then applies the records it
+ * is sent strictly in sequence, each one through the replica before the next is read. That
+ * keeps the applied sequence exact, so a snapshot or a promotion always sees a prefix of the
+ * primary's history. Progress is acked whenever the thread has caught up with what has
+ * arrived. A lost connection is retried until the follower is stopped.
+ */
+public final class ReplicationClient {
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationClient.class);
+
+    private static final long RETRY_INTERVAL_MS = 1000;
+
+    /** The local state the primary's history is applied to. */
+    public interface Replica {
+        long getAppliedSequence();
+
+        // True while nothing has been applied, the only state a snapshot may be installed into
+        boolean isEmpty();
+
+        void install(ExchangeSnapshot snapshot);
+
+        // Apply one record and return once it is part of the local state
+        void apply(JournalRecord record);
+    }
+
+    private final String host;
+    private final int port;
+    private final long heartbeatIntervalMs;
+    private final Replica replica;
+
+    private Thread thread;
+    private volatile Socket socket;
+    private volatile boolean running;
+    private volatile boolean connected;
+    private volatile long primarySequence;
+    private volatile String error;
+
+    public ReplicationClient(String primary, long heartbeatIntervalMs, Replica replica) {
+        int colon = primary.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Replication primary must be host:port, got " + primary);
+        }
+        this.host = primary.substring(0, colon);
+        this.port = Integer.parseInt(primary.substring(colon + 1));
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+        this.replica = replica;
+    }
+
+    public String getPrimary() {
+        return host + ":" + port;
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "replication-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Returns once no further record will be applied
+    public void stop() {
+        running = false;
+        // Closing the socket ends a blocked read; a record being applied is finished first
+        closeSocket();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Map<String, Object> status() {
+        long applied = replica.getAppliedSequence();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("primary", getPrimary());
+        result.put("connected", connected);
+        result.put("appliedSequence", applied);
+        result.put("primarySequence", primarySequence);
+        result.put("lag", Math.max(0, primarySequence - applied));
+        if (error != null) {
+            result.put("error", error);
+        }
+        return result;
+    }
+
+    private void run() {
+        while (running) {
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                connection.connect(new InetSocketAddress(host, port), (int) RETRY_INTERVAL_MS);
+                connection.setTcpNoDelay(true);
+                // A primary that sends nothing, not even heartbeats, is treated as gone
+                connection.setSoTimeout((int) (heartbeatIntervalMs * 3));
+                follow(new DataInputStream(new BufferedInputStream(connection.getInputStream())),
+                    new DataOutputStream(new BufferedOutputStream(connection.getOutputStream())));
+            } catch (IOException e) {
+                if (running) {
+                    logger.warn("Replication from {} interrupted: {}", getPrimary(), e.toString());
+                }
+            } catch (RuntimeException e) {
+                // Local state can no longer follow this primary; stay read-only with what we have
+                error = e.getMessage();
+                logger.error("Stopped following {}: {}", getPrimary(), e.getMessage());
+                running = false;
+            } finally {
+                connected = false;
+            }
+            if (running) {
+                try {
+                    Thread.sleep(RETRY_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void follow(DataInputStream in, DataOutputStream out) throws IOException {
+        long applied = replica.getAppliedSequence();
+        writeSequence(out, HELLO, applied);
+        out.flush();
+        connected = true;
+        logger.info("Following {} from sequence {}", getPrimary(), applied);
+
+        while (running) {
+            ByteBuffer frame = readFrame(in);
+            byte type = frame.get();
+            switch (type) {
+                case RECORD: {
+                    JournalRecord record = JournalRecord.decode(frame);
+                    if (record.getSequence() <= applied) {
+                        break;
+                    }
+                    if (record.getSequence() != applied + 1) {
+                        // Reconnecting resumes right after the last record applied
+                        throw new IOException("Expected sequence " + (applied + 1) + " but got " + record.getSequence());
+                    }
+                    replica.apply(record);
+                    applied = record.getSequence();
+                    primarySequence = Math.max(primarySequence, applied);
+                    break;
+                }
+                case SNAPSHOT: {
+                    ExchangeSnapshot snapshot = SnapshotStore.fromBytes(frame.slice());
+                    if (!replica.isEmpty()) {
+                        throw new IllegalStateException("Fell too far behind to catch up at sequence " + applied
+                            + "; clear this follower's data and restart it to resync");
+                    }
+                    replica.install(snapshot);
+                    applied = snapshot.getSequence();
+                    primarySequence = Math.max(primarySequence, applied);
+                    logger.info("Installed snapshot from {} at sequence {}", getPrimary(), applied);
+                    break;
+                }
+                case HEARTBEAT:
+                    primarySequence = Math.max(primarySequence, frame.getLong());
+                    break;
+                default:
+                    throw new IOException("Unknown replication frame type " + type);
+            }
+            if (in.available() == 0) {
+                writeSequence(out, ACK, applied);
+                out.flush();
+            }
+        }
+    }
+
+    private void closeSocket() {
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+}
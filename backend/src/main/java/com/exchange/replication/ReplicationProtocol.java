@@ -0,0 +1,77 @@
+package com.exchange.replication;
+
+import com.exchange.persistence.JournalRecord;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Messages exchanged between a primary and its followers.
+ *
+ * Every frame is [int32 length][int8 type][body], big-endian, where length counts the type
+ * byte and the body. Records travel in their journal encoding, snapshots in their file format.
+ *
+ * <pre>
+ * follower to primary
+ *   HELLO      appliedSequence:int64   (sent once after connecting; streaming resumes after it)
+ *   ACK        appliedSequence:int64
+ * primary to follower
+ *   SNAPSHOT   snapshot file bytes     (only when the records a follower needs are gone)
+ *   RECORD     journal record
+ *   HEARTBEAT  lastSequence:int64      (sent when there is nothing else to send)
+ * </pre>
+ */
+public final class ReplicationProtocol {
+    public static final byte HELLO = 1;
+    public static final byte ACK = 2;
+
+    public static final byte SNAPSHOT = 11;
+    public static final byte RECORD = 12;
+    public static final byte HEARTBEAT = 13;
+
+    // Large enough for a snapshot of a busy exchange, small enough to reject garbage lengths
+    private static final int MAX_FRAME_LENGTH = 1 << 30;
+
+    private ReplicationProtocol() {
+    }
+
+    public static void writeSequence(DataOutputStream out, byte type, long sequence) throws IOException {
+        out.writeInt(1 + 8);
+        out.writeByte(type);
+        out.writeLong(sequence);
+    }
+
+    // scratch must hold at least record.maxEncodedSize() bytes
+    public static void writeRecord(DataOutputStream out, JournalRecord record, ByteBuffer scratch) throws IOException {
+        scratch.clear();
+        record.encode(scratch);
+        out.writeInt(1 + scratch.position());
+        out.writeByte(RECORD);
+        out.write(scratch.array(), 0, scratch.position());
+    }
+
+    public static void writeFrame(DataOutputStream out, byte type, ByteBuffer body) throws IOException {
+        out.writeInt(1 + body.remaining());
+        out.writeByte(type);
+        if (body.hasArray()) {
+            out.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+        } else {
+            byte[] bytes = new byte[body.remaining()];
+            body.duplicate().get(bytes);
+            out.write(bytes);
+        }
+    }
+
+    // Block until a whole frame has arrived; the returned buffer starts at the type byte
+    public static ByteBuffer readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 1 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid replication frame length " + length);
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return ByteBuffer.wrap(frame);
+    }
+}
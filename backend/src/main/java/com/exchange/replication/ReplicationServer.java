@@ -0,0 +1,327 @@
+package com.exchange.replication;
+
+import com.exchange.persistence.CommandJournal;
+import com.exchange.persistence.ExchangeSnapshot;
+import com.exchange.persistence.JournalRecord;
+import com.exchange.persistence.SnapshotStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.exchange.replication.ReplicationProtocol.*;
+
+/**
+ * The primary's end of replication: streams every sequenced command to connected followers.
+ *
+ * Book writers publish each command into an in-memory backlog indexed by sequence, right after
+ * it is journaled; that is the only work replication adds to the matching path. Each follower
+ * has its own sender thread that copies the next run of records out of the backlog and writes
+ * them to the socket, so a slow follower only ever holds up itself. A follower that asks for
+ * records the backlog has already overwritten is caught up from the journal, or failing that
+ * from a fresh snapshot, and then continues from the backlog.
+ */
+public final class ReplicationServer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationServer.class);
+
+    private static final int MAX_BATCH = 1024;
+    private static final int SCRATCH_SIZE = 64 * 1024;
+
+    private final JournalRecord[] backlog;
+    private final long heartbeatIntervalMs;
+    private final Supplier<ExchangeSnapshot> snapshots;
+    private final CommandJournal journal;
+    private final Set<Link> links = ConcurrentHashMap.newKeySet();
+
+    // Guards the backlog; lastSequence is the highest sequence below which nothing is missing
+    private final Object lock = new Object();
+    private long lastSequence;
+
+    private ServerSocket server;
+    private Thread acceptor;
+    private volatile boolean running;
+
+    /**
+     * @param journal   the primary's journal, which assigns sequences and serves catch-up; null if
+     *                  journaling is off, in which case sequences are assigned here
+     * @param snapshots captures a consistent snapshot for followers that cannot be caught up otherwise
+     */
+    public ReplicationServer(int backlogSize, long heartbeatIntervalMs, long lastSequence,
+                             CommandJournal journal, Supplier<ExchangeSnapshot> snapshots) {
+        this.backlog = new JournalRecord[backlogSize];
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+        this.lastSequence = lastSequence;
+        this.journal = journal;
+        this.snapshots = snapshots;
+    }
+
+    public void start(String host, int port) {
+        try {
+            server = new ServerSocket();
+            server.bind(new InetSocketAddress(host, port));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open replication port " + port, e);
+        }
+        running = true;
+        acceptor = new Thread(this::accept, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("Replication listening on {} at sequence {}", server.getLocalSocketAddress(), getLastSequence());
+    }
+
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            server.close();
+        } catch (IOException e) {
+            logger.warn("Cannot close replication port", e);
+        }
+        for (Link link : links) {
+            link.close();
+        }
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        try {
+            acceptor.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public long getLastSequence() {
+        synchronized (lock) {
+            return lastSequence;
+        }
+    }
+
+    /**
+     * Hand a command to the followers; called on the book's writer in the order commands were
+     * applied to that book. {@code sequence} is the journal's sequence for the record, or 0 to
+     * have one assigned here.
+     */
+    public void publish(JournalRecord record, long sequence) {
+        synchronized (lock) {
+            JournalRecord sequenced = record.withSequence(sequence > 0 ? sequence : lastSequence + 1);
+            backlog[slot(sequenced.getSequence())] = sequenced;
+            // Writers of different books may publish out of sequence order; only advance over a complete run
+            long before = lastSequence;
+            while (true) {
+                JournalRecord next = backlog[slot(lastSequence + 1)];
+                if (next == null || next.getSequence() != lastSequence + 1) {
+                    break;
+                }
+                lastSequence++;
+            }
+            if (lastSequence != before) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    public Map<String, Object> status() {
+        long last = getLastSequence();
+        List<Map<String, Object>> followers = new ArrayList<>();
+        for (Link link : links) {
+            Map<String, Object> follower = new LinkedHashMap<>();
+            follower.put("address", link.address);
+            follower.put("sentSequence", link.sent);
+            follower.put("appliedSequence", link.applied);
+            follower.put("lag", Math.max(0, last - link.applied));
+            followers.add(follower);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("port", getPort());
+        result.put("lastSequence", last);
+        result.put("backlog", backlog.length);
+        result.put("followers", followers);
+        return result;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % backlog.length);
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                Link link = new Link(socket);
+                links.add(link);
+                link.start();
+            } catch (IOException e) {
+                if (running) {
+                    logger.warn("Replication accept failed", e);
+                }
+            }
+        }
+    }
+
+    // Copy the records after {@code after}, up to MAX_BATCH; empty if none arrive in time, null if they are gone
+    private List<JournalRecord> take(long after) throws InterruptedException {
+        synchronized (lock) {
+            long deadline = System.currentTimeMillis() + heartbeatIntervalMs;
+            while (running && lastSequence <= after) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return List.of();
+                }
+                lock.wait(remaining);
+            }
+            if (lastSequence - after > backlog.length) {
+                return null;
+            }
+            long to = Math.min(lastSequence, after + MAX_BATCH);
+            List<JournalRecord> batch = new ArrayList<>((int) (to - after));
+            for (long sequence = after + 1; sequence <= to; sequence++) {
+                JournalRecord record = backlog[slot(sequence)];
+                if (record == null || record.getSequence() != sequence) {
+                    return null;
+                }
+                batch.add(record);
+            }
+            return batch;
+        }
+    }
+
+    private final class Link {
+        private final Socket socket;
+        private final String address;
+        private final ByteBuffer scratch = ByteBuffer.allocate(SCRATCH_SIZE);
+        private DataOutputStream out;
+        private volatile long sent;
+        private volatile long applied;
+
+        Link(Socket socket) {
+            this.socket = socket;
+            this.address = String.valueOf(socket.getRemoteSocketAddress());
+        }
+
+        void start() {
+            Thread sender = new Thread(this::send, "replication-sender-" + address);
+            sender.setDaemon(true);
+            sender.start();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+
+        private void send() {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), SCRATCH_SIZE));
+                ByteBuffer hello = readFrame(in);
+                if (hello.get() != HELLO) {
+                    throw new IOException("Expected HELLO from follower");
+                }
+                sent = applied = hello.getLong();
+                if (sent > getLastSequence()) {
+                    throw new IOException("Follower has applied " + sent + " but this primary is only at "
+                        + getLastSequence());
+                }
+                logger.info("Follower {} connected at sequence {}", address, sent);
+                Thread acks = new Thread(() -> readAcks(in), "replication-acks-" + address);
+                acks.setDaemon(true);
+                acks.start();
+
+                while (running) {
+                    List<JournalRecord> batch = take(sent);
+                    if (batch == null) {
+                        catchUp();
+                    } else if (batch.isEmpty()) {
+                        writeSequence(out, HEARTBEAT, getLastSequence());
+                        out.flush();
+                    } else {
+                        for (JournalRecord record : batch) {
+                            writeRecord(out, record, scratch);
+                        }
+                        out.flush();
+                        sent = batch.get(batch.size() - 1).getSequence();
+                    }
+                }
+            } catch (IOException | UncheckedIOException e) {
+                if (running) {
+                    logger.warn("Follower {} disconnected: {}", address, e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                logger.error("Replication to {} failed", address, e);
+            } finally {
+                close();
+                links.remove(this);
+            }
+        }
+
+        // The backlog no longer reaches back to this follower: replay the journal, else send a snapshot
+        private void catchUp() throws IOException {
+            long before = sent;
+            if (journal != null) {
+                long limit = getLastSequence();
+                journal.replay(sent, record -> {
+                    if (record.getSequence() == sent + 1 && record.getSequence() <= limit) {
+                        try {
+                            writeRecord(out, record, scratch);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        sent = record.getSequence();
+                    }
+                });
+                out.flush();
+            }
+            if (sent == before) {
+                ExchangeSnapshot snapshot = snapshots.get();
+                logger.info("Sending snapshot at sequence {} to follower {}", snapshot.getSequence(), address);
+                writeFrame(out, SNAPSHOT, SnapshotStore.toBytes(snapshot));
+                out.flush();
+                sent = snapshot.getSequence();
+            }
+        }
+
+        private void readAcks(DataInputStream in) {
+            try {
+                while (true) {
+                    ByteBuffer frame = readFrame(in);
+                    if (frame.get() == ACK) {
+                        applied = frame.getLong();
+                    }
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+    }
+}
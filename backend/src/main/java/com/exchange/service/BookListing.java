@@ -0,0 +1,69 @@
+package com.exchange.service;
+
+import com.exchange.engine.BookSequencer;
+import com.exchange.model.Instrument;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A book this engine lists, whether or not it has been used yet.
+ *
+ * Listing a symbol only creates this entry. The order book, its metrics and its candles are
+ * built on the book's writer when the first command for it arrives, so thousands of listed
+ * but quiet symbols cost little more than their names. Every book is owned by one sequencer
+ * from the matching pool for as long as it is listed.
+ */
+final class BookListing {
+    private final String name;
+    private final Instrument instrument;
+    // Null in DIRECT mode, where the lock below makes the caller the book's writer
+    private final BookSequencer sequencer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int thread;
+    private volatile boolean halted;
+
+    // The exchange's books version when this book last changed; set by its writer
+    volatile long changedVersion;
+
+    // Compaction sweep only: the book's version at the last sweep and when it was last compacted
+    long sweptVersion = -1;
+    long compactedVersion = -1;
+
+    BookListing(String name, Instrument instrument, BookSequencer sequencer, int thread) {
+        this.name = name;
+        this.instrument = instrument;
+        this.sequencer = sequencer;
+        this.thread = thread;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    // Tick and lot size, fixed for as long as the book is listed
+    Instrument getInstrument() {
+        return instrument;
+    }
+
+    BookSequencer getSequencer() {
+        return sequencer;
+    }
+
+    // DIRECT mode only
+    ReentrantLock getLock() {
+        return lock;
+    }
+
+    // Index of the owning sequencer in the matching pool, -1 in DIRECT mode
+    int getThread() {
+        return thread;
+    }
+
+    boolean isHalted() {
+        return halted;
+    }
+
+    void setHalted(boolean halted) {
+        this.halted = halted;
+    }
+}
@@ -1,79 +1,1131 @@
 package com.exchange.service;
 
+import com.exchange.config.ExchangeProperties;
+import com.exchange.engine.BookSequencer;
+import com.exchange.marketdata.CandleStore;
+import com.exchange.marketdata.MarketDataPublisher;
+import com.exchange.marketdata.MarketDataSink;
+import com.exchange.marketdata.MarketDataSubscription;
+import com.exchange.metrics.BookMetrics;
+import com.exchange.metrics.ExchangeMetrics;
+import com.exchange.metrics.TradeLog;
+import com.exchange.model.Instrument;
+import com.exchange.model.Leaderboard;
 import com.exchange.model.Order;
 import com.exchange.model.OrderBook;
+import com.exchange.model.OrderInstruction;
+import com.exchange.model.Prices;
+import com.exchange.model.TickLadderOrderBook;
 import com.exchange.model.Trade;
+import com.exchange.model.TreeMapOrderBook;
 import com.exchange.model.User;
 import com.exchange.model.Position;
+import com.exchange.persistence.CommandJournal;
+import com.exchange.persistence.ExchangeSnapshot;
+import com.exchange.persistence.JournalRecord;
+import com.exchange.persistence.SnapshotStore;
+import com.exchange.replication.ReplicationClient;
+import com.exchange.replication.ReplicationServer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 @Service
 public class ExchangeService {
     private static final Logger logger = LoggerFactory.getLogger(ExchangeService.class);
+    public static final int MAX_BATCH_SIZE = 1000;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final Pattern BOOK_NAME = Pattern.compile("[A-Za-z0-9._-]{1,32}");
     
+    // Listed books in name order; orderBooks holds only those whose book has been built
+    private final ConcurrentNavigableMap<String, BookListing> listings = new ConcurrentSkipListMap<>();
     private final Map<String, OrderBook> orderBooks = new ConcurrentHashMap<>();
     private final Map<String, User> users = new ConcurrentHashMap<>();
+    private final Leaderboard leaderboard = new Leaderboard();
     private final Map<String, Order> allOrders = new ConcurrentHashMap<>();
-    private final List<Trade> allTrades = Collections.synchronizedList(new ArrayList<>());
+    // SEQUENCED mode only: the fixed matching pool and how many books each thread owns (guarded by listingLock)
+    private final List<BookSequencer> matchingPool = new ArrayList<>();
+    private int[] booksPerThread = new int[0];
+    private final Object listingLock = new Object();
+    // Bumped whenever a book is listed, delisted or changed by a command; never goes back, so it can tag responses
+    private final AtomicLong booksVersion = new AtomicLong();
+    private final LongAdder compactions = new LongAdder();
+    private final Set<String> haltedUsers = ConcurrentHashMap.newKeySet();
+    private final ExchangeProperties properties;
+    private final MarketDataPublisher marketData;
+    private final List<ExecutionListener> executionListeners = new CopyOnWriteArrayList<>();
+    private final ExchangeMetrics metrics = new ExchangeMetrics();
+    private final TradeLog tradeLog;
+    private final RetentionManager retention;
+    private final MarkToMarket markToMarket = new MarkToMarket(leaderboard);
+    private final CandleStore candles;
+    private CommandJournal journal;
+    private SnapshotStore snapshots;
+    private ScheduledExecutorService snapshotScheduler;
+    private ScheduledExecutorService compactionScheduler;
+    private long lastSnapshotSequence;
+    private volatile Map<String, Object> recoveryStats = Map.of();
+    private volatile ReplicationServer replicationServer;
+    // Set while this node is a read-only follower; appliedSequence is the last primary command it applied
+    private volatile ReplicationClient follower;
+    private volatile long appliedSequence;
+    
+    public ExchangeService() {
+        this(new ExchangeProperties());
+    }
+    
+    @Autowired
+    public ExchangeService(ExchangeProperties properties) {
+        this.properties = properties;
+        this.marketData = new MarketDataPublisher(properties.getMarketData().getDeliveryThreads(),
+            properties.getMarketData().getMaxPendingTrades());
+        this.tradeLog = new TradeLog(properties.getMetrics().getTradeLogQueueSize(),
+            properties.getMetrics().getTradeLogSampleEvery());
+        this.retention = new RetentionManager(allOrders, users, properties.getRetention());
+        this.candles = new CandleStore(properties.getCandles().getBarsPerResolution());
+    }
+    
+    // Listeners run on the book's writer for every trade, so they must be quick and must not block
+    public void addExecutionListener(ExecutionListener listener) {
+        executionListeners.add(listener);
+    }
+    
+    public void removeExecutionListener(ExecutionListener listener) {
+        executionListeners.remove(listener);
+    }
     
     @PostConstruct
     public void init() {
-        // Initialize the 4 required orderbooks
-        orderBooks.put("AAPL", new OrderBook("AAPL"));
-        orderBooks.put("AMZN", new OrderBook("AMZN"));
-        orderBooks.put("NVDA", new OrderBook("NVDA")); // Changed from CLDE
-        orderBooks.put("MSFT", new OrderBook("MSFT")); // Changed from OPAI
+        // A sharded engine hosts only its share of the books and a router hosts none
+        boolean engine = properties.getCluster().getRole() == ExchangeProperties.ClusterRole.ENGINE;
+        if (engine && properties.getMatching().getMode() == ExchangeProperties.MatchingMode.SEQUENCED) {
+            int threads = properties.getMatching().getThreads() > 0 
+                ? properties.getMatching().getThreads() : Runtime.getRuntime().availableProcessors();
+            for (int i = 0; i < threads; i++) {
+                matchingPool.add(new BookSequencer(String.valueOf(i), properties.getMatching().getRingSize()));
+            }
+            booksPerThread = new int[threads];
+        }
+        if (engine) {
+            for (String book : properties.getCluster().getBooks()) {
+                listBook(book);
+            }
+        }
         
-        logger.info("Exchange initialized with 4 orderbooks: AAPL, AMZN, NVDA, MSFT");
+        // Rebuild state before any matching thread runs: latest snapshot first, then the journal tail after it
+        long recoveryStart = System.nanoTime();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long recoveredSequence = 0;
+        if (properties.getSnapshot().isEnabled()) {
+            snapshots = new SnapshotStore(Paths.get(properties.getSnapshot().getDirectory()));
+            recoveredSequence = loadSnapshot(stats);
+        }
+        if (properties.getJournal().isEnabled()) {
+            recoveredSequence = openJournal(recoveredSequence, stats);
+        }
+        stats.put("totalMs", (System.nanoTime() - recoveryStart) / 1_000_000.0);
+        recoveryStats = Collections.unmodifiableMap(stats);
+        logger.info("Recovery finished: {}", stats);
+        
+        for (BookSequencer sequencer : matchingPool) {
+            sequencer.start();
+        }
+        retention.start();
+        markToMarket.start();
+        
+        ExchangeProperties.Replication replication = properties.getReplication();
+        if (!replication.getPrimary().isBlank()) {
+            startFollowing(replication, recoveredSequence);
+        } else if (replication.isEnabled()) {
+            startReplicationServer();
+        }
+        
+        if (snapshots != null && properties.getSnapshot().getIntervalSeconds() > 0) {
+            long interval = properties.getSnapshot().getIntervalSeconds();
+            snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "snapshot-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotScheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    takeSnapshot();
+                } catch (RuntimeException e) {
+                    logger.error("Periodic snapshot failed", e);
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+        
+        long idleSeconds = properties.getBook().getIdleCompactSeconds();
+        if (engine && idleSeconds > 0) {
+            compactionScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "book-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactionScheduler.scheduleWithFixedDelay(this::compactIdleBooks, idleSeconds, idleSeconds, TimeUnit.SECONDS);
+        }
+        
+        logger.info("Exchange initialized with {} orderbooks on {} matching threads (matching mode {})",
+            listings.size(), matchingPool.size(), properties.getMatching().getMode());
     }
     
-    public Map<String, Object> placeOrder(String book, String orderType, double price, double quantity, String username) {
-        // Validate inputs
-        if (!orderBooks.containsKey(book)) {
-            throw new IllegalArgumentException("Invalid orderbook: " + book);
+    @PreDestroy
+    public void shutdown() {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+        if (compactionScheduler != null) {
+            compactionScheduler.shutdownNow();
+        }
+        ReplicationClient client = follower;
+        if (client != null) {
+            client.stop();
+        }
+        if (replicationServer != null) {
+            replicationServer.close();
+        }
+        // A final snapshot keeps the next startup from replaying the whole journal tail
+        if (snapshots != null && !matchingPool.isEmpty()) {
+            try {
+                takeSnapshot();
+            } catch (RuntimeException e) {
+                logger.error("Final snapshot failed", e);
+            }
+        }
+        
+        for (BookSequencer sequencer : matchingPool) {
+            sequencer.stop();
+        }
+        matchingPool.clear();
+        
+        if (journal != null) {
+            journal.close();
+        }
+        marketData.shutdown();
+        tradeLog.stop();
+        retention.stop();
+        markToMarket.stop();
+    }
+    
+    // List a book on its configured grid
+    private BookListing listBook(String name) {
+        return listBook(name, configuredInstrument(name));
+    }
+    
+    // List a book under the least loaded matching thread; listing an already listed book returns it unchanged
+    private BookListing listBook(String name, Instrument instrument) {
+        synchronized (listingLock) {
+            BookListing listing = listings.get(name);
+            if (listing != null) {
+                return listing;
+            }
+            int thread = -1;
+            if (!matchingPool.isEmpty()) {
+                thread = 0;
+                for (int i = 1; i < booksPerThread.length; i++) {
+                    if (booksPerThread[i] < booksPerThread[thread]) {
+                        thread = i;
+                    }
+                }
+                booksPerThread[thread]++;
+            }
+            listing = new BookListing(name, instrument, thread >= 0 ? matchingPool.get(thread) : null, thread);
+            listing.changedVersion = booksVersion.incrementAndGet();
+            marketData.registerBook(name);
+            markToMarket.register(name);
+            listings.put(name, listing);
+            return listing;
+        }
+    }
+    
+    // The book's own tick and lot size from the configuration, or the defaults
+    private Instrument configuredInstrument(String book) {
+        ExchangeProperties.Book config = properties.getBook();
+        return Instrument.of(config.getTickSizes().getOrDefault(book, config.getTickSize()),
+            config.getLotSizes().getOrDefault(book, config.getLotSize()));
+    }
+    
+    // Snapshots and journals from before books had their own grid carry none
+    private Instrument instrumentOf(String book, long tickSize, int lotSize) {
+        return tickSize > 0 ? new Instrument(tickSize, lotSize) : configuredInstrument(book);
+    }
+    
+    // Book writer only (or recovery): drop the listing and the book behind it
+    private void unlistBook(BookListing listing) {
+        synchronized (listingLock) {
+            if (!listings.remove(listing.getName(), listing)) {
+                return;
+            }
+            orderBooks.remove(listing.getName());
+            metrics.unregister(listing.getName());
+            if (listing.getThread() >= 0) {
+                booksPerThread[listing.getThread()]--;
+            }
+            booksVersion.incrementAndGet();
+        }
+    }
+    
+    // Book writer only (or recovery): the listed book's order book, built with its metrics and candles on first use
+    private OrderBook bookFor(String name) {
+        return orderBooks.computeIfAbsent(name, key -> {
+            OrderBook book = createOrderBook(listings.get(key));
+            book.setDepthListener(marketData);
+            metrics.register(key);
+            candles.registerBook(key);
+            return book;
+        });
+    }
+    
+    private long openJournal(long afterSequence, Map<String, Object> stats) {
+        ExchangeProperties.Journal config = properties.getJournal();
+        CommandJournal opened = new CommandJournal(Paths.get(config.getDirectory()), config.getSegmentSize(), 
+            config.isFsync(), config.getGroupCommitWindowMicros());
+        
+        // Replayed commands are already in the journal, so nothing is re-appended until it is started
+        long start = System.nanoTime();
+        int[] replayed = new int[1];
+        long lastSequence = opened.replay(afterSequence, record -> {
+            applyJournalRecord(record);
+            replayed[0]++;
+        });
+        opened.start(lastSequence);
+        journal = opened;
+        
+        stats.put("journalRecordsReplayed", replayed[0]);
+        stats.put("journalSequence", lastSequence);
+        stats.put("journalReplayMs", (System.nanoTime() - start) / 1_000_000.0);
+        return lastSequence;
+    }
+    
+    // Load the newest snapshot straight into the books and users; returns the sequence it covers
+    private long loadSnapshot(Map<String, Object> stats) {
+        long start = System.nanoTime();
+        Optional<ExchangeSnapshot> latest = snapshots.loadLatest();
+        if (latest.isEmpty()) {
+            stats.put("snapshotSequence", 0L);
+            return 0;
+        }
+        ExchangeSnapshot snapshot = latest.get();
+        restoreSnapshot(snapshot, false);
+        
+        lastSnapshotSequence = snapshot.getSequence();
+        stats.put("snapshotSequence", snapshot.getSequence());
+        stats.put("snapshotOrders", snapshot.getOrderCount());
+        stats.put("snapshotUsers", snapshot.getUsers().size());
+        stats.put("snapshotLoadMs", (System.nanoTime() - start) / 1_000_000.0);
+        return snapshot.getSequence();
+    }
+    
+    // Copy a snapshot into the books and users; onWriters once the book writers are running
+    private void restoreSnapshot(ExchangeSnapshot snapshot, boolean onWriters) {
+        for (ExchangeSnapshot.UserState state : snapshot.getUsers()) {
+            User user = users.computeIfAbsent(state.getUsername(), this::newUser);
+            user.addRealizedProfit(state.getRealizedProfit());
+            for (ExchangeSnapshot.PositionState position : state.getPositions()) {
+                user.getPositions().put(position.getSymbol(), 
+                    new Position(position.getSymbol(), position.getQuantity(), position.getCostBasis()));
+                markToMarket.addHolder(position.getSymbol(), user);
+            }
+        }
+        haltedUsers.addAll(snapshot.getDisabledUsers());
+        
+        for (ExchangeSnapshot.BookState state : snapshot.getBooks()) {
+            // Books listed at runtime come back from the snapshot along with those in the configuration
+            listBook(state.getName(), instrumentOf(state.getName(), state.getTickSize(), state.getLotSize()))
+                .setHalted(state.isHalted());
+            if (state.getOrders().isEmpty()) {
+                continue;
+            }
+            // Orders are stored in priority order, so adding them back in sequence rebuilds the queues
+            Callable<Void> restore = () -> {
+                OrderBook book = bookFor(state.getName());
+                for (ExchangeSnapshot.OrderState resting : state.getOrders()) {
+                    Order order = new Order(resting.getId(), state.getName(), resting.getSide(), resting.getPrice(),
+                        resting.getQuantity(), resting.getUsername(), resting.getTimestamp());
+                    order.setStatus(resting.getStatus());
+                    book.addOrder(order);
+                    allOrders.put(order.getId(), order);
+                    users.computeIfAbsent(order.getUsername(), this::newUser).addOrder(order);
+                }
+                listings.get(state.getName()).changedVersion = booksVersion.incrementAndGet();
+                return null;
+            };
+            if (onWriters) {
+                executeOnBook(state.getName(), restore);
+            } else {
+                try {
+                    restore.call();
+                } catch (Exception e) {
+                    throw propagate(e);
+                }
+            }
+        }
+    }
+    
+    // Capture a consistent copy of every book and user, then encode and write it off the matching threads
+    public synchronized Map<String, Object> takeSnapshot() {
+        if (snapshots == null) {
+            throw new IllegalStateException("Snapshots are not enabled");
+        }
+        
+        long start = System.nanoTime();
+        ExchangeSnapshot snapshot = captureSnapshot();
+        long captured = System.nanoTime();
+        Path path = snapshots.write(snapshot);
+        long written = System.nanoTime();
+        
+        // Journal segments older than the oldest snapshot we keep are no longer needed for recovery
+        long oldestKept = snapshots.prune(properties.getSnapshot().getRetain());
+        int deletedSegments = journal != null && oldestKept > 0 ? journal.deleteSegmentsBefore(oldestKept) : 0;
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sequence", snapshot.getSequence());
+        result.put("file", path.toString());
+        result.put("orders", snapshot.getOrderCount());
+        result.put("users", snapshot.getUsers().size());
+        result.put("captureMs", (captured - start) / 1_000_000.0);
+        result.put("writeMs", (written - captured) / 1_000_000.0);
+        result.put("journalSegmentsDeleted", deletedSegments);
+        logger.info("Snapshot written: {}", result);
+        return result;
+    }
+    
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> result = metrics.snapshot(tradeLog);
+        result.put("retention", retention.stats());
+        result.put("markToMarket", markToMarket.stats());
+        result.put("candles", candles.stats());
+        
+        Map<String, Object> registry = new LinkedHashMap<>();
+        registry.put("listed", listings.size());
+        registry.put("built", orderBooks.size());
+        registry.put("matchingThreads", matchingPool.size());
+        registry.put("compactions", compactions.sum());
+        result.put("registry", registry);
+        return result;
+    }
+    
+    // Run a retention sweep now instead of waiting for the background one
+    public Map<String, Object> sweepRetention() {
+        return retention.sweep();
+    }
+    
+    // Any order the exchange still knows about, live or archived
+    public Map<String, Object> getOrder(String orderId) {
+        Order order = retention.findOrder(orderId);
+        if (order == null) {
+            throw new IllegalArgumentException("Order not found: " + orderId);
+        }
+        return User.getOrderDetails(order);
+    }
+    
+    /**
+     * Trades on one book, newest first, optionally limited to timestamps (epoch millis) in
+     * [from, to]. Recent trades come from memory and older ones from the archive.
+     */
+    public List<Map<String, Object>> getTrades(String symbol, Long from, Long to, Integer limit) {
+        if (!listings.containsKey(symbol)) {
+            throw new IllegalArgumentException("Invalid orderbook: " + symbol);
+        }
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Trade trade : retention.trades(symbol, from != null ? from : Long.MIN_VALUE,
+                to != null ? to : Long.MAX_VALUE, pageSize(limit))) {
+            Map<String, Object> details = new HashMap<>();
+            details.put("tradeId", trade.getId());
+            details.put("symbol", trade.getSymbol());
+            details.put("price", Prices.toDouble(trade.getPrice()));
+            details.put("quantity", trade.getQuantity());
+            details.put("buyer", trade.getBuyerUsername());
+            details.put("seller", trade.getSellerUsername());
+            details.put("timestamp", trade.getTimestamp().toString());
+            result.add(details);
+        }
+        return result;
+    }
+    
+    /**
+     * OHLCV bars with VWAP for one book at a resolution of 1s, 1m, 5m or 1h, oldest first,
+     * for intervals starting in [from, to] (epoch millis). Only intervals that traded have a
+     * bar, and only the newest bars per resolution are kept.
+     */
+    public Map<String, Object> getCandles(String symbol, String resolution, Long from, Long to, Integer limit) {
+        if (!listings.containsKey(symbol)) {
+            throw new IllegalArgumentException("Invalid orderbook: " + symbol);
+        }
+        CandleStore.Resolution res = CandleStore.Resolution.fromLabel(resolution != null ? resolution : "1m");
+        if (limit != null && limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("symbol", symbol);
+        result.put("resolution", res.getLabel());
+        result.put("bars", candles.bars(symbol, res, from != null ? from : Long.MIN_VALUE,
+            to != null ? to : Long.MAX_VALUE, limit != null ? limit : candles.getCapacity()));
+        return result;
+    }
+    
+    public Map<String, Object> getRecoveryStats() {
+        return recoveryStats;
+    }
+    
+    public Map<String, Object> getReplicationStatus() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        ReplicationClient client = follower;
+        ReplicationServer server = replicationServer;
+        if (client != null) {
+            result.put("role", "FOLLOWER");
+            result.putAll(client.status());
+        } else {
+            result.put("role", "PRIMARY");
+            result.put("enabled", server != null);
+            if (server != null) {
+                result.putAll(server.status());
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Turn this follower into a writable primary. Replication from the old primary stops after
+     * the record being applied, and if replication is enabled this node starts accepting
+     * followers of its own from the sequence it reached.
+     */
+    public synchronized Map<String, Object> promote() {
+        ReplicationClient client = follower;
+        if (client == null) {
+            throw new IllegalArgumentException("This node is not a follower");
+        }
+        client.stop();
+        // Listen before accepting writes so every command from here on reaches the new followers
+        if (properties.getReplication().isEnabled()) {
+            startReplicationServer();
+        }
+        follower = null;
+        logger.warn("Promoted to primary at sequence {}, was following {}", appliedSequence, client.getPrimary());
+        return getReplicationStatus();
+    }
+    
+    public boolean isReadOnly() {
+        return follower != null;
+    }
+    
+    // Followers only change through the primary's command stream
+    private void requireWritable() {
+        ReplicationClient client = follower;
+        if (client != null) {
+            throw new IllegalArgumentException("Read-only follower of " + client.getPrimary() + "; send orders to the primary");
+        }
+    }
+    
+    private void startReplicationServer() {
+        ExchangeProperties.Replication config = properties.getReplication();
+        long sequence = journal != null ? journal.getLastAppendedSequence() : Math.max(appliedSequence, lastSnapshotSequence);
+        ReplicationServer server = new ReplicationServer(config.getBacklog(), config.getHeartbeatIntervalMs(), sequence,
+            journal, this::captureForFollower);
+        server.start(config.getHost(), config.getPort());
+        replicationServer = server;
+    }
+    
+    private void startFollowing(ExchangeProperties.Replication config, long recoveredSequence) {
+        appliedSequence = recoveredSequence;
+        follower = new ReplicationClient(config.getPrimary(), config.getHeartbeatIntervalMs(), new ReplicationClient.Replica() {
+            @Override
+            public long getAppliedSequence() {
+                return appliedSequence;
+            }
+            
+            @Override
+            public boolean isEmpty() {
+                return appliedSequence == 0 && users.isEmpty();
+            }
+            
+            @Override
+            public void install(ExchangeSnapshot snapshot) {
+                installReplicatedSnapshot(snapshot);
+            }
+            
+            @Override
+            public void apply(JournalRecord record) {
+                applyReplicated(record);
+            }
+        });
+        follower.start();
+    }
+    
+    // Serialized with takeSnapshot so two captures never wait on each other's barriers
+    private synchronized ExchangeSnapshot captureForFollower() {
+        return captureSnapshot();
+    }
+    
+    private synchronized void installReplicatedSnapshot(ExchangeSnapshot snapshot) {
+        restoreSnapshot(snapshot, true);
+        appliedSequence = snapshot.getSequence();
+        if (snapshots != null) {
+            // The local journal continues after this sequence, so keep the snapshot it builds on
+            snapshots.write(snapshot);
+            lastSnapshotSequence = snapshot.getSequence();
+        } else if (journal != null) {
+            logger.warn("Follower journal starts after sequence {} with no local snapshot to recover from",
+                snapshot.getSequence());
+        }
+    }
+    
+    // Apply one of the primary's commands on its book's writer, exactly as recovery would
+    private void applyReplicated(JournalRecord record) {
+        if (isKillSwitch(record)) {
+            // Not tied to a book, so it is applied here, in sequence with the records before it
+            applyKillSwitch(record);
+            if (journal != null) {
+                journal.appendSequenced(record);
+            }
+            appliedSequence = record.getSequence();
+            return;
+        }
+        if (record.getType() == JournalRecord.Type.LIST) {
+            // The book needs its listing, and with it a writer, before the record can run there
+            listBook(record.getBook(), instrumentOf(record.getBook(), record.getTickSize(), record.getLotSize()));
+        }
+        if (!listings.containsKey(record.getBook())) {
+            logger.warn("Skipping replicated record {} for unknown orderbook {}", record.getSequence(), record.getBook());
+            appliedSequence = record.getSequence();
+            return;
+        }
+        executeOnBook(record.getBook(), () -> {
+            applyJournalRecord(record);
+            if (journal != null) {
+                journal.appendSequenced(record);
+            }
+            // Set on the writer, so a snapshot taken while the books are quiesced sees the matching sequence
+            appliedSequence = record.getSequence();
+            return null;
+        });
+    }
+    
+    private ExchangeSnapshot captureSnapshot() {
+        if (matchingPool.isEmpty()) {
+            return captureUnderBookLocks(new ArrayList<>(listings.values()));
+        }
+        
+        // Each matching thread copies the books it owns, then parks until every thread has done the same. At that
+        // point nothing is mutating books or users, so users and the journal sequence can be copied consistently.
+        // resume is released whether or not the capture succeeds, so a thread that arrives after a timeout finds
+        // it open and carries on instead of parking for good.
+        CountDownLatch quiesced = new CountDownLatch(matchingPool.size());
+        CountDownLatch resume = new CountDownLatch(1);
+        List<CompletableFuture<List<ExchangeSnapshot.BookState>>> copies = new ArrayList<>();
+        for (BookSequencer sequencer : matchingPool) {
+            copies.add(sequencer.submit(() -> {
+                List<ExchangeSnapshot.BookState> states = new ArrayList<>();
+                for (BookListing listing : listings.values()) {
+                    if (listing.getSequencer() == sequencer) {
+                        states.add(copyBook(listing));
+                    }
+                }
+                quiesced.countDown();
+                resume.await();
+                return states;
+            }));
+        }
+        
+        List<ExchangeSnapshot.UserState> userStates;
+        List<String> disabledUsers;
+        long sequence;
+        try {
+            if (!quiesced.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Could not quiesce books for snapshot");
+            }
+            userStates = copyUsers();
+            disabledUsers = new ArrayList<>(haltedUsers);
+            sequence = nextSnapshotSequence();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while quiescing books for snapshot", e);
+        } finally {
+            resume.countDown();
+        }
+        
+        List<ExchangeSnapshot.BookState> bookStates = new ArrayList<>();
+        for (CompletableFuture<List<ExchangeSnapshot.BookState>> copy : copies) {
+            bookStates.addAll(await(copy));
+        }
+        return new ExchangeSnapshot(sequence, System.currentTimeMillis(), bookStates, userStates, disabledUsers);
+    }
+    
+    // DIRECT mode: hold every book's lock, taken in name order, while books and users are copied
+    private ExchangeSnapshot captureUnderBookLocks(List<BookListing> books) {
+        books.sort(Comparator.comparing(BookListing::getName));
+        List<ExchangeSnapshot.BookState> bookStates = new ArrayList<>(books.size());
+        int locked = 0;
+        try {
+            for (BookListing book : books) {
+                book.getLock().lock();
+                locked++;
+                bookStates.add(copyBook(book));
+            }
+            return new ExchangeSnapshot(nextSnapshotSequence(), System.currentTimeMillis(), bookStates, copyUsers(),
+                new ArrayList<>(haltedUsers));
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                books.get(i).getLock().unlock();
+            }
+        }
+    }
+    
+    private long nextSnapshotSequence() {
+        if (journal != null) {
+            lastSnapshotSequence = journal.getLastAppendedSequence();
+        } else if (replicationServer != null) {
+            lastSnapshotSequence = replicationServer.getLastSequence();
+        } else if (follower != null) {
+            lastSnapshotSequence = appliedSequence;
+        } else {
+            lastSnapshotSequence++;
+        }
+        return lastSnapshotSequence;
+    }
+    
+    private ExchangeSnapshot.BookState copyBook(BookListing listing) {
+        List<ExchangeSnapshot.OrderState> orders = new ArrayList<>();
+        OrderBook book = orderBooks.get(listing.getName());
+        if (book != null) {
+            for (Order order : book.getOrders(Order.OrderType.BUY)) {
+                orders.add(ExchangeSnapshot.OrderState.of(order));
+            }
+            for (Order order : book.getOrders(Order.OrderType.SELL)) {
+                orders.add(ExchangeSnapshot.OrderState.of(order));
+            }
+        }
+        Instrument instrument = listing.getInstrument();
+        return new ExchangeSnapshot.BookState(listing.getName(), listing.isHalted(), instrument.getTickSize(),
+            instrument.getLotSize(), orders);
+    }
+    
+    private List<ExchangeSnapshot.UserState> copyUsers() {
+        List<ExchangeSnapshot.UserState> states = new ArrayList<>(users.size());
+        for (User user : users.values()) {
+            List<ExchangeSnapshot.PositionState> positions = new ArrayList<>();
+            for (Position position : user.getPositions().values()) {
+                positions.add(new ExchangeSnapshot.PositionState(
+                    position.getSymbol(), position.getQuantity(), position.getCostBasis()));
+            }
+            states.add(new ExchangeSnapshot.UserState(user.getUsername(), user.getRealizedProfit(), positions));
+        }
+        return states;
+    }
+    
+    // Re-apply an accepted command through the normal matching code; runs during recovery or on a follower's book writer
+    private void applyJournalRecord(JournalRecord record) {
+        if (isKillSwitch(record)) {
+            applyKillSwitch(record);
+            return;
+        }
+        BookListing listing = record.getType() == JournalRecord.Type.LIST 
+            ? listBook(record.getBook(), instrumentOf(record.getBook(), record.getTickSize(), record.getLotSize())) 
+            : listings.get(record.getBook());
+        if (listing == null) {
+            logger.warn("Skipping journal record {} for unknown orderbook {}", record.getSequence(), record.getBook());
+            return;
         }
         
-        // Ensure quantity is a positive integer by flooring and checking > 0
-        int intQuantity = (int)Math.floor(quantity);
-        if (intQuantity <= 0 || price <= 0) {
-            throw new IllegalArgumentException("Price must be positive and quantity must be a positive integer");
+        switch (record.getType()) {
+            case LIST:
+                return;
+            case HALT:
+            case RESUME:
+                listing.setHalted(record.getType() == JournalRecord.Type.HALT);
+                return;
+            case DELIST:
+                applyDelist(listing);
+                return;
+            default:
+                break;
         }
         
+        OrderBook book = bookFor(record.getBook());
+        switch (record.getType()) {
+            case PLACE: {
+                User user = users.computeIfAbsent(record.getUsername(), this::newUser);
+                Order order = new Order(record.getOrderId(), record.getBook(), record.getSide(), 
+                    record.getPrice(), record.getQuantity(), record.getUsername(), record.getTimestamp());
+                allOrders.put(order.getId(), order);
+                user.addOrder(order);
+                processOrder(order);
+                break;
+            }
+            case CANCEL: {
+                Order order = allOrders.get(record.getOrderId());
+                if (order != null && book.removeOrder(record.getOrderId())) {
+                    order.setStatus(Order.OrderStatus.CANCELLED);
+                    users.get(record.getUsername()).removeOrder(record.getOrderId());
+                }
+                break;
+            }
+            case AMEND:
+                book.amendOrder(record.getOrderId(), record.getQuantity());
+                break;
+            case CANCEL_ALL: {
+                User user = users.get(record.getUsername());
+                if (user != null) {
+                    cancelRestingOrders(book, user);
+                }
+                break;
+            }
+        }
+    }
+    
+    private static boolean isKillSwitch(JournalRecord record) {
+        return record.getType() == JournalRecord.Type.DISABLE_USER || record.getType() == JournalRecord.Type.ENABLE_USER;
+    }
+    
+    private void applyKillSwitch(JournalRecord record) {
+        if (record.getType() == JournalRecord.Type.DISABLE_USER) {
+            haltedUsers.add(record.getUsername());
+        } else {
+            haltedUsers.remove(record.getUsername());
+        }
+    }
+    
+    // Book commands must be journaled on their book's writer so the journal and followers see them in applied order
+    private void journal(JournalRecord record) {
+        if (follower != null) {
+            // A follower journals the primary's commands as it applies them, under the primary's sequence
+            return;
+        }
+        long sequence = journal != null ? journal.append(record) : 0;
+        ReplicationServer server = replicationServer;
+        if (server != null) {
+            server.publish(record, sequence);
+        }
+    }
+    
+    // Completes once everything journaled so far (including the caller's command) is on disk
+    private CompletableFuture<Void> journalCommit() {
+        return journal != null ? journal.whenDurable(journal.getLastAppendedSequence()) : CompletableFuture.completedFuture(null);
+    }
+    
+    // Count the request, and the rejection if it was one, once its future completes
+    private <T> CompletableFuture<T> recorded(CompletableFuture<T> result, String operation, String book, long start) {
+        return result.whenComplete((value, failure) -> {
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+            if (cause instanceof IllegalArgumentException && book != null) {
+                metrics.rejected(book);
+            }
+            metrics.recordRequest(operation, start);
+        });
+    }
+    
+    private OrderBook createOrderBook(BookListing listing) {
+        ExchangeProperties.Book config = properties.getBook();
+        if (config.getType() == ExchangeProperties.BookType.TICK_LADDER) {
+            return new TickLadderOrderBook(listing.getName(), listing.getInstrument().getTickSize(),
+                config.getLadderSize(), config.getLadderMaxSize());
+        }
+        return new TreeMapOrderBook(listing.getName());
+    }
+    
+    // Run a command against a book with exclusive access, either on its matching thread or under the book lock
+    private <T> CompletableFuture<T> submitToBook(String book, Callable<T> command) {
+        BookListing listing = listings.get(book);
+        if (listing == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Invalid orderbook: " + book));
+        }
+        // Whatever the command changed goes out to market data subscribers as one update
+        long submitted = System.nanoTime();
+        return onWriter(listing, () -> {
+            long started = System.nanoTime();
+            // A command queued behind the book's delisting finds it gone
+            if (listings.get(book) != listing) {
+                throw new IllegalArgumentException("Invalid orderbook: " + book);
+            }
+            OrderBook before = orderBooks.get(book);
+            long versionBefore = before != null ? before.getVersion() : 0;
+            try {
+                return command.call();
+            } finally {
+                marketData.flush(book);
+                // Books that have not been built yet have no instruments to update
+                BookMetrics bookMetrics = metrics.book(book);
+                OrderBook orderBook = orderBooks.get(book);
+                if (orderBook != null && orderBook.getVersion() != versionBefore) {
+                    listing.changedVersion = booksVersion.incrementAndGet();
+                }
+                if (bookMetrics != null && orderBook != null) {
+                    bookMetrics.recordQueueTime(started - submitted);
+                    bookMetrics.updateDepth(orderBook);
+                    bookMetrics.recordMatchTime(System.nanoTime() - started);
+                }
+            }
+        });
+    }
+    
+    // As above, running ifNotRun when the command fails without having started (unknown or delisted book, full queue)
+    private <T> CompletableFuture<T> submitToBook(String book, Callable<T> command, Runnable ifNotRun) {
+        AtomicBoolean started = new AtomicBoolean();
+        return submitToBook(book, () -> {
+            started.set(true);
+            return command.call();
+        }).whenComplete((value, failure) -> {
+            if (failure != null && !started.get()) {
+                ifNotRun.run();
+            }
+        });
+    }
+    
+    private static <T> CompletableFuture<T> onWriter(BookListing listing, Callable<T> command) {
+        BookSequencer sequencer = listing.getSequencer();
+        if (sequencer != null) {
+            return sequencer.submit(command);
+        }
+        
+        CompletableFuture<T> future = new CompletableFuture<>();
+        listing.getLock().lock();
+        try {
+            future.complete(command.call());
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        } finally {
+            listing.getLock().unlock();
+        }
+        return future;
+    }
+    
+    // Give back the spare memory of built books whose resting orders have not changed since the previous sweep
+    void compactIdleBooks() {
+        try {
+            for (BookListing listing : listings.values()) {
+                OrderBook book = orderBooks.get(listing.getName());
+                if (book == null) {
+                    continue;
+                }
+                long version = book.getVersion();
+                if (version == listing.sweptVersion && version != listing.compactedVersion) {
+                    listing.compactedVersion = version;
+                    onWriter(listing, () -> {
+                        book.compact();
+                        return null;
+                    });
+                    compactions.increment();
+                }
+                listing.sweptVersion = version;
+            }
+        } catch (RuntimeException e) {
+            logger.error("Compacting idle books failed", e);
+        }
+    }
+    
+    // Block the calling thread until the book has applied the command, rethrowing its failure as-is
+    private <T> T executeOnBook(String book, Callable<T> command) {
+        return await(submitToBook(book, command));
+    }
+    
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the matching engine", e);
+        } catch (ExecutionException e) {
+            throw propagate(e.getCause());
+        }
+    }
+    
+    private static RuntimeException propagate(Throwable cause) {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalStateException(cause);
+    }
+    
+    // In-process callers may pass a double price; it stands for its shortest decimal form (see Prices.toScaled)
+    public Map<String, Object> placeOrder(String book, String orderType, double price, double quantity, String username) {
+        return await(placeOrderAsync(book, orderType, price, quantity, username));
+    }
+    
+    public Map<String, Object> placeOrder(String book, String orderType, BigDecimal price, double quantity, String username) {
+        return placeOrder(book, orderType, price, quantity, username, null);
+    }
+    
+    public Map<String, Object> placeOrder(String book, String orderType, BigDecimal price, double quantity, String username,
+                                          Consumer<Order> onAccepted) {
+        return await(placeOrderAsync(book, orderType, price, quantity, username, onAccepted));
+    }
+    
+    public CompletableFuture<Map<String, Object>> placeOrderAsync(String book, String orderType, double price, 
+                                                                  double quantity, String username) {
+        BigDecimal decimal;
+        try {
+            decimal = Prices.decimalOf(price);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return placeOrderAsync(book, orderType, decimal, quantity, username, null);
+    }
+    
+    public CompletableFuture<Map<String, Object>> placeOrderAsync(String book, String orderType, BigDecimal price, 
+                                                                  double quantity, String username) {
+        return placeOrderAsync(book, orderType, price, quantity, username, null);
+    }
+    
+    /**
+     * Validate the order on the calling thread and hand it to the book's writer. The future
+     * completes once the order has been matched and journaled; nothing waits for that in the
+     * meantime. onAccepted sees the order once it passed validation and before it reaches the
+     * book, on the calling thread.
+     */
+    public CompletableFuture<Map<String, Object>> placeOrderAsync(String book, String orderType, BigDecimal price, 
+                                                                  double quantity, String username,
+                                                                  Consumer<Order> onAccepted) {
+        long start = System.nanoTime();
+        CompletableFuture<Map<String, Object>> result;
+        try {
+            requireWritable();
+            Order order = prepareOrder(book, orderType, price, quantity, username);
+            if (onAccepted != null) {
+                onAccepted.accept(order);
+            }
+            
+            // Process the order (matching) on the book's single writer
+            result = submitToBook(book, () -> applyPlace(order), () -> withdrawOrder(order))
+                .thenCompose(status -> journalCommit().thenApply(committed -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("status", status.toString());
+                    response.put("orderId", order.getId());
+                    return response;
+                }));
+        } catch (IllegalArgumentException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        return recorded(result, "place", book, start);
+    }
+    
+    // Validate a new order and register it with its user; it only reaches the book through applyPlace
+    private Order prepareOrder(String book, String orderType, BigDecimal price, double quantity, String username) {
+        // Prices must be on the book's tick grid and quantities whole lots; nothing is rounded
+        Instrument instrument = requireListing(book).getInstrument();
+        long scaledPrice = instrument.toPrice(book, price);
+        int lotQuantity = instrument.toQuantity(book, quantity);
+        validateOrder(book, scaledPrice, lotQuantity, username);
+        
         // Get or create user
-        User user = users.computeIfAbsent(username, User::new);
+        User user = users.computeIfAbsent(username, this::newUser);
         
         // Create the order
         Order.OrderType type = "buy".equalsIgnoreCase(orderType) ? 
             Order.OrderType.BUY : Order.OrderType.SELL;
         
-        Order order = new Order(book, type, price, intQuantity, username);
+        Order order = new Order(book, type, scaledPrice, lotQuantity, username);
         
         // Store the order
         allOrders.put(order.getId(), order);
         user.addOrder(order);
-        
-        // Process the order (matching)
-        processOrder(order);
-        
-        // Return response
-        Map<String, Object> response = new HashMap<>();
-        response.put("status", order.getStatus().toString());
-        response.put("orderId", order.getId());
-        
-        return response;
+        return order;
+    }
+    
+    private void validateOrder(String book, BigDecimal price, double quantity, String username) {
+        Instrument instrument = requireListing(book).getInstrument();
+        validateOrder(book, instrument.toPrice(book, price), instrument.toQuantity(book, quantity), username);
+    }
+    
+    // Price and quantity are already on the book's grid
+    private void validateOrder(String book, long price, int quantity, String username) {
+        requireOrderValue(price, quantity);
+        requireTrading(book);
+        if (haltedUsers.contains(username)) {
+            throw new IllegalArgumentException("Trading is disabled for user: " + username);
+        }
+    }
+    
+    // Bounds what one fill can add to a position, so exact sums of money cannot overflow
+    private static void requireOrderValue(long price, int quantity) {
+        if (price > Prices.MAX_ORDER_VALUE / quantity) {
+            throw new IllegalArgumentException("Order value must not exceed " + Prices.MAX_ORDER_VALUE / Prices.SCALE);
+        }
+    }
+    
+    // A halted book still takes cancels, but nothing that adds to or grows an order
+    private void requireTrading(String book) {
+        BookListing listing = listings.get(book);
+        if (listing != null && listing.isHalted()) {
+            throw new IllegalArgumentException("Trading is halted for " + book);
+        }
+    }
+    
+    /**
+     * Cancel an order registered by prepareOrder that never reached the book: refused on the
+     * writer, or never run because the book was delisted or the writer rejected the submission.
+     * It stays visible as CANCELLED until retention evicts it.
+     */
+    private void withdrawOrder(Order order) {
+        order.setStatus(Order.OrderStatus.CANCELLED);
+        User user = users.get(order.getUsername());
+        if (user != null) {
+            user.removeOrder(order.getId());
+        }
+    }
+    
+    // Book writer only
+    private Order.OrderStatus applyPlace(Order order) {
+        JournalRecord record = JournalRecord.place(order);
+        // Re-check on the writer so an order racing a kill switch or a halt can never end up resting
+        try {
+            requireTrading(order.getBook());
+            if (haltedUsers.contains(order.getUsername())) {
+                throw new IllegalArgumentException("Trading is disabled for user: " + order.getUsername());
+            }
+        } catch (IllegalArgumentException e) {
+            withdrawOrder(order);
+            throw e;
+        }
+        // Once matching has started the command is journaled whatever happens, so a replay applies the same fills
+        try {
+            processOrder(order);
+        } finally {
+            journal(record);
+        }
+        metrics.book(order.getBook()).orderAccepted();
+        return order.getStatus();
     }
     
     private void processOrder(Order order) {
-        OrderBook book = orderBooks.get(order.getBook());
+        // The first order for a book is what builds it
+        OrderBook book = bookFor(order.getBook());
         
         if (order.getType() == Order.OrderType.BUY) {
             // Match against sell orders
@@ -93,40 +1145,25 @@ public class ExchangeService {
     
     private void processBuyOrder(Order buyOrder, OrderBook book) {
         // Try to match against sell orders (lowest price first)
-        Iterator<Map.Entry<Double, LinkedList<Order>>> sellOrdersIterator = 
-            book.getSellOrders().entrySet().iterator();
-        
-        while (sellOrdersIterator.hasNext() && buyOrder.getQuantity() > 0) {
-            Map.Entry<Double, LinkedList<Order>> priceLevel = sellOrdersIterator.next();
+        while (buyOrder.getQuantity() > 0) {
+            Order sellOrder = book.getBestOrder(Order.OrderType.SELL);
             
             // Only match if buy price >= sell price
-            if (buyOrder.getPrice() < priceLevel.getKey()) {
+            if (sellOrder == null || buyOrder.getPrice() < sellOrder.getPrice()) {
                 break;
             }
             
-            LinkedList<Order> ordersAtPrice = priceLevel.getValue();
-            Iterator<Order> orderIterator = ordersAtPrice.iterator();
-            
-            while (orderIterator.hasNext() && buyOrder.getQuantity() > 0) {
-                Order sellOrder = orderIterator.next();
-                
-                // Match the orders
-                executeMatch(buyOrder, sellOrder);
-                
-                // Remove filled sell order
-                if (sellOrder.getQuantity() == 0) {
-                    orderIterator.remove();
-                    User seller = users.get(sellOrder.getUsername());
-                    seller.removeOrder(sellOrder.getId());
-                    sellOrder.setStatus(Order.OrderStatus.FILLED);
-                } else {
-                    sellOrder.setStatus(Order.OrderStatus.PARTIALLY_FILLED);
-                }
-            }
+            // Match the orders at the resting sell price
+            int matchQuantity = executeMatch(buyOrder, sellOrder, sellOrder.getPrice(), buyOrder.getTimestamp());
+            book.onFill(sellOrder, matchQuantity);
             
-            // Remove empty price level
-            if (ordersAtPrice.isEmpty()) {
-                sellOrdersIterator.remove();
+            // Remove filled sell order
+            if (sellOrder.getQuantity() == 0) {
+                User seller = users.get(sellOrder.getUsername());
+                seller.removeOrder(sellOrder.getId());
+                sellOrder.setStatus(Order.OrderStatus.FILLED);
+            } else {
+                sellOrder.setStatus(Order.OrderStatus.PARTIALLY_FILLED);
             }
         }
         
@@ -142,40 +1179,25 @@ public class ExchangeService {
     
     private void processSellOrder(Order sellOrder, OrderBook book) {
         // Try to match against buy orders (highest price first)
-        Iterator<Map.Entry<Double, LinkedList<Order>>> buyOrdersIterator = 
-            book.getBuyOrders().entrySet().iterator();
-        
-        while (buyOrdersIterator.hasNext() && sellOrder.getQuantity() > 0) {
-            Map.Entry<Double, LinkedList<Order>> priceLevel = buyOrdersIterator.next();
+        while (sellOrder.getQuantity() > 0) {
+            Order buyOrder = book.getBestOrder(Order.OrderType.BUY);
             
             // Only match if sell price <= buy price
-            if (sellOrder.getPrice() > priceLevel.getKey()) {
+            if (buyOrder == null || sellOrder.getPrice() > buyOrder.getPrice()) {
                 break;
             }
             
-            LinkedList<Order> ordersAtPrice = priceLevel.getValue();
-            Iterator<Order> orderIterator = ordersAtPrice.iterator();
+            // Match the orders at the resting buy price
+            int matchQuantity = executeMatch(buyOrder, sellOrder, buyOrder.getPrice(), sellOrder.getTimestamp());
+            book.onFill(buyOrder, matchQuantity);
             
-            while (orderIterator.hasNext() && sellOrder.getQuantity() > 0) {
-                Order buyOrder = orderIterator.next();
-                
-                // Match the orders
-                executeMatch(buyOrder, sellOrder);
-                
-                // Remove filled buy order
-                if (buyOrder.getQuantity() == 0) {
-                    orderIterator.remove();
-                    User buyer = users.get(buyOrder.getUsername());
-                    buyer.removeOrder(buyOrder.getId());
-                    buyOrder.setStatus(Order.OrderStatus.FILLED);
-                } else {
-                    buyOrder.setStatus(Order.OrderStatus.PARTIALLY_FILLED);
-                }
-            }
-            
-            // Remove empty price level
-            if (ordersAtPrice.isEmpty()) {
-                buyOrdersIterator.remove();
+            // Remove filled buy order
+            if (buyOrder.getQuantity() == 0) {
+                User buyer = users.get(buyOrder.getUsername());
+                buyer.removeOrder(buyOrder.getId());
+                buyOrder.setStatus(Order.OrderStatus.FILLED);
+            } else {
+                buyOrder.setStatus(Order.OrderStatus.PARTIALLY_FILLED);
             }
         }
         
@@ -189,14 +1211,11 @@ public class ExchangeService {
         }
     }
     
-    private void executeMatch(Order buyOrder, Order sellOrder) {
+    // Trades are stamped with the aggressing order's acceptance time so a journal replay reproduces them exactly
+    private int executeMatch(Order buyOrder, Order sellOrder, long executionPrice, long timestamp) {
         // Determine match quantity
         int matchQuantity = Math.min(buyOrder.getQuantity(), sellOrder.getQuantity());
         
-        // Execute at the price of the resting order
-        double executionPrice = sellOrder.getTimestamp() < buyOrder.getTimestamp() ? 
-            sellOrder.getPrice() : buyOrder.getPrice();
-        
         // Update quantities
         buyOrder.setQuantity(buyOrder.getQuantity() - matchQuantity);
         sellOrder.setQuantity(sellOrder.getQuantity() - matchQuantity);
@@ -220,28 +1239,95 @@ public class ExchangeService {
             buyOrder.getBook(),
             matchQuantity,
             executionPrice,
-            LocalDateTime.now(),
+            LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()),
             buyOrder.getUsername(),
             sellOrder.getUsername()
         );
         
         // Store the trade
-        allTrades.add(trade);
+        retention.onTrade(trade);
+        markToMarket.onTrade(buyOrder.getBook(), executionPrice, buyer, seller);
+        candles.onTrade(buyOrder.getBook(), executionPrice, matchQuantity, timestamp);
         buyer.addTrade(trade);
         seller.addTrade(trade);
+        marketData.onTrade(trade);
+        for (ExecutionListener listener : executionListeners) {
+            listener.onTrade(trade, buyOrder, sellOrder);
+        }
+        
+        // Per-match logging is sampled and written off the matching thread
+        BookMetrics bookMetrics = metrics.book(buyOrder.getBook());
+        bookMetrics.fill(matchQuantity);
+        tradeLog.offer(bookMetrics, trade);
         
-        logger.info("Match executed: {} {} @ ${} - Buyer: {}, Seller: {}", 
-            matchQuantity, buyOrder.getBook(), executionPrice, 
-            buyOrder.getUsername(), sellOrder.getUsername());
+        return matchQuantity;
     }
     
     public Map<String, String> cancelOrder(String book, String orderId, String username) {
+        return await(cancelOrderAsync(book, orderId, username));
+    }
+    
+    public CompletableFuture<Map<String, String>> cancelOrderAsync(String book, String orderId, String username) {
+        long start = System.nanoTime();
+        CompletableFuture<Map<String, String>> result;
+        try {
+            requireWritable();
+            Order order = findOwnedOrder(book, orderId, username);
+            
+            result = submitToBook(book, () -> applyCancel(book, order))
+                .thenCompose(removed -> journalCommit().thenApply(committed -> {
+                    // Logged here rather than in applyCancel so appender I/O stays off the book's writer
+                    if (removed) {
+                        logger.info("Order cancelled: {} by user {}", orderId, username);
+                    }
+                    Map<String, String> response = new HashMap<>();
+                    response.put("status", removed ? "CANCELLED" : "FAILED");
+                    return response;
+                }));
+        } catch (IllegalArgumentException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        return recorded(result, "cancel", book, start);
+    }
+    
+    public Map<String, Object> amendOrder(String book, String orderId, double quantity, String username) {
+        return await(amendOrderAsync(book, orderId, quantity, username));
+    }
+    
+    public CompletableFuture<Map<String, Object>> amendOrderAsync(String book, String orderId, double quantity, String username) {
+        long start = System.nanoTime();
+        CompletableFuture<Map<String, Object>> result;
+        try {
+            requireWritable();
+            Order order = findOwnedOrder(book, orderId, username);
+            int newQuantity = validAmendQuantity(book, order, quantity);
+            requireTrading(book);
+            
+            result = submitToBook(book, () -> applyAmend(book, order, newQuantity))
+                .thenCompose(amended -> journalCommit().thenApply(committed -> {
+                    if (amended) {
+                        logger.info("Order amended: {} to quantity {} by user {}", orderId, newQuantity, username);
+                    }
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("status", amended ? "AMENDED" : "FAILED");
+                    response.put("orderId", orderId);
+                    response.put("quantity", newQuantity);
+                    return response;
+                }));
+        } catch (IllegalArgumentException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        return recorded(result, "amend", book, start);
+    }
+    
+    private Order findOwnedOrder(String book, String orderId, String username) {
         // Validate inputs
-        if (!orderBooks.containsKey(book)) {
+        if (!listings.containsKey(book)) {
             throw new IllegalArgumentException("Invalid orderbook: " + book);
         }
         
-        Order order = allOrders.get(orderId);
+        // Closed orders may only be in the archive by now; they are still reported as not active
+        Order order = retention.findOrder(orderId);
         
         if (order == null) {
             throw new IllegalArgumentException("Order not found: " + orderId);
@@ -250,7 +1336,18 @@ public class ExchangeService {
         if (!order.getUsername().equals(username)) {
             throw new IllegalArgumentException("Order does not belong to user: " + username);
         }
-        
+        return order;
+    }
+    
+    private int validAmendQuantity(String book, Order order, double quantity) {
+        int newQuantity = requireListing(book).getInstrument().toQuantity(book, quantity);
+        requireOrderValue(order.getPrice(), newQuantity);
+        return newQuantity;
+    }
+    
+    // Book writer only
+    private boolean applyCancel(String book, Order order) {
+        // Status is only stable on the book's writer, so check it there
         if (order.getStatus() != Order.OrderStatus.ACTIVE && 
             order.getStatus() != Order.OrderStatus.PARTIALLY_FILLED) {
             throw new IllegalArgumentException("Order cannot be cancelled: " + order.getStatus());
@@ -258,88 +1355,668 @@ public class ExchangeService {
         
         // Remove from orderbook
         OrderBook orderBook = orderBooks.get(book);
-        boolean removed = orderBook.removeOrder(orderId);
+        boolean wasRemoved = orderBook != null && orderBook.removeOrder(order.getId());
         
         // Update order status
-        if (removed) {
+        if (wasRemoved) {
             order.setStatus(Order.OrderStatus.CANCELLED);
             
             // Remove from user's active orders
-            User user = users.get(username);
-            user.removeOrder(orderId);
-            
-            logger.info("Order cancelled: {} by user {}", orderId, username);
+            User user = users.get(order.getUsername());
+            user.removeOrder(order.getId());
+            journal(JournalRecord.cancel(book, order.getUsername(), order.getId()));
+            metrics.book(book).cancelled(1);
         }
-        
-        // Return status
-        Map<String, String> response = new HashMap<>();
-        response.put("status", removed ? "CANCELLED" : "FAILED");
-        
-        return response;
+        return wasRemoved;
+    }
+    
+    // Book writer only
+    private boolean applyAmend(String book, Order order, int newQuantity) {
+        if (order.getStatus() != Order.OrderStatus.ACTIVE && 
+            order.getStatus() != Order.OrderStatus.PARTIALLY_FILLED) {
+            throw new IllegalArgumentException("Order cannot be amended: " + order.getStatus());
+        }
+        requireTrading(book);
+        OrderBook orderBook = orderBooks.get(book);
+        boolean wasAmended = orderBook != null && orderBook.amendOrder(order.getId(), newQuantity);
+        if (wasAmended) {
+            journal(JournalRecord.amend(book, order.getUsername(), order.getId(), newQuantity));
+            metrics.book(book).amended();
+        }
+        return wasAmended;
+    }
+    
+    /**
+     * Apply a batch of place/cancel/amend/replace instructions for one user. Instructions are
+     * grouped by book and each book runs its share as a single command on its writer, in the
+     * order given; books run in parallel. Results come back in instruction order, and a bad
+     * instruction is reported as REJECTED without affecting the others.
+     */
+    public List<Map<String, Object>> executeBatch(String username, List<OrderInstruction> instructions) {
+        return await(executeBatchAsync(username, instructions));
+    }
+    
+    public CompletableFuture<List<Map<String, Object>>> executeBatchAsync(String username, List<OrderInstruction> instructions) {
+        try {
+            requireWritable();
+            if (instructions == null || instructions.isEmpty()) {
+                throw new IllegalArgumentException("Batch must contain at least one instruction");
+            }
+            if (instructions.size() > MAX_BATCH_SIZE) {
+                throw new IllegalArgumentException("Batch cannot contain more than " + MAX_BATCH_SIZE + " instructions");
+            }
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        long start = System.nanoTime();
+    
+        // Validate everything up front; only instructions that pass are sent to their book
+        List<Map<String, Object>> results = new ArrayList<>(Collections.nCopies(instructions.size(), null));
+        List<Callable<Map<String, Object>>> steps = new ArrayList<>(Collections.nCopies(instructions.size(), null));
+        // Orders registered up front for PLACE instructions, withdrawn again if their book's command never runs
+        List<Order> prepared = new ArrayList<>(Collections.nCopies(instructions.size(), null));
+        Map<String, List<Integer>> indicesByBook = new LinkedHashMap<>();
+        for (int i = 0; i < instructions.size(); i++) {
+            OrderInstruction instruction = instructions.get(i);
+            int index = i;
+            try {
+                steps.set(i, prepareInstruction(username, instruction, order -> prepared.set(index, order)));
+                indicesByBook.computeIfAbsent(instruction.getBook(), book -> new ArrayList<>()).add(i);
+            } catch (IllegalArgumentException e) {
+                metrics.rejected(instruction.getBook());
+                results.set(i, rejected(e));
+            }
+        }
+    
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (Map.Entry<String, List<Integer>> entry : indicesByBook.entrySet()) {
+            pending.add(this.<Void>submitToBook(entry.getKey(), () -> {
+                for (int index : entry.getValue()) {
+                    try {
+                        results.set(index, steps.get(index).call());
+                    } catch (IllegalArgumentException e) {
+                        metrics.rejected(entry.getKey());
+                        results.set(index, rejected(e));
+                    } catch (RuntimeException e) {
+                        logger.error("Batch instruction for {} failed on the book's writer", entry.getKey(), e);
+                        results.set(index, rejected(e));
+                    }
+                }
+                return null;
+            }, () -> {
+                for (int index : entry.getValue()) {
+                    if (prepared.get(index) != null) {
+                        withdrawOrder(prepared.get(index));
+                    }
+                }
+            }).exceptionally(failure -> {
+                // This book's command never ran (delisted, or its writer refused it); the other books' results stand
+                RuntimeException cause = propagate(failure);
+                for (int index : entry.getValue()) {
+                    if (results.get(index) == null) {
+                        metrics.rejected(entry.getKey());
+                        results.set(index, rejected(cause));
+                    }
+                }
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+            .thenCompose(done -> journalCommit())
+            .thenApply(committed -> {
+                metrics.recordRequest("batch", start);
+                return results;
+            });
+    }
+    
+    // Validate one instruction and return the part that must run on the book's writer
+    private Callable<Map<String, Object>> prepareInstruction(String username, OrderInstruction instruction,
+                                                             Consumer<Order> onPrepared) {
+        if (instruction.getAction() == null) {
+            throw new IllegalArgumentException("Instruction is missing an action");
+        }
+        String book = instruction.getBook();
+        switch (instruction.getAction()) {
+            case PLACE: {
+                Order order = prepareOrder(book, instruction.getType(), instruction.getPrice(), instruction.getQuantity(), username);
+                onPrepared.accept(order);
+                return () -> {
+                    Map<String, Object> result = new HashMap<>();
+                    result.put("status", applyPlace(order).toString());
+                    result.put("orderId", order.getId());
+                    return result;
+                };
+            }
+            case CANCEL: {
+                Order order = findOwnedOrder(book, instruction.getOrderId(), username);
+                return () -> {
+                    Map<String, Object> result = new HashMap<>();
+                    result.put("status", applyCancel(book, order) ? "CANCELLED" : "FAILED");
+                    result.put("orderId", order.getId());
+                    return result;
+                };
+            }
+            case AMEND: {
+                Order order = findOwnedOrder(book, instruction.getOrderId(), username);
+                int newQuantity = validAmendQuantity(book, order, instruction.getQuantity());
+                requireTrading(book);
+                return () -> {
+                    Map<String, Object> result = new HashMap<>();
+                    result.put("status", applyAmend(book, order, newQuantity) ? "AMENDED" : "FAILED");
+                    result.put("orderId", order.getId());
+                    result.put("quantity", newQuantity);
+                    return result;
+                };
+            }
+            case REPLACE: {
+                Order order = findOwnedOrder(book, instruction.getOrderId(), username);
+                validateOrder(book, instruction.getPrice(), instruction.getQuantity(), username);
+                String type = instruction.getType() != null ? instruction.getType() : order.getType().name();
+                return () -> {
+                    Map<String, Object> result = new HashMap<>();
+                    result.put("replacedOrderId", order.getId());
+                    // Re-check the replacement on the writer before the old order is touched, so a halt or kill
+                    // switch that landed since leaves the old order resting and rejects the whole replace
+                    validateOrder(book, instruction.getPrice(), instruction.getQuantity(), username);
+                    // The new order only exists if the old one was still live to cancel
+                    if (!applyCancel(book, order)) {
+                        result.put("status", "FAILED");
+                        return result;
+                    }
+                    Order replacement = prepareOrder(book, type, instruction.getPrice(), instruction.getQuantity(), username);
+                    result.put("status", applyPlace(replacement).toString());
+                    result.put("orderId", replacement.getId());
+                    return result;
+                };
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported action: " + instruction.getAction());
+        }
+    }
+    
+    private static Map<String, Object> rejected(RuntimeException e) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("status", "REJECTED");
+        result.put("error", e.getMessage());
+        return result;
     }
     
     public Map<String, Object> cancelAllOrders(String book, String username) {
-        // Validate inputs
-        if (!orderBooks.containsKey(book)) {
-            throw new IllegalArgumentException("Invalid orderbook: " + book);
+        return await(cancelAllOrdersAsync(book, username));
+    }
+    
+    public CompletableFuture<Map<String, Object>> cancelAllOrdersAsync(String book, String username) {
+        User user;
+        try {
+            requireWritable();
+            // Validate inputs
+            if (!listings.containsKey(book)) {
+                throw new IllegalArgumentException("Invalid orderbook: " + book);
+            }
+            user = requireUser(username);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
         }
         
-        User user = users.get(username);
-        
-        if (user == null) {
-            throw new IllegalArgumentException("User not found: " + username);
+        return submitToBook(book, () -> {
+            OrderBook orderBook = orderBooks.get(book);
+            return orderBook != null ? cancelRestingOrders(orderBook, user) : 0;
+        })
+            .thenCompose(count -> journalCommit().thenApply(committed -> {
+                logger.info("Cancelled {} orders for user {} in book {}", count, username, book);
+                
+                // Return status
+                Map<String, Object> response = new HashMap<>();
+                response.put("status", "CANCELLED");
+                response.put("count", count);
+                return response;
+            }));
+    }
+    
+    public Map<String, Object> cancelAllOrders(String username) {
+        return await(cancelAllOrdersAsync(username));
+    }
+    
+    /**
+     * Mass cancel across every book the user has live orders in; each of those books only does
+     * work proportional to the user's orders in it, however many books are listed. An order
+     * placed while this runs may or may not be caught, except after a kill switch, which its
+     * book's writer checks again.
+     */
+    public CompletableFuture<Map<String, Object>> cancelAllOrdersAsync(String username) {
+        User user;
+        try {
+            requireWritable();
+            user = requireUser(username);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
         }
         
-        // Get all orders for this user and book
-        List<String> cancelledOrders = new ArrayList<>();
+        Set<String> books = new TreeSet<>();
+        for (Order order : user.getActiveOrders().values()) {
+            books.add(order.getBook());
+        }
+        Map<String, CompletableFuture<Integer>> pending = new HashMap<>();
+        for (String book : books) {
+            // A book delisted in the meantime has already cancelled everything it held
+            pending.put(book, submitToBook(book, () -> {
+                OrderBook orderBook = orderBooks.get(book);
+                return orderBook != null ? cancelRestingOrders(orderBook, user) : 0;
+            }).exceptionally(failure -> {
+                RuntimeException cause = propagate(failure);
+                if (cause instanceof IllegalArgumentException) {
+                    return 0;
+                }
+                throw cause;
+            }));
+        }
         
-        for (Order order : new ArrayList<>(user.getActiveOrders().values())) {
-            if (order.getBook().equals(book) && 
-                (order.getStatus() == Order.OrderStatus.ACTIVE || 
-                 order.getStatus() == Order.OrderStatus.PARTIALLY_FILLED)) {
+        return CompletableFuture.allOf(pending.values().toArray(new CompletableFuture<?>[0]))
+            .thenCompose(done -> journalCommit())
+            .thenApply(committed -> {
+                Map<String, Integer> countsByBook = new HashMap<>();
+                int count = 0;
+                for (Map.Entry<String, CompletableFuture<Integer>> entry : pending.entrySet()) {
+                    int cancelled = entry.getValue().join();
+                    if (cancelled > 0) {
+                        countsByBook.put(entry.getKey(), cancelled);
+                        count += cancelled;
+                    }
+                }
+                logger.info("Cancelled {} orders for user {} across all books", count, username);
                 
-                // Cancel the order
-                order.setStatus(Order.OrderStatus.CANCELLED);
-                cancelledOrders.add(order.getId());
-            }
+                // Return status
+                Map<String, Object> response = new HashMap<>();
+                response.put("status", "CANCELLED");
+                response.put("count", count);
+                response.put("books", countsByBook);
+                return response;
+            });
+    }
+    
+    // Must run on the book's writer
+    private int cancelRestingOrders(OrderBook book, User user) {
+        List<Order> cancelled = book.removeAllOrdersForUser(user.getUsername());
+        for (Order order : cancelled) {
+            order.setStatus(Order.OrderStatus.CANCELLED);
+            user.removeOrder(order.getId());
         }
-        
-        // Remove from orderbook
-        OrderBook orderBook = orderBooks.get(book);
-        int count = orderBook.removeAllOrdersForUser(username);
-        
-        // Remove from user's active orders
-        for (String orderId : cancelledOrders) {
-            user.removeOrder(orderId);
+        if (!cancelled.isEmpty()) {
+            journal(JournalRecord.cancelAll(book.getName(), user.getUsername()));
+            metrics.book(book.getName()).cancelled(cancelled.size());
+        }
+        return cancelled.size();
+    }
+    
+    public Map<String, Object> disableTrading(String username) {
+        return await(disableTradingAsync(username));
+    }
+    
+    // Kill switch: block new orders from the user and pull everything they have resting
+    public CompletableFuture<Map<String, Object>> disableTradingAsync(String username) {
+        try {
+            requireWritable();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
         }
+        setTradingDisabled(username, true);
+        logger.warn("Kill switch engaged for user {}", username);
         
-        logger.info("Cancelled {} orders for user {} in book {}", count, username, book);
+        CompletableFuture<Map<String, Object>> cancelled = users.containsKey(username) 
+            ? cancelAllOrdersAsync(username) : CompletableFuture.completedFuture(Map.of("count", 0));
+        return cancelled.thenCombine(journalCommit(), (result, durable) -> {
+            Map<String, Object> response = new HashMap<>(result);
+            response.put("status", "DISABLED");
+            return response;
+        });
+    }
+    
+    public Map<String, Object> enableTrading(String username) {
+        requireWritable();
+        boolean wasHalted = setTradingDisabled(username, false);
+        if (wasHalted) {
+            await(journalCommit());
+            logger.info("Kill switch released for user {}", username);
+        }
         
-        // Return status
         Map<String, Object> response = new HashMap<>();
-        response.put("status", "CANCELLED");
-        response.put("count", count);
+        response.put("status", "ENABLED");
+        response.put("wasDisabled", wasHalted);
+        return response;
+    }
+    
+    // Journaled only when the switch actually flips, under one lock so the journal sees flips in the order they happened
+    private boolean setTradingDisabled(String username, boolean disabled) {
+        synchronized (haltedUsers) {
+            boolean changed = disabled ? haltedUsers.add(username) : haltedUsers.remove(username);
+            if (changed) {
+                journal(JournalRecord.killSwitch(
+                    disabled ? JournalRecord.Type.DISABLE_USER : JournalRecord.Type.ENABLE_USER, username));
+            }
+            return changed;
+        }
+    }
+    
+    public boolean isTradingDisabled(String username) {
+        return haltedUsers.contains(username);
+    }
+    
+    /**
+     * List a new book at runtime. Only the listing is created here: the book, its metrics and
+     * its candles are built when its first order arrives. Listing a book that is already listed
+     * changes nothing. Like every admin change below, it is journaled and replicated.
+     */
+    public Map<String, Object> listOrderBook(String book) {
+        return listOrderBook(book, null, null);
+    }
+    
+    // A tick or lot size left null comes from the configuration
+    public synchronized Map<String, Object> listOrderBook(String book, BigDecimal tickSize, Integer lotSize) {
+        requireWritable();
+        if (book == null || !BOOK_NAME.matcher(book).matches()) {
+            throw new IllegalArgumentException("Book name must be 1 to 32 letters, digits, '.', '_' or '-': " + book);
+        }
+        Instrument configured = configuredInstrument(book);
+        Instrument instrument = tickSize == null && lotSize == null ? configured : Instrument.of(
+            tickSize != null ? tickSize : Prices.toDecimal(configured.getTickSize()),
+            lotSize != null ? lotSize : configured.getLotSize());
+        
+        BookListing listed = listings.get(book);
+        if (listed != null) {
+            Instrument current = listed.getInstrument();
+            if ((tickSize != null && current.getTickSize() != instrument.getTickSize()) 
+                    || (lotSize != null && current.getLotSize() != instrument.getLotSize())) {
+                throw new IllegalArgumentException("Orderbook " + book + " is already listed with another tick or lot size");
+            }
+        } else {
+            if (listings.size() >= properties.getBook().getMaxBooks()) {
+                throw new IllegalArgumentException("Cannot list more than " + properties.getBook().getMaxBooks() + " books");
+            }
+            listBook(book, instrument);
+            executeOnBook(book, () -> {
+                journal(JournalRecord.list(book, instrument));
+                return null;
+            });
+            await(journalCommit());
+            logger.info("Listed orderbook {}", book);
+        }
+        return describeListing(listings.get(book));
+    }
+    
+    // Stop new orders and amends in the book; resting orders stay and can still be cancelled
+    public synchronized Map<String, Object> haltOrderBook(String book) {
+        return setHalted(book, true);
+    }
+    
+    public synchronized Map<String, Object> resumeOrderBook(String book) {
+        return setHalted(book, false);
+    }
+    
+    private Map<String, Object> setHalted(String book, boolean halted) {
+        requireWritable();
+        BookListing listing = requireListing(book);
+        // Set on the writer, so every order queued before the halt is matched and none after it
+        executeOnBook(book, () -> {
+            if (listing.isHalted() != halted) {
+                listing.setHalted(halted);
+                journal(JournalRecord.listing(halted ? JournalRecord.Type.HALT : JournalRecord.Type.RESUME, book));
+            }
+            return null;
+        });
+        await(journalCommit());
+        logger.warn("Trading {} for orderbook {}", halted ? "halted" : "resumed", book);
+        return describeListing(listing);
+    }
+    
+    /**
+     * Delist a book: every order resting in it is cancelled and the name stops being accepted.
+     * Trades already printed stay in their users' histories.
+     */
+    public synchronized Map<String, Object> delistOrderBook(String book) {
+        requireWritable();
+        BookListing listing = requireListing(book);
+        int cancelled = executeOnBook(book, () -> {
+            int count = applyDelist(listing);
+            journal(JournalRecord.listing(JournalRecord.Type.DELIST, book));
+            return count;
+        });
+        await(journalCommit());
+        logger.warn("Delisted orderbook {} and cancelled {} resting orders", book, cancelled);
         
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("book", book);
+        response.put("status", "DELISTED");
+        response.put("cancelled", cancelled);
         return response;
     }
     
+    // Book writer only (or recovery)
+    private int applyDelist(BookListing listing) {
+        int count = 0;
+        OrderBook book = orderBooks.get(listing.getName());
+        if (book != null) {
+            for (Order.OrderType side : Order.OrderType.values()) {
+                for (Order order : book.getOrders(side)) {
+                    book.removeOrder(order.getId());
+                    order.setStatus(Order.OrderStatus.CANCELLED);
+                    users.get(order.getUsername()).removeOrder(order.getId());
+                    count++;
+                }
+            }
+        }
+        unlistBook(listing);
+        return count;
+    }
+    
+    // A page of listings in name order, with the same paging as selectBooks
+    public List<Map<String, Object>> getListings(String prefix, String after, Integer limit) {
+        List<Map<String, Object>> page = new ArrayList<>();
+        for (String book : selectBooks(null, prefix, after, limit)) {
+            BookListing listing = listings.get(book);
+            if (listing != null) {
+                page.add(describeListing(listing));
+            }
+        }
+        return page;
+    }
+    
+    private BookListing requireListing(String book) {
+        BookListing listing = listings.get(book);
+        if (listing == null) {
+            throw new IllegalArgumentException("Invalid orderbook: " + book);
+        }
+        return listing;
+    }
+    
+    private Map<String, Object> describeListing(BookListing listing) {
+        BookMetrics bookMetrics = metrics.book(listing.getName());
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("book", listing.getName());
+        result.put("status", listing.isHalted() ? "HALTED" : "TRADING");
+        result.put("tickSize", Prices.toDouble(listing.getInstrument().getTickSize()));
+        result.put("lotSize", listing.getInstrument().getLotSize());
+        // Not built until the first order arrives
+        result.put("built", orderBooks.containsKey(listing.getName()));
+        result.put("restingOrders", bookMetrics != null ? bookMetrics.getRestingOrders() : 0);
+        result.put("thread", listing.getThread());
+        return result;
+    }
+    
     public Map<String, List<List<Double>>> getOrderBook(String book) {
+        return getOrderBook(book, Integer.MAX_VALUE);
+    }
+    
+    // Top `depth` levels per side, read from the per-level running totals
+    public Map<String, List<List<Double>>> getOrderBook(String book, int depth) {
+        return await(getOrderBookAsync(book, depth));
+    }
+    
+    // The view is built on the book's writer; the caller is not held while it waits its turn
+    public CompletableFuture<Map<String, List<List<Double>>>> getOrderBookAsync(String book, int depth) {
         // Validate inputs
+        if (!listings.containsKey(book)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Invalid orderbook: " + book));
+        }
+        try {
+            validateDepth(depth);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        // A book that has never had an order is empty, so it is neither built nor queued behind its writer
         if (!orderBooks.containsKey(book)) {
+            return CompletableFuture.completedFuture(emptyView());
+        }
+        return submitToBook(book, () -> orderBooks.get(book).getAggregatedView(depth));
+    }
+    
+    private static Map<String, List<List<Double>>> emptyView() {
+        Map<String, List<List<Double>>> view = new HashMap<>();
+        view.put("buy", new ArrayList<>());
+        view.put("sell", new ArrayList<>());
+        return view;
+    }
+    
+    // The books version at the book's last change, so it only moves forward, even across a delist and relist
+    public long getBookVersion(String book) {
+        BookListing listing = listings.get(book);
+        if (listing == null) {
             throw new IllegalArgumentException("Invalid orderbook: " + book);
         }
+        return listing.changedVersion;
+    }
+    
+    // Moves whenever any book changes or is listed or delisted; read it before selecting what to serve
+    public long getBooksVersion() {
+        return booksVersion.get();
+    }
+    
+    /**
+     * One page of listed book names in name order: the given symbols if any, otherwise every
+     * book whose name starts with prefix. Only names after {@code after} are returned, so the
+     * last name of a page fetches the next one. Costs O(log books + page size) however many
+     * books are listed.
+     */
+    public List<String> selectBooks(Collection<String> symbols, String prefix, String after, Integer limit) {
+        int size = pageSize(limit);
+        List<String> page = new ArrayList<>();
+        if (symbols != null && !symbols.isEmpty()) {
+            for (String symbol : new TreeSet<>(symbols)) {
+                if (!listings.containsKey(symbol)) {
+                    throw new IllegalArgumentException("Invalid orderbook: " + symbol);
+                }
+                if (page.size() < size && (after == null || symbol.compareTo(after) > 0)) {
+                    page.add(symbol);
+                }
+            }
+            return page;
+        }
         
-        return orderBooks.get(book).getAggregatedView();
+        String from = prefix != null ? prefix : "";
+        NavigableMap<String, BookListing> candidates = after != null && after.compareTo(from) >= 0 
+            ? listings.tailMap(after, false) : listings.tailMap(from, true);
+        for (String name : candidates.keySet()) {
+            if (page.size() == size || !name.startsWith(from)) {
+                break;
+            }
+            page.add(name);
+        }
+        return page;
+    }
+    
+    // Leaderboard entries also show order and trade counts and live equity, which move without the ranking.
+    // Each term only moves forward, so the sum never comes back to a value it had before.
+    public long getLeaderboardVersion() {
+        return leaderboard.getVersion() + getBooksVersion() + markToMarket.getVersion();
+    }
+    
+    // Latest mark used to value positions in the book, or null before its first trade
+    public Double getMarkPrice(String book) {
+        if (!listings.containsKey(book)) {
+            throw new IllegalArgumentException("Invalid orderbook: " + book);
+        }
+        return Prices.toDouble(markToMarket.getMark(book));
+    }
+    
+    // Apply pending revaluations now instead of waiting for the mark-to-market thread
+    void awaitRevaluation() {
+        markToMarket.drain();
     }
     
     public Map<String, Map<String, List<List<Double>>>> getAllOrderBooks() {
-        Map<String, Map<String, List<List<Double>>>> result = new HashMap<>();
+        return getAllOrderBooks(Integer.MAX_VALUE);
+    }
+    
+    public Map<String, Map<String, List<List<Double>>>> getAllOrderBooks(int depth) {
+        return await(getAllOrderBooksAsync(depth));
+    }
+    
+    public CompletableFuture<Map<String, Map<String, List<List<Double>>>>> getAllOrderBooksAsync(int depth) {
+        return getOrderBooksAsync(new ArrayList<>(listings.keySet()), depth);
+    }
+    
+    // Views of the given books, e.g. a page from selectBooks
+    public CompletableFuture<Map<String, Map<String, List<List<Double>>>>> getOrderBooksAsync(Collection<String> books, 
+                                                                                              int depth) {
+        try {
+            validateDepth(depth);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
         
-        for (OrderBook book : orderBooks.values()) {
-            result.put(book.getName(), book.getAggregatedView());
+        // Ask every book for its view at once so they are built in parallel on their own threads
+        Map<String, CompletableFuture<Map<String, List<List<Double>>>>> pending = new HashMap<>();
+        for (String book : books) {
+            pending.put(book, getOrderBookAsync(book, depth).exceptionally(failure -> {
+                RuntimeException cause = propagate(failure);
+                if (cause instanceof IllegalArgumentException) {
+                    return null;
+                }
+                throw cause;
+            }));
         }
         
-        return result;
+        return CompletableFuture.allOf(pending.values().toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            Map<String, Map<String, List<List<Double>>>> result = new HashMap<>();
+            for (Map.Entry<String, CompletableFuture<Map<String, List<List<Double>>>>> entry : pending.entrySet()) {
+                // Books delisted since they were selected are left out
+                Map<String, List<List<Double>>> view = entry.getValue().join();
+                if (view != null) {
+                    result.put(entry.getKey(), view);
+                }
+            }
+            return result;
+        });
+    }
+    
+    /**
+     * Stream depth deltas and trades for the given books (all books when empty) to the sink.
+     * Each book's snapshot is taken on its writer in the same step that registers the
+     * subscriber, so the first delta follows the snapshot's sequence with no gap.
+     */
+    public MarketDataSubscription subscribeMarketData(Collection<String> books, MarketDataSink sink, Runnable onClose) {
+        List<String> selected = books == null || books.isEmpty() ? new ArrayList<>(listings.keySet()) : new ArrayList<>(books);
+        for (String book : selected) {
+            if (!listings.containsKey(book)) {
+                throw new IllegalArgumentException("Invalid orderbook: " + book);
+            }
+        }
+    
+        MarketDataSubscription subscription = marketData.newSubscription(sink, onClose);
+        for (String book : selected) {
+            executeOnBook(book, () -> {
+                long sequence = marketData.attach(book, subscription);
+                OrderBook orderBook = orderBooks.get(book);
+                subscription.offerSnapshot(book, sequence, orderBook != null ? orderBook.getAggregatedView() : emptyView());
+                return null;
+            });
+        }
+        return subscription;
+    }
+    
+    private static void validateDepth(int depth) {
+        if (depth <= 0) {
+            throw new IllegalArgumentException("Depth must be a positive integer");
+        }
     }
     
     public Map<String, Object> getUser(String username) {
@@ -351,22 +2028,189 @@ public class ExchangeService {
         
         Map<String, Object> result = new HashMap<>();
         result.put("username", user.getUsername());
-        result.put("realizedProfit", user.getRealizedProfit());
+        result.put("realizedProfit", Prices.toDouble(user.getRealizedProfit()));
+        result.put("unrealizedProfit", Prices.toDouble(user.getUnrealizedProfit()));
+        result.put("totalProfit", Prices.toDouble(user.getTotalProfit()));
         result.put("positions", user.getPositionDetails());
         result.put("activeOrders", user.getActiveOrdersDetails());
-        result.put("executedTrades", user.getExecutedTradesDetails());
+        // Only the newest trades; older ones are paged through getUserTrades
+        List<Trade> trades = new ArrayList<>();
+        int nextTradeCursor = retention.userTrades(user,
+            Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, DEFAULT_PAGE_SIZE, trades);
+        result.put("executedTrades", tradeDetails(user, trades));
+        result.put("tradeCount", user.getExecutedTrades().size());
+        result.put("nextTradeCursor", nextTradeCursor < 0 ? null : String.valueOf(nextTradeCursor));
+        
+        return result;
+    }
+    
+    /**
+     * A page of the user's trades, newest first, optionally limited to timestamps (epoch
+     * millis) in [from, to]. The cursor is the nextCursor of the previous page.
+     */
+    public Map<String, Object> getUserTrades(String username, String cursor, Integer limit, Long from, Long to) {
+        User user = requireUser(username);
+        int before = cursor == null ? user.getExecutedTrades().size() : parseCursor(cursor);
+        
+        List<Trade> trades = new ArrayList<>();
+        int next = retention.userTrades(user, before, from != null ? from : Long.MIN_VALUE,
+            to != null ? to : Long.MAX_VALUE, pageSize(limit), trades);
+        Map<String, Object> result = page(username, "trades", tradeDetails(user, trades), next < 0 ? null : String.valueOf(next));
+        // Where this page started, so the same page can be read again even after newer trades arrive
+        result.put("cursor", String.valueOf(before));
+        return result;
+    }
+    
+    // A page of the user's working orders, newest first, optionally limited to orders placed in [from, to]
+    public Map<String, Object> getUserOrders(String username, String cursor, Integer limit, Long from, Long to) {
+        User user = requireUser(username);
+        int size = pageSize(limit);
+        long fromMillis = from != null ? from : Long.MIN_VALUE;
+        long toMillis = to != null ? to : Long.MAX_VALUE;
+        
+        // Orders have no stable position, so the cursor names the last order returned by (timestamp, id)
+        long cursorTimestamp = Long.MAX_VALUE;
+        String cursorId = "";
+        if (cursor != null) {
+            int separator = cursor.indexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            cursorTimestamp = Long.parseLong(cursor.substring(0, separator));
+            cursorId = cursor.substring(separator + 1);
+        }
+        
+        List<Order> orders = new ArrayList<>();
+        for (Order order : user.getActiveOrders().values()) {
+            long timestamp = order.getTimestamp();
+            boolean working = order.getStatus() == Order.OrderStatus.ACTIVE 
+                || order.getStatus() == Order.OrderStatus.PARTIALLY_FILLED;
+            boolean afterCursor = timestamp < cursorTimestamp 
+                || (timestamp == cursorTimestamp && order.getId().compareTo(cursorId) > 0);
+            if (working && afterCursor && timestamp >= fromMillis && timestamp <= toMillis) {
+                orders.add(order);
+            }
+        }
+        orders.sort(Comparator.comparingLong(Order::getTimestamp).reversed().thenComparing(Order::getId));
+        
+        List<Map<String, Object>> details = new ArrayList<>();
+        for (Order order : orders.subList(0, Math.min(size, orders.size()))) {
+            details.add(User.getOrderDetails(order));
+        }
+        String next = null;
+        if (orders.size() > size) {
+            Order last = orders.get(size - 1);
+            next = last.getTimestamp() + ":" + last.getId();
+        }
+        return page(username, "orders", details, next);
+    }
+    
+    // A page of the user's open positions in symbol order; the cursor is the last symbol returned
+    public Map<String, Object> getUserPositions(String username, String cursor, Integer limit) {
+        User user = requireUser(username);
+        int size = pageSize(limit);
+        
+        List<Position> positions = new ArrayList<>();
+        for (Position position : user.getPositions().values()) {
+            if (cursor == null || position.getSymbol().compareTo(cursor) > 0) {
+                positions.add(position);
+            }
+        }
+        positions.sort(Comparator.comparing(Position::getSymbol));
         
+        List<Map<String, Object>> details = new ArrayList<>();
+        for (Position position : positions.subList(0, Math.min(size, positions.size()))) {
+            details.add(user.getPositionDetails(position));
+        }
+        String next = positions.size() > size ? positions.get(size - 1).getSymbol() : null;
+        return page(username, "positions", details, next);
+    }
+    
+    private User requireUser(String username) {
+        User user = users.get(username);
+        if (user == null) {
+            throw new IllegalArgumentException("User not found: " + username);
+        }
+        return user;
+    }
+    
+    private static int pageSize(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return limit;
+    }
+    
+    private static int parseCursor(String cursor) {
+        try {
+            return Integer.parseInt(cursor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+    
+    private static List<Map<String, Object>> tradeDetails(User user, List<Trade> trades) {
+        List<Map<String, Object>> details = new ArrayList<>(trades.size());
+        for (Trade trade : trades) {
+            details.add(user.getTradeDetails(trade));
+        }
+        return details;
+    }
+    
+    private static Map<String, Object> page(String username, String key, List<Map<String, Object>> items, String nextCursor) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("username", username);
+        result.put(key, items);
+        result.put("nextCursor", nextCursor);
         return result;
     }
     
     public List<Map<String, Object>> getLeaderboard() {
-        // Sort users by realized profit in descending order
-        return users.values().stream()
-            .map(User::getLeaderboardSummary)
-            .sorted((u1, u2) -> Double.compare(
-                (double) u2.get("realizedProfit"), 
-                (double) u1.get("realizedProfit")
-            ))
-            .collect(Collectors.toList());
+        return getLeaderboard(0, Integer.MAX_VALUE);
+    }
+    
+    // One page of the ranking, best first; reads the published leaderboard without touching the books
+    public List<Map<String, Object>> getLeaderboard(int offset, int limit) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset must not be negative");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Leaderboard.Entry entry : leaderboard.page(offset, limit)) {
+            result.add(leaderboardSummary(entry));
+        }
+        return result;
+    }
+    
+    public Map<String, Object> getLeaderboardRank(String username) {
+        Leaderboard.Entry entry = leaderboard.rankOf(username);
+        if (entry == null) {
+            throw new IllegalArgumentException("User not found: " + username);
+        }
+        Map<String, Object> summary = leaderboardSummary(entry);
+        summary.put("userCount", leaderboard.size());
+        return summary;
+    }
+    
+    private Map<String, Object> leaderboardSummary(Leaderboard.Entry entry) {
+        User user = users.get(entry.getUsername());
+        Map<String, Object> summary = user.getLeaderboardSummary();
+        // Report the profit the user was ranked at so the page is consistent with its ordering
+        long unrealized = user.getUnrealizedProfit();
+        summary.put("realizedProfit", Prices.toDouble(entry.getRealizedProfit()));
+        summary.put("unrealizedProfit", Prices.toDouble(unrealized));
+        summary.put("totalProfit", Prices.toDouble(entry.getRealizedProfit() + unrealized));
+        summary.put("rank", entry.getRank());
+        return summary;
+    }
+    
+    private User newUser(String username) {
+        return new User(username, leaderboard);
     }
 }
\ No newline at end of file
@@ -0,0 +1,9 @@
+package com.exchange.service;
+
+import com.exchange.model.Order;
+import com.exchange.model.Trade;
+
+// Told about every trade on the book's writer thread, after both orders' remaining quantities are updated
+public interface ExecutionListener {
+    void onTrade(Trade trade, Order buyOrder, Order sellOrder);
+}
@@ -0,0 +1,166 @@
+package com.exchange.service;
+
+import com.exchange.model.Leaderboard;
+import com.exchange.model.Prices;
+import com.exchange.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streaming mark-to-market of open positions.
+ *
+ * Each book's mark is its last trade price. Book writers record the new mark and the two
+ * counterparties of every trade, then flag the symbol dirty; only the first flag since the
+ * last pass queues the symbol, so a burst of fills costs one revaluation. A single
+ * background thread then revalues just the holders of that symbol, found through a reverse
+ * index from symbol to holders, and each user keeps a cached unrealized total that reads
+ * can return without any scanning. The same thread then publishes the realized profit
+ * changes of those fills to the leaderboard, so matching never waits on the ranking.
+ */
+final class MarkToMarket {
+    private static final Logger logger = LoggerFactory.getLogger(MarkToMarket.class);
+    // Prices are positive, so zero stands for a book that has not traded yet
+    private static final long NO_MARK = 0;
+
+    private final Map<String, SymbolState> symbols = new ConcurrentHashMap<>();
+    private final BlockingQueue<SymbolState> dirty = new LinkedBlockingQueue<>();
+    private final LongAdder passes = new LongAdder();
+    private final LongAdder revaluations = new LongAdder();
+    private final Leaderboard leaderboard;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile long version;
+
+    MarkToMarket(Leaderboard leaderboard) {
+        this.leaderboard = leaderboard;
+        this.thread = new Thread(this::run, "mark-to-market");
+        this.thread.setDaemon(true);
+    }
+
+    // A symbol listed again after a delisting keeps its holders and last mark
+    void register(String symbol) {
+        symbols.putIfAbsent(symbol, new SymbolState(symbol));
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Book writer only: a trade printed at this scaled price between these users
+    void onTrade(String symbol, long price, User buyer, User seller) {
+        SymbolState state = symbols.get(symbol);
+        state.holders.add(buyer);
+        state.holders.add(seller);
+        state.mark = price;
+        if (state.dirty.compareAndSet(false, true)) {
+            dirty.add(state);
+        }
+    }
+
+    // A position that exists without a trade in this process (snapshot recovery)
+    void addHolder(String symbol, User user) {
+        SymbolState state = symbols.get(symbol);
+        if (state != null) {
+            state.holders.add(user);
+        }
+    }
+
+    // Latest scaled mark, or null if the book has not traded yet
+    Long getMark(String symbol) {
+        SymbolState state = symbols.get(symbol);
+        return state == null || state.mark == NO_MARK ? null : state.mark;
+    }
+
+    // Bumped after every revaluation pass
+    long getVersion() {
+        return version;
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> marks = new TreeMap<>();
+        for (SymbolState state : symbols.values()) {
+            marks.put(state.symbol, state.mark == NO_MARK ? null : Prices.toDouble(state.mark));
+        }
+        Map<String, Object> result = new TreeMap<>();
+        result.put("marks", marks);
+        result.put("passes", passes.sum());
+        result.put("revaluations", revaluations.sum());
+        result.put("pendingSymbols", dirty.size());
+        return result;
+    }
+
+    // Revalue every dirty symbol on the calling thread, including one the background thread has taken but not started
+    synchronized void drain() {
+        for (SymbolState state : symbols.values()) {
+            if (state.dirty.get()) {
+                revalue(state);
+            }
+        }
+        leaderboard.publish();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                revalue(dirty.take());
+                leaderboard.publish();
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+            } catch (RuntimeException e) {
+                logger.error("Mark-to-market pass failed", e);
+            }
+        }
+    }
+
+    // Serialized so each user's unrealized totals have a single writer
+    private synchronized void revalue(SymbolState state) {
+        // Clear the flag before reading the mark so a trade after this point queues another pass
+        state.dirty.set(false);
+        long mark = state.mark;
+        for (User user : state.holders) {
+            revaluations.increment();
+            if (!user.revalue(state.symbol, mark)) {
+                state.holders.remove(user);
+                // The user may have reopened the position meanwhile; its fill re-added them before we removed
+                if (user.getPositions().containsKey(state.symbol)) {
+                    state.holders.add(user);
+                }
+            }
+        }
+        passes.increment();
+        version++;
+    }
+
+    private static final class SymbolState {
+        private final String symbol;
+        private final Set<User> holders = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean dirty = new AtomicBoolean();
+        private volatile long mark = NO_MARK;
+
+        private SymbolState(String symbol) {
+            this.symbol = symbol;
+        }
+    }
+}
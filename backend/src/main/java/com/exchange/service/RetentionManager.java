@@ -0,0 +1,271 @@
+package com.exchange.service;
+
+import com.exchange.config.ExchangeProperties;
+import com.exchange.model.Order;
+import com.exchange.model.Trade;
+import com.exchange.model.TradeHistory;
+import com.exchange.model.User;
+import com.exchange.persistence.OrderArchive;
+import com.exchange.persistence.TradeArchive;
+import com.exchange.persistence.UserTradeArchive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the live order map, the exchange-wide trade history and each user's trade history
+ * bounded.
+ *
+ * Filled and cancelled orders stay in the live map for the retention window, so a late cancel
+ * or amend still gets a precise answer, and a background sweep then moves them to the order
+ * archive. Trades go into a fixed ring of recent prints and, when archiving is enabled, onto
+ * a queue the same sweep drains into the trade archive. The sweep also moves whatever lies
+ * beyond the most recent trades of each user's history into the user trade archive. Lookups
+ * try the live structures first and fall back to the archives.
+ *
+ * Without an archive there is nowhere to spill to, so closed orders and user histories are
+ * kept in memory; only the ring of recent prints is bounded. The archive only holds what this
+ * process spilled: it starts empty, and each kind keeps a bounded number of segments, so the
+ * oldest archived orders and trades are eventually forgotten.
+ */
+final class RetentionManager {
+    private static final Logger logger = LoggerFactory.getLogger(RetentionManager.class);
+
+    private final Map<String, Order> liveOrders;
+    private final Map<String, User> users;
+    private final int userTrades;
+    private final long orderRetentionMillis;
+    private final long sweepIntervalMs;
+    private final AtomicReferenceArray<Trade> recentTrades;
+    private final int recentMask;
+    private final AtomicLong recentCount = new AtomicLong();
+    private final ConcurrentLinkedQueue<Trade> pendingTrades = new ConcurrentLinkedQueue<>();
+    private final OrderArchive orderArchive;
+    private final TradeArchive tradeArchive;
+    private final UserTradeArchive userTradeArchive;
+    private final LongAdder evictedOrders = new LongAdder();
+    private ScheduledExecutorService sweeper;
+
+    RetentionManager(Map<String, Order> liveOrders, Map<String, User> users, ExchangeProperties.Retention config) {
+        this.liveOrders = liveOrders;
+        this.users = users;
+        this.userTrades = config.getUserTrades();
+        this.orderRetentionMillis = TimeUnit.SECONDS.toMillis(config.getOrderRetentionSeconds());
+        this.sweepIntervalMs = config.getSweepIntervalMs();
+        int capacity = Integer.highestOneBit(Math.max(1, config.getRecentTrades() - 1)) << 1;
+        this.recentTrades = new AtomicReferenceArray<>(capacity);
+        this.recentMask = capacity - 1;
+        if (config.isArchiveEnabled()) {
+            Path directory = Paths.get(config.getArchiveDirectory());
+            int segmentSize = config.getArchiveSegmentSize();
+            int maxSegments = config.getArchiveMaxSegments();
+            this.orderArchive = new OrderArchive(directory, segmentSize, maxSegments);
+            this.tradeArchive = new TradeArchive(directory, segmentSize, maxSegments);
+            this.userTradeArchive = new UserTradeArchive(directory, segmentSize, maxSegments);
+        } else {
+            this.orderArchive = null;
+            this.tradeArchive = null;
+            this.userTradeArchive = null;
+        }
+    }
+
+    void start() {
+        if (sweepIntervalMs <= 0) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "retention-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (RuntimeException e) {
+                logger.error("Retention sweep failed", e);
+            }
+        }, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            try {
+                sweeper.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Trades still queued would otherwise be lost; closed orders can wait for the next start
+        archivePendingTrades();
+        if (orderArchive != null) {
+            orderArchive.close();
+            tradeArchive.close();
+            userTradeArchive.close();
+        }
+    }
+
+    // Book writer only; must not block
+    void onTrade(Trade trade) {
+        long sequence = recentCount.getAndIncrement();
+        recentTrades.set((int) sequence & recentMask, trade);
+        if (tradeArchive != null) {
+            pendingTrades.add(trade);
+        }
+    }
+
+    // Live orders first, then the archive; null if the order is unknown or was evicted without one
+    Order findOrder(String orderId) {
+        Order order = liveOrders.get(orderId);
+        if (order == null && orderArchive != null) {
+            order = orderArchive.find(orderId);
+        }
+        return order;
+    }
+
+    /**
+     * Up to {@code limit} of the user's trades at positions below {@code before}, newest first,
+     * with timestamps in [fromMillis, toMillis]: what is still in memory, then the archive.
+     * Returns the cursor for the next page as TradeHistory.collect does.
+     */
+    int userTrades(User user, int before, long fromMillis, long toMillis, int limit, List<Trade> out) {
+        int added = out.size();
+        int next = user.getExecutedTrades().collect(before, fromMillis, toMillis, limit, out);
+        int remaining = limit - (out.size() - added);
+        if (next > 0 && remaining > 0 && userTradeArchive != null) {
+            next = userTradeArchive.collect(user.getUsername(), next, fromMillis, toMillis, remaining, out);
+        }
+        return next;
+    }
+
+    /**
+     * Up to {@code limit} trades for the symbol in [fromMillis, toMillis], newest first: the
+     * recent ring first, then the archive for anything older.
+     */
+    List<Trade> trades(String symbol, long fromMillis, long toMillis, int limit) {
+        List<Trade> result = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        long newest = recentCount.get() - 1;
+        long oldest = Math.max(0, newest - recentMask);
+        for (long sequence = newest; sequence >= oldest && result.size() < limit; sequence--) {
+            Trade trade = recentTrades.get((int) sequence & recentMask);
+            // A slot can be overwritten by a newer print while we read; the seen set drops repeats
+            if (trade == null || !trade.getSymbol().equals(symbol) || !seen.add(trade.getId())) {
+                continue;
+            }
+            long millis = toMillis(trade);
+            if (millis >= fromMillis && millis <= toMillis) {
+                result.add(trade);
+            }
+        }
+        if (tradeArchive != null && result.size() < limit) {
+            tradeArchive.query(symbol, fromMillis, toMillis, limit - result.size(), seen, result);
+        }
+        return result;
+    }
+
+    // Evict orders closed longer than the window ago, archive queued trades and trim user histories
+    synchronized Map<String, Object> sweep() {
+        int archivedTrades = archivePendingTrades();
+        int trimmedTrades = trimUserHistories();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("ordersEvicted", evictOrders());
+        result.put("tradesArchived", archivedTrades);
+        result.put("userTradesArchived", trimmedTrades);
+        return result;
+    }
+
+    // Closed orders only leave memory when the archive can still answer for them
+    private int evictOrders() {
+        if (orderArchive == null) {
+            return 0;
+        }
+        long cutoff = System.currentTimeMillis() - orderRetentionMillis;
+        List<Order> expired = new ArrayList<>();
+        for (Order order : liveOrders.values()) {
+            long closedAt = order.getClosedAt();
+            if (closedAt != 0 && closedAt <= cutoff) {
+                expired.add(order);
+            }
+        }
+        // Archived before removal so a lookup always finds the order in one tier or the other
+        orderArchive.append(expired);
+        for (Order order : expired) {
+            liveOrders.remove(order.getId(), order);
+        }
+        evictedOrders.add(expired.size());
+        return expired.size();
+    }
+
+    // Move every whole chunk older than each user's most recent trades to the archive, a chunk per block
+    private int trimUserHistories() {
+        if (userTradeArchive == null) {
+            return 0;
+        }
+        int trimmed = 0;
+        for (User user : users.values()) {
+            TradeHistory history = user.getExecutedTrades();
+            int from = history.getRetainedFrom();
+            int to = history.trimPoint(userTrades);
+            for (int start = from; start < to; start += TradeHistory.CHUNK_SIZE) {
+                int end = Math.min(to, start + TradeHistory.CHUNK_SIZE);
+                userTradeArchive.append(user.getUsername(), start, history.range(start, end));
+                trimmed += end - start;
+            }
+            // Archived before discarding so a page always finds a trade in one tier or the other
+            history.discardBefore(to);
+        }
+        return trimmed;
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("liveOrders", liveOrders.size());
+        result.put("evictedOrders", evictedOrders.sum());
+        result.put("recentTrades", Math.min(recentCount.get(), recentMask + 1L));
+        result.put("archiveEnabled", tradeArchive != null);
+        if (tradeArchive != null) {
+            result.put("archivedOrders", orderArchive.getArchivedCount());
+            result.put("archivedTrades", tradeArchive.getArchivedCount());
+            result.put("archivedUserTrades", userTradeArchive.getArchivedCount());
+            result.put("pendingTrades", pendingTrades.size());
+        }
+        return result;
+    }
+
+    private synchronized int archivePendingTrades() {
+        if (tradeArchive == null) {
+            return 0;
+        }
+        List<Trade> batch = new ArrayList<>();
+        Trade trade;
+        while ((trade = pendingTrades.poll()) != null) {
+            batch.add(trade);
+        }
+        if (!batch.isEmpty()) {
+            tradeArchive.append(batch);
+        }
+        return batch.size();
+    }
+
+    private static long toMillis(Trade trade) {
+        return trade.getTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,119 @@
+package com.exchange.service;
+
+import com.exchange.config.ExchangeProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancel-on-disconnect for trading sessions.
+ *
+ * A client opens a session by sending heartbeats. If heartbeats stop for longer than the
+ * session timeout, or the client closes the session, every resting order of that user is
+ * cancelled through the per-user book index.
+ */
+@Service
+public class SessionMonitor {
+    private static final Logger logger = LoggerFactory.getLogger(SessionMonitor.class);
+
+    private final ExchangeService exchangeService;
+    private final ExchangeProperties.Session config;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public SessionMonitor(ExchangeService exchangeService, ExchangeProperties properties) {
+        this.exchangeService = exchangeService;
+        this.config = properties.getSession();
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::expireSessions,
+            config.getCheckIntervalMs(), config.getCheckIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public Map<String, Object> heartbeat(String username, Long timeoutMs) {
+        if (exchangeService.isReadOnly()) {
+            throw new IllegalArgumentException("Sessions are held by the primary; this node is a read-only follower");
+        }
+        long timeout = timeoutMs != null ? timeoutMs : config.getDefaultTimeoutMs();
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Session timeout must be positive");
+        }
+        sessions.compute(username, (name, session) -> {
+            Session current = session != null ? session : new Session();
+            current.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+            current.lastHeartbeatNanos = System.nanoTime();
+            return current;
+        });
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "ALIVE");
+        response.put("timeoutMs", timeout);
+        return response;
+    }
+
+    // Explicit logout behaves like a disconnect
+    public Map<String, Object> disconnect(String username) {
+        sessions.remove(username);
+        return cancelOnDisconnect(username);
+    }
+
+    private void expireSessions() {
+        long now = System.nanoTime();
+        for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+            Session session = entry.getValue();
+            if (now - session.lastHeartbeatNanos > session.timeoutNanos
+                    && sessions.remove(entry.getKey(), session)) {
+                logger.warn("Session for {} timed out, cancelling resting orders", entry.getKey());
+                try {
+                    cancelOnDisconnect(entry.getKey());
+                } catch (RuntimeException e) {
+                    logger.error("Cancel-on-disconnect failed for {}", entry.getKey(), e);
+                }
+            }
+        }
+    }
+
+    private Map<String, Object> cancelOnDisconnect(String username) {
+        try {
+            Map<String, Object> response = new HashMap<>(exchangeService.cancelAllOrders(username));
+            response.put("status", "DISCONNECTED");
+            return response;
+        } catch (IllegalArgumentException e) {
+            // User never placed an order, so there is nothing to cancel
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "DISCONNECTED");
+            response.put("count", 0);
+            return response;
+        }
+    }
+
+    private static final class Session {
+        private volatile long lastHeartbeatNanos;
+        private volatile long timeoutNanos;
+    }
+}
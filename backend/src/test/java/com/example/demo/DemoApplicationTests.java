@@ -1,13 +1,57 @@
 package com.example.demo;
 
+import com.exchange.Application;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 
-@SpringBootTest
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(classes = Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 class DemoApplicationTests {
 
+	@TempDir
+	static Path directory;
+
+	@Autowired
+	private TestRestTemplate rest;
+
+	// Anything the context writes goes to a temporary directory rather than the source tree
+	@DynamicPropertySource
+	static void dataDirectories(DynamicPropertyRegistry registry) {
+		registry.add("exchange.journal.directory", () -> directory.resolve("journal").toString());
+		registry.add("exchange.snapshot.directory", () -> directory.resolve("snapshots").toString());
+		registry.add("exchange.retention.archive-directory", () -> directory.resolve("archive").toString());
+	}
+
 	@Test
 	void contextLoads() {
 	}
 
+	@Test
+	void repeatedBooksRequestFilteredBySymbolsIsNotModified() {
+		String url = "/api/exchange/books?symbols=AAPL,MSFT";
+		ResponseEntity<String> first = rest.getForEntity(url, String.class);
+		assertEquals(HttpStatus.OK, first.getStatusCode());
+		String etag = first.getHeaders().getETag();
+		assertTrue(etag.matches("\"[A-Za-z0-9_\\-@.]+\""), etag);
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfNoneMatch(etag);
+		ResponseEntity<String> second = rest.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+		assertEquals(HttpStatus.NOT_MODIFIED, second.getStatusCode());
+	}
+
 }
@@ -0,0 +1,128 @@
+package com.exchange.cluster;
+
+import com.exchange.Application;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardRouterTests {
+
+	private static final HttpClient client = HttpClient.newHttpClient();
+	private static final ObjectMapper mapper = new ObjectMapper();
+	private static final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+	private static String router;
+
+	@TempDir
+	static Path directory;
+
+	@BeforeAll
+	static void startCluster() {
+		int first = port(start("--exchange.cluster.books=AAPL,NVDA"));
+		int second = port(start("--exchange.cluster.books=AMZN,MSFT"));
+		router = "http://localhost:" + port(start("--exchange.cluster.role=ROUTER",
+			"--exchange.cluster.shards[0].url=http://localhost:" + first + "/api/exchange",
+			"--exchange.cluster.shards[0].books=AAPL,NVDA",
+			"--exchange.cluster.shards[1].url=http://localhost:" + second + "/api/exchange",
+			"--exchange.cluster.shards[1].books=AMZN,MSFT")) + "/api/exchange";
+	}
+
+	@AfterAll
+	static void stopCluster() {
+		nodes.forEach(ConfigurableApplicationContext::close);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void viewsSpanningShardsAreMerged() throws Exception {
+		call("POST", "/order?book=AAPL&type=sell&price=100&quantity=10&username=alice", null);
+		call("POST", "/order?book=AAPL&type=buy&price=100&quantity=10&username=bob", null);
+		call("POST", "/order?book=MSFT&type=sell&price=50&quantity=4&username=alice", null);
+		call("POST", "/order?book=MSFT&type=buy&price=50&quantity=4&username=bob", null);
+		call("POST", "/order?book=MSFT&type=sell&price=60&quantity=4&username=bob", null);
+		call("POST", "/order?book=MSFT&type=buy&price=60&quantity=4&username=alice", null);
+
+		// Each instruction reaches the engine that owns its book and results keep the request order
+		List<Map<String, Object>> results = (List<Map<String, Object>>) call("POST", "/orders?username=carol",
+			"[{\"action\":\"place\",\"book\":\"NVDA\",\"type\":\"buy\",\"price\":10,\"quantity\":1},"
+			+ "{\"action\":\"place\",\"book\":\"FOO\",\"type\":\"buy\",\"price\":10,\"quantity\":1},"
+			+ "{\"action\":\"place\",\"book\":\"AMZN\",\"type\":\"sell\",\"price\":20,\"quantity\":2}]").get("results");
+		assertEquals("ACTIVE", results.get(0).get("status"));
+		assertEquals("REJECTED", results.get(1).get("status"));
+		assertEquals("ACTIVE", results.get(2).get("status"));
+
+		Map<String, Object> books = call("GET", "/books", null);
+		assertEquals(Set.of("AAPL", "AMZN", "NVDA", "MSFT"), books.keySet());
+
+		// Bob's profit is made on one engine only, but his trades and counts come from both
+		Map<String, Object> bob = call("GET", "/user/bob", null);
+		assertEquals(40.0, bob.get("realizedProfit"));
+		assertEquals(3, ((List<?>) bob.get("executedTrades")).size());
+		assertEquals(3, bob.get("tradeCount"));
+		Map<String, Object> rank = call("GET", "/leaderboard/bob", null);
+		assertEquals(1, rank.get("rank"));
+		assertEquals(3, rank.get("userCount"));
+
+		// Paging one trade at a time across both engines returns every trade exactly once
+		Set<Object> seen = new HashSet<>();
+		String cursor = null;
+		do {
+			Map<String, Object> page = call("GET", "/user/bob/trades?limit=1" + (cursor != null ? "&cursor=" + cursor : ""), null);
+			for (Map<String, Object> trade : (List<Map<String, Object>>) page.get("trades")) {
+				assertTrue(seen.add(trade.get("tradeId")));
+			}
+			cursor = (String) page.get("nextCursor");
+		} while (cursor != null);
+		assertEquals(3, seen.size());
+
+		assertEquals(2, call("DELETE", "/orders?username=carol", null).get("count"));
+		assertEquals("Invalid orderbook: FOO", call("POST", "/order?book=FOO&type=buy&price=1&quantity=1&username=x", null).get("error"));
+	}
+
+	private static ConfigurableApplicationContext start(String... args) {
+		// Each node gets its own data directories under the temporary one
+		Path data = directory.resolve("node-" + nodes.size());
+		List<String> arguments = new ArrayList<>(List.of("--server.port=0", "--exchange.retention.sweep-interval-ms=0",
+			"--exchange.journal.directory=" + data.resolve("journal"),
+			"--exchange.snapshot.directory=" + data.resolve("snapshots"),
+			"--exchange.retention.archive-directory=" + data.resolve("archive")));
+		arguments.addAll(List.of(args));
+		ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+			.run(arguments.toArray(new String[0]));
+		nodes.add(context);
+		return context;
+	}
+
+	private static int port(ConfigurableApplicationContext context) {
+		return ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> call(String method, String path, String json) throws Exception {
+		HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(router + path.replace(",", "%2C")));
+		if (json != null) {
+			request.header("Content-Type", "application/json").method(method, HttpRequest.BodyPublishers.ofString(json));
+		} else {
+			request.method(method, HttpRequest.BodyPublishers.noBody());
+		}
+		return mapper.readValue(client.send(request.build(), HttpResponse.BodyHandlers.ofString()).body(), Map.class);
+	}
+}
@@ -0,0 +1,123 @@
+package com.exchange.engine;
+
+import com.exchange.model.Instrument;
+import com.exchange.model.Order;
+import com.exchange.model.Prices;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PooledMatchingEngineTests {
+
+	private static final long TICK = Prices.SCALE / 100;
+	private static final long MID = 100 * Prices.SCALE;
+
+	private final RecordingListener fills = new RecordingListener();
+
+	@Test
+	void ordersMatchInPriceTimePriorityAndGoBackToThePool() {
+		PooledMatchingEngine engine = engine(4);
+
+		long first = engine.place(Order.OrderType.SELL, MID + TICK, 5, 1);
+		long second = engine.place(Order.OrderType.SELL, MID + TICK, 5, 2);
+		long better = engine.place(Order.OrderType.SELL, MID, 2, 3);
+		assertTrue(first < second && second < better);
+		assertEquals(MID, engine.getBestPrice(Order.OrderType.SELL));
+		assertEquals(1, engine.getAvailableOrders());
+
+		// Sweeps the better level, then the older order at the next one, at the makers' prices
+		long taker = engine.place(Order.OrderType.BUY, MID + TICK, 4, 9);
+		assertEquals(2, fills.count);
+		assertEquals(better, fills.makerOrderId);
+		assertEquals(taker, fills.takerOrderId);
+		assertEquals(9, fills.takerAccount);
+		assertEquals(3, fills.makerAccount);
+		assertEquals(MID, fills.price);
+		assertEquals(2, fills.quantity);
+		assertEquals(Order.OrderType.BUY, fills.takerSide);
+		assertEquals(0, engine.getQuantity(taker));
+		assertEquals(0, engine.getQuantity(better));
+		assertEquals(3, engine.getQuantity(first));
+		assertEquals(5, engine.getQuantity(second));
+		assertEquals(8, engine.getLevelQuantity(Order.OrderType.SELL, MID + TICK));
+		assertEquals(2, engine.getRestingOrderCount());
+
+		// Filled and cancelled orders are recycled; their old ids never resolve to the new occupant
+		assertTrue(engine.cancel(first));
+		assertFalse(engine.cancel(first));
+		long reused = engine.place(Order.OrderType.BUY, MID - TICK, 1, 4);
+		assertEquals(0, engine.getQuantity(first));
+		assertEquals(1, engine.getQuantity(reused));
+		assertEquals(MID - TICK, engine.getBestPrice(Order.OrderType.BUY));
+
+		engine.place(Order.OrderType.BUY, MID - TICK, 1, 4);
+		engine.place(Order.OrderType.BUY, MID - TICK, 1, 4);
+		assertEquals(0, engine.getAvailableOrders());
+		assertThrows(IllegalStateException.class, () -> engine.place(Order.OrderType.BUY, MID - TICK, 1, 4));
+		assertThrows(IllegalArgumentException.class, () -> engine.place(Order.OrderType.BUY, MID + TICK / 2, 1, 4));
+		assertThrows(IllegalArgumentException.class, () -> engine.place(Order.OrderType.BUY, 2 * MID, 1, 4));
+		assertThrows(IllegalArgumentException.class, () -> engine.place(Order.OrderType.BUY, MID, 0, 4));
+	}
+
+	@Test
+	void steadyStateMatchingAllocatesNothing() {
+		PooledMatchingEngine engine = engine(1024);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		// Warm up so class loading and compilation are out of the measurement
+		sweep(engine, 20_000);
+		long before = threads.getThreadAllocatedBytes(thread);
+		sweep(engine, 100_000);
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+		assertEquals(0, allocated / 100_000, "bytes allocated per sweep");
+		assertEquals(0, engine.getRestingOrderCount());
+	}
+
+	// Each sweep rests five asks, lifts them with one buy, and rests and cancels a bid
+	private void sweep(PooledMatchingEngine engine, int sweeps) {
+		for (int i = 0; i < sweeps; i++) {
+			for (int level = 0; level < 5; level++) {
+				engine.place(Order.OrderType.SELL, MID + level * TICK, 1, 1);
+			}
+			engine.place(Order.OrderType.BUY, MID + 4 * TICK, 5, 2);
+			engine.cancel(engine.place(Order.OrderType.BUY, MID - TICK, 1, 2));
+		}
+	}
+
+	private PooledMatchingEngine engine(int orders) {
+		return new PooledMatchingEngine(new Instrument(TICK, 1), MID / 2, 10_000, orders, fills);
+	}
+
+	// Keeps the first fill seen and counts the rest, without allocating
+	private static final class RecordingListener implements FillListener {
+		private int count;
+		private long takerOrderId;
+		private long makerOrderId;
+		private long takerAccount;
+		private long makerAccount;
+		private long price;
+		private int quantity;
+		private Order.OrderType takerSide;
+
+		@Override
+		public void onFill(Fill fill) {
+			if (count++ > 0) {
+				return;
+			}
+			takerOrderId = fill.getTakerOrderId();
+			makerOrderId = fill.getMakerOrderId();
+			takerAccount = fill.getTakerAccount();
+			makerAccount = fill.getMakerAccount();
+			price = fill.getPrice();
+			quantity = fill.getQuantity();
+			takerSide = fill.getTakerSide();
+		}
+	}
+}
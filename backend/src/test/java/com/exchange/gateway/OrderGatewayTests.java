@@ -0,0 +1,120 @@
+package com.exchange.gateway;
+
+import com.exchange.config.ExchangeProperties;
+import com.exchange.model.Prices;
+import com.exchange.service.ExchangeService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import static com.exchange.gateway.GatewayProtocol.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OrderGatewayTests {
+
+	private ExchangeService service;
+	private OrderGateway gateway;
+
+	@BeforeEach
+	void setUp() {
+		ExchangeProperties properties = new ExchangeProperties();
+		properties.getGateway().setHost("127.0.0.1");
+		properties.getGateway().setPort(0);
+		service = new ExchangeService(properties);
+		service.init();
+		gateway = new OrderGateway(service, properties);
+		gateway.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		gateway.stop();
+		service.shutdown();
+	}
+
+	@Test
+	void ordersAreAckedFilledAndCancelledOverLoopback() throws IOException {
+		try (SocketChannel maker = connect("maker"); SocketChannel taker = connect("taker")) {
+			send(maker, buffer -> putNewOrder(buffer, 1, "AAPL", SIDE_SELL, Prices.toScaled(100.0), 5));
+			ByteBuffer ack = expect(maker, ACK);
+			assertEquals(1, ack.getLong());
+			String restingId = getText(ack, ORDER_ID_LENGTH);
+
+			send(taker, buffer -> putNewOrder(buffer, 7, "AAPL", SIDE_BUY, Prices.toScaled(100.0), 3));
+			assertEquals(7, expect(taker, ACK).getLong());
+			ByteBuffer takerFill = expect(taker, FILL);
+			assertEquals(7, takerFill.getLong());
+			getText(takerFill, ORDER_ID_LENGTH);
+			assertEquals(Prices.toScaled(100.0), takerFill.getLong());
+			assertEquals(3, takerFill.getInt());
+			assertEquals(0, takerFill.getInt());
+
+			ByteBuffer makerFill = expect(maker, FILL);
+			assertEquals(1, makerFill.getLong());
+			assertEquals(restingId, getText(makerFill, ORDER_ID_LENGTH));
+			makerFill.getLong();
+			assertEquals(3, makerFill.getInt());
+			assertEquals(2, makerFill.getInt());
+
+			send(maker, buffer -> putCancel(buffer, 2, "AAPL", restingId));
+			ByteBuffer cancelled = expect(maker, CANCELLED);
+			assertEquals(1, cancelled.getLong());
+			assertEquals(restingId, getText(cancelled, ORDER_ID_LENGTH));
+
+			send(maker, buffer -> putNewOrder(buffer, 3, "TSLA", SIDE_BUY, Prices.toScaled(10.0), 1));
+			ByteBuffer reject = expect(maker, REJECT);
+			assertEquals(3, reject.getLong());
+			assertEquals("Invalid orderbook: TSLA", getText(reject, REASON_LENGTH));
+
+			// One millionth off the tick grid is refused, not rounded onto it
+			send(maker, buffer -> putNewOrder(buffer, 4, "AAPL", SIDE_BUY, Prices.toScaled(10.0) + 1, 1));
+			ByteBuffer offGrid = expect(maker, REJECT);
+			assertEquals(4, offGrid.getLong());
+			assertEquals("Price 10.000001 is not a multiple of the tick size 0.01 for AAPL", getText(offGrid, REASON_LENGTH));
+		}
+	}
+
+	private SocketChannel connect(String username) throws IOException {
+		SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", gateway.getPort()));
+		send(channel, buffer -> putLogon(buffer, username));
+		expect(channel, LOGON_ACK);
+		return channel;
+	}
+
+	private interface Encoder {
+		void encode(ByteBuffer buffer);
+	}
+
+	private static void send(SocketChannel channel, Encoder encoder) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		encoder.encode(buffer);
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	// Read one frame and return its body, positioned after the type byte
+	private static ByteBuffer expect(SocketChannel channel, byte type) throws IOException {
+		ByteBuffer length = readFully(channel, 2);
+		ByteBuffer frame = readFully(channel, length.getShort() & 0xffff);
+		assertEquals(type, frame.get());
+		return frame;
+	}
+
+	private static ByteBuffer readFully(SocketChannel channel, int size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new IOException("Gateway closed the connection");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+}
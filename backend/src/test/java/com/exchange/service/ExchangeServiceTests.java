@@ -0,0 +1,913 @@
+package com.exchange.service;
+
+import com.exchange.config.ExchangeProperties;
+import com.exchange.model.OrderInstruction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExchangeServiceTests {
+
+	private ExchangeService service;
+
+	@BeforeEach
+	void setUp() {
+		service = new ExchangeService();
+		service.init();
+	}
+
+	private ExchangeService journaledService(Path directory) {
+		return journaledService(directory, false);
+	}
+
+	private ExchangeService journaledService(Path directory, boolean snapshots) {
+		ExchangeProperties properties = new ExchangeProperties();
+		properties.getJournal().setEnabled(true);
+		properties.getJournal().setDirectory(directory.resolve("journal").toString());
+		properties.getJournal().setSegmentSize(4096);
+		properties.getSnapshot().setEnabled(snapshots);
+		properties.getSnapshot().setDirectory(directory.resolve("snapshots").toString());
+		properties.getSnapshot().setIntervalSeconds(0);
+		ExchangeService journaled = new ExchangeService(properties);
+		journaled.init();
+		return journaled;
+	}
+
+	private void useTickLadderBooks() {
+		service.shutdown();
+		ExchangeProperties properties = new ExchangeProperties();
+		properties.getBook().setType(ExchangeProperties.BookType.TICK_LADDER);
+		properties.getBook().setLadderSize(64);
+		properties.getBook().setLadderMaxSize(256);
+		service = new ExchangeService(properties);
+		service.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		service.shutdown();
+	}
+
+	@Test
+	void crossingOrdersTradeAtRestingPrice() {
+		service.placeOrder("AAPL", "sell", 100.0, 5, "alice");
+		Map<String, Object> result = service.placeOrder("AAPL", "buy", 101.0, 3, "bob");
+
+		assertEquals("FILLED", result.get("status"));
+		List<List<Double>> asks = service.getOrderBook("AAPL").get("sell");
+		assertEquals(List.of(List.of(100.0, 2.0)), asks);
+
+		@SuppressWarnings("unchecked")
+		List<Map<String, Object>> positions = (List<Map<String, Object>>) service.getUser("bob").get("positions");
+		assertEquals(3, positions.get(0).get("quantity"));
+		assertEquals(100.0, (double) positions.get(0).get("averageCost"), 1e-9);
+	}
+
+	@Test
+	void concurrentOrdersOnManyBooksKeepBooksConsistent() throws Exception {
+		String[] books = {"AAPL", "AMZN", "NVDA", "MSFT"};
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			String book = books[t % books.length];
+			String side = t < 4 ? "buy" : "sell";
+			String user = "user" + t;
+			futures.add(pool.submit(() -> {
+				for (int i = 0; i < 500; i++) {
+					service.placeOrder(book, side, 100.0, 1, user);
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get(30, TimeUnit.SECONDS);
+		}
+		pool.shutdown();
+
+		// Every book received 500 buys and 500 sells at the same price, so all of them must have crossed
+		for (String book : books) {
+			Map<String, List<List<Double>>> view = service.getOrderBook(book);
+			assertTrue(view.get("buy").isEmpty(), book + " has resting bids");
+			assertTrue(view.get("sell").isEmpty(), book + " has resting asks");
+		}
+	}
+
+	@Test
+	void tickLadderSweepsLevelsAndRecentresOnFarPrices() {
+		useTickLadderBooks();
+		service.placeOrder("NVDA", "sell", 10.00, 1, "maker");
+		// Outside the initial 64-tick window but within the maximum, so the ladder grows
+		service.placeOrder("NVDA", "sell", 10.80, 3, "maker");
+		service.placeOrder("NVDA", "sell", 10.01, 2, "maker");
+		// Beyond the 256-tick maximum, so it rests in the overflow
+		service.placeOrder("NVDA", "sell", 25.50, 4, "maker");
+		service.placeOrder("NVDA", "buy", 9.00, 7, "maker");
+
+		assertEquals(List.of(List.of(10.00, 1.0), List.of(10.01, 2.0), List.of(10.80, 3.0), List.of(25.50, 4.0)),
+			service.getOrderBook("NVDA").get("sell"));
+
+		service.placeOrder("NVDA", "buy", 10.80, 8, "taker");
+		assertEquals(List.of(List.of(25.50, 4.0)), service.getOrderBook("NVDA").get("sell"));
+		assertEquals(List.of(List.of(10.80, 2.0), List.of(9.00, 7.0)), service.getOrderBook("NVDA").get("buy"));
+
+		assertThrows(IllegalArgumentException.class, () -> service.placeOrder("NVDA", "buy", 10.005, 1, "taker"));
+
+		// Compaction shrinks the grown ask window back to 64 ticks around its one remaining level
+		service.compactIdleBooks();
+		service.compactIdleBooks();
+		assertEquals(List.of(List.of(25.50, 4.0)), service.getOrderBook("NVDA").get("sell"));
+
+		// The emptied ask window moved onto 25.50; a far bid takes it and rests its remainder in the overflow
+		service.placeOrder("NVDA", "buy", 100000.0, 5, "taker");
+		assertTrue(service.getOrderBook("NVDA").get("sell").isEmpty());
+		assertEquals(List.of(List.of(100000.0, 1.0), List.of(10.80, 2.0), List.of(9.00, 7.0)),
+			service.getOrderBook("NVDA").get("buy"));
+
+		Map<String, Object> sweep = service.placeOrder("NVDA", "sell", 9.00, 10, "seller");
+		assertEquals("FILLED", sweep.get("status"));
+		assertTrue(service.getOrderBook("NVDA").get("buy").isEmpty());
+	}
+
+	@Test
+	void cancelAndAmendUnlinkRestingOrdersById() {
+		String first = (String) service.placeOrder("MSFT", "buy", 50.0, 2, "mm").get("orderId");
+		String second = (String) service.placeOrder("MSFT", "buy", 50.0, 3, "mm").get("orderId");
+		service.placeOrder("MSFT", "buy", 49.0, 1, "mm");
+
+		// Growing the first order sends it behind the second one
+		assertEquals("AMENDED", service.amendOrder("MSFT", first, 4, "mm").get("status"));
+		service.placeOrder("MSFT", "sell", 50.0, 3, "taker");
+		assertEquals(List.of(List.of(50.0, 4.0), List.of(49.0, 1.0)), service.getOrderBook("MSFT").get("buy"));
+
+		assertEquals("CANCELLED", service.cancelOrder("MSFT", first, "mm").get("status"));
+		assertEquals(List.of(List.of(49.0, 1.0)), service.getOrderBook("MSFT").get("buy"));
+		assertThrows(IllegalArgumentException.class, () -> service.cancelOrder("MSFT", second, "mm"));
+	}
+
+	@Test
+	void killSwitchCancelsAcrossBooksAndBlocksNewOrders() {
+		service.placeOrder("AAPL", "buy", 10.0, 1, "bot");
+		service.placeOrder("AMZN", "sell", 20.0, 2, "bot");
+		service.placeOrder("AMZN", "sell", 21.0, 2, "bot");
+		service.placeOrder("AMZN", "sell", 20.0, 5, "human");
+
+		assertEquals(3, service.disableTrading("bot").get("count"));
+		assertTrue(service.getOrderBook("AAPL").get("buy").isEmpty());
+		assertEquals(List.of(List.of(20.0, 5.0)), service.getOrderBook("AMZN").get("sell"));
+		assertThrows(IllegalArgumentException.class, () -> service.placeOrder("AAPL", "buy", 10.0, 1, "bot"));
+
+		service.enableTrading("bot");
+		assertEquals("ACTIVE", service.placeOrder("AAPL", "buy", 10.0, 1, "bot").get("status"));
+	}
+
+	@Test
+	void depthViewTracksFillsAmendsAndCancelsPerLevel() {
+		String amended = (String) service.placeOrder("AAPL", "sell", 101.0, 4, "mm").get("orderId");
+		service.placeOrder("AAPL", "sell", 101.0, 6, "mm");
+		String cancelled = (String) service.placeOrder("AAPL", "sell", 102.0, 5, "mm").get("orderId");
+		service.placeOrder("AAPL", "sell", 103.0, 1, "mm");
+
+		service.placeOrder("AAPL", "buy", 101.0, 3, "taker");
+		service.amendOrder("AAPL", amended, 2, "mm");
+		service.cancelOrder("AAPL", cancelled, "mm");
+
+		assertEquals(List.of(List.of(101.0, 8.0)), service.getOrderBook("AAPL", 1).get("sell"));
+		assertEquals(List.of(List.of(101.0, 8.0), List.of(103.0, 1.0)), service.getOrderBook("AAPL", 5).get("sell"));
+		assertEquals(1, service.getAllOrderBooks(1).get("AAPL").get("sell").size());
+	}
+
+	@Test
+	void journalReplayRebuildsBooksAndUsers(@TempDir Path directory) {
+		ExchangeService first = journaledService(directory);
+		// Enough commands to roll over several small segments
+		for (int i = 0; i < 100; i++) {
+			first.placeOrder("AMZN", "sell", 30.0 + i % 5, 2, "maker");
+			first.placeOrder("AMZN", "buy", 29.0, 1, "bidder");
+		}
+		String kept = (String) first.placeOrder("AMZN", "sell", 34.0, 2, "maker").get("orderId");
+		first.placeOrder("AMZN", "buy", 31.0, 5, "taker");
+		first.cancelOrder("AMZN", kept, "maker");
+		first.cancelAllOrders("AMZN", "bidder");
+		Map<String, List<List<Double>>> before = first.getOrderBook("AMZN");
+		Object profit = first.getUser("maker").get("realizedProfit");
+		first.shutdown();
+
+		ExchangeService second = journaledService(directory);
+		try {
+			assertEquals(before, second.getOrderBook("AMZN"));
+			assertEquals(profit, second.getUser("maker").get("realizedProfit"));
+			assertEquals(1, ((List<?>) second.getUser("taker").get("positions")).size());
+			assertThrows(IllegalArgumentException.class, () -> second.cancelOrder("AMZN", kept, "maker"));
+		} finally {
+			second.shutdown();
+		}
+	}
+
+	@Test
+	void restartLoadsSnapshotAndReplaysOnlyTheJournalTail(@TempDir Path directory) throws Exception {
+		ExchangeService first = journaledService(directory, true);
+		for (int i = 0; i < 50; i++) {
+			first.placeOrder("NVDA", i % 2 == 0 ? "buy" : "sell", i % 2 == 0 ? 99.0 - i % 7 : 101.0 + i % 7, 3, "u" + i % 4);
+		}
+		first.placeOrder("NVDA", "buy", 102.0, 10, "u9");
+		first.takeSnapshot();
+		first.placeOrder("NVDA", "sell", 98.0, 4, "late");
+		Map<String, List<List<Double>>> before = first.getOrderBook("NVDA");
+		Object profit = first.getUser("u9").get("realizedProfit");
+		Path finalSnapshot = Path.of((String) first.takeSnapshot().get("file"));
+		first.shutdown();
+
+		// Drop the newest snapshot so the order placed after the first one must come back from the journal
+		Files.delete(finalSnapshot);
+
+		ExchangeService second = journaledService(directory, true);
+		try {
+			assertEquals(before, second.getOrderBook("NVDA"));
+			assertEquals(profit, second.getUser("u9").get("realizedProfit"));
+			assertEquals(1, second.getRecoveryStats().get("journalRecordsReplayed"));
+			assertTrue((int) second.getRecoveryStats().get("snapshotOrders") > 0);
+		} finally {
+			second.shutdown();
+		}
+	}
+
+	@Test
+	void killSwitchSurvivesARestart(@TempDir Path directory) {
+		ExchangeService first = journaledService(directory, true);
+		first.placeOrder("AAPL", "buy", 10.0, 1, "bot");
+		first.disableTrading("bot");
+		first.takeSnapshot();
+		// After the snapshot, so these come back from the journal tail
+		first.disableTrading("late");
+		first.disableTrading("freed");
+		first.enableTrading("freed");
+		first.shutdown();
+
+		ExchangeService second = journaledService(directory, true);
+		try {
+			assertTrue(second.isTradingDisabled("bot"));
+			assertTrue(second.isTradingDisabled("late"));
+			assertFalse(second.isTradingDisabled("freed"));
+			assertThrows(IllegalArgumentException.class, () -> second.placeOrder("AAPL", "buy", 10.0, 1, "bot"));
+			assertEquals("ACTIVE", second.placeOrder("AAPL", "buy", 10.0, 1, "freed").get("status"));
+		} finally {
+			second.shutdown();
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void marketDataStreamRebuildsTheBookFromSnapshotAndDeltas() throws Exception {
+		service.placeOrder("AAPL", "buy", 99.0, 5, "maker");
+		BlockingQueue<Object[]> events = new LinkedBlockingQueue<>();
+		service.subscribeMarketData(List.of("AAPL"), (event, payload) -> events.add(new Object[] {event, payload}), null);
+
+		service.placeOrder("AAPL", "sell", 101.0, 7, "maker");
+		service.placeOrder("AAPL", "buy", 99.0, 3, "other");
+		service.placeOrder("AAPL", "buy", 101.0, 4, "taker");
+		Map<String, List<List<Double>>> expected = service.getOrderBook("AAPL");
+
+		// Replay the stream onto a local copy of the book until it catches up with the engine
+		Map<String, Map<Double, Double>> local = Map.of("buy", new TreeMap<>(), "sell", new TreeMap<>());
+		long sequence = -1;
+		int traded = 0;
+		while (traded < 4 || !local.get("buy").equals(toLevelMap(expected.get("buy")))
+				|| !local.get("sell").equals(toLevelMap(expected.get("sell")))) {
+			Object[] event = events.poll(5, TimeUnit.SECONDS);
+			assertTrue(event != null, "stream stalled");
+			Map<String, Object> payload = (Map<String, Object>) event[1];
+			if ("snapshot".equals(event[0])) {
+				sequence = (long) payload.get("sequence");
+				for (String side : local.keySet()) {
+					local.get(side).clear();
+					local.get(side).putAll(toLevelMap((List<List<Double>>) payload.get(side)));
+				}
+			} else if ("depth".equals(event[0])) {
+				assertEquals(sequence + 1, (long) payload.get("fromSequence"));
+				sequence = (long) payload.get("sequence");
+				for (String side : local.keySet()) {
+					for (List<Double> level : (List<List<Double>>) payload.get(side)) {
+						if (level.get(1) == 0) {
+							local.get(side).remove(level.get(0));
+						} else {
+							local.get(side).put(level.get(0), level.get(1));
+						}
+					}
+				}
+			} else {
+				for (Map<String, Object> print : (List<Map<String, Object>>) payload.get("trades")) {
+					traded += (int) print.get("quantity");
+				}
+			}
+		}
+		assertEquals(Map.of(99.0, 8.0), local.get("buy"));
+		assertEquals(Map.of(101.0, 3.0), local.get("sell"));
+	}
+
+	private static Map<Double, Double> toLevelMap(List<List<Double>> levels) {
+		Map<Double, Double> result = new TreeMap<>();
+		for (List<Double> level : levels) {
+			result.put(level.get(0), level.get(1));
+		}
+		return result;
+	}
+
+	@Test
+	void batchAppliesInstructionsInOrderAndRejectsBadOnesIndividually() {
+		String resting = (String) service.placeOrder("AAPL", "buy", 99.0, 5, "quoter").get("orderId");
+		service.placeOrder("MSFT", "sell", 50.0, 2, "other");
+
+		List<Map<String, Object>> results = service.executeBatch("quoter", List.of(
+			OrderInstruction.place("AAPL", "sell", new BigDecimal("101.0"), 10),
+			OrderInstruction.replace("AAPL", resting, new BigDecimal("99.5"), 6),
+			OrderInstruction.cancel("AAPL", "missing"),
+			OrderInstruction.place("MSFT", "buy", new BigDecimal("50.0"), 2),
+			OrderInstruction.place("TSLA", "buy", BigDecimal.ONE, 1)));
+
+		assertEquals(5, results.size());
+		String ask = (String) results.get(0).get("orderId");
+		assertEquals("ACTIVE", results.get(0).get("status"));
+		assertEquals(resting, results.get(1).get("replacedOrderId"));
+		assertEquals("REJECTED", results.get(2).get("status"));
+		assertEquals("FILLED", results.get(3).get("status"));
+		assertEquals("REJECTED", results.get(4).get("status"));
+
+		// The replacement sits at its new price and the old order is gone
+		assertEquals(List.of(List.of(99.5, 6.0)), service.getOrderBook("AAPL").get("buy"));
+		assertThrows(IllegalArgumentException.class, () -> service.cancelOrder("AAPL", resting, "quoter"));
+
+		List<Map<String, Object>> second = service.executeBatch("quoter", List.of(
+			OrderInstruction.amend("AAPL", ask, 4),
+			OrderInstruction.cancel("AAPL", ask)));
+		assertEquals("AMENDED", second.get(0).get("status"));
+		assertEquals("CANCELLED", second.get(1).get("status"));
+		assertTrue(service.getOrderBook("AAPL").get("sell").isEmpty());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void metricsCountOrdersFillsCancelsAndRejectsPerBook() {
+		String resting = (String) service.placeOrder("NVDA", "sell", 50.0, 10, "maker").get("orderId");
+		service.placeOrder("NVDA", "buy", 50.0, 4, "taker");
+		service.placeOrder("NVDA", "buy", 49.0, 1, "taker");
+		service.cancelOrder("NVDA", resting, "maker");
+		assertThrows(IllegalArgumentException.class, () -> service.placeOrder("NVDA", "buy", -1.0, 1, "taker"));
+
+		Map<String, Object> metrics = service.getMetrics();
+		Map<String, Object> nvda = (Map<String, Object>) ((Map<String, Object>) metrics.get("books")).get("NVDA");
+		assertEquals(3L, nvda.get("orders"));
+		assertEquals(1L, nvda.get("fills"));
+		assertEquals(4L, nvda.get("filledQuantity"));
+		assertEquals(1L, nvda.get("cancels"));
+		assertEquals(1L, nvda.get("rejects"));
+		assertEquals(1, nvda.get("restingOrders"));
+		assertEquals(1, nvda.get("bidLevels"));
+		assertEquals(0, nvda.get("askLevels"));
+		assertTrue((long) ((Map<String, Object>) nvda.get("matchTime")).get("count") >= 4);
+
+		Map<String, Object> place = (Map<String, Object>) ((Map<String, Object>) metrics.get("requests")).get("place");
+		assertEquals(4L, place.get("count"));
+	}
+
+	@Test
+	void leaderboardPagesAndRanksByRealizedProfit() {
+		service.placeOrder("AAPL", "sell", 100.0, 2, "loser");
+		service.placeOrder("AAPL", "buy", 100.0, 2, "winner");
+		service.placeOrder("AAPL", "sell", 110.0, 2, "winner");
+		service.placeOrder("AAPL", "buy", 110.0, 2, "loser");
+		service.placeOrder("AAPL", "buy", 90.0, 1, "flat");
+
+		List<Map<String, Object>> board = service.getLeaderboard();
+		assertEquals(List.of("winner", "flat", "loser"),
+			board.stream().map(entry -> entry.get("username")).collect(Collectors.toList()));
+		assertEquals(20.0, board.get(0).get("realizedProfit"));
+		assertEquals(-20.0, board.get(2).get("realizedProfit"));
+
+		List<Map<String, Object>> page = service.getLeaderboard(1, 1);
+		assertEquals(1, page.size());
+		assertEquals("flat", page.get(0).get("username"));
+		assertEquals(2, page.get(0).get("rank"));
+		assertTrue(service.getLeaderboard(3, 10).isEmpty());
+
+		Map<String, Object> rank = service.getLeaderboardRank("loser");
+		assertEquals(3, rank.get("rank"));
+		assertEquals(3, rank.get("userCount"));
+		assertThrows(IllegalArgumentException.class, () -> service.getLeaderboardRank("nobody"));
+		assertThrows(IllegalArgumentException.class, () -> service.getLeaderboard(0, 0));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void userTradesOrdersAndPositionsArePagedByCursor() {
+		// Enough fills to span more than one chunk of the trade history
+		for (int i = 0; i < 300; i++) {
+			service.placeOrder("AAPL", "sell", 100.0, 1, "maker");
+			service.placeOrder("AAPL", "buy", 100.0, 1, "taker");
+		}
+		service.placeOrder("MSFT", "sell", 100.0, 1, "maker");
+		service.placeOrder("MSFT", "buy", 100.0, 1, "taker");
+
+		Map<String, Object> user = service.getUser("taker");
+		assertEquals(301, user.get("tradeCount"));
+		assertEquals(100, ((List<?>) user.get("executedTrades")).size());
+
+		List<String> seen = new ArrayList<>();
+		String cursor = null;
+		do {
+			Map<String, Object> page = service.getUserTrades("taker", cursor, 128, null, null);
+			for (Map<String, Object> trade : (List<Map<String, Object>>) page.get("trades")) {
+				seen.add((String) trade.get("tradeId"));
+			}
+			cursor = (String) page.get("nextCursor");
+		} while (cursor != null);
+		assertEquals(301, seen.size());
+		assertEquals(301, seen.stream().distinct().count());
+
+		// Newest first, and an empty time range matches nothing
+		Map<String, Object> newest = ((List<Map<String, Object>>) service.getUserTrades("taker", null, 1, null, null)
+			.get("trades")).get(0);
+		assertEquals("MSFT", newest.get("symbol"));
+		assertTrue(((List<?>) service.getUserTrades("taker", null, 10, 0L, 1L).get("trades")).isEmpty());
+
+		for (int i = 0; i < 3; i++) {
+			service.placeOrder("AAPL", "buy", 90.0 + i, 1, "taker");
+		}
+		Map<String, Object> orders = service.getUserOrders("taker", null, 2, null, null);
+		assertEquals(2, ((List<?>) orders.get("orders")).size());
+		Map<String, Object> rest = service.getUserOrders("taker", (String) orders.get("nextCursor"), 2, null, null);
+		assertEquals(1, ((List<?>) rest.get("orders")).size());
+		assertEquals(null, rest.get("nextCursor"));
+
+		Map<String, Object> positions = service.getUserPositions("taker", null, 1);
+		assertEquals("AAPL", ((List<Map<String, Object>>) positions.get("positions")).get(0).get("symbol"));
+		assertEquals("AAPL", positions.get("nextCursor"));
+		assertThrows(IllegalArgumentException.class, () -> service.getUserTrades("taker", "nope", 10, null, null));
+		assertThrows(IllegalArgumentException.class, () -> service.getUserTrades("taker", null, 0, null, null));
+	}
+
+	@Test
+	void closedOrdersAndOldTradesMoveToTheArchive(@TempDir Path directory) {
+		service.shutdown();
+		ExchangeProperties properties = new ExchangeProperties();
+		properties.getRetention().setOrderRetentionSeconds(0);
+		properties.getRetention().setSweepIntervalMs(0);
+		properties.getRetention().setRecentTrades(2);
+		properties.getRetention().setArchiveEnabled(true);
+		properties.getRetention().setArchiveDirectory(directory.toString());
+		properties.getRetention().setArchiveSegmentSize(64 * 1024);
+		service = new ExchangeService(properties);
+		service.init();
+
+		List<String> filled = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			filled.add((String) service.placeOrder("AMZN", "sell", 100.0 + i, 1, "maker").get("orderId"));
+			service.placeOrder("AMZN", "buy", 100.0 + i, 1, "taker");
+		}
+		String resting = (String) service.placeOrder("AMZN", "sell", 120.0, 1, "maker").get("orderId");
+
+		Map<String, Object> swept = service.sweepRetention();
+		assertEquals(10, swept.get("ordersEvicted"));
+		assertEquals(5, swept.get("tradesArchived"));
+
+		// Evicted orders still answer lookups and are still refused as not active
+		assertEquals("FILLED", service.getOrder(filled.get(0)).get("status"));
+		IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+			() -> service.cancelOrder("AMZN", filled.get(0), "maker"));
+		assertEquals("Order cannot be cancelled: FILLED", error.getMessage());
+		assertEquals("ACTIVE", service.getOrder(resting).get("status"));
+
+		// Only two trades fit in memory; the rest come back from the archive, newest first
+		List<Map<String, Object>> trades = service.getTrades("AMZN", null, null, 10);
+		assertEquals(5, trades.size());
+		assertEquals(104.0, trades.get(0).get("price"));
+		assertEquals(100.0, trades.get(4).get("price"));
+		service.shutdown();
+
+		// The archive only spills this process's memory, so a restart without recovery starts it empty
+		service = new ExchangeService(properties);
+		service.init();
+		assertThrows(IllegalArgumentException.class, () -> service.getOrder(filled.get(4)));
+		assertTrue(service.getTrades("AMZN", null, null, 10).isEmpty());
+	}
+
+	@Test
+	void archiveDeletesItsOldestSegmentsPastTheLimit(@TempDir Path directory) throws IOException {
+		service.shutdown();
+		ExchangeProperties properties = new ExchangeProperties();
+		properties.getRetention().setSweepIntervalMs(0);
+		properties.getRetention().setRecentTrades(1);
+		properties.getRetention().setArchiveEnabled(true);
+		properties.getRetention().setArchiveDirectory(directory.toString());
+		properties.getRetention().setArchiveSegmentSize(1024);
+		properties.getRetention().setArchiveMaxSegments(2);
+		service = new ExchangeService(properties);
+		service.init();
+
+		for (int i = 0; i < 50; i++) {
+			service.placeOrder("AMZN", "sell", 100.0 + i, 1, "maker");
+			service.placeOrder("AMZN", "buy", 100.0 + i, 1, "taker");
+			service.sweepRetention();
+		}
+
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(2, files.filter(file -> file.getFileName().toString().startsWith("trades-")).count());
+		}
+		// The newest trades are still served; the ones in deleted segments are gone
+		List<Map<String, Object>> trades = service.getTrades("AMZN", null, null, 100);
+		assertEquals(149.0, trades.get(0).get("price"));
+		assertTrue(trades.size() < 50);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void userHistoriesKeepRecentTradesAndPageIntoTheArchive(@TempDir Path directory) {
+		service.shutdown();
+		ExchangeProperties properties = new ExchangeProperties();
+		properties.getRetention().setOrderRetentionSeconds(0);
+		properties.getRetention().setSweepIntervalMs(0);
+		properties.getRetention().setUserTrades(10);
+		service = new ExchangeService(properties);
+		service.init();
+
+		// With nowhere to spill to, closed orders stay in memory
+		String filled = (String) service.placeOrder("AAPL", "sell", 100.0, 1, "maker").get("orderId");
+		service.placeOrder("AAPL", "buy", 100.0, 1, "taker");
+		assertEquals(0, service.sweepRetention().get("ordersEvicted"));
+		assertEquals("FILLED", service.getOrder(filled).get("status"));
+		service.shutdown();
+
+		properties.getRetention().setArchiveEnabled(true);
+		properties.getRetention().setArchiveDirectory(directory.toString());
+		service = new ExchangeService(properties);
+		service.init();
+		for (int i = 0; i < 300; i++) {
+			service.placeOrder("AAPL", "sell", 100.0 + i * 0.01, 1, "maker");
+			service.placeOrder("AAPL", "buy", 100.0 + i * 0.01, 1, "taker");
+		}
+
+		// Only whole chunks move, so each side keeps between 10 and 10 + 256 trades in memory
+		assertEquals(512, service.sweepRetention().get("userTradesArchived"));
+		assertEquals(300, service.getUser("taker").get("tradeCount"));
+
+		List<Double> prices = new ArrayList<>();
+		String cursor = null;
+		do {
+			Map<String, Object> page = service.getUserTrades("taker", cursor, 64, null, null);
+			for (Map<String, Object> trade : (List<Map<String, Object>>) page.get("trades")) {
+				prices.add((Double) trade.get("price"));
+			}
+			cursor = (String) page.get("nextCursor");
+		} while (cursor != null);
+		assertEquals(300, prices.size());
+		for (int i = 0; i < 300; i++) {
+			assertEquals(100.0 + (299 - i) * 0.01, prices.get(i), 1e-9);
+		}
+		List<Map<String, Object>> oldest = (List<Map<String, Object>>) service.getUserTrades("taker", "2", 10, null, null).get("trades");
+		assertEquals(2, oldest.size());
+		assertEquals("AAPL", oldest.get(0).get("symbol"));
+		assertEquals(100.0, (Double) oldest.get(1).get("price"), 1e-9);
+	}
+
+	@Test
+	void versionsMoveOnlyWhenBooksOrRankingsChange() {
+		long untouched = service.getBookVersion("AAPL");
+		long book = service.getBookVersion("NVDA");
+		long books = service.getBooksVersion();
+		long leaderboard = service.getLeaderboardVersion();
+
+		service.getOrderBook("NVDA");
+		service.getLeaderboard();
+		assertEquals(book, service.getBookVersion("NVDA"));
+		assertEquals(leaderboard, service.getLeaderboardVersion());
+
+		String resting = (String) service.placeOrder("NVDA", "sell", 10.0, 5, "maker").get("orderId");
+		long placed = service.getBookVersion("NVDA");
+		assertTrue(placed > book);
+		assertTrue(service.getBooksVersion() > books);
+		assertTrue(service.getLeaderboardVersion() > leaderboard);
+
+		service.placeOrder("NVDA", "buy", 10.0, 2, "taker");
+		long filled = service.getBookVersion("NVDA");
+		assertTrue(filled > placed);
+		service.cancelOrder("NVDA", resting, "maker");
+		assertTrue(service.getBookVersion("NVDA") > filled);
+		assertEquals(untouched, service.getBookVersion("AAPL"));
+		assertThrows(IllegalArgumentException.class, () -> service.getBookVersion("NOPE"));
+
+		// Delisting takes a busy book away, yet neither version goes back to a value it already had
+		long beforeDelist = service.getBooksVersion();
+		long lastNvda = service.getBookVersion("NVDA");
+		long lastLeaderboard = service.getLeaderboardVersion();
+		service.delistOrderBook("NVDA");
+		assertTrue(service.getBooksVersion() > beforeDelist);
+		assertTrue(service.getLeaderboardVersion() > lastLeaderboard);
+		service.listOrderBook("NVDA");
+		assertTrue(service.getBookVersion("NVDA") > lastNvda);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void positionsAreMarkedToTheLastTrade() {
+		service.placeOrder("MSFT", "sell", 100.0, 10, "maker");
+		service.placeOrder("MSFT", "buy", 100.0, 10, "taker");
+		service.placeOrder("MSFT", "sell", 110.0, 1, "other");
+		service.placeOrder("MSFT", "buy", 110.0, 1, "another");
+		service.awaitRevaluation();
+
+		assertEquals(110.0, service.getMarkPrice("MSFT"));
+		Map<String, Object> taker = service.getUser("taker");
+		assertEquals(100.0, taker.get("unrealizedProfit"));
+		assertEquals(100.0, taker.get("totalProfit"));
+		assertEquals(100.0, ((List<Map<String, Object>>) taker.get("positions")).get(0).get("unrealizedPnL"));
+		assertEquals(-100.0, service.getUser("maker").get("unrealizedProfit"));
+
+		// Closing the position turns the mark into realized profit
+		service.placeOrder("MSFT", "buy", 105.0, 10, "maker");
+		service.placeOrder("MSFT", "sell", 105.0, 10, "taker");
+		service.awaitRevaluation();
+		taker = service.getUser("taker");
+		assertEquals(0.0, taker.get("unrealizedProfit"));
+		assertEquals(50.0, taker.get("totalProfit"));
+		Map<String, Object> top = service.getLeaderboard(0, 1).get(0);
+		assertEquals("taker", top.get("username"));
+		assertEquals(50.0, top.get("totalProfit"));
+		assertEquals(null, service.getMarkPrice("AAPL"));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void tradesAreAggregatedIntoCandles() {
+		service.placeOrder("NVDA", "sell", 100.0, 10, "maker");
+		service.placeOrder("NVDA", "buy", 100.0, 4, "taker");
+		service.placeOrder("NVDA", "buy", 100.0, 6, "taker");
+		service.placeOrder("NVDA", "sell", 90.0, 10, "maker");
+		service.placeOrder("NVDA", "buy", 90.0, 10, "taker");
+
+		// The trades may straddle a minute boundary, so check what holds across however many bars there are
+		List<Map<String, Object>> bars = (List<Map<String, Object>>) service.getCandles("NVDA", "1m", null, null, null).get("bars");
+		assertTrue(!bars.isEmpty() && bars.size() <= 2);
+		assertEquals(100.0, bars.get(0).get("open"));
+		assertEquals(90.0, bars.get(bars.size() - 1).get("close"));
+		long volume = 0;
+		int trades = 0;
+		double notional = 0;
+		for (Map<String, Object> bar : bars) {
+			volume += (Long) bar.get("volume");
+			trades += (Integer) bar.get("trades");
+			notional += (Double) bar.get("vwap") * (Long) bar.get("volume");
+		}
+		assertEquals(20, volume);
+		assertEquals(3, trades);
+		assertEquals(95.0, notional / volume, 1e-9);
+
+		long time = (Long) bars.get(0).get("time");
+		assertEquals(0, time % 60_000);
+		assertEquals(1, ((List<?>) service.getCandles("NVDA", "1m", time, time, null).get("bars")).size());
+		assertTrue(((List<?>) service.getCandles("NVDA", "1h", null, time - 3_600_000, null).get("bars")).isEmpty());
+		assertTrue(((List<?>) service.getCandles("AAPL", "1s", null, null, null).get("bars")).isEmpty());
+		assertThrows(IllegalArgumentException.class, () -> service.getCandles("NVDA", "2m", null, null, null));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void followerTailsThePrimaryAndTakesOverWhenPromoted() throws Exception {
+		ExchangeProperties primaryProperties = new ExchangeProperties();
+		primaryProperties.getReplication().setEnabled(true);
+		primaryProperties.getReplication().setPort(0);
+		primaryProperties.getReplication().setBacklog(4);
+		ExchangeService primary = new ExchangeService(primaryProperties);
+		primary.init();
+		ExchangeProperties followerProperties = new ExchangeProperties();
+		followerProperties.getReplication().setPrimary("localhost:" + primary.getReplicationStatus().get("port"));
+		ExchangeService follower = new ExchangeService(followerProperties);
+		try {
+			// More commands than the backlog holds, so the follower has to start from a snapshot
+			for (int i = 0; i < 6; i++) {
+				primary.placeOrder("AAPL", "sell", 100.0 + i, 1, "maker");
+			}
+			primary.placeOrder("AAPL", "buy", 101.0, 2, "taker");
+			follower.init();
+			awaitApplied(follower, (Long) primary.getReplicationStatus().get("lastSequence"));
+
+			// Then it applies the live stream as it arrives
+			String resting = (String) primary.placeOrder("MSFT", "sell", 50.0, 10, "maker").get("orderId");
+			primary.placeOrder("MSFT", "buy", 50.0, 4, "taker");
+			primary.amendOrder("MSFT", resting, 5, "maker");
+			primary.placeOrder("NVDA", "buy", 10.0, 3, "taker");
+			primary.cancelAllOrders("NVDA", "taker");
+			awaitApplied(follower, (Long) primary.getReplicationStatus().get("lastSequence"));
+
+			assertEquals(primary.getAllOrderBooks(), follower.getAllOrderBooks());
+			assertEquals(primary.getUser("taker").get("realizedProfit"), follower.getUser("taker").get("realizedProfit"));
+			assertEquals(primary.getUser("maker").get("realizedProfit"), follower.getUser("maker").get("realizedProfit"));
+			assertEquals(1, ((List<?>) follower.getUser("taker").get("executedTrades")).size());
+			List<Map<String, Object>> followers = (List<Map<String, Object>>) primary.getReplicationStatus().get("followers");
+			assertEquals(1, followers.size());
+			assertEquals("FOLLOWER", follower.getReplicationStatus().get("role"));
+			assertThrows(IllegalArgumentException.class, () -> follower.placeOrder("AAPL", "buy", 105.0, 1, "taker"));
+
+			// Once promoted it takes orders against the state it replicated
+			assertEquals("PRIMARY", follower.promote().get("role"));
+			assertEquals("FILLED", follower.placeOrder("AAPL", "buy", 105.0, 4, "taker").get("status"));
+			assertEquals("FILLED", follower.placeOrder("MSFT", "buy", 50.0, 5, "taker").get("status"));
+			assertThrows(IllegalArgumentException.class, follower::promote);
+		} finally {
+			follower.shutdown();
+			primary.shutdown();
+		}
+	}
+
+	@Test
+	void ordersStayInFlightWithoutHoldingTheCaller(@TempDir Path directory) throws Exception {
+		service.shutdown();
+		service = journaledService(directory);
+
+		// One thread keeps thousands of journaled orders in flight and collects the results as they complete
+		List<CompletableFuture<Map<String, Object>>> pending = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			pending.add(service.placeOrderAsync("AAPL", i % 2 == 0 ? "sell" : "buy", 100.0, 1, i % 2 == 0 ? "maker" : "taker"));
+		}
+		CompletableFuture<Map<String, Object>> invalid = service.placeOrderAsync("NOPE", "buy", 1.0, 1, "taker");
+		CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+		for (int i = 1; i < pending.size(); i += 2) {
+			assertEquals("FILLED", pending.get(i).get().get("status"));
+		}
+		assertEquals(1000, service.getUser("taker").get("tradeCount"));
+		ExecutionException rejected = assertThrows(ExecutionException.class, invalid::get);
+		assertTrue(rejected.getCause() instanceof IllegalArgumentException);
+		assertTrue(service.getOrderBookAsync("AAPL", 5).get().get("sell").isEmpty());
+		assertEquals(0, service.cancelAllOrdersAsync("maker").get().get("count"));
+	}
+
+	@Test
+	void booksAreListedHaltedAndDelistedAtRuntime(@TempDir Path directory) {
+		service.shutdown();
+		service = journaledService(directory);
+		for (int i = 0; i < 250; i++) {
+			service.listOrderBook(String.format("SYM%03d", i));
+		}
+
+		// Listing is cheap: the book itself is only built by its first order
+		assertEquals(false, service.listOrderBook("SYM007").get("built"));
+		assertTrue(service.getOrderBook("SYM007").get("buy").isEmpty());
+		String resting = (String) service.placeOrder("SYM007", "buy", 10.0, 5, "maker").get("orderId");
+		assertEquals(true, service.listOrderBook("SYM007").get("built"));
+
+		List<String> page = service.selectBooks(null, "SYM", "SYM099", 50);
+		assertEquals(50, page.size());
+		assertEquals("SYM100", page.get(0));
+		assertEquals(List.of("SYM001", "SYM007"), service.selectBooks(List.of("SYM007", "SYM001"), null, null, null));
+		assertTrue(service.selectBooks(null, "SYM24", "SYM249", null).isEmpty());
+		assertThrows(IllegalArgumentException.class, () -> service.listOrderBook("BAD NAME"));
+
+		service.haltOrderBook("SYM007");
+		assertThrows(IllegalArgumentException.class, () -> service.placeOrder("SYM007", "sell", 10.0, 1, "taker"));
+		service.placeOrder("SYM008", "sell", 10.0, 1, "taker");
+		service.resumeOrderBook("SYM007");
+		service.haltOrderBook("SYM008");
+		assertEquals("FILLED", service.placeOrder("SYM007", "sell", 10.0, 1, "taker").get("status"));
+
+		assertEquals(1, service.delistOrderBook("SYM008").get("cancelled"));
+		assertThrows(IllegalArgumentException.class, () -> service.placeOrder("SYM008", "buy", 10.0, 1, "maker"));
+		assertThrows(IllegalArgumentException.class, () -> service.getOrderBook("SYM008"));
+		service.compactIdleBooks();
+		service.compactIdleBooks();
+		assertEquals(1L, ((Map<?, ?>) service.getMetrics().get("registry")).get("compactions"));
+
+		// Listings, halts and delistings are journaled like orders
+		service.haltOrderBook("SYM009");
+		service.shutdown();
+		service = journaledService(directory);
+		assertEquals("HALTED", service.listOrderBook("SYM009").get("status"));
+		assertEquals("TRADING", service.listOrderBook("SYM007").get("status"));
+		assertThrows(IllegalArgumentException.class, () -> service.getOrderBook("SYM008"));
+		assertEquals(List.of(List.of(10.0, 4.0)), service.getOrderBook("SYM007").get("buy"));
+		service.cancelOrder("SYM007", resting, "maker");
+	}
+
+	@Test
+	void pricesAndProfitsAreExactOnEachBooksGrid(@TempDir Path directory) {
+		service.shutdown();
+		service = journaledService(directory, true);
+
+		// In doubles these fills leave 0.8999999999999997 of profit
+		service.placeOrder("AAPL", "sell", 0.1, 3, "maker");
+		service.placeOrder("AAPL", "sell", 0.2, 3, "maker");
+		service.placeOrder("AAPL", "buy", 0.2, 6, "taker");
+		service.placeOrder("AAPL", "buy", 0.3, 6, "maker");
+		service.placeOrder("AAPL", "sell", 0.3, 2, "taker");
+		assertEquals(0.3, service.getUser("taker").get("realizedProfit"));
+		service.placeOrder("AAPL", "sell", 0.3, 4, "taker");
+		assertEquals(0.9, service.getUser("taker").get("realizedProfit"));
+		assertThrows(IllegalArgumentException.class, () -> service.placeOrder("AAPL", "buy", 100.005, 1, "taker"));
+		// Far below a millionth off the grid is still off it: prices are never rounded
+		assertThrows(IllegalArgumentException.class,
+			() -> service.placeOrder("AAPL", "buy", new BigDecimal("100.0000000001"), 1, "taker"));
+		assertThrows(IllegalArgumentException.class, () -> service.placeOrder("AAPL", "buy", 100.0000000001, 1, "taker"));
+		assertThrows(IllegalArgumentException.class, () -> service.placeOrder("AAPL", "buy", 100.0, 2.5, "taker"));
+
+		service.listOrderBook("BOND", new BigDecimal("0.05"), 10);
+		assertThrows(IllegalArgumentException.class, () -> service.placeOrder("BOND", "buy", 99.98, 10, "maker"));
+		assertThrows(IllegalArgumentException.class, () -> service.placeOrder("BOND", "buy", 99.95, 15, "maker"));
+		assertEquals("ACTIVE", service.placeOrder("BOND", "buy", 99.95, 20, "maker").get("status"));
+		assertThrows(IllegalArgumentException.class, () -> service.listOrderBook("BOND", new BigDecimal("0.01"), null));
+
+		// The book's grid and the exact profit survive a restart from the snapshot
+		service.takeSnapshot();
+		service.shutdown();
+		service = journaledService(directory, true);
+		Map<String, Object> bond = service.listOrderBook("BOND");
+		assertEquals(0.05, bond.get("tickSize"));
+		assertEquals(10, bond.get("lotSize"));
+		assertEquals(List.of(List.of(99.95, 20.0)), service.getOrderBook("BOND").get("buy"));
+		assertEquals(0.9, service.getUser("taker").get("realizedProfit"));
+	}
+
+	@Test
+	void listedGridComesBackFromTheJournal(@TempDir Path directory) {
+		ExchangeService first = journaledService(directory);
+		first.listOrderBook("MICRO", new BigDecimal("0.000001"), 1);
+		first.listOrderBook("BOND", new BigDecimal("0.05"), 10);
+		first.shutdown();
+
+		ExchangeService second = journaledService(directory);
+		try {
+			assertEquals(0.000001, second.listOrderBook("MICRO").get("tickSize"));
+			assertEquals(0.05, second.listOrderBook("BOND").get("tickSize"));
+			assertEquals(10, second.listOrderBook("BOND").get("lotSize"));
+			assertEquals("ACTIVE", second.placeOrder("MICRO", "buy", new BigDecimal("1.000001"), 1, "maker").get("status"));
+		} finally {
+			second.shutdown();
+		}
+	}
+
+	@Test
+	void ordersWhoseBookIsDelistedBeforeTheyRunAreWithdrawn() {
+		service.listOrderBook("TSLA");
+		List<String> accepted = new ArrayList<>();
+
+		// The book goes away between validation and the writer
+		assertThrows(IllegalArgumentException.class, () -> service.placeOrder("TSLA", "buy", BigDecimal.TEN, 1, "bob", order -> {
+			accepted.add(order.getId());
+			service.delistOrderBook("TSLA");
+		}));
+
+		assertEquals("CANCELLED", service.getOrder(accepted.get(0)).get("status"));
+		assertTrue(((List<?>) service.getUser("bob").get("activeOrders")).isEmpty());
+	}
+
+	@Test
+	void directModeSnapshotsLockThousandsOfBooks(@TempDir Path directory) {
+		service.shutdown();
+		ExchangeProperties properties = new ExchangeProperties();
+		properties.getMatching().setMode(ExchangeProperties.MatchingMode.DIRECT);
+		properties.getSnapshot().setEnabled(true);
+		properties.getSnapshot().setDirectory(directory.toString());
+		properties.getSnapshot().setIntervalSeconds(0);
+		service = new ExchangeService(properties);
+		service.init();
+		for (int i = 0; i < 9000; i++) {
+			service.listOrderBook(String.format("SYM%04d", i));
+		}
+		service.placeOrder("SYM8999", "buy", 10.0, 5, "maker");
+
+		service.takeSnapshot();
+		service.shutdown();
+		service = new ExchangeService(properties);
+		service.init();
+		assertEquals(List.of(List.of(10.0, 5.0)), service.getOrderBook("SYM8999").get("buy"));
+	}
+
+	private static void awaitApplied(ExchangeService follower, long sequence) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		while ((Long) follower.getReplicationStatus().get("appliedSequence") < sequence) {
+			assertTrue(System.currentTimeMillis() < deadline, "follower did not catch up");
+			Thread.sleep(10);
+		}
+	}
+}
@@ -1,7 +1,7 @@
 // Main dashboard with 4 orderbook quadrants
 import React, { useState, useEffect, useRef } from 'react';
 import OrderbookQuadrant from './OrderbookQuadrant';
-import { fetchAllOrderbooks } from '../services/api';
+import { fetchAllOrderbooks, subscribeToOrderbooks } from '../services/api';
 
 function Dashboard({ onViewOrderbook }) {
   const [orderbooks, setOrderbooks] = useState({});
@@ -33,6 +33,15 @@ function Dashboard({ onViewOrderbook }) {
       }
     };
 
+    // Prefer the live stream; poll every 5 seconds only if the browser cannot stream
+    const unsubscribe = subscribeToOrderbooks(null, (data) => {
+      setOrderbooks(data);
+      setLoading(false);
+    });
+    if (unsubscribe) {
+      return unsubscribe;
+    }
+    
     fetchData();
     
     // Set up polling to refresh data every 5 seconds
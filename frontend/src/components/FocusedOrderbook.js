@@ -1,7 +1,8 @@
 // Component for detailed view of a single orderbook
 import React, { useState, useEffect, useRef } from 'react';
-import { fetchOrderbook } from '../services/api';
+import { fetchOrderbook, subscribeToOrderbooks } from '../services/api';
 import OrderbookDepthChart from './OrderbookDepthChart';
+import PriceHistoryChart from './PriceHistoryChart';
 
 function FocusedOrderbook({ bookName, onBack }) {
   const [orderbookData, setOrderbookData] = useState(null);
@@ -33,6 +34,17 @@ function FocusedOrderbook({ bookName, onBack }) {
       }
     };
 
+    // Prefer the live stream; poll every 5 seconds only if the browser cannot stream
+    const unsubscribe = subscribeToOrderbooks([bookName], (data) => {
+      if (data[bookName]) {
+        setOrderbookData(data[bookName]);
+        setLoading(false);
+      }
+    });
+    if (unsubscribe) {
+      return unsubscribe;
+    }
+    
     fetchData();
     
     // Set up polling to refresh data every 5 seconds
@@ -111,6 +123,11 @@ function FocusedOrderbook({ bookName, onBack }) {
           <OrderbookDepthChart buyLevels={orderbookData.buy} sellLevels={orderbookData.sell} />
         )}
       </div>
+
+      <div className="depth-chart-container">
+        <h2 className="depth-chart-title">Price History</h2>
+        <PriceHistoryChart bookName={bookName} />
+      </div>
     </div>
   );
 }
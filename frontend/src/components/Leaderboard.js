@@ -49,6 +49,7 @@ function Leaderboard({ onBack }) {
                   <th>Rank</th>
                   <th>Username</th>
                   <th>Realized Profit</th>
+                  <th>Total P&amp;L</th>
                   <th>Positions</th>
                   <th>Active Orders</th>
                   <th>Total Trades</th>
@@ -70,6 +71,9 @@ function Leaderboard({ onBack }) {
                     <td className={trader.realizedProfit >= 0 ? 'positive-profit' : 'negative-profit'}>
                       ${trader.realizedProfit.toFixed(2)}
                     </td>
+                    <td className={trader.totalProfit >= 0 ? 'positive-profit' : 'negative-profit'}>
+                      ${trader.totalProfit.toFixed(2)}
+                    </td>
                     <td>{trader.positionCount}</td>
                     <td>{trader.activeOrderCount}</td>
                     <td>{trader.tradeCount}</td>
@@ -0,0 +1,75 @@
+import React, { useState, useEffect } from 'react';
+import { ComposedChart, Line, Bar, XAxis, YAxis, CartesianGrid, Tooltip, Legend, ResponsiveContainer } from 'recharts';
+import { fetchCandles } from '../services/api';
+
+const RESOLUTIONS = ['1s', '1m', '5m', '1h'];
+
+// Close and VWAP per bar over traded volume, from the server-side candles
+function PriceHistoryChart({ bookName }) {
+  const [resolution, setResolution] = useState('1m');
+  const [bars, setBars] = useState([]);
+
+  useEffect(() => {
+    const fetchData = async () => {
+      try {
+        const data = await fetchCandles(bookName, resolution);
+        setBars(data.bars);
+      } catch (err) {
+        console.error('Error fetching candles:', err);
+      }
+    };
+
+    fetchData();
+    
+    // Refresh faster at finer resolutions, where a new bar appears every second
+    const intervalId = setInterval(fetchData, resolution === '1s' ? 1000 : 5000);
+    return () => clearInterval(intervalId);
+  }, [bookName, resolution]);
+
+  return (
+    <div className="price-history-chart">
+      <div className="resolution-picker">
+        {RESOLUTIONS.map(res => (
+          <button
+            key={res}
+            className={res === resolution ? 'active' : ''}
+            onClick={() => setResolution(res)}
+          >
+            {res}
+          </button>
+        ))}
+      </div>
+      {bars.length === 0 ? (
+        <div className="no-chart-data">No trades yet at this resolution</div>
+      ) : (
+        <ResponsiveContainer width="100%" height={400}>
+          <ComposedChart data={bars} margin={{ top: 20, right: 30, left: 20, bottom: 50 }}>
+            <CartesianGrid strokeDasharray="3 3" />
+            <XAxis
+              dataKey="time"
+              tickFormatter={(value) => new Date(value).toLocaleTimeString()}
+              fontSize={12}
+            />
+            <YAxis
+              yAxisId="price"
+              domain={['auto', 'auto']}
+              tickFormatter={(value) => `$${value.toFixed(2)}`}
+              fontSize={12}
+            />
+            <YAxis yAxisId="volume" orientation="right" fontSize={12} />
+            <Tooltip
+              labelFormatter={(label) => new Date(label).toLocaleString()}
+              formatter={(value, name) => [name === 'Volume' ? value : `$${value.toFixed(2)}`, name]}
+            />
+            <Legend />
+            <Bar yAxisId="volume" dataKey="volume" name="Volume" fill="#90a4ae" fillOpacity={0.5} />
+            <Line yAxisId="price" type="monotone" dataKey="close" name="Close" stroke="#1976d2" dot={false} />
+            <Line yAxisId="price" type="monotone" dataKey="vwap" name="VWAP" stroke="#f57c00" dot={false} strokeDasharray="4 2" />
+          </ComposedChart>
+        </ResponsiveContainer>
+      )}
+    </div>
+  );
+}
+
+export default PriceHistoryChart;
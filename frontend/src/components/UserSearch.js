@@ -60,6 +60,9 @@ function UserSearch({ onBack }) {
             <p className="profit">
               Realized Profit: <span className="profit-value">${userData.realizedProfit.toFixed(2)}</span>
             </p>
+            <p className="profit">
+              Unrealized Profit: <span className="profit-value">${userData.unrealizedProfit.toFixed(2)}</span>
+            </p>
           </div>
 
           <h3 className="positions-title">Current Positions</h3>
@@ -32,6 +32,70 @@ export const fetchOrderbook = async (bookName) => {
   }
 };
 
+// Stream orderbooks over server-sent events: a snapshot per book, then depth deltas applied locally.
+// Calls onUpdate with the same shape as fetchAllOrderbooks; returns an unsubscribe function,
+// or null when the browser cannot stream so the caller can fall back to polling.
+export const subscribeToOrderbooks = (bookNames, onUpdate, onError) => {
+  if (typeof EventSource === 'undefined') {
+    return null;
+  }
+  
+  const query = bookNames && bookNames.length ? `?books=${bookNames.join(',')}` : '';
+  const source = new EventSource(`${API_BASE_URL}/stream${query}`);
+  const books = {};
+  
+  const toView = (book) => ({
+    buy: [...book.buy.entries()].sort((a, b) => b[0] - a[0]),
+    sell: [...book.sell.entries()].sort((a, b) => a[0] - b[0])
+  });
+  const publish = () => {
+    const view = {};
+    Object.keys(books).forEach((name) => {
+      view[name] = toView(books[name]);
+    });
+    onUpdate(view);
+  };
+  
+  source.addEventListener('snapshot', (event) => {
+    const snapshot = JSON.parse(event.data);
+    books[snapshot.book] = {
+      sequence: snapshot.sequence,
+      buy: new Map(snapshot.buy.map(([price, quantity]) => [price, quantity])),
+      sell: new Map(snapshot.sell.map(([price, quantity]) => [price, quantity]))
+    };
+    publish();
+  });
+  
+  source.addEventListener('depth', (event) => {
+    const delta = JSON.parse(event.data);
+    const book = books[delta.book];
+    if (!book) {
+      return;
+    }
+    ['buy', 'sell'].forEach((side) => {
+      delta[side].forEach(([price, quantity]) => {
+        if (quantity === 0) {
+          book[side].delete(price);
+        } else {
+          book[side].set(price, quantity);
+        }
+      });
+    });
+    book.sequence = delta.sequence;
+    publish();
+  });
+  
+  // EventSource reconnects by itself and the server then resends fresh snapshots
+  source.onerror = (error) => {
+    console.error('Orderbook stream error:', error);
+    if (onError) {
+      onError(error);
+    }
+  };
+  
+  return () => source.close();
+};
+
 // Fetch user data
 export const fetchUser = async (username) => {
   try {
@@ -67,6 +131,22 @@ export const fetchLeaderboard = async () => {
   }
 };
 
+// Fetch OHLCV candles for a book; res is one of 1s, 1m, 5m, 1h
+export const fetchCandles = async (bookName, res = '1m', limit = 120) => {
+  try {
+    const response = await fetch(`${API_BASE_URL}/candles/${bookName}?res=${res}&limit=${limit}`);
+    
+    if (!response.ok) {
+      throw new Error(`HTTP error! Status: ${response.status}`);
+    }
+    
+    return await response.json();
+  } catch (error) {
+    console.error(`Error fetching candles for ${bookName}:`, error);
+    throw error;
+  }
+};
+
 // Place an order
 export const placeOrder = async (book, type, price, quantity, username) => {
   try {
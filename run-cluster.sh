@@ -0,0 +1,88 @@
+#!/bin/bash
+
+# MarketLink local cluster
+# Starts several engine processes, each hosting a share of the books, and a router in front of them
+# on one machine. The router serves the usual API on ROUTER_PORT, so the frontend and the
+# populate script work against it unchanged. Ctrl-C stops every process.
+#
+# Usage: ./run-cluster.sh [engines] [books...]
+#   ./run-cluster.sh                      two engines, AAPL AMZN NVDA MSFT spread round-robin
+#   ./run-cluster.sh 4 AAPL AMZN NVDA MSFT one book per engine
+
+ENGINES=${1:-2}
+shift
+BOOKS=("$@")
+if [ ${#BOOKS[@]} -eq 0 ]; then
+  BOOKS=(AAPL AMZN NVDA MSFT)
+fi
+
+ROUTER_PORT=${ROUTER_PORT:-8080}
+FIRST_ENGINE_PORT=${FIRST_ENGINE_PORT:-8081}
+LOG_DIR=${LOG_DIR:-data/cluster}
+JAVA_OPTS=${JAVA_OPTS:-"-Xmx512m"}
+
+cd "$(dirname "$0")/backend" || exit 1
+JAR=$(ls target/demo-*.jar 2>/dev/null | grep -v original | head -n 1)
+if [ -z "$JAR" ]; then
+  echo "Building backend..."
+  mvn -B -q package -DskipTests || exit 1
+  JAR=$(ls target/demo-*.jar | grep -v original | head -n 1)
+fi
+mkdir -p "$LOG_DIR"
+
+PIDS=()
+stop_all() {
+  echo "Stopping cluster..."
+  kill "${PIDS[@]}" 2>/dev/null
+  wait
+}
+trap stop_all INT TERM EXIT
+
+# Assign books to engines round-robin
+declare -a ASSIGNMENT
+for i in "${!BOOKS[@]}"; do
+  engine=$((i % ENGINES))
+  ASSIGNMENT[$engine]="${ASSIGNMENT[$engine]:+${ASSIGNMENT[$engine]},}${BOOKS[$i]}"
+done
+
+ROUTER_ARGS=()
+for ((engine = 0; engine < ENGINES; engine++)); do
+  port=$((FIRST_ENGINE_PORT + engine))
+  books=${ASSIGNMENT[$engine]}
+  if [ -z "$books" ]; then
+    echo "Engine $engine would host no books; use fewer engines than books"
+    exit 1
+  fi
+  echo "Engine $engine on port $port hosts $books (log: backend/$LOG_DIR/engine-$engine.log)"
+  # Each engine keeps its own journal, snapshots and archive
+  java $JAVA_OPTS -jar "$JAR" \
+    --server.port=$port \
+    --exchange.cluster.role=ENGINE \
+    --exchange.cluster.books=$books \
+    --exchange.journal.directory=data/cluster/engine-$engine/journal \
+    --exchange.snapshot.directory=data/cluster/engine-$engine/snapshots \
+    --exchange.retention.archive-directory=data/cluster/engine-$engine/archive \
+    > "$LOG_DIR/engine-$engine.log" 2>&1 &
+  PIDS+=($!)
+  ROUTER_ARGS+=("--exchange.cluster.shards[$engine].url=http://localhost:$port/api/exchange")
+  ROUTER_ARGS+=("--exchange.cluster.shards[$engine].books=$books")
+done
+
+echo "Router on port $ROUTER_PORT (log: backend/$LOG_DIR/router.log)"
+java $JAVA_OPTS -jar "$JAR" \
+  --server.port=$ROUTER_PORT \
+  --exchange.cluster.role=ROUTER \
+  "${ROUTER_ARGS[@]}" \
+  > "$LOG_DIR/router.log" 2>&1 &
+PIDS+=($!)
+
+# Wait until every node answers before reporting the cluster as up
+for ((engine = 0; engine <= ENGINES; engine++)); do
+  port=$((engine == ENGINES ? ROUTER_PORT : FIRST_ENGINE_PORT + engine))
+  until curl -s -o /dev/null "http://localhost:$port/api/exchange/metrics"; do
+    sleep 0.5
+  done
+done
+echo "Cluster is up: http://localhost:$ROUTER_PORT/api/exchange"
+
+wait